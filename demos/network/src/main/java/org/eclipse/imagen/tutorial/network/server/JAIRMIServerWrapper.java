@@ -409,6 +409,55 @@ implements ImageServer {
 	return server.getCompressedTile(id, x, y);
     }
 
+    /**
+     * Returns the tiles at the given indices in a single call, in the
+     * order of the indices.  Note that the indices are indices into the
+     * tile array, not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array
+     * @return copies of the tiles as Rasters.
+     */
+
+
+    public SerializableState[] getTiles(Long id, Point[] indices)
+	throws RemoteException {
+
+	RenderedOp op = getNode(id);
+	String opName = op.getOperationName();
+
+	guiPrint(indices.length + " Tiles from " + opName + " \n");
+
+	SerializableState[] ss = server.getTiles(id, indices);
+	ColorModel cm = (ColorModel)(getColorModel(id).getObject());
+	for (int i = 0; i < ss.length; i++) {
+	    imagePanel.updateImage((Raster)ss[i].getObject(), cm,
+				   opName + ": tile (" + indices[i].x +
+				   ", " + indices[i].y + ")");
+	}
+
+	return ss;
+    }
+
+    /**
+     * Compresses the tiles at the given indices and returns their
+     * contents in a single call, one byte array per tile in the order of
+     * the indices.  Note that the indices are indices into the tile
+     * array, not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array
+     * @return byte arrays containing the compressed tile contents.
+     */
+
+
+    public byte[][] getCompressedTiles(Long id, Point[] indices)
+	throws RemoteException {
+
+	guiPrint(indices.length + " Compressed Tiles\n");
+	return server.getCompressedTiles(id, indices);
+    }
+
     /**
      * Returns the entire image as a single Raster.
      *
@@ -184,6 +184,39 @@ public class ByteArraySeekableStream extends SeekableStream {
         }
     }
 
+    /**
+     * Copies up to <code>len</code> bytes starting at the offset
+     * <code>pos</code> of the input array.  The stream pointer is not
+     * used, so any number of threads may read at once.
+     *
+     * @param      pos   the offset in the stream of the first byte copied.
+     * @param      b     the buffer into which the data is copied.
+     * @param      off   the start offset of the data.
+     * @param      len   the maximum number of bytes to copy.
+     * @return     the total number of bytes read into the buffer, or
+     *             <code>-1</code> if <code>pos</code> is at or past the
+     *             end of the stream.
+     */
+    public int read(long pos, byte[] b, int off, int len) {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length) || (pos < 0)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        // Offsets are indices of the input array, as for seek().
+        if (pos >= length + offset) {
+            return -1;
+        }
+        int count = (int)Math.min((long)len, length + offset - pos);
+        System.arraycopy(src, (int)pos, b, off, count);
+        return count;
+    }
+
     /**
      * Attempts to skip over <code>n</code> bytes of input discarding the 
      * skipped bytes. 
@@ -92,6 +92,11 @@ public class FileSeekableStream extends SeekableStream {
         this(new RandomAccessFile(name, "r"));
     }
 
+    /** Returns the file this stream reads from. */
+    RandomAccessFile getFile() {
+        return file;
+    }
+
     /** Returns true since seeking backwards is supported. */
     public final boolean canSeekBackwards() {
         return true;
@@ -136,8 +141,11 @@ public class FileSeekableStream extends SeekableStream {
         long pos = ((long)page) << PAGE_SHIFT;
         long remaining = length - pos;
         int len = PAGE_SIZE < remaining ? PAGE_SIZE : (int)remaining;
-        file.seek(pos);
-        file.readFully(pageBuf[index], 0, len);
+        // The file position is shared with reads at an offset.
+        synchronized (file) {
+            file.seek(pos);
+            file.readFully(pageBuf[index], 0, len);
+        }
 
         return pageBuf[index];
     }
@@ -188,6 +196,41 @@ public class FileSeekableStream extends SeekableStream {
         }
     }
 
+    /**
+     * Reads from the given offset of the real <code>File</code>.  Neither
+     * the stream pointer nor the page cache are used, so any number of
+     * threads may call this method at once; their reads of the file are
+     * performed one at a time.  The file is read through the
+     * <code>RandomAccessFile</code> rather than its
+     * <code>FileChannel</code>, whose reads close the file when the
+     * reading thread is interrupted.
+     */
+    public final int read(long pos, byte[] b, int off, int len)
+        throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (pos < 0) {
+            throw new IOException(JaiI18N.getString("FileSeekableStream0"));
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        len = (int)Math.min((long)len, length - pos);
+        if (len <= 0) {
+            return -1;
+        }
+
+        synchronized (file) {
+            file.seek(pos);
+            return file.read(b, off, len);
+        }
+    }
+
     /** Forwards the request to the real <code>File</code>. */
     public final void close() throws IOException {
         file.close();
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.codec;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A subclass of <code>SeekableStream</code> that takes its input
+ * from a memory mapping of a <code>File</code> or
+ * <code>RandomAccessFile</code>.  Backwards seeking is supported.  The
+ * <code>mark()</code> and <code>reset()</code> methods are supported.
+ *
+ * <p> The file is mapped read-only in segments of up to one gigabyte so
+ * that files larger than two gigabytes may be read.  Reads copy directly
+ * from the mapping without any system call, and <code>slice()</code>
+ * returns a view of a range of the file without copying it.  Reads at
+ * an offset, by means of <code>read(long, byte[], int, int)</code>, do
+ * not use the stream pointer and may be performed by any number of
+ * threads at once.
+ *
+ * <p> <code>close()</code> closes the file and releases the mapping,
+ * after which the stream may not be read.  It waits for reads in
+ * progress on other threads to finish, so that the mapping is never
+ * released while it is being read.  If <code>slice()</code> has returned
+ * a view of the mapping, the mapping is instead released when the views
+ * and the stream are garbage collected.  Some platforms do not allow a
+ * mapped file to be deleted or truncated until the mapping is released.
+ *
+ * <p><b> This class is not a committed part of the JAI API.  It may
+ * be removed or changed in future releases of JAI.</b>
+ */
+public class MappedFileSeekableStream extends SeekableStream {
+
+    // Base 2 logarithm of the segment size
+    private static final int SEGMENT_SHIFT = 30;
+
+    // The segment size, derived from SEGMENT_SHIFT
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    // Binary mask to find the offset of a pointer within a segment
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // The file, if it is closed by close(), otherwise null
+    private RandomAccessFile file;
+
+    // The mapped segments of the file, or null once closed
+    private MappedByteBuffer[] segments;
+
+    // Whether slice() has returned a view of a segment
+    private boolean isSliced = false;
+
+    // Held for reading while the mapping is read and for writing while
+    // it is released; guards segments and isSliced
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long length;
+
+    private long pointer = 0L;
+
+    private long markPos = -1;
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> from a
+     * <code>RandomAccessFile</code>.
+     */
+    public MappedFileSeekableStream(RandomAccessFile file)
+        throws IOException {
+        this.file = file;
+        mapFile(file.getChannel());
+    }
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> from a
+     * <code>File</code>.
+     */
+    public MappedFileSeekableStream(File file) throws IOException {
+        this(new RandomAccessFile(file, "r"));
+    }
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> from a
+     * <code>String</code> path name.
+     */
+    public MappedFileSeekableStream(String name) throws IOException {
+        this(new RandomAccessFile(name, "r"));
+    }
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> which does not
+     * close the file open on the channel.
+     */
+    private MappedFileSeekableStream(FileChannel channel, long pointer)
+        throws IOException {
+        this.pointer = pointer;
+        mapFile(channel);
+    }
+
+    /** Maps the whole file open on the channel. */
+    private void mapFile(FileChannel channel) throws IOException {
+        length = channel.size();
+
+        int numSegments = (int)((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            long pos = (long)i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                      Math.min(SEGMENT_SIZE, length - pos));
+        }
+    }
+
+    /**
+     * Returns a <code>MappedFileSeekableStream</code> reading the same
+     * file as <code>stream</code> if it is a
+     * <code>FileSeekableStream</code>, or <code>stream</code> itself
+     * otherwise or if the file can not be mapped.  The pointer of the
+     * returned stream is initially that of <code>stream</code>.  Closing
+     * the returned stream releases the mapping but does not close
+     * <code>stream</code>; if it is not closed the mapping is released
+     * when it is garbage collected.
+     *
+     * @param stream The stream to replace by a mapping.
+     */
+    public static SeekableStream map(SeekableStream stream) {
+        if (!(stream instanceof FileSeekableStream)) {
+            return stream;
+        }
+
+        try {
+            RandomAccessFile raf = ((FileSeekableStream)stream).getFile();
+            return new MappedFileSeekableStream(raf.getChannel(),
+                                                stream.getFilePointer());
+        } catch (IOException e) {
+            // Mapping is only an optimization: keep the original stream.
+            return stream;
+        }
+    }
+
+    /**
+     * Returns the mapped segments, or throws if the stream is closed.
+     * The lock must be held.
+     */
+    private MappedByteBuffer[] getSegments() throws IOException {
+        MappedByteBuffer[] s = segments;
+        if (s == null) {
+            throw new IOException(JaiI18N.getString("MappedFileSeekableStream1"));
+        }
+        return s;
+    }
+
+    /** Returns true since seeking backwards is supported. */
+    public final boolean canSeekBackwards() {
+        return true;
+    }
+
+    /**
+     * Returns the current offset in this stream.
+     *
+     * @return     the offset from the beginning of the stream, in bytes,
+     *             at which the next read occurs.
+     */
+    public final long getFilePointer() throws IOException {
+        return pointer;
+    }
+
+    public final void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(JaiI18N.getString("MappedFileSeekableStream0"));
+        }
+        pointer = pos;
+    }
+
+    public final int skip(int n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        n = (int)Math.min((long)n, Math.max(0L, length - pointer));
+        pointer += n;
+        return n;
+    }
+
+    /** Returns the length of the file. */
+    public final long length() {
+        return length;
+    }
+
+    /** Reads a byte from the mapping. */
+    public final int read() throws IOException {
+        lock.readLock().lock();
+        try {
+            MappedByteBuffer[] s = getSegments();
+            if (pointer >= length) {
+                return -1;
+            }
+
+            int b = s[(int)(pointer >>> SEGMENT_SHIFT)]
+                .get((int)(pointer & SEGMENT_MASK)) & 0xff;
+            pointer++;
+            return b;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Copies from the mapping. */
+    public final int read(byte[] b, int off, int len) throws IOException {
+        int count = read(pointer, b, off, len);
+        if (count > 0) {
+            pointer += count;
+        }
+        return count;
+    }
+
+    /**
+     * Copies from the given offset of the mapping.  The stream pointer
+     * is not used, so any number of threads may read at once.
+     */
+    public final int read(long pos, byte[] b, int off, int len)
+        throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (pos < 0) {
+            throw new IOException(JaiI18N.getString("MappedFileSeekableStream0"));
+        }
+        lock.readLock().lock();
+        try {
+            MappedByteBuffer[] s = getSegments();
+            if (len == 0) {
+                return 0;
+            }
+
+            len = (int)Math.min((long)len, length - pos);
+            if (len <= 0) {
+                return -1;
+            }
+
+            int count = 0;
+            while (count < len) {
+                // A duplicate has a position of its own which no other
+                // thread modifies.
+                ByteBuffer segment =
+                    s[(int)(pos >>> SEGMENT_SHIFT)].duplicate();
+                segment.position((int)(pos & SEGMENT_MASK));
+                int n = Math.min(len - count, segment.remaining());
+                segment.get(b, off + count, n);
+                count += n;
+                pos += n;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only <code>ByteBuffer</code> holding
+     * <code>len</code> bytes of the file starting at the offset
+     * <code>pos</code>.  The buffer is a view of the mapping unless the
+     * range crosses the boundary of a one gigabyte segment, in which case
+     * it is copied.  The stream pointer is neither used nor modified.
+     *
+     * @param pos The offset of the first byte in the file.
+     * @param len The number of bytes.
+     * @throws IndexOutOfBoundsException if the range is not within the
+     *         file.
+     * @throws IOException if the stream has been closed.
+     */
+    public ByteBuffer slice(long pos, int len) throws IOException {
+        if (pos < 0 || len < 0 || pos + len > length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int index = (int)(pos >>> SEGMENT_SHIFT);
+        int offset = (int)(pos & SEGMENT_MASK);
+        if (offset + (long)len <= SEGMENT_SIZE) {
+            // Once a view escapes, close() must leave the mapping to the
+            // garbage collector.  The write lock makes the flag visible
+            // to close().
+            lock.writeLock().lock();
+            try {
+                MappedByteBuffer[] s = getSegments();
+                isSliced = true;
+                ByteBuffer segment = s[index].duplicate();
+                segment.position(offset);
+                segment.limit(offset + len);
+                return segment.slice().asReadOnlyBuffer();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        byte[] data = new byte[len];
+        read(pos, data, 0, len);
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Closes the file and releases the mapping unless
+     * <code>slice()</code> has returned a view of it.  Reads in progress
+     * on other threads finish first; later reads throw an
+     * <code>IOException</code>.
+     */
+    public final void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            MappedByteBuffer[] s = segments;
+            segments = null;
+            if (s != null && !isSliced) {
+                for (int i = 0; i < s.length; i++) {
+                    unmap(s[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Releases a mapping at once where the platform allows it, otherwise
+     * leaves it to be released when it is garbage collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // Java 9 and later.
+                Method invokeCleaner =
+                    unsafeClass.getMethod("invokeCleaner",
+                                          new Class[] {ByteBuffer.class});
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null),
+                                     new Object[] {buffer});
+            } catch (NoSuchMethodException e) {
+                // Java 8: the buffer is a sun.nio.ch.DirectBuffer.
+                Method cleanerMethod =
+                    buffer.getClass().getMethod("cleaner", new Class[0]);
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer, new Object[0]);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean", new Class[0])
+                        .invoke(cleaner, new Object[0]);
+                }
+            }
+        } catch (Exception e) {
+            // The mapping is released when it is garbage collected.
+        }
+    }
+
+    /**
+     * Marks the current file position for later return using
+     * the <code>reset()</code> method.
+     */
+    public synchronized final void mark(int readLimit) {
+        markPos = pointer;
+    }
+
+    /**
+     * Returns the file position to its position at the time of
+     * the immediately previous call to the <code>mark()</code>
+     * method.
+     */
+    public synchronized final void reset() throws IOException {
+        if (markPos != -1) {
+            pointer = markPos;
+        }
+    }
+
+    /** Returns <code>true</code> since marking is supported. */
+    public boolean markSupported() {
+        return true;
+    }
+}
@@ -581,6 +581,87 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
     public boolean getInterlacing() {
         return useInterlacing;
     }
+
+    private int compressionLevel = 9;
+
+    /**
+     * Sets the level at which the image data are deflated, between 0
+     * (no compression) and 9 (best compression).  The default is 9.
+     *
+     * @throws IllegalArgumentException if <code>compressionLevel</code>
+     *         is not between 0 and 9.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException(JaiI18N.getString("PNGEncodeParam25"));
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the level at which the image data are deflated.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    private int bandSize = 256*1024;
+
+    /**
+     * Sets the approximate number of bytes of filtered image data in
+     * each of the bands of rows deflated concurrently when more than
+     * one thread is used.  Each band except the first is primed with
+     * the last 32 kilobytes of the preceding band, so that larger bands
+     * lose little compression but leave fewer bands to share between
+     * threads.  A band has at least one row.  The default is 262144.
+     *
+     * @throws IllegalArgumentException if <code>bandSize</code> is not
+     *         positive.
+     */
+    public void setBandSize(int bandSize) {
+        if (bandSize <= 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("PNGEncodeParam26"));
+        }
+        this.bandSize = bandSize;
+    }
+
+    /**
+     * Returns the approximate number of bytes of filtered image data in
+     * each band deflated by a single thread.
+     */
+    public int getBandSize() {
+        return bandSize;
+    }
+
+    private int numThreads = 1;
+
+    /**
+     * Sets the number of threads which filter and deflate bands of the
+     * image concurrently.  If more than one thread is used the data are
+     * still written as a single zlib stream, but the output differs
+     * from that of a single thread and is usually a little larger.
+     * Interlaced images are always encoded by a single thread.  Since
+     * <code>filterRow()</code> is then called by several threads at
+     * once, subclasses which override it must be thread-safe.  The
+     * default is 1.
+     *
+     * @throws IllegalArgumentException if <code>numThreads</code> is not
+     *         positive.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("PNGEncodeParam27"));
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Returns the number of threads which filter and deflate the image
+     * data.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
     
     // bKGD chunk - delegate to subclasses
 
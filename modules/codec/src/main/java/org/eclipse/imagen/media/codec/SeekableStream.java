@@ -329,6 +329,67 @@ public abstract class SeekableStream
 	} while (n < len);
     }
 
+    /**
+     * Reads up to <code>len</code> bytes of data starting at the offset
+     * <code>pos</code> of this stream into an array of bytes.  The
+     * stream pointer, as returned by <code>getFilePointer()</code>, is
+     * left unchanged.
+     *
+     * <p> This implementation seeks to <code>pos</code>, reads and then
+     * restores the stream pointer while synchronized on this stream, so
+     * reads from different threads are serialized.  Subclasses which
+     * are able to read from an offset without moving the stream pointer
+     * override this method to let several threads read at once.
+     *
+     * @param      pos   the offset in the stream of the first byte read.
+     * @param      b     the buffer into which the data is read.
+     * @param      off   the start offset of the data.
+     * @param      len   the maximum number of bytes read.
+     * @return     the total number of bytes read into the buffer, or
+     *             <code>-1</code> if there is no more data because the end
+     *             of the stream has been reached.
+     * @exception  IOException  if an I/O error occurs.
+     */
+    public int read(long pos, byte[] b, int off, int len)
+        throws IOException {
+        synchronized(this) {
+            long savePos = getFilePointer();
+            try {
+                seek(pos);
+                return read(b, off, len);
+            } finally {
+                seek(savePos);
+            }
+        }
+    }
+
+    /**
+     * Reads exactly <code>len</code> bytes starting at the offset
+     * <code>pos</code> of this stream into the byte array, leaving the
+     * stream pointer unchanged.  This method reads repeatedly by means
+     * of <code>read(long,byte[],int,int)</code> until the requested
+     * number of bytes are read.
+     *
+     * @param      pos   the offset in the stream of the first byte read.
+     * @param      b     the buffer into which the data is read.
+     * @param      off   the start offset of the data.
+     * @param      len   the number of bytes to read.
+     * @exception  EOFException  if this stream reaches the end before reading
+     *               all the bytes.
+     * @exception  IOException   if an I/O error occurs.
+     */
+    public final void readFully(long pos, byte[] b, int off, int len)
+        throws IOException {
+        int n = 0;
+        while (n < len) {
+            int count = this.read(pos + n, b, off + n, len - n);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            n += count;
+        }
+    }
+
     // Methods from DataInput, plus little-endian versions
 
     /**
@@ -28,6 +28,10 @@ import java.util.Vector;
  * stream.  The TIFF file format is described in more detail in the
  * comments for the TIFFDescriptor class.
  *
+ * <p> BigTIFF streams, which have the magic number 43 and use 8-byte
+ * offsets, entry counts and value fields, are also read.  Their 8-byte
+ * fields have the types TIFFField.TIFF_LONG8, TIFF_SLONG8 and TIFF_IFD8.
+ *
  * <p> A TIFF IFD consists of a set of TIFFField tags.  Methods are
  * provided to query the set of tags and to obtain the raw field
  * array.  In addition, convenience methods are provided for acquiring
@@ -49,6 +53,9 @@ public class TIFFDirectory extends Object implements Serializable {
 
     /** A boolean storing the endianness of the stream. */
     boolean isBigEndian;
+
+    /** A boolean storing whether the stream is a BigTIFF stream. */
+    boolean isBigTIFF;
     
     /** The number of entries in the IFD. */
     int numEntries;
@@ -97,14 +104,10 @@ public class TIFFDirectory extends Object implements Serializable {
         }
         isBigEndian = (endian == 0x4d4d);
 
-        int magic = readUnsignedShort(stream);
-        if (magic != 42) {
-            throw new 
-		IllegalArgumentException(JaiI18N.getString("TIFFDirectory2"));
-        }
+        readVersion(stream);
 
         // Get the initial ifd offset as an unsigned int (using a long)
-        ifd_offset = readUnsignedInt(stream);
+        ifd_offset = readOffset(stream);
         
         for (int i = 0; i < directory; i++) {
             if (ifd_offset == 0L) {
@@ -113,10 +116,10 @@ public class TIFFDirectory extends Object implements Serializable {
             }
             
             stream.seek(ifd_offset);
-            int entries = readUnsignedShort(stream);
-            stream.skip(12*entries);
+            long entries = readNumEntries(stream);
+            stream.seek(stream.getFilePointer() + getEntrySize()*entries);
 
-            ifd_offset = readUnsignedInt(stream);
+            ifd_offset = readOffset(stream);
         }
 
         stream.seek(ifd_offset);
@@ -148,6 +151,7 @@ public class TIFFDirectory extends Object implements Serializable {
 		IllegalArgumentException(JaiI18N.getString("TIFFDirectory1"));
         }
         isBigEndian = (endian == 0x4d4d);
+        readVersion(stream);
 
         // Seek to the first IFD.
         stream.seek(ifd_offset);
@@ -156,13 +160,13 @@ public class TIFFDirectory extends Object implements Serializable {
         int dirNum = 0;
         while(dirNum < directory) {
             // Get the number of fields in the current IFD.
-            int numEntries = readUnsignedShort(stream);
+            long numEntries = readNumEntries(stream);
 
             // Skip to the next IFD offset value field.
-            stream.seek(ifd_offset + 12*numEntries);
+            stream.seek(stream.getFilePointer() + getEntrySize()*numEntries);
 
             // Read the offset to the next IFD beyond this one.
-            ifd_offset = readUnsignedInt(stream);
+            ifd_offset = readOffset(stream);
 
             // Seek to the next IFD.
             stream.seek(ifd_offset);
@@ -188,32 +192,76 @@ public class TIFFDirectory extends Object implements Serializable {
         4, //  9 = slong
         8, // 10 = srational
         4, // 11 = float
-        8  // 12 = double 
+        8, // 12 = double 
+        4, // 13 = ifd
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8
+        8, // 17 = slong8
+        8  // 18 = ifd8
     };
 
+    /**
+     * Reads the version number following the byte order of the header,
+     * and the offset size of a BigTIFF header.
+     */
+    private void readVersion(SeekableStream stream) throws IOException {
+        int magic = readUnsignedShort(stream);
+        if (magic == 43) {
+            isBigTIFF = true;
+
+            // The offset size, always 8, followed by a reserved zero.
+            int offsetSize = readUnsignedShort(stream);
+            readUnsignedShort(stream);
+            if (offsetSize != 8) {
+                throw new 
+                    IllegalArgumentException(JaiI18N.getString("TIFFDirectory5"));
+            }
+        } else if (magic != 42) {
+            throw new 
+		IllegalArgumentException(JaiI18N.getString("TIFFDirectory2"));
+        }
+    }
+
+    /** Returns the size in bytes of an IFD entry. */
+    private int getEntrySize() {
+        return isBigTIFF ? 20 : 12;
+    }
+
+    /** Reads the number of entries at the start of an IFD. */
+    private long readNumEntries(SeekableStream stream) throws IOException {
+        return isBigTIFF ? readLong(stream) : readUnsignedShort(stream);
+    }
+
+    /** Reads a 4-byte, or in BigTIFF an 8-byte, offset or count. */
+    private long readOffset(SeekableStream stream) throws IOException {
+        return isBigTIFF ? readLong(stream) : readUnsignedInt(stream);
+    }
+
     private void initialize(SeekableStream stream) throws IOException {
         long nextTagOffset;
         int i, j;
 
         IFDOffset = stream.getFilePointer();
 
-        numEntries = readUnsignedShort(stream);
+        numEntries = (int)readNumEntries(stream);
         fields = new TIFFField[numEntries];
         
         for (i = 0; i < numEntries; i++) {
             int tag = readUnsignedShort(stream);
             int type = readUnsignedShort(stream);
-            int count = (int)(readUnsignedInt(stream));
-            int value = 0;
+            int count = (int)(readOffset(stream));
+            long value = 0;
+            int valueSize = isBigTIFF ? 8 : 4;
 	    
             // The place to return to to read the next tag
-            nextTagOffset = stream.getFilePointer() + 4;
+            nextTagOffset = stream.getFilePointer() + valueSize;
 
 	    try {
-		// If the tag data can't fit in 4 bytes, the next 4 bytes
-		// contain the starting offset of the data
-		if (count*sizeOfType[type] > 4) {
-		    value = (int)(readUnsignedInt(stream));
+		// If the tag data can't fit in 4 (BigTIFF: 8) bytes, the
+		// next 4 (8) bytes contain the starting offset of the data
+		if ((long)count*sizeOfType[type] > valueSize) {
+		    value = readOffset(stream);
 		    stream.seek(value);
 		}
 	    } catch (ArrayIndexOutOfBoundsException ae) {
@@ -275,6 +323,7 @@ public class TIFFDirectory extends Object implements Serializable {
                     break;
                 
                 case TIFFField.TIFF_LONG:
+                case TIFFField.TIFF_IFD:
                     long[] lvalues = new long[count];
                     for (j = 0; j < count; j++) {
                         lvalues[j] = readUnsignedInt(stream);
@@ -282,6 +331,16 @@ public class TIFFDirectory extends Object implements Serializable {
                     obj = lvalues;
                     break;
                 
+                case TIFFField.TIFF_LONG8:
+                case TIFFField.TIFF_SLONG8:
+                case TIFFField.TIFF_IFD8:
+                    long[] l8values = new long[count];
+                    for (j = 0; j < count; j++) {
+                        l8values[j] = readLong(stream);
+                    }
+                    obj = l8values;
+                    break;
+                
                 case TIFFField.TIFF_RATIONAL:
                     long[][] llvalues = new long[count][2];
                     for (j = 0; j < count; j++) {
@@ -356,7 +415,7 @@ public class TIFFDirectory extends Object implements Serializable {
         }
 
         // Read the offset of the next IFD.
-        nextIFDOffset = readUnsignedInt(stream);
+        nextIFDOffset = readOffset(stream);
     }
 
     /** Returns the number of directory entries. */
@@ -443,7 +502,8 @@ public class TIFFDirectory extends Object implements Serializable {
      * Returns the value of a particular index of a given tag as a
      * long.  The caller is responsible for ensuring that the tag is
      * present and has type TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED,
-     * TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG or TIFF_LONG.
+     * TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG, TIFF_LONG, TIFF_IFD,
+     * TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long getFieldAsLong(int tag, int index) {
         Integer i = (Integer)fieldIndex.get(new Integer(tag));
@@ -454,7 +514,8 @@ public class TIFFDirectory extends Object implements Serializable {
      * Returns the value of index 0 of a given tag as a
      * long.  The caller is responsible for ensuring that the tag is
      * present and has type TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED,
-     * TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG or TIFF_LONG.
+     * TIFF_SHORT, TIFF_SSHORT, TIFF_SLONG, TIFF_LONG, TIFF_IFD,
+     * TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long getFieldAsLong(int tag) {
         return getFieldAsLong(tag, 0);
@@ -585,6 +646,16 @@ public class TIFFDirectory extends Object implements Serializable {
         }
     }
 
+    private static long readLong(SeekableStream stream,
+                                 boolean isBigEndian)
+        throws IOException {
+        if (isBigEndian) {
+            return stream.readLong();
+        } else {
+            return stream.readLongLE();
+        }
+    }
+
     // Utilities
 
     /**
@@ -603,13 +674,20 @@ public class TIFFDirectory extends Object implements Serializable {
         }
         boolean isBigEndian = (endian == 0x4d4d);
         int magic = readUnsignedShort(stream, isBigEndian);
-        if (magic != 42) {
+        boolean isBigTIFF = (magic == 43);
+        if (magic != 42 && !isBigTIFF) {
             throw new 
 		IllegalArgumentException(JaiI18N.getString("TIFFDirectory2"));
         }
         
-        stream.seek(4L);
-        long offset = readUnsignedInt(stream, isBigEndian);
+        long offset;
+        if (isBigTIFF) {
+            stream.seek(8L);
+            offset = readLong(stream, isBigEndian);
+        } else {
+            stream.seek(4L);
+            offset = readUnsignedInt(stream, isBigEndian);
+        }
 
         int numDirectories = 0;
         while (offset != 0L) {
@@ -618,9 +696,15 @@ public class TIFFDirectory extends Object implements Serializable {
             // EOFException means IFD was probably not properly terminated.
             try {
                 stream.seek(offset);
-                int entries = readUnsignedShort(stream, isBigEndian);
-                stream.skip(12*entries);
-                offset = readUnsignedInt(stream, isBigEndian);
+                if (isBigTIFF) {
+                    long entries = readLong(stream, isBigEndian);
+                    stream.seek(offset + 8 + 20*entries);
+                    offset = readLong(stream, isBigEndian);
+                } else {
+                    int entries = readUnsignedShort(stream, isBigEndian);
+                    stream.skip(12*entries);
+                    offset = readUnsignedInt(stream, isBigEndian);
+                }
             } catch(EOFException eof) {
                 numDirectories--;
                 break;
@@ -640,6 +724,14 @@ public class TIFFDirectory extends Object implements Serializable {
 	return isBigEndian;
     }
 
+    /**
+     * Returns a boolean indicating whether the TIFF file is a BigTIFF
+     * file, which uses 8-byte offsets.
+     */
+    public boolean isBigTIFF() {
+        return isBigTIFF;
+    }
+
     /**
      * Returns the offset of the IFD corresponding to this
      * <code>TIFFDirectory</code>.
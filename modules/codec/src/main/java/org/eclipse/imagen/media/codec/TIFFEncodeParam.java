@@ -32,7 +32,9 @@ import java.util.zip.Deflater;
  * compatible with the type of image being written out. For example, 
  * Group3 and Group4 compressions can only be used with Bilevel images.
  * Writing of tiled TIFF images can be enabled by calling the
- * <code>setWriteTiled()</code> method.
+ * <code>setWriteTiled()</code> method.  BigTIFF output, which uses 8-byte
+ * offsets, can be enabled by calling the <code>setBigTIFF()</code>
+ * method.
  *
  * <p><b> This class is not a committed part of the JAI API.  It may
  * be removed or changed in future releases of JAI.</b>
@@ -100,6 +102,11 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
     private boolean isLittleEndian = false;
 
+    private boolean writeBigTIFF = false;
+
+    private int maxTilesInFlight =
+        2 * Runtime.getRuntime().availableProcessors();
+
     /** 
      * Constructs a TIFFEncodeParam object with default values for
      * all parameters.
@@ -435,4 +442,56 @@ public class TIFFEncodeParam implements ImageEncodeParam {
     public boolean getLittleEndian() {
         return this.isLittleEndian;
     }
+
+    /**
+     * Sets a flag indicating whether the output stream is written in the
+     * BigTIFF format, which has the magic number 43 and uses 8-byte
+     * offsets, rather than in the TIFF 6.0 format whose 4-byte offsets
+     * limit the size of a file to 4 gigabytes.  BigTIFF is written
+     * regardless of this flag if the uncompressed size of the images
+     * to be written exceeds 4 gigabytes.  Readers which do not support
+     * BigTIFF can not read the output.  The default value is
+     * <code>false</code>.
+     */
+    public void setBigTIFF(boolean writeBigTIFF) {
+        this.writeBigTIFF = writeBigTIFF;
+    }
+
+    /**
+     * Returns the value of the flag indicating whether the output stream
+     * is written in the BigTIFF format.
+     */
+    public boolean getBigTIFF() {
+        return writeBigTIFF;
+    }
+
+    /**
+     * Sets the maximum number of tiles or strips which are fetched from
+     * the image and encoded concurrently.  The encoded tiles are held in
+     * memory until all the tiles preceding them have been written, so
+     * this number bounds the memory used in addition to that of the
+     * encoders of the worker threads.  If set to one the tiles are
+     * fetched and encoded one at a time by the calling thread.
+     * JPEG-compressed images are always encoded by the calling thread.
+     * The default value is twice the number of available processors.
+     *
+     * @param maxTilesInFlight The maximum number of tiles being encoded.
+     * @throws IllegalArgumentException if <code>maxTilesInFlight</code>
+     *         is less than one.
+     */
+    public void setMaxTilesInFlight(int maxTilesInFlight) {
+        if(maxTilesInFlight < 1) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("TIFFEncodeParam2"));
+        }
+        this.maxTilesInFlight = maxTilesInFlight;
+    }
+
+    /**
+     * Returns the maximum number of tiles or strips which are fetched
+     * and encoded concurrently.
+     */
+    public int getMaxTilesInFlight() {
+        return maxTilesInFlight;
+    }
 }
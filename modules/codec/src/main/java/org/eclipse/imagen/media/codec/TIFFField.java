@@ -28,7 +28,8 @@ import java.io.Serializable;
  * <p> A field in a TIFF Image File Directory (IFD).  A field is defined
  * as a sequence of values of identical data type.  TIFF 6.0 defines
  * 12 data types, which are mapped internally onto the Java datatypes
- * byte, int, long, float, and double.
+ * byte, int, long, float, and double.  The 64 bit integer types of
+ * BigTIFF are mapped onto long.
  *
  * <p><b> This class is not a committed part of the JAI API.  It may
  * be removed or changed in future releases of JAI.</b>
@@ -74,6 +75,18 @@ public class TIFFField extends Object implements Comparable, Serializable {
     /** Flag for 64 bit IEEE doubles. */
     public static final int TIFF_DOUBLE    = 12;
 
+    /** Flag for 32 bit IFD offsets. */
+    public static final int TIFF_IFD       = 13;
+
+    /** Flag for 64 bit unsigned integers (BigTIFF). */
+    public static final int TIFF_LONG8     = 16;
+
+    /** Flag for 64 bit signed integers (BigTIFF). */
+    public static final int TIFF_SLONG8    = 17;
+
+    /** Flag for 64 bit IFD offsets (BigTIFF). */
+    public static final int TIFF_IFD8      = 18;
+
     /** The tag number. */
     int tag;
 
@@ -123,6 +136,14 @@ public class TIFFField extends Object implements Comparable, Serializable {
      * <td><tt>TIFF_FLOAT</tt></td>     <td><tt>float</tt></td>
      * <tr>
      * <td><tt>TIFF_DOUBLE</tt></td>    <td><tt>double</tt></td>
+     * <tr>
+     * <td><tt>TIFF_IFD</tt></td>       <td><tt>long</tt></td>
+     * <tr>
+     * <td><tt>TIFF_LONG8</tt></td>     <td><tt>long</tt></td>
+     * <tr>
+     * <td><tt>TIFF_SLONG8</tt></td>    <td><tt>long</tt></td>
+     * <tr>
+     * <td><tt>TIFF_IFD8</tt></td>      <td><tt>long</tt></td>
      * </table>
      *
      * <p>Note that the <code>data</code> parameter should always
@@ -215,11 +236,12 @@ public class TIFFField extends Object implements Comparable, Serializable {
     }
 
     /**
-     * Returns TIFF_LONG data as an array of longs (signed 64-bit
-     * integers).
+     * Returns TIFF_LONG, TIFF_IFD, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8
+     * data as an array of longs (signed 64-bit integers).  TIFF_LONG8
+     * and TIFF_IFD8 values of 2<sup>63</sup> or more are negative.
      *
      * <p> A ClassCastException will be thrown if the field is not
-     * of type TIFF_LONG.
+     * of type TIFF_LONG, TIFF_IFD, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8.
      */
     public long[] getAsLongs() {
         return (long[])data;
@@ -297,7 +319,8 @@ public class TIFFField extends Object implements Comparable, Serializable {
 
     /**
      * Returns data in TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT,
-     * TIFF_SSHORT, TIFF_SLONG, or TIFF_LONG format as a long.
+     * TIFF_SSHORT, TIFF_SLONG, TIFF_LONG, TIFF_IFD, TIFF_LONG8,
+     * TIFF_SLONG8, or TIFF_IFD8 format as a long.
      *
      * <p> TIFF_BYTE and TIFF_UNDEFINED data are treated as unsigned;
      * that is, no sign extension will take place and the returned
@@ -306,7 +329,8 @@ public class TIFFField extends Object implements Comparable, Serializable {
      *
      * <p> A ClassCastException will be thrown if the field is not of
      * type TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT,
-     * TIFF_SSHORT, TIFF_SLONG, or TIFF_LONG.
+     * TIFF_SSHORT, TIFF_SLONG, TIFF_LONG, TIFF_IFD, TIFF_LONG8,
+     * TIFF_SLONG8, or TIFF_IFD8.
      */
     public long getAsLong(int index) {
         switch (type) {
@@ -320,7 +344,8 @@ public class TIFFField extends Object implements Comparable, Serializable {
             return ((short[])data)[index];
         case TIFF_SLONG:
             return ((int[])data)[index];
-        case TIFF_LONG:
+        case TIFF_LONG: case TIFF_IFD:
+        case TIFF_LONG8: case TIFF_SLONG8: case TIFF_IFD8:
             return ((long[])data)[index];
         default:
             throw new ClassCastException();
@@ -350,7 +375,8 @@ public class TIFFField extends Object implements Comparable, Serializable {
             return ((short[])data)[index];
         case TIFF_SLONG:
             return ((int[])data)[index];
-        case TIFF_LONG:
+        case TIFF_LONG: case TIFF_IFD:
+        case TIFF_LONG8: case TIFF_SLONG8: case TIFF_IFD8:
             return ((long[])data)[index];
         case TIFF_FLOAT:
             return ((float[])data)[index];
@@ -388,7 +414,8 @@ public class TIFFField extends Object implements Comparable, Serializable {
             return ((short[])data)[index];
         case TIFF_SLONG:
             return ((int[])data)[index];
-        case TIFF_LONG:
+        case TIFF_LONG: case TIFF_IFD:
+        case TIFF_LONG8: case TIFF_SLONG8: case TIFF_IFD8:
             return ((long[])data)[index];
         case TIFF_FLOAT:
             return ((float[])data)[index];
@@ -33,6 +33,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
+import java.lang.ref.SoftReference;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
@@ -303,9 +304,24 @@ class PNGImage extends SimpleRenderedImage {
     private static final int POST_ADD_GRAY_TRANS_EXP =
         POST_ADD_GRAY_TRANS | POST_EXP_MASK;
 
+    // The approximate number of bytes in a strip of a non-interlaced image
+    private static final int STRIP_SIZE = 256*1024;
+
     private Vector streamVec = new Vector();
+    private Inflater inflater;
     private DataInputStream dataStream;
 
+    // The next image row to be read from dataStream
+    private int nextRow;
+
+    // The decoding state of the current pass
+    private int passBytesPerRow;
+    private byte[] curr;
+    private byte[] prior;
+    private WritableRaster passRow;
+    private byte[] byteData;
+    private short[] shortData;
+
     private int bytesPerPixel; // number of bytes per input pixel
     private int inputBands;
     private int outputBands;
@@ -319,8 +335,12 @@ class PNGImage extends SimpleRenderedImage {
     private Vector ztextKeys = new Vector();
     private Vector ztextStrings = new Vector();
 
+    // The single tile of an interlaced image, once decoded
     private WritableRaster theTile;
 
+    // The strips of a non-interlaced image which have been decoded
+    private SoftReference[] strips;
+
     private int[] gammaLut = null;
 
     private void initGammaLut(int bits) {
@@ -783,14 +803,7 @@ class PNGImage extends SimpleRenderedImage {
             encodeParam.setICCProfileName(iccProfileName);
         }
 
-        // Parse prior IDAT chunks
-        InputStream seqStream =
-            new SequenceInputStream(streamVec.elements());
-        InputStream infStream =
-            new InflaterInputStream(seqStream, new Inflater());
-        dataStream = new DataInputStream(infStream);
-
-        // Create an empty WritableRaster
+        // Describe the tiles; IDAT chunks are only inflated on demand
         int depth = bitDepth;
         if ((colorType == PNG_COLOR_GRAY) &&
             (bitDepth < 8) && output8BitGray) {
@@ -803,9 +816,16 @@ class PNGImage extends SimpleRenderedImage {
         int scanlineStride =
             (depth == 16) ? (bytesPerRow/2) : bytesPerRow;
 
-        theTile = createRaster(width, height, outputBands,
-                               scanlineStride,
-                               depth);
+        // A non-interlaced image is decoded in strips of whole rows.
+        if (interlaceMethod != 1) {
+            tileHeight = Math.max(1, Math.min(height, STRIP_SIZE/bytesPerRow));
+            strips = new SoftReference[getNumYTiles()];
+        }
+
+        sampleModel = createRaster(width, 1, outputBands,
+                                   scanlineStride,
+                                   depth).getSampleModel()
+            .createCompatibleSampleModel(tileWidth, tileHeight);
 
         if (performGammaCorrection && (gammaLut == null)) {
             initGammaLut(bitDepth);
@@ -816,8 +836,6 @@ class PNGImage extends SimpleRenderedImage {
             initGrayLut(bitDepth);
         }
 
-        decodeImage(interlaceMethod == 1);
-        sampleModel = theTile.getSampleModel();
 
         if ((colorType == PNG_COLOR_PALETTE) && !expandPalette) {
             if (outputHasAlphaPalette) {
@@ -1400,7 +1418,7 @@ class PNGImage extends SimpleRenderedImage {
 
         // Create an array suitable for holding one pixel
         int[] ps = src.getPixel(0, 0, (int[])null);
-        int[] pd = dst.getPixel(0, 0, (int[])null);
+        int[] pd = dst.getPixel(dst.getMinX(), dst.getMinY(), (int[])null);
 
         dstX = xOffset;
         switch (process) {
@@ -1659,68 +1677,91 @@ class PNGImage extends SimpleRenderedImage {
             return;
         }
 
-        int bytesPerRow = (inputBands*passWidth*bitDepth + 7)/8;
-        int eltsPerRow = (bitDepth == 16) ? bytesPerRow/2 : bytesPerRow;
-        byte[] curr = new byte[bytesPerRow];
-        byte[] prior = new byte[bytesPerRow];
+        initPass(passWidth);
+
+        // Decode the (sub)image row-by-row
+        int srcY, dstY;
+        for (srcY = 0, dstY = yOffset;
+             srcY < passHeight;
+             srcY++, dstY += yStep) {
+            decodeRow(imRas, xOffset, xStep, dstY, passWidth);
+        }
+    }
+
+    /**
+     * Allocates the row buffers of a pass of a given width.  The prior
+     * row of the first row of the pass is zero.
+     */
+    private void initPass(int passWidth) {
+        passBytesPerRow = (inputBands*passWidth*bitDepth + 7)/8;
+        int eltsPerRow =
+            (bitDepth == 16) ? passBytesPerRow/2 : passBytesPerRow;
+        curr = new byte[passBytesPerRow];
+        prior = new byte[passBytesPerRow];
 
         // Create a 1-row tall Raster to hold the data
-        WritableRaster passRow =
-            createRaster(passWidth, 1, inputBands,
-                         eltsPerRow,
-                         bitDepth);
+        passRow = createRaster(passWidth, 1, inputBands,
+                               eltsPerRow,
+                               bitDepth);
         DataBuffer dataBuffer = passRow.getDataBuffer();
         int type = dataBuffer.getDataType();
-        byte[] byteData = null;
-        short[] shortData = null;
+        byteData = null;
+        shortData = null;
         if (type == DataBuffer.TYPE_BYTE) {
             byteData = ((DataBufferByte)dataBuffer).getData();
         } else {
             shortData = ((DataBufferUShort)dataBuffer).getData();
         }
+    }
 
-        // Decode the (sub)image row-by-row
-        int srcY, dstY;
-        for (srcY = 0, dstY = yOffset;
-             srcY < passHeight;
-             srcY++, dstY += yStep) {
-            // Read the filter type byte and a row of data
-            int filter = 0;
-            try {
-                filter = dataStream.read();
-                dataStream.readFully(curr, 0, bytesPerRow);
-            } catch (Exception e) {
-                ImagingListenerProxy.errorOccurred(JaiI18N.getString("PNGImageDecoder2"),
-                                       e, this, false);
-//                e.printStackTrace();
-            }
+    /**
+     * Reads and unfilters the next row of the current pass, and stores
+     * its pixels in row <code>dstY</code> of <code>imRas</code> unless it
+     * is <code>null</code>.
+     */
+    private void decodeRow(WritableRaster imRas,
+                           int xOffset, int xStep, int dstY,
+                           int passWidth) {
+        int bytesPerRow = passBytesPerRow;
 
-            switch (filter) {
-            case PNG_FILTER_NONE:
-                break;
-            case PNG_FILTER_SUB:
-                decodeSubFilter(curr, bytesPerRow, bytesPerPixel);
-                break;
-            case PNG_FILTER_UP:
-                decodeUpFilter(curr, prior, bytesPerRow);
-                break;
-            case PNG_FILTER_AVERAGE:
-                decodeAverageFilter(curr, prior, bytesPerRow, bytesPerPixel);
-                break;
-            case PNG_FILTER_PAETH:
-                decodePaethFilter(curr, prior, bytesPerRow, bytesPerPixel);
-                break;
-            default:
-                // Error -- uknown filter type
-                throw new RuntimeException(JaiI18N.getString("PNGImageDecoder16"));
-            }
+        // Read the filter type byte and a row of data
+        int filter = 0;
+        try {
+            filter = dataStream.read();
+            dataStream.readFully(curr, 0, bytesPerRow);
+        } catch (Exception e) {
+            ImagingListenerProxy.errorOccurred(JaiI18N.getString("PNGImageDecoder2"),
+                                   e, this, false);
+//            e.printStackTrace();
+        }
+
+        switch (filter) {
+        case PNG_FILTER_NONE:
+            break;
+        case PNG_FILTER_SUB:
+            decodeSubFilter(curr, bytesPerRow, bytesPerPixel);
+            break;
+        case PNG_FILTER_UP:
+            decodeUpFilter(curr, prior, bytesPerRow);
+            break;
+        case PNG_FILTER_AVERAGE:
+            decodeAverageFilter(curr, prior, bytesPerRow, bytesPerPixel);
+            break;
+        case PNG_FILTER_PAETH:
+            decodePaethFilter(curr, prior, bytesPerRow, bytesPerPixel);
+            break;
+        default:
+            // Error -- uknown filter type
+            throw new RuntimeException(JaiI18N.getString("PNGImageDecoder16"));
+        }
 
+        if (imRas != null) {
             // Copy data into passRow byte by byte
             if (bitDepth < 16) {
                 System.arraycopy(curr, 0, byteData, 0, bytesPerRow);
             } else {
                 int idx = 0;
-                for (int j = 0; j < eltsPerRow; j++) {
+                for (int j = 0; j < shortData.length; j++) {
                     shortData[j] =
                         (short)((curr[idx] << 8) | (curr[idx + 1] & 0xff));
                     idx += 2;
@@ -1729,15 +1770,80 @@ class PNGImage extends SimpleRenderedImage {
 
             processPixels(postProcess,
                           passRow, imRas, xOffset, xStep, dstY, passWidth);
+        }
 
-            // Swap curr and prior
-            byte[] tmp = prior;
-            prior = curr;
-            curr = tmp;
+        // Swap curr and prior
+        byte[] tmp = prior;
+        prior = curr;
+        curr = tmp;
+    }
+
+    /**
+     * Starts inflating the IDAT chunks from their beginning.
+     */
+    private void openDataStream() {
+        if (inflater != null) {
+            inflater.end();
         }
+
+        for (int i = 0; i < streamVec.size(); i++) {
+            ((ByteArrayInputStream)streamVec.elementAt(i)).reset();
+        }
+
+        InputStream seqStream =
+            new SequenceInputStream(streamVec.elements());
+        inflater = new Inflater();
+        InputStream infStream =
+            new InflaterInputStream(seqStream, inflater);
+        dataStream = new DataInputStream(infStream);
+        nextRow = 0;
+    }
+
+    /**
+     * Decodes a strip of a non-interlaced image.  Rows are inflated in
+     * order, so a strip above the rows read so far restarts inflation
+     * from the first IDAT chunk; rows above a strip are unfiltered but
+     * not stored.
+     */
+    private WritableRaster decodeStrip(int tileY) {
+        int minRow = tileY*tileHeight;
+        int maxRow = Math.min(minRow + tileHeight, height);
+
+        if (dataStream == null || nextRow > minRow) {
+            openDataStream();
+            initPass(width);
+        }
+
+        WritableRaster strip =
+            Raster.createWritableRaster(sampleModel, new Point(0, minRow));
+        try {
+            while (nextRow < minRow) {
+                decodeRow(null, 0, 1, nextRow, width);
+                nextRow++;
+            }
+            while (nextRow < maxRow) {
+                decodeRow(strip, 0, 1, nextRow, width);
+                nextRow++;
+            }
+        } catch (RuntimeException e) {
+            // The position in the stream is unknown: start over next time.
+            dataStream = null;
+            throw e;
+        }
+
+        // Release the inflater once the last row has been read.
+        if (nextRow == height) {
+            inflater.end();
+            inflater = null;
+            dataStream = null;
+        }
+
+        return strip;
     }
 
     private void decodeImage(boolean useInterlacing) {
+        openDataStream();
+
         if (!useInterlacing) {
             decodePass(theTile, 0, 0, 1, 1, width, height);
         } else {
@@ -1749,19 +1855,49 @@ class PNGImage extends SimpleRenderedImage {
             decodePass(theTile, 1, 0, 2, 2, width/2, (height + 1)/2);
             decodePass(theTile, 0, 1, 1, 2, width, height/2);
         }
+
+        inflater.end();
+        inflater = null;
+        dataStream = null;
     }
 
     // RenderedImage stuff
 
-    public Raster getTile(int tileX, int tileY) {
-        if (tileX != 0 || tileY != 0) {
+    public synchronized Raster getTile(int tileX, int tileY) {
+        if (tileX != 0 || tileY < 0 || tileY >= getNumYTiles()) {
             // Error -- bad tile requested
             throw new IllegalArgumentException(JaiI18N.getString("PNGImageDecoder17"));
         }
-        return theTile;
+
+        if (interlaceMethod == 1) {
+            if (theTile == null) {
+                theTile = Raster.createWritableRaster(sampleModel,
+                                                      new Point(0, 0));
+                decodeImage(true);
+            }
+            return theTile;
+        }
+
+        WritableRaster strip = (strips[tileY] == null) ?
+            null : (WritableRaster)strips[tileY].get();
+        if (strip == null) {
+            strip = decodeStrip(tileY);
+            strips[tileY] = new SoftReference(strip);
+        }
+        return strip;
     }
 
-    public void dispose() {
+    public synchronized void dispose() {
         theTile = null;
+        if (strips != null) {
+            for (int i = 0; i < strips.length; i++) {
+                strips[i] = null;
+            }
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        dataStream = null;
     }
 }
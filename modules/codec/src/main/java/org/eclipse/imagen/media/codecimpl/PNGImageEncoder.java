@@ -28,11 +28,20 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -250,6 +259,9 @@ public class PNGImageEncoder extends ImageEncoderImpl {
     private static final int PNG_COLOR_GRAY_ALPHA = 4;
     private static final int PNG_COLOR_RGB_ALPHA = 6;
 
+    // The size of the deflate window, and of the dictionary of a band
+    private static final int DICTIONARY_SIZE = 32768;
+
     private static final byte[] magic = {
         (byte)137, (byte) 80, (byte) 78, (byte) 71,
         (byte) 13, (byte) 10, (byte) 26, (byte) 10
@@ -329,11 +341,28 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         return (val > maxValue) ? maxValue : val;
     }
 
+    /**
+     * Returns the number of bytes in a row of a pass, excluding the
+     * filter type.  The offset and spacing of the pixels of the pass
+     * are given in samples.
+     */
+    private int getBytesPerRow(int numSamples, int xOffset, int xSkip) {
+        int samplesPerByte = 8/bitDepth;
+
+        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
+        int bytesPerRow = pixels*numBands;
+        if (bitDepth < 8) {
+            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
+        } else if (bitDepth == 16) {
+            bytesPerRow *= 2;
+        }
+        return bytesPerRow;
+    }
+
     private void encodePass(OutputStream os,
                             Raster ras,
                             int xOffset, int yOffset,
                             int xSkip, int ySkip) throws IOException {
-        int minX = ras.getMinX();
         int minY = ras.getMinY();
         int width = ras.getWidth();
         int height = ras.getHeight();
@@ -341,18 +370,10 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         xOffset *= numBands;
         xSkip *= numBands;
 
-        int samplesPerByte = 8/bitDepth;
-        
         int numSamples = width*numBands;
         int[] samples = new int[numSamples];
 
-        int pixels = (numSamples - xOffset + xSkip - 1)/xSkip;
-        int bytesPerRow = pixels*numBands;
-        if (bitDepth < 8) {
-            bytesPerRow = (bytesPerRow + samplesPerByte - 1)/samplesPerByte;
-        } else if (bitDepth == 16) {
-            bytesPerRow *= 2;
-        }
+        int bytesPerRow = getBytesPerRow(numSamples, xOffset, xSkip);
 
         if (bytesPerRow == 0) {
             return;
@@ -363,66 +384,8 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
         filteredRows = new byte[5][bytesPerRow + bpp];
 
-        int maxValue = (1 << bitDepth) - 1;
-
         for (int row = minY + yOffset; row < minY + height; row += ySkip) {
-            ras.getPixels(minX, row, width, 1, samples);
-
-            if (compressGray) {
-                int shift = 8 - bitDepth;
-                for (int i = 0; i < width; i++) {
-                    samples[i] >>= shift;
-                }
-            }
-
-            int count = bpp; // leave first 'bpp' bytes zero
-            int pos = 0;
-            int tmp = 0;
-
-            switch (bitDepth) {
-            case 1: case 2: case 4:
-                // Image can only have a single band
-                
-                int mask = samplesPerByte - 1;
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    int val = clamp(samples[s] >> bitShift, maxValue);
-                    tmp = (tmp << bitDepth) | val;
-
-                    if ((pos++ & mask) == mask) {
-                        currRow[count++] = (byte)tmp;
-                        tmp = 0;
-                    }
-                }
-
-                // Left shift the last byte
-                if ((pos & mask) != 0) {
-		    // Fix 4655018: PNGImageEncoder doesn't correctly write some
-		    // bilevel images.
-		    // modify "pos" to "pos & mask" in the sentence below.
-                    tmp <<= (8/bitDepth - (pos & mask) )*bitDepth;
-                    currRow[count++] = (byte)tmp;
-                }
-                break;
-
-            case 8:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        currRow[count++] =
-                            (byte)clamp(samples[s + b] >> bitShift, maxValue);
-                    }
-                }
-                break;
-
-            case 16:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        int val = clamp(samples[s + b] >> bitShift, maxValue);
-                        currRow[count++] = (byte)(val >> 8);
-                        currRow[count++] = (byte)(val & 0xff);
-                    }
-                }
-                break;
-            }
+            packRow(ras, row, xOffset, xSkip, samples, currRow);
 
             // Perform filtering
             int filterType = param.filterRow(currRow, prevRow,
@@ -439,10 +402,81 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
     }
 
+    /**
+     * Packs the samples of the pixels of a row of a pass into
+     * <code>currRow</code>, starting at index <code>bpp</code>.  The
+     * offset and spacing of the pixels of the pass are given in samples.
+     */
+    private void packRow(Raster ras, int row, int xOffset, int xSkip,
+                         int[] samples, byte[] currRow) {
+        int minX = ras.getMinX();
+        int width = ras.getWidth();
+
+        int samplesPerByte = 8/bitDepth;
+        int numSamples = width*numBands;
+        int maxValue = (1 << bitDepth) - 1;
+
+        ras.getPixels(minX, row, width, 1, samples);
+
+        if (compressGray) {
+            int shift = 8 - bitDepth;
+            for (int i = 0; i < width; i++) {
+                samples[i] >>= shift;
+            }
+        }
+
+        int count = bpp; // leave first 'bpp' bytes zero
+        int pos = 0;
+        int tmp = 0;
+
+        switch (bitDepth) {
+        case 1: case 2: case 4:
+            // Image can only have a single band
+            
+            int mask = samplesPerByte - 1;
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                int val = clamp(samples[s] >> bitShift, maxValue);
+                tmp = (tmp << bitDepth) | val;
+
+                if ((pos++ & mask) == mask) {
+                    currRow[count++] = (byte)tmp;
+                    tmp = 0;
+                }
+            }
+
+            // Left shift the last byte
+            if ((pos & mask) != 0) {
+		    // Fix 4655018: PNGImageEncoder doesn't correctly write some
+		    // bilevel images.
+		    // modify "pos" to "pos & mask" in the sentence below.
+                tmp <<= (8/bitDepth - (pos & mask) )*bitDepth;
+                currRow[count++] = (byte)tmp;
+            }
+            break;
+
+        case 8:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    currRow[count++] =
+                        (byte)clamp(samples[s + b] >> bitShift, maxValue);
+                }
+            }
+            break;
+
+        case 16:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    int val = clamp(samples[s + b] >> bitShift, maxValue);
+                    currRow[count++] = (byte)(val >> 8);
+                    currRow[count++] = (byte)(val & 0xff);
+                }
+            }
+            break;
+        }
+    }
+
     private void writeIDAT() throws IOException {
         IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
 
         // Future work - don't convert entire image to a Raster
         Raster ras = image.getData();
@@ -459,6 +493,16 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                                   bandList);
         }
 
+        int numThreads = param.getNumThreads();
+        if (numThreads > 1 && !interlace) {
+            writeBands(ios, ras, numThreads);
+            ios.flush();
+            return;
+        }
+
+        Deflater deflater = new Deflater(param.getCompressionLevel());
+        DeflaterOutputStream dos = new DeflaterOutputStream(ios, deflater);
+
         if (interlace) {
             // Interlacing pass 1
             encodePass(dos, ras, 0, 0, 8, 8);
@@ -479,9 +523,238 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
 
         dos.finish();
+        deflater.end();
         ios.flush();
     }
 
+    /**
+     * Writes the zlib stream of a non-interlaced image as bands of rows
+     * which are filtered and deflated concurrently.  Each band but the
+     * first is deflated with the last 32K of filtered data preceding it as
+     * its dictionary, and each band but the last ends with a sync flush,
+     * so that the raw deflate data of the bands may be concatenated.
+     */
+    private void writeBands(OutputStream os, Raster ras, int numThreads)
+        throws IOException {
+        int minY = ras.getMinY();
+        int maxY = minY + ras.getHeight();
+
+        int bytesPerRow = getBytesPerRow(ras.getWidth()*numBands, 0, numBands);
+        int rowLength = bytesPerRow + 1;
+        int bandRows = Math.max(1, param.getBandSize()/rowLength);
+        int dictRows = (DICTIONARY_SIZE + rowLength - 1)/rowLength;
+        int level = param.getCompressionLevel();
+
+        // zlib header: deflate with a 32K window, then the compression
+        // level and a check value making the header a multiple of 31
+        int cmf = 0x78;
+        int flg = (level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3) << 6;
+        flg |= 31 - ((cmf << 8) | flg) % 31;
+        os.write(cmf);
+        os.write(flg);
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread =
+                        new Thread(r, "PNGImageEncoder Band Thread");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        ExecutorService executor =
+            Executors.newFixedThreadPool(numThreads, threadFactory);
+
+        // Bound the number of bands held in memory.
+        int maxBandsInFlight = 2*numThreads;
+        ArrayDeque inFlight = new ArrayDeque(maxBandsInFlight);
+        long adler = 1L;
+        try {
+            for (int row = minY; row < maxY; row += bandRows) {
+                if (inFlight.size() == maxBandsInFlight) {
+                    adler = writeBand(os, (Future)inFlight.removeFirst(),
+                                      adler);
+                }
+                int endRow = Math.min(row + bandRows, maxY);
+                inFlight.addLast(executor.submit(
+                    new BandTask(ras, row, endRow,
+                                 Math.max(minY, row - dictRows),
+                                 bytesPerRow, level, endRow == maxY)));
+            }
+            while (!inFlight.isEmpty()) {
+                adler = writeBand(os, (Future)inFlight.removeFirst(), adler);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // zlib trailer: Adler-32 of the uncompressed data
+        os.write((int)(adler >>> 24));
+        os.write((int)(adler >>> 16));
+        os.write((int)(adler >>> 8));
+        os.write((int)adler);
+    }
+
+    /**
+     * Writes the deflated data of a band once it is available and
+     * returns the Adler-32 checksum <code>adler</code> extended by that
+     * of the band.
+     */
+    private static long writeBand(OutputStream os, Future future, long adler)
+        throws IOException {
+        Band band;
+        try {
+            band = (Band)future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+
+        band.data.writeTo(os);
+        return adler32Combine(adler, band.adler, band.length);
+    }
+
+    /**
+     * Returns the Adler-32 checksum of the concatenation of two
+     * sequences given their checksums and the length of the second.
+     */
+    private static long adler32Combine(long adler1, long adler2, long len2) {
+        final long BASE = 65521L;
+
+        long rem = len2 % BASE;
+        long sum1 = adler1 & 0xffffL;
+        long sum2 = (rem*sum1) % BASE;
+        sum1 += (adler2 & 0xffffL) + BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffffL) + ((adler2 >>> 16) & 0xffffL) +
+            BASE - rem;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum2 >= (BASE << 1)) sum2 -= (BASE << 1);
+        if (sum2 >= BASE) sum2 -= BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    /** The deflated data of a band and the checksum of its rows. */
+    private static final class Band {
+
+        final ByteArrayOutputStream data;
+        final long adler;
+        final long length;
+
+        Band(ByteArrayOutputStream data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Filters and deflates the rows of a band.  The rows from
+     * <code>dictRow</code> up to the band are filtered only to serve as
+     * the dictionary.
+     */
+    private final class BandTask implements Callable {
+
+        private final Raster ras;
+        private final int firstRow;
+        private final int endRow;
+        private final int dictRow;
+        private final int bytesPerRow;
+        private final int level;
+        private final boolean isLast;
+
+        BandTask(Raster ras, int firstRow, int endRow, int dictRow,
+                 int bytesPerRow, int level, boolean isLast) {
+            this.ras = ras;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.dictRow = dictRow;
+            this.bytesPerRow = bytesPerRow;
+            this.level = level;
+            this.isLast = isLast;
+        }
+
+        public Object call() throws IOException {
+            byte[] currRow = new byte[bytesPerRow + bpp];
+            byte[] prevRow = new byte[bytesPerRow + bpp];
+            byte[][] filteredRows = new byte[5][bytesPerRow + bpp];
+            int[] samples = new int[ras.getWidth()*numBands];
+
+            // The first row is filtered against the one above it, if any.
+            if (dictRow > ras.getMinY()) {
+                packRow(ras, dictRow - 1, 0, numBands, samples, prevRow);
+            }
+
+            int rowLength = bytesPerRow + 1;
+            ByteArrayOutputStream dict =
+                new ByteArrayOutputStream((firstRow - dictRow)*rowLength + 1);
+            ByteArrayOutputStream rows =
+                new ByteArrayOutputStream((endRow - firstRow)*rowLength);
+            for (int row = dictRow; row < endRow; row++) {
+                packRow(ras, row, 0, numBands, samples, currRow);
+
+                int filterType = param.filterRow(currRow, prevRow,
+                                                 filteredRows,
+                                                 bytesPerRow, bpp);
+
+                OutputStream os = row < firstRow ? dict : rows;
+                os.write(filterType);
+                os.write(filteredRows[filterType], bpp, bytesPerRow);
+
+                byte[] swap = currRow;
+                currRow = prevRow;
+                prevRow = swap;
+            }
+
+            byte[] data = rows.toByteArray();
+            Adler32 adler = new Adler32();
+            adler.update(data, 0, data.length);
+
+            Deflater deflater = new Deflater(level, true);
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(data.length/2 + 64);
+            try {
+                if (dict.size() > 0) {
+                    byte[] d = dict.toByteArray();
+                    int off = Math.max(0, d.length - DICTIONARY_SIZE);
+                    deflater.setDictionary(d, off, d.length - off);
+                }
+                deflater.setInput(data, 0, data.length);
+
+                byte[] buf = new byte[8192];
+                if (isLast) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buf, 0, buf.length);
+                        out.write(buf, 0, n);
+                    }
+                } else {
+                    // End on a byte boundary; the output is complete once
+                    // the buffer is no longer filled.
+                    int n;
+                    do {
+                        n = deflater.deflate(buf, 0, buf.length,
+                                             Deflater.SYNC_FLUSH);
+                        out.write(buf, 0, n);
+                    } while (n == buf.length);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            return new Band(out, adler.getValue(), data.length);
+        }
+    }
+
     private void writeIEND() throws IOException {
         ChunkStream cs = new ChunkStream("IEND");
         cs.writeToStream(dataOutput);
@@ -79,6 +79,21 @@ public final class TIFFCodec extends ImageCodec {
             return true;
         }
 
+        // BigTIFF
+        if ((header[0] == 0x49) &&
+            (header[1] == 0x49) &&
+            (header[2] == 0x2b) &&
+            (header[3] == 0x00)) {
+            return true;
+        }
+
+        if ((header[0] == 0x4d) &&
+            (header[1] == 0x4d) &&
+            (header[2] == 0x00) &&
+            (header[3] == 0x2b)) {
+            return true;
+        }
+
         return false;
     }
 }
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -95,6 +96,7 @@ public class TIFFImage extends SimpleRenderedImage {
     int compression;
     byte[] palette;
     int numBands;
+    int samplesPerPixel;
 
     int chromaSubH;
     int chromaSubV;
@@ -111,9 +113,6 @@ public class TIFFImage extends SimpleRenderedImage {
     JPEGDecodeParam decodeParam = null;
     boolean colorConvertJPEG = false;
 
-    // DEFLATE variables
-    Inflater inflater = null;
-
     // Endian-ness indicator
     boolean isBigEndian;
 
@@ -123,9 +122,19 @@ public class TIFFImage extends SimpleRenderedImage {
 
     boolean decodePaletteAsShorts;
 
-    // Decoders
-    private TIFFFaxDecoder decoder = null;
-    private TIFFLZWDecoder lzwDecoder = null;
+    // Decompressors which are not in use by a call to getTile().
+    private final ConcurrentLinkedQueue freeDecompressors =
+        new ConcurrentLinkedQueue();
+
+    /**
+     * The decompressors used to decode a tile.  A set is only used by
+     * one thread at a time, so that tiles may be decoded concurrently.
+     */
+    private static final class Decompressors {
+        Inflater inflater;
+        TIFFFaxDecoder faxDecoder;
+        TIFFLZWDecoder lzwDecoder;
+    }
 
     /**
      * Decode a buffer of data into a Raster with the specified location.
@@ -148,10 +157,11 @@ public class TIFFImage extends SimpleRenderedImage {
         ByteArrayInputStream jpegStream = new ByteArrayInputStream(data);
 
         // Create a decoder.
+        // The parameters are cloned as tiles may be decoded concurrently.
         JPEGImageDecoder decoder = decodeParam == null ?
             JPEGCodec.createJPEGDecoder(jpegStream) :
             JPEGCodec.createJPEGDecoder(jpegStream,
-                                        decodeParam);
+                                        (JPEGDecodeParam)decodeParam.clone());
 
         // Decode the compressed data into a Raster.
         Raster jpegRaster = null;
@@ -173,9 +183,10 @@ public class TIFFImage extends SimpleRenderedImage {
 
     /**
      * Inflates <code>deflated</code> into <code>inflated</code> using the
-     * <code>Inflater</code> constructed during class instantiation.
+     * given <code>Inflater</code>.
      */
-    private final void inflate(byte[] deflated, byte[] inflated) {
+    private final void inflate(Inflater inflater,
+                               byte[] deflated, byte[] inflated) {
         inflater.setInput(deflated);
         try {
             inflater.inflate(inflated);
@@ -258,7 +269,8 @@ public class TIFFImage extends SimpleRenderedImage {
             for(int i = 0; i < charValue.length; i++) {
                 value[i] = charValue[i]  & 0xffff;
             }
-        } else if(field.getType() == TIFFField.TIFF_LONG) {
+        } else if(field.getType() == TIFFField.TIFF_LONG ||
+                  field.getType() == TIFFField.TIFF_LONG8) {
             value = field.getAsLongs();
         } else {
             throw new RuntimeException();
@@ -317,7 +329,7 @@ public class TIFFImage extends SimpleRenderedImage {
 	// Get the number of samples per pixel
 	TIFFField sfield =
 	    dir.getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
-        int samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
+        samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
 
 	// Read the TIFF_PLANAR_CONFIGURATION field
 	TIFFField planarConfigurationField =
@@ -547,10 +559,10 @@ public class TIFFImage extends SimpleRenderedImage {
 	    tileHeight = (int)(getField(dir,
 					TIFFImageDecoder.TIFF_TILE_LENGTH,
 					"Tile Length").getAsLong(0));
-	    tileOffsets =
-		(getField(dir,
+	    tileOffsets = getFieldAsLongs(
+		getField(dir,
 			 TIFFImageDecoder.TIFF_TILE_OFFSETS,
-			 "Tile Offsets")).getAsLongs();
+			 "Tile Offsets"));
 
 	    tileByteCounts = getFieldAsLongs(
 	               getField(dir,
@@ -653,10 +665,8 @@ public class TIFFImage extends SimpleRenderedImage {
 	switch(compression) {
         case COMP_NONE:
         case COMP_PACKBITS:
-            // Do nothing.
-            break;
         case COMP_DEFLATE:
-            inflater = new Inflater();
+            // Do nothing.
             break;
         case COMP_FAX_G3_1D:
         case COMP_FAX_G3_2D:
@@ -688,14 +698,10 @@ public class TIFFImage extends SimpleRenderedImage {
                     tiffT6Options = 0;
                 }
             }
-
-            // Fax encoding, need to create the Fax decoder.
-            decoder = new TIFFFaxDecoder(fillOrder,
-                                         tileWidth, tileHeight);
             break;
 
         case COMP_LZW:
-            // LZW compression used, need to create the LZW decoder.
+            // LZW compression used, get the predictor.
             TIFFField predictorField =
                 dir.getField(TIFFImageDecoder.TIFF_PREDICTOR);
 
@@ -713,9 +719,6 @@ public class TIFFImage extends SimpleRenderedImage {
                                                JaiI18N.getString("TIFFImage9"));
                 }
             }
-
-            lzwDecoder = new TIFFLZWDecoder(tileWidth, predictor,
-                                            samplesPerPixel);
             break;
 
         case COMP_JPEG_OLD:
@@ -948,10 +951,42 @@ public class TIFFImage extends SimpleRenderedImage {
         return new TIFFDirectory(stream, offset, 0);
     }
 
+    /**
+     * Returns a set of decompressors for the compression of this image
+     * which is not in use by any other thread.
+     */
+    private Decompressors getDecompressors() {
+        Decompressors d = (Decompressors)freeDecompressors.poll();
+        if(d == null) {
+            d = new Decompressors();
+            switch(compression) {
+            case COMP_DEFLATE:
+                d.inflater = new Inflater();
+                break;
+            case COMP_FAX_G3_1D:
+            case COMP_FAX_G3_2D:
+            case COMP_FAX_G4_2D:
+                d.faxDecoder = new TIFFFaxDecoder(fillOrder,
+                                                  tileWidth, tileHeight);
+                break;
+            case COMP_LZW:
+                d.lzwDecoder = new TIFFLZWDecoder(tileWidth, predictor,
+                                                  samplesPerPixel);
+                break;
+            }
+        }
+        return d;
+    }
+
     /**
      * Returns tile (tileX, tileY) as a Raster.
+     *
+     * <p> Tiles may be decoded by several threads at once.  The data of
+     * a tile are read by means of <code>SeekableStream.read(long,
+     * byte[], int, int)</code>, which does not move the pointer of the
+     * stream, and each thread decodes with decompressors of its own.
      */
-    public synchronized Raster getTile(int tileX, int tileY) {
+    public Raster getTile(int tileX, int tileY) {
         // Check parameters.
         if ((tileX < 0) || (tileX >= tilesX) ||
             (tileY < 0) || (tileY >= tilesY)) {
@@ -961,10 +996,11 @@ public class TIFFImage extends SimpleRenderedImage {
         // The tile to return.
         WritableRaster tile = null;
 
-        // Synchronize the rest of the method in case other TIFFImage
-        // instances using the same stream were created by the same
-        // TIFFImageDecoder. This fixes 4690773.
-        synchronized(this.stream) {
+        Decompressors decompressors = getDecompressors();
+        Inflater inflater = decompressors.inflater;
+        TIFFFaxDecoder decoder = decompressors.faxDecoder;
+        TIFFLZWDecoder lzwDecoder = decompressors.lzwDecoder;
+        try {
 
 	// Get the data array out of the DataBuffer
 	byte bdata[] = null;
@@ -1010,18 +1046,13 @@ public class TIFFImage extends SimpleRenderedImage {
                                                    new Point(tileXToX(tileX),
                                                              tileYToY(tileY)));
 
-	// Save original file pointer position and seek to tile data location.
-	long save_offset = 0;
-	try {
-	    save_offset = stream.getFilePointer();
-	    stream.seek(tileOffsets[tileY*tilesX + tileX]);
-	} catch (IOException ioe) {
-            String message = JaiI18N.getString("TIFFImage13");
-            ImagingListenerProxy.errorOccurred(message,
-                                   new ImagingException(message, ioe),
-                                   this, false);
-//	    throw new RuntimeException(JaiI18N.getString("TIFFImage13"));
-	}
+	// Read the tile data through a view of the stream positioned at the
+	// tile data location. The view reads at explicit offsets so that
+	// neither the pointer of the shared stream nor a lock on it is
+	// needed. This also keeps other TIFFImage instances using the same
+	// stream, created by the same TIFFImageDecoder, working (4690773).
+	SeekableStream stream =
+	    new TileDataStream(this.stream, tileOffsets[tileY*tilesX + tileX]);
 
 	// Number of bytes in this tile (strip) after compression.
 	int byteCount = (int)tileByteCounts[tileY*tilesX + tileX];
@@ -1073,12 +1104,10 @@ public class TIFFImage extends SimpleRenderedImage {
                                      tiffT6Options);
 		} else if (compression == COMP_DEFLATE) {
                     stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    inflate(inflater, data, bdata);
 		} else if (compression == COMP_NONE) {
 		    stream.readFully(bdata, 0, byteCount);
 		}
-
-		stream.seek(save_offset);
 	    } catch (IOException ioe) {
                 String message = JaiI18N.getString("TIFFImage13");
                 ImagingListenerProxy.errorOccurred(message,
@@ -1133,7 +1162,7 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			    stream.readFully(data, 0, byteCount);
 			    byte byteArray[] = new byte[entries];
-			    inflate(data, byteArray);
+			    inflate(inflater, data, byteArray);
 			    tempData = new short[unitsBeforeLookup];
 			    interpretBytesAsShorts(byteArray, tempData,
 						   unitsBeforeLookup);
@@ -1145,11 +1174,9 @@ public class TIFFImage extends SimpleRenderedImage {
 			    // which will take half the space, so while
 			    // allocating we divide byteCount by 2.
 			    tempData = new short[byteCount/2];
-			    readShorts(byteCount/2, tempData);
+			    readShorts(stream, byteCount/2, tempData);
 			}
 
-			stream.seek(save_offset);
-
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1243,17 +1270,15 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			    stream.readFully(data, 0, byteCount);
 			    byte byteArray[] = new byte[unitsInThisTile * 2];
-			    inflate(data, byteArray);
+			    inflate(inflater, data, byteArray);
 			    interpretBytesAsShorts(byteArray, sdata,
 						   unitsInThisTile);
 
 			} else if (compression == COMP_NONE) {
 
-			    readShorts(byteCount/2, sdata);
+			    readShorts(stream, byteCount/2, sdata);
 			}
 
-			stream.seek(save_offset);
-
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1314,7 +1339,7 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			    stream.readFully(data, 0, byteCount);
 			    tempData = new byte[unitsBeforeLookup];
-			    inflate(data, tempData);
+			    inflate(inflater, data, tempData);
 
 			} else if (compression == COMP_NONE) {
 
@@ -1322,8 +1347,6 @@ public class TIFFImage extends SimpleRenderedImage {
 			    stream.readFully(tempData, 0, byteCount);
 			}
 
-			stream.seek(save_offset);
-
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1380,15 +1403,13 @@ public class TIFFImage extends SimpleRenderedImage {
 			}  else if (compression == COMP_DEFLATE) {
 
                             stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                            inflate(inflater, data, bdata);
 
 			} else if (compression == COMP_NONE) {
 
 			    stream.readFully(bdata, 0, byteCount);
 			}
 
-			stream.seek(save_offset);
-
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1412,7 +1433,6 @@ public class TIFFImage extends SimpleRenderedImage {
 
 		    try {
 			stream.readFully(data, 0, byteCount);
-			stream.seek(save_offset);
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1436,7 +1456,7 @@ public class TIFFImage extends SimpleRenderedImage {
                     }  else if (compression == COMP_DEFLATE) {
 
 			tempData = new byte[bytesPostDecoding];
-			inflate(data, tempData);
+			inflate(inflater, data, tempData);
 
 		    } else if (compression == COMP_NONE) {
 
@@ -1495,15 +1515,13 @@ public class TIFFImage extends SimpleRenderedImage {
                         }  else if (compression == COMP_DEFLATE) {
 
 			    stream.readFully(data, 0, byteCount);
-			    inflate(data, bdata);
+			    inflate(inflater, data, bdata);
 
 			} else if (compression == COMP_NONE) {
 
 			    stream.readFully(bdata, 0, byteCount);
 			}
 
-			stream.seek(save_offset);
-
 		    } catch (IOException ioe) {
                         String message = JaiI18N.getString("TIFFImage13");
                         ImagingListenerProxy.errorOccurred(message,
@@ -1540,14 +1558,12 @@ public class TIFFImage extends SimpleRenderedImage {
                 }  else if (compression == COMP_DEFLATE) {
 
                     stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+                    inflate(inflater, data, bdata);
 
                 } else {
 
                     stream.readFully(bdata, 0, byteCount);
                 }
-
-                stream.seek(save_offset);
 	    } catch (IOException ioe) {
                 String message = JaiI18N.getString("TIFFImage13");
                 ImagingListenerProxy.errorOccurred(message,
@@ -1585,14 +1601,14 @@ public class TIFFImage extends SimpleRenderedImage {
 		    } else if (compression == COMP_DEFLATE) {
 
 			stream.readFully(data, 0, byteCount);
-                        inflate(data, bdata);
+                        inflate(inflater, data, bdata);
                     }
 
 		} else if (sampleSize == 16) {
 
 		    if (compression == COMP_NONE) {
 
-			readShorts(byteCount/2, sdata);
+			readShorts(stream, byteCount/2, sdata);
 
 		    } else if (compression == COMP_LZW) {
 
@@ -1627,7 +1643,7 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			stream.readFully(data, 0, byteCount);
 			byte byteArray[] = new byte[unitsInThisTile * 2];
-			inflate(data, byteArray);
+			inflate(inflater, data, byteArray);
 			interpretBytesAsShorts(byteArray, sdata,
 					       unitsInThisTile);
 
@@ -1636,7 +1652,7 @@ public class TIFFImage extends SimpleRenderedImage {
                            dataType == DataBuffer.TYPE_INT) { // redundant
 		    if (compression == COMP_NONE) {
 
-			readInts(byteCount/4, idata);
+			readInts(stream, byteCount/4, idata);
 
 		    } else if (compression == COMP_LZW) {
 
@@ -1671,7 +1687,7 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			stream.readFully(data, 0, byteCount);
 			byte byteArray[] = new byte[unitsInThisTile * 4];
-			inflate(data, byteArray);
+			inflate(inflater, data, byteArray);
 			interpretBytesAsInts(byteArray, idata,
                                              unitsInThisTile);
 
@@ -1680,7 +1696,7 @@ public class TIFFImage extends SimpleRenderedImage {
                            dataType == DataBuffer.TYPE_FLOAT) { // redundant
 		    if (compression == COMP_NONE) {
 
-			readFloats(byteCount/4, fdata);
+			readFloats(stream, byteCount/4, fdata);
 
 		    } else if (compression == COMP_LZW) {
 
@@ -1715,15 +1731,13 @@ public class TIFFImage extends SimpleRenderedImage {
 
 			stream.readFully(data, 0, byteCount);
 			byte byteArray[] = new byte[unitsInThisTile * 4];
-                        inflate(data, byteArray);
+                        inflate(inflater, data, byteArray);
 			interpretBytesAsFloats(byteArray, fdata,
                                                unitsInThisTile);
 
                     }
 		}
 
-		stream.seek(save_offset);
-
 	    } catch (IOException ioe) {
                 String message = JaiI18N.getString("TIFFImage13");
                 ImagingListenerProxy.errorOccurred(message,
@@ -1808,12 +1822,15 @@ public class TIFFImage extends SimpleRenderedImage {
             }
         }
 
-        } // synchronized(this.stream)
+        } finally {
+            freeDecompressors.offer(decompressors);
+        }
 
         return tile;
     }
 
-    private void readShorts(int shortCount, short shortArray[]) {
+    private void readShorts(SeekableStream stream,
+                            int shortCount, short shortArray[]) {
 
 	// Since each short consists of 2 bytes, we need a
 	// byte array of double size
@@ -1833,7 +1850,8 @@ public class TIFFImage extends SimpleRenderedImage {
 	interpretBytesAsShorts(byteArray, shortArray, shortCount);
     }
 
-    private void readInts(int intCount, int intArray[]) {
+    private void readInts(SeekableStream stream,
+                          int intCount, int intArray[]) {
 
 	// Since each int consists of 4 bytes, we need a
 	// byte array of quadruple size
@@ -1853,7 +1871,8 @@ public class TIFFImage extends SimpleRenderedImage {
 	interpretBytesAsInts(byteArray, intArray, intCount);
     }
 
-    private void readFloats(int floatCount, float floatArray[]) {
+    private void readFloats(SeekableStream stream,
+                            int floatCount, float floatArray[]) {
 
 	// Since each float consists of 4 bytes, we need a
 	// byte array of quadruple size
@@ -2099,6 +2118,12 @@ class NoEOFStream extends SeekableStream {
         return count < 0 ? len : count;
     }
 
+    public int read(long pos, byte[] b, int off, int len)
+        throws IOException {
+        int count = stream.read(pos, b, off, len);
+        return count < 0 ? len : count;
+    }
+
     public long getFilePointer() throws IOException {
         return stream.getFilePointer();
     }
@@ -2107,3 +2132,43 @@ class NoEOFStream extends SeekableStream {
         stream.seek(pos);
     }
 }
+
+/**
+ * A view of a <code>SeekableStream</code> starting at a given offset
+ * which has a stream pointer of its own and reads from the underlying
+ * stream only by means of <code>read(long, byte[], int, int)</code>.
+ */
+class TileDataStream extends SeekableStream {
+    private SeekableStream stream;
+    private long pointer;
+
+    TileDataStream(SeekableStream ss, long offset) {
+        if(ss == null) {
+            throw new IllegalArgumentException();
+        }
+
+        this.stream = ss;
+        this.pointer = offset;
+    }
+
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = stream.read(pointer, b, off, len);
+        if(count > 0) {
+            pointer += count;
+        }
+        return count;
+    }
+
+    public long getFilePointer() throws IOException {
+        return pointer;
+    }
+
+    public void seek(long pos) throws IOException {
+        pointer = pos;
+    }
+}
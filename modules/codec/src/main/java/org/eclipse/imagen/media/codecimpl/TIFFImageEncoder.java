@@ -21,11 +21,8 @@ import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
-import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
-import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
@@ -34,13 +31,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.zip.Deflater;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.imagen.media.codec.ImageEncodeParam;
 import org.eclipse.imagen.media.codec.ImageEncoderImpl;
@@ -100,9 +104,21 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
     // Default values
     private static final int DEFAULT_ROWS_PER_STRIP = 8;
 
+    // The largest offset of a TIFF 6.0 stream
+    private static final long MAX_OFFSET = 0xffffffffL;
+
     // Little endian flag
     private boolean isLittleEndian = false;
 
+    // BigTIFF flag
+    private boolean isBigTIFF = false;
+
+    // The threads encoding data segments, shared by all encoders.
+    private static ExecutorService segmentExecutor = null;
+
+    // Set while the current thread encodes a data segment.
+    private static final ThreadLocal inSegmentTask = new ThreadLocal();
+
     private static final char[] intsToChars(int[] intArray) {
         int arrayLength = intArray.length;
         char[] charArray = new char[arrayLength];
@@ -130,37 +146,71 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // Set the byte order flag before any data are written.
         isLittleEndian = encodeParam.getLittleEndian();
 
-        // Write the file header (8 bytes).
-        writeFileHeader();
+        // Collect the images and their parameters so that the size of
+        // the output may be estimated before anything is written.
+        ArrayList images = new ArrayList();
+        ArrayList params = new ArrayList();
+        images.add(im);
+        params.add(encodeParam);
 
 	Iterator iter = encodeParam.getExtraImages();
 	if(iter != null) {
-            int ifdOffset = 8;
-	    RenderedImage nextImage = im;
+            RenderedImage nextImage = im;
             TIFFEncodeParam nextParam = encodeParam;
-            boolean hasNext;
-            do {
-                hasNext = iter.hasNext();
-                ifdOffset = encode(nextImage, nextParam, ifdOffset, !hasNext);
-	        if(hasNext) {
-                    Object obj = iter.next();
-                    if(obj instanceof RenderedImage) {
-                        nextImage = (RenderedImage)obj;
-                        nextParam = encodeParam;
-                    } else if(obj instanceof Object[]) {
-                        Object[] o = (Object[])obj;
-                        nextImage = (RenderedImage)o[0];
-                        nextParam = (TIFFEncodeParam)o[1];
-                    }
-	        }
-            } while(hasNext);
-        } else {
-	    encode(im, encodeParam, 8, true);
+            while(iter.hasNext()) {
+                Object obj = iter.next();
+                if(obj instanceof RenderedImage) {
+                    nextImage = (RenderedImage)obj;
+                    nextParam = encodeParam;
+                } else if(obj instanceof Object[]) {
+                    Object[] o = (Object[])obj;
+                    nextImage = (RenderedImage)o[0];
+                    nextParam = (TIFFEncodeParam)o[1];
+                }
+                images.add(nextImage);
+                params.add(nextParam);
+            }
+        }
+
+        // Switch to BigTIFF if the offsets might not fit into 4 bytes.
+        long estimatedSize = 0;
+        for(int i = 0; i < images.size(); i++) {
+            estimatedSize += estimateSize((RenderedImage)images.get(i));
+        }
+        isBigTIFF = encodeParam.getBigTIFF() || estimatedSize > MAX_OFFSET;
+
+        // Write the file header (8 bytes, BigTIFF 16 bytes).
+        writeFileHeader();
+
+        long ifdOffset = isBigTIFF ? 16 : 8;
+        int numImages = images.size();
+        for(int i = 0; i < numImages; i++) {
+            ifdOffset = encode((RenderedImage)images.get(i),
+                               (TIFFEncodeParam)params.get(i),
+                               ifdOffset, i == numImages - 1);
+        }
+    }
+
+    /**
+     * Estimates the number of bytes written for an image from the size
+     * of its uncompressed data.  Some room is allowed for the expansion
+     * of incompressible data and for the IFD.
+     */
+    private static long estimateSize(RenderedImage im) {
+        int[] sampleSize = im.getSampleModel().getSampleSize();
+        long bitsPerPixel = 0;
+        for(int i = 0; i < sampleSize.length; i++) {
+            bitsPerPixel += sampleSize[i];
         }
+
+        long bytesPerRow = (im.getWidth()*bitsPerPixel + 7)/8;
+        long dataSize = bytesPerRow*im.getHeight();
+
+        return dataSize + dataSize/64 + 65536;
     }
 
-    private int encode(RenderedImage im, TIFFEncodeParam encodeParam,
-                       int ifdOffset, boolean isLast) throws IOException {
+    private long encode(RenderedImage im, TIFFEncodeParam encodeParam,
+                        long ifdOffset, boolean isLast) throws IOException {
         // Cannot store a packed byte image directly so reformat it.
         if(CodecUtils.isPackedByteImage(im)) {
             // Get the source ColorModel.
@@ -534,6 +584,10 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // but fill it in later.
 	long tileOffsets[] = new long[numTiles];
 
+        // BigTIFF data offsets are 8 bytes, the data sizes are not.
+        int offsetType = isBigTIFF ?
+            TIFFField.TIFF_LONG8 : TIFFField.TIFF_LONG;
+
 	// Basic fields - have to be in increasing numerical order.
 	// ImageWidth                     256
 	// ImageLength                    257
@@ -575,7 +629,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
         if(!isTiled) {
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_STRIP_OFFSETS,
-                                     TIFFField.TIFF_LONG, numTiles, 
+                                     offsetType, numTiles, 
                                      (long[])tileOffsets));
         }
 	
@@ -609,7 +663,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                                      new long[] {(long)tileHeight}));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_OFFSETS,
-                                     TIFFField.TIFF_LONG, numTiles, 
+                                     offsetType, numTiles, 
                                      (long[])tileOffsets));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_BYTE_COUNTS,
@@ -656,7 +710,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         boolean inverseFill = encodeParam.getReverseFillOrder();
         boolean T4encode2D = encodeParam.getT4Encode2D();
         boolean T4PadEOLs = encodeParam.getT4PadEOLs();
-        TIFFFaxEncoder faxEncoder = null;
 
         // Add bilevel compression fields.
         if((imageType == TIFF_BILEVEL_BLACK_IS_ZERO ||
@@ -665,9 +718,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             compression == COMP_GROUP3_2D ||
             compression == COMP_GROUP4)) {
 
-            // Create the encoder.
-            faxEncoder = new TIFFFaxEncoder(inverseFill);
-
             // FillOrder field.
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_FILL_ORDER,
                                      TIFFField.TIFF_SHORT, 1, 
@@ -850,15 +900,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         //    is used (outCache non-null, tempFile null).
 
         OutputStream outCache = null;
-        byte[] compressBuf = null;
         File tempFile = null;
 
-        int nextIFDOffset = 0;
+        long nextIFDOffset = 0;
         boolean skipByte = false;
 
-        Deflater deflater = null;
-        int deflateLevel = Deflater.DEFAULT_COMPRESSION;
-
         boolean jpegRGBToYCbCr = false;
 
         if(compression == COMP_NONE) {
@@ -882,7 +928,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
             if(!isLast) {
                 // Determine the offset of the next IFD.
-                nextIFDOffset = (int)(tileOffsets[0] + totalBytesOfData);
+                nextIFDOffset = tileOffsets[0] + totalBytesOfData;
 
                 // IFD offsets must be on a word boundary.
                 if(nextIFDOffset % 2 != 0) {
@@ -891,6 +937,8 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 }
             }
 
+            checkOffset(tileOffsets[0] + totalBytesOfData);
+
             // Write the IFD and field overflow before the image data.
             writeDirectory(ifdOffset, fields, nextIFDOffset);
 
@@ -928,34 +976,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 }
             }
 
-            int bufSize = 0;
-            switch(compression) {
-            case COMP_GROUP3_1D:
-                // This initial buffer size is based on an alternating 1-0
-                // pattern generating the most bits when converted to code
-                // words: 9 bits out for each pair of bits in. So the number
-                // of bit pairs is determined, multiplied by 9, converted to
-                // bytes, and a ceil() is taken to account for fill bits at the
-                // end of each line.  The "2" addend accounts for the case
-                // of the pattern beginning with black.  The buffer is intended
-                // to hold only a single row.
-                bufSize = (int)Math.ceil((((tileWidth + 1)/2)*9 + 2)/8.0);
-                break;
-            case COMP_GROUP3_2D:
-            case COMP_GROUP4:
-                // Calculate the maximum row as the G3-1D size plus the EOL,
-                // multiply this by the number of rows in the tile, and add
-                // 6 EOLs for the RTC (return to control).
-                bufSize = (int)Math.ceil((((tileWidth + 1)/2)*9 + 2)/8.0);
-                bufSize = tileHeight*(bufSize + 2) + 12;
-                break;
-            case COMP_PACKBITS:
-                bufSize = (int)(bytesPerTile +
-                                ((bytesPerRow+127)/128)*tileHeight);
-                break;
-            case COMP_JPEG_TTN2:
-                bufSize = 0;
-
+            if(compression == COMP_JPEG_TTN2) {
                 // Set color conversion flag.
                 if(imageType == TIFF_YCBCR &&
                    colorModel != null &&
@@ -963,430 +984,115 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                    ColorSpace.TYPE_RGB) {
                     jpegRGBToYCbCr = true;
                 }
-                break;
-            case COMP_DEFLATE:
-                bufSize = (int)bytesPerTile;
-                deflater = new Deflater(encodeParam.getDeflateLevel());
-                break;
-            default:
-                bufSize = 0;
-            }
-            if(bufSize != 0) {
-                compressBuf = new byte[bufSize];
             }
         }
 
         // ---- Writing of actual image data ----
 
-	// Buffer for up to tileHeight rows of pixels
-        int[] pixels = null;
-        float[] fpixels = null;
-
-        // Whether to test for contiguous data.
-        boolean checkContiguous =
-            ((sampleSize[0] == 1 &&
-              sampleModel instanceof MultiPixelPackedSampleModel &&
-              dataType == DataBuffer.TYPE_BYTE) ||
-             (sampleSize[0] == 8 &&
-              sampleModel instanceof ComponentSampleModel));
-
-        // Also create a buffer to hold tileHeight lines of the
-        // data to be written to the file, so we can use array writes.
-        byte[] bpixels = null;
-        if(compression != COMP_JPEG_TTN2) {
-            if(dataType == DataBuffer.TYPE_BYTE) {
-                bpixels = new byte[tileHeight * tileWidth * numBands];
-            } else if(dataTypeIsShort) {
-                bpixels = new byte[2 * tileHeight * tileWidth * numBands];
-            } else if(dataType == DataBuffer.TYPE_INT ||
-                      dataType == DataBuffer.TYPE_FLOAT) {
-                bpixels = new byte[4 * tileHeight * tileWidth * numBands];
-            }
-        }
-
 	// Process tileHeight rows at a time
 	int lastRow = minY + height;
         int lastCol = minX + width;
         int tileNum = 0;
-        for (int row = minY; row < lastRow; row += tileHeight) {
-            int rows = isTiled ?
-                tileHeight : Math.min(tileHeight, lastRow - row);
-            int size = rows * tileWidth * numBands;
-
-            for(int col = minX; col < lastCol; col += tileWidth) {
-                // Grab the pixels
-                Raster src =
-                    im.getData(new Rectangle(col, row, tileWidth, rows));
-
-                boolean useDataBuffer = false;
-                if(compression != COMP_JPEG_TTN2) { // JPEG access Raster
-                    if(checkContiguous) {
-                        if(sampleSize[0] == 8) { // 8-bit
-                            ComponentSampleModel csm =
-                                (ComponentSampleModel)src.getSampleModel();
-                            int[] bankIndices = csm.getBankIndices();
-                            int[] bandOffsets = csm.getBandOffsets();
-                            int pixelStride = csm.getPixelStride();
-                            int lineStride = csm.getScanlineStride();
-
-                            if(pixelStride != numBands ||
-                               lineStride != bytesPerRow) {
-                                useDataBuffer = false;
-                            } else {
-                                useDataBuffer = true;
-                                for(int i = 0;
-                                    useDataBuffer && i < numBands;
-                                    i++) {
-                                    if(bankIndices[i] != 0 ||
-                                       bandOffsets[i] != i) {
-                                        useDataBuffer = false;
-                                    }
-                                }
-                            }
-                        } else { // 1-bit
-                            MultiPixelPackedSampleModel mpp =
-                                (MultiPixelPackedSampleModel)src.getSampleModel();
-                            if(mpp.getNumBands() == 1 &&
-                               mpp.getDataBitOffset() == 0 &&
-                               mpp.getPixelBitStride() == 1) {
-                                useDataBuffer = true;
-                            }
-                        }
-                    }
 
-                    if(!useDataBuffer) {
-                        if(dataType == DataBuffer.TYPE_FLOAT) {
-                            fpixels = src.getPixels(col, row, tileWidth, rows,
-                                                    fpixels);
-                        } else {
-                            pixels = src.getPixels(col, row, tileWidth, rows,
-                                                   pixels);
-                        }
+        if(compression == COMP_JPEG_TTN2) {
+            for (int row = minY; row < lastRow; row += tileHeight) {
+                int rows = isTiled ?
+                    tileHeight : Math.min(tileHeight, lastRow - row);
+
+                for(int col = minX; col < lastCol; col += tileWidth) {
+                    // Grab the pixels
+                    Raster src =
+                        im.getData(new Rectangle(col, row, tileWidth, rows));
+
+                    long startPos = getOffset(output);
+
+                    // Recreate encoder and parameters if the encoder
+                    // is null (first data segment) or if its size
+                    // doesn't match the current data segment.
+                    if(jpegEncoder == null ||
+                       jpegEncodeParam.getWidth() != src.getWidth() ||
+                       jpegEncodeParam.getHeight() != src.getHeight()) {
+
+                        jpegEncodeParam =
+                            com.sun.image.codec.jpeg.JPEGCodec.
+                            getDefaultJPEGEncodeParam(src, jpegColorID);
+
+                        JPEGImageEncoder.modifyEncodeParam(jep,
+                                                           jpegEncodeParam,
+                                                           numBands);
+
+                        jpegEncoder =
+                            com.sun.image.codec.jpeg.JPEGCodec.
+                            createJPEGEncoder(output,
+                                              jpegEncodeParam);
                     }
-                }
 
-                int index;
-
-                int pixel = 0;
-                int k = 0;
-                switch(sampleSize[0]) {
-
-                case 1:
-
-                    if(useDataBuffer) {
-                        byte[] btmp =
-                            ((DataBufferByte)src.getDataBuffer()).getData();
-                        MultiPixelPackedSampleModel mpp =
-                            (MultiPixelPackedSampleModel)src.getSampleModel();
-                        int lineStride = mpp.getScanlineStride();
-                        int inOffset =
-                            mpp.getOffset(col -
-                                          src.getSampleModelTranslateX(),
-                                          row -
-                                          src.getSampleModelTranslateY());
-                        if(lineStride == (int)bytesPerRow) {
-                            System.arraycopy(btmp, inOffset,
-                                             bpixels, 0,
-                                             (int)bytesPerRow*rows);
+                    if(jpegRGBToYCbCr) {
+                        WritableRaster wRas = null;
+                        if(src instanceof WritableRaster) {
+                            wRas = (WritableRaster)src;
                         } else {
-                            int outOffset = 0;
-                            for(int j = 0; j < rows; j++) {
-                                System.arraycopy(btmp, inOffset,
-                                                 bpixels, outOffset,
-                                                 (int)bytesPerRow);
-                                inOffset += lineStride;
-                                outOffset += (int)bytesPerRow;
-                            }
+                            wRas = src.createCompatibleWritableRaster();
+                            wRas.setRect(src);
                         }
-                    } else {
-                        index = 0;
-
-                        // For each of the rows in a strip
-                        for (int i=0; i<rows; i++) {
-
-                            // Write number of pixels exactly divisible by 8
-                            for (int j=0; j<tileWidth/8; j++) {
-			
-                                pixel =
-                                    (pixels[index++] << 7) |
-                                    (pixels[index++] << 6) |
-                                    (pixels[index++] << 5) |
-                                    (pixels[index++] << 4) |
-                                    (pixels[index++] << 3) |
-                                    (pixels[index++] << 2) |
-                                    (pixels[index++] << 1) |
-                                    pixels[index++];
-                                bpixels[k++] = (byte)pixel;
-                            }
 
-                            // Write the pixels remaining after division by 8
-                            if (tileWidth%8 > 0) {
-                                pixel = 0;
-                                for (int j=0; j<tileWidth%8; j++) {
-                                    pixel |= (pixels[index++] << (7 - j));
-                                }
-                                bpixels[k++] = (byte)pixel;
-                            }
-                        }
-                    }
-
-                    if(compression == COMP_NONE) {
-                        output.write(bpixels, 0, rows * ((tileWidth+7)/8));
-                    } else if(compression == COMP_GROUP3_1D) {
-                        int rowStride = (tileWidth + 7)/8;
-                        int rowOffset = 0;
-                        int numCompressedBytes = 0;
-                        for(int tileRow = 0; tileRow < rows; tileRow++) {
-                            int numCompressedBytesInRow =
-                                faxEncoder.encodeRLE(bpixels,
-                                                     rowOffset, 0, tileWidth,
-                                                     compressBuf);
-                            output.write(compressBuf,
-                                         0, numCompressedBytesInRow);
-                            rowOffset += rowStride;
-                            numCompressedBytes += numCompressedBytesInRow;
-                        }
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                    } else if(compression == COMP_GROUP3_2D) {
-                        int numCompressedBytes =
-                            faxEncoder.encodeT4(!T4encode2D,// 1D == !2D
-                                                T4PadEOLs,
-                                                bpixels,
-                                                (tileWidth+7)/8,
-                                                0,
-                                                tileWidth,
-                                                rows,
-                                                compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_GROUP4) {
-                        int numCompressedBytes =
-                            faxEncoder.encodeT6(bpixels,
-                                                (tileWidth+7)/8,
-                                                0,
-                                                tileWidth,
-                                                rows,
-                                                compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             (int)bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
-
-                    break;
-
-                case 4:
-		
-                    index = 0;
-
-                    // For each of the rows in a strip
-                    for (int i=0; i<rows; i++) {
-		    
-                        // Write  the number of pixels that will fit into an 
-                        // even number of nibbles.
-                        for (int j=0; j<tileWidth/2; j++) {
-                            pixel = (pixels[index++] << 4) | pixels[index++];
-                            bpixels[k++] = (byte)pixel;
-                        }
-
-                        // Last pixel for odd-length lines
-                        if ((tileWidth % 2) == 1) {
-                            pixel = pixels[index++] << 4;
-                            bpixels[k++] = (byte)pixel;
-                        }
-                    }
-
-                    if(compression == COMP_NONE) {
-                        output.write(bpixels, 0, rows * ((tileWidth+1)/2));
-                    } else if(compression == COMP_PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             (int)bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
- 
-                case 8:
-
-                    if(compression != COMP_JPEG_TTN2) {
-                        if(useDataBuffer) {
-                            byte[] btmp =
-                                ((DataBufferByte)src.getDataBuffer()).getData();
-                            ComponentSampleModel csm =
-                                (ComponentSampleModel)src.getSampleModel();
-                            int inOffset =
-                                csm.getOffset(col -
-                                              src.getSampleModelTranslateX(),
-                                              row -
-                                              src.getSampleModelTranslateY());
-                            int lineStride = csm.getScanlineStride();
-                            if(lineStride == (int)bytesPerRow) {
-                                System.arraycopy(btmp,
-                                                 inOffset,
-                                                 bpixels, 0,
-                                                 (int)bytesPerRow*rows);
-                            } else {
-                                int outOffset = 0;
-                                for(int j = 0; j < rows; j++) {
-                                    System.arraycopy(btmp, inOffset,
-                                                     bpixels, outOffset,
-                                                     (int)bytesPerRow);
-                                    inOffset += lineStride;
-                                    outOffset += (int)bytesPerRow;
-                                }
-                            }
-                        } else {
-                            for (int i = 0; i < size; i++) {
-                                bpixels[i] = (byte)pixels[i];
-                            }
+                        if (wRas.getMinX() != 0 || wRas.getMinY() != 0) {
+                            wRas =
+                                wRas.createWritableTranslatedChild(0, 0);
                         }
+                        BufferedImage bi =
+                            new BufferedImage(colorModel, wRas,
+                                              false, null);
+                        jpegEncoder.encode(bi);
+                    } else {
+                        jpegEncoder.encode(src.createTranslatedChild(0,
+                                                                     0));
                     }
 
-                    if(compression == COMP_NONE) {
-                        output.write(bpixels, 0, size);
-                    } else if(compression == COMP_PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             (int)bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_JPEG_TTN2) {
-                        long startPos = getOffset(output);
-
-                        // Recreate encoder and parameters if the encoder
-                        // is null (first data segment) or if its size
-                        // doesn't match the current data segment.
-                        if(jpegEncoder == null ||
-                           jpegEncodeParam.getWidth() != src.getWidth() ||
-                           jpegEncodeParam.getHeight() != src.getHeight()) {
-
-                            jpegEncodeParam =
-                                com.sun.image.codec.jpeg.JPEGCodec.
-                                getDefaultJPEGEncodeParam(src, jpegColorID);
-
-                            JPEGImageEncoder.modifyEncodeParam(jep,
-                                                               jpegEncodeParam,
-                                                               numBands);
-
-                            jpegEncoder =
-                                com.sun.image.codec.jpeg.JPEGCodec.
-                                createJPEGEncoder(output,
-                                                  jpegEncodeParam);
-                        }
-
-                        if(jpegRGBToYCbCr) {
-                            WritableRaster wRas = null;
-                            if(src instanceof WritableRaster) {
-                                wRas = (WritableRaster)src;
-                            } else {
-                                wRas = src.createCompatibleWritableRaster();
-                                wRas.setRect(src);
-                            }
-
-                            if (wRas.getMinX() != 0 || wRas.getMinY() != 0) {
-                                wRas =
-                                    wRas.createWritableTranslatedChild(0, 0);
+                    long endPos = getOffset(output);
+                    tileByteCounts[tileNum++] = endPos - startPos;
+                }
+            }
+        } else {
+            TIFFSegmentEncoder segmentEncoder =
+                new TIFFSegmentEncoder(compression, sampleModel,
+                                       tileWidth, tileHeight, bytesPerRow,
+                                       inverseFill, T4encode2D, T4PadEOLs,
+                                       encodeParam.getDeflateLevel());
+
+            // Segments are encoded sequentially by the segment threads
+            // themselves as they could otherwise wait for one another.
+            int maxTilesInFlight =
+                Math.min(encodeParam.getMaxTilesInFlight(), numTiles);
+            if(maxTilesInFlight > 1 && inSegmentTask.get() == null) {
+                // The segment encoder is disposed by writeSegments().
+                writeSegments(im, segmentEncoder,
+                              tileWidth, tileHeight, isTiled,
+                              maxTilesInFlight,
+                              compression == COMP_NONE ?
+                              null : tileByteCounts);
+            } else {
+                try {
+                    for (int row = minY; row < lastRow; row += tileHeight) {
+                        int rows = isTiled ?
+                            tileHeight : Math.min(tileHeight, lastRow - row);
+
+                        for(int col = minX; col < lastCol; col += tileWidth) {
+                            // Grab the pixels
+                            Raster src =
+                                im.getData(new Rectangle(col, row,
+                                                         tileWidth, rows));
+
+                            int numBytes =
+                                segmentEncoder.encode(src, col, row, rows,
+                                                      output);
+                            if(compression != COMP_NONE) {
+                                tileByteCounts[tileNum++] = numBytes;
                             }
-                            BufferedImage bi =
-                                new BufferedImage(colorModel, wRas,
-                                                  false, null);
-                            jpegEncoder.encode(bi);
-                        } else {
-                            jpegEncoder.encode(src.createTranslatedChild(0,
-                                                                         0));
-                        }
-
-                        long endPos = getOffset(output);
-                        tileByteCounts[tileNum++] = (int)(endPos - startPos);
-                    } else if(compression == COMP_DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
-		
-                case 16:
-
-                    int ls = 0;
-                    for (int i = 0; i < size; i++) {
-                        short value = (short)pixels[i];
-                        bpixels[ls++] = (byte)((value & 0xff00) >> 8);
-                        bpixels[ls++] = (byte)(value & 0x00ff);
-                    }
-
-                    if(compression == COMP_NONE) {
-                        output.write(bpixels, 0, size*2);
-                    } else if(compression == COMP_PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             (int)bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
-                    break;
-
-                case 32:
-                    if(dataType == DataBuffer.TYPE_INT) {
-                        int li = 0;
-                        for (int i = 0; i < size; i++) {
-                            int value = pixels[i];
-                            bpixels[li++] = (byte)((value & 0xff000000) >> 24);
-                            bpixels[li++] = (byte)((value & 0x00ff0000) >> 16);
-                            bpixels[li++] = (byte)((value & 0x0000ff00) >> 8);
-                            bpixels[li++] = (byte)(value & 0x000000ff);
                         }
-                    } else { // DataBuffer.TYPE_FLOAT
-                        int lf = 0;
-                        for (int i = 0; i < size; i++) {
-                            int value = Float.floatToIntBits(fpixels[i]);
-                            bpixels[lf++] = (byte)((value & 0xff000000) >> 24);
-                            bpixels[lf++] = (byte)((value & 0x00ff0000) >> 16);
-                            bpixels[lf++] = (byte)((value & 0x0000ff00) >> 8);
-                            bpixels[lf++] = (byte)(value & 0x000000ff);
-                        }
-                    }
-                    if(compression == COMP_NONE) {
-                        output.write(bpixels, 0, size*4);
-                    } else if(compression == COMP_PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             (int)bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if(compression == COMP_DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
                     }
-                    break;
-
+                } finally {
+                    segmentEncoder.dispose();
                 }
             }
         }
@@ -1398,13 +1104,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             }
         } else {
             // Recompute tile offsets from the size of the compressed tiles.
-            int totalBytes = 0;
+            long totalBytes = 0;
             for (int i=1; i<numTiles; i++) {
-                int numBytes = (int)tileByteCounts[i-1];
+                long numBytes = tileByteCounts[i-1];
                 totalBytes += numBytes;
                 tileOffsets[i] = tileOffsets[i-1] + numBytes;
             }
-            totalBytes += (int)tileByteCounts[numTiles-1];
+            totalBytes += tileByteCounts[numTiles-1];
+
+            checkOffset(ifdOffset + dirSize + totalBytes);
 
             nextIFDOffset = isLast ?
                 0 : ifdOffset + dirSize + totalBytes;
@@ -1452,7 +1160,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
                 // Write the image data.
                 byte[] copyBuffer = new byte[8192];
-                int bytesCopied = 0;
+                long bytesCopied = 0;
                 while(bytesCopied < totalBytes) {
                     int bytesRead = fileStream.read(copyBuffer);
                     if(bytesRead == -1) {
@@ -1500,6 +1208,193 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return nextIFDOffset;
     }
 
+    /**
+     * Writes the data segments of an image in order, fetching and
+     * encoding up to <code>maxTilesInFlight</code> of them concurrently
+     * by the segment threads.  The number of bytes of each segment is
+     * stored in <code>byteCounts</code> unless it is <code>null</code>.
+     * <code>segmentEncoder</code> and its copies made by the segment
+     * threads are disposed before returning, or as soon as a task which
+     * is still running when writing fails has finished.
+     */
+    private void writeSegments(RenderedImage im,
+                               TIFFSegmentEncoder segmentEncoder,
+                               int tileWidth, int tileHeight,
+                               boolean isTiled, int maxTilesInFlight,
+                               long[] byteCounts) throws IOException {
+        SegmentEncoderPool encoders = new SegmentEncoderPool(segmentEncoder);
+
+        ExecutorService executor = getSegmentExecutor();
+        ArrayDeque inFlight = new ArrayDeque(maxTilesInFlight);
+
+	int lastRow = im.getMinY() + im.getHeight();
+        int lastCol = im.getMinX() + im.getWidth();
+        int tileNum = 0;
+        try {
+            for (int row = im.getMinY(); row < lastRow; row += tileHeight) {
+                int rows = isTiled ?
+                    tileHeight : Math.min(tileHeight, lastRow - row);
+
+                for(int col = im.getMinX(); col < lastCol; col += tileWidth) {
+                    // Write the oldest segment to make room for this one.
+                    if(inFlight.size() == maxTilesInFlight) {
+                        writeSegment((Future)inFlight.removeFirst(),
+                                     byteCounts, tileNum++);
+                    }
+
+                    Rectangle bounds =
+                        new Rectangle(col, row, tileWidth, rows);
+                    inFlight.addLast(
+                        executor.submit(new SegmentTask(im, bounds,
+                                                        encoders)));
+                }
+            }
+
+            while(!inFlight.isEmpty()) {
+                writeSegment((Future)inFlight.removeFirst(),
+                             byteCounts, tileNum++);
+            }
+        } finally {
+            // Abandon the remaining segments if writing failed.
+            Iterator iter = inFlight.iterator();
+            while(iter.hasNext()) {
+                ((Future)iter.next()).cancel(false);
+            }
+
+            encoders.dispose();
+        }
+    }
+
+    /**
+     * Waits for an encoded segment and writes it to the output.
+     */
+    private void writeSegment(Future segment, long[] byteCounts,
+                              int tileNum) throws IOException {
+        ByteArrayOutputStream data;
+        try {
+            data = (ByteArrayOutputStream)segment.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+
+        data.writeTo(output);
+        if(byteCounts != null) {
+            byteCounts[tileNum] = data.size();
+        }
+    }
+
+    private static synchronized ExecutorService getSegmentExecutor() {
+        if(segmentExecutor == null) {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread =
+                            new Thread(r, "TIFFImageEncoder Segment Thread");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                };
+            segmentExecutor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), threadFactory);
+        }
+        return segmentExecutor;
+    }
+
+    /**
+     * The segment encoders shared by the tasks of one image, which are
+     * copied from a prototype when all of them are in use.  Once the
+     * pool is disposed the idle encoders are disposed and those still
+     * in use are disposed when they are released.
+     */
+    private static final class SegmentEncoderPool {
+
+        private final TIFFSegmentEncoder prototype;
+        private final ArrayList idle = new ArrayList();
+        private boolean disposed = false;
+
+        SegmentEncoderPool(TIFFSegmentEncoder prototype) {
+            this.prototype = prototype;
+            idle.add(prototype);
+        }
+
+        TIFFSegmentEncoder get() {
+            synchronized(this) {
+                if(!idle.isEmpty()) {
+                    return (TIFFSegmentEncoder)idle.remove(idle.size() - 1);
+                }
+            }
+            return prototype.copy();
+        }
+
+        synchronized void release(TIFFSegmentEncoder encoder) {
+            if(disposed) {
+                encoder.dispose();
+            } else {
+                idle.add(encoder);
+            }
+        }
+
+        synchronized void dispose() {
+            disposed = true;
+            for(int i = 0; i < idle.size(); i++) {
+                ((TIFFSegmentEncoder)idle.get(i)).dispose();
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * Fetches the pixels of a data segment and encodes them into memory.
+     */
+    private static final class SegmentTask implements Callable {
+
+        private final RenderedImage im;
+        private final Rectangle bounds;
+        private final SegmentEncoderPool encoders;
+
+        SegmentTask(RenderedImage im, Rectangle bounds,
+                    SegmentEncoderPool encoders) {
+            this.im = im;
+            this.bounds = bounds;
+            this.encoders = encoders;
+        }
+
+        public Object call() throws IOException {
+            TIFFSegmentEncoder encoder = encoders.get();
+
+            inSegmentTask.set(Boolean.TRUE);
+            try {
+                Raster src = im.getData(bounds);
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                encoder.encode(src, bounds.x, bounds.y, bounds.height, data);
+                return data;
+            } finally {
+                inSegmentTask.remove();
+                encoders.release(encoder);
+            }
+        }
+    }
+
+    /**
+     * Throws an <code>IOException</code> if a TIFF 6.0 stream, which is
+     * not BigTIFF, would extend beyond the given offset.
+     */
+    private void checkOffset(long endOffset) throws IOException {
+        if(!isBigTIFF && endOffset > MAX_OFFSET) {
+            throw new IOException(JaiI18N.getString("TIFFImageEncoder13"));
+        }
+    }
+
     /**
      * Calculates the size of the IFD.
      */
@@ -1507,8 +1402,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // Get the number of entries.
 	int numEntries = fields.size();
 
-        // Initialize the size excluding that of any values > 4 bytes.
-        int dirSize = 2 + numEntries*12 + 4;
+        // Initialize the size excluding that of any values > 4 bytes
+        // (BigTIFF: 8 bytes).
+        int dirSize = isBigTIFF ?
+            8 + numEntries*20 + 8 : 2 + numEntries*12 + 4;
+        int valueFieldSize = isBigTIFF ? 8 : 4;
 
         // Loop over fields adding the size of all values > 4 bytes.
         Iterator iter = fields.iterator();
@@ -1520,7 +1418,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             int valueSize = getValueSize(field);
 
             // Add any excess size.
-	    if(valueSize > 4) {
+	    if(valueSize > valueFieldSize) {
                 dirSize += valueSize;
             }
         }
@@ -1542,25 +1440,44 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             output.write('M');
         }
 
-        // Magic value
-        writeUnsignedShort(42);
-	
-	// Offset in bytes of the first IFD.
-	writeLong(8);
+        if(isBigTIFF) {
+            // Magic value, size of offsets and a reserved zero.
+            writeUnsignedShort(43);
+            writeUnsignedShort(8);
+            writeUnsignedShort(0);
+
+            // Offset in bytes of the first IFD.
+            writeLong8(16);
+        } else {
+            // Magic value
+            writeUnsignedShort(42);
+
+            // Offset in bytes of the first IFD.
+            writeLong(8);
+        }
     }
 
-    private void writeDirectory(int thisIFDOffset, SortedSet fields,
-                                int nextIFDOffset) 
+    private void writeDirectory(long thisIFDOffset, SortedSet fields,
+                                long nextIFDOffset) 
 	throws IOException {
 
 	// 2 byte count of number of directory entries (fields)
 	int numEntries = fields.size();
 
-	long offsetBeyondIFD = thisIFDOffset + 12 * numEntries + 4 + 2;
+        // BigTIFF counts, values and offsets are 8 bytes.
+        int valueFieldSize = isBigTIFF ? 8 : 4;
+
+	long offsetBeyondIFD = isBigTIFF ?
+            thisIFDOffset + 20 * numEntries + 8 + 8 :
+            thisIFDOffset + 12 * numEntries + 4 + 2;
 	ArrayList tooBig = new ArrayList();
 
 	// Write number of fields in the IFD
-	writeUnsignedShort(numEntries);
+        if(isBigTIFF) {
+            writeLong8(numEntries);
+        } else {
+            writeUnsignedShort(numEntries);
+        }
 
         Iterator iter = fields.iterator();
 	while(iter.hasNext()) {
@@ -1580,25 +1497,29 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             // ASCII-valued fields which require the total number of bytes.
 	    int count = field.getCount();
             int valueSize = getValueSize(field);
-	    writeLong(type == TIFFField.TIFF_ASCII ? valueSize : count);
+	    writeOffset(type == TIFFField.TIFF_ASCII ? valueSize : count);
 
 	    // bytes 8 - 11 the value or value offset
-	    if (valueSize > 4) {
+	    if (valueSize > valueFieldSize) {
 
 		// We need an offset as data won't fit into 4 bytes
-		writeLong(offsetBeyondIFD);
+		writeOffset(offsetBeyondIFD);
 		offsetBeyondIFD += valueSize;
 		tooBig.add(field);
 
 	    } else {
 
-		writeValuesAsFourBytes(field);		
+                // Write the value padded to the size of the field.
+		writeValues(field);
+                for (int i = valueSize; i < valueFieldSize; i++) {
+                    output.write(0);
+                }
 	    }
 
 	}
 
 	// Address of next IFD
-	writeLong(nextIFDOffset);
+	writeOffset(nextIFDOffset);
 
 	// Write the tag values that did not fit into 4 bytes
 	for (int i = 0; i < tooBig.size(); i++) {
@@ -1640,96 +1561,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         4, //  9 = slong
         8, // 10 = srational
         4, // 11 = float
-        8  // 12 = double 
+        8, // 12 = double 
+        4, // 13 = ifd
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8
+        8, // 17 = slong8
+        8  // 18 = ifd8
     };
 
-    private void writeValuesAsFourBytes(TIFFField field) throws IOException {
-
-	int dataType = field.getType();
-	int count = field.getCount();
-
-        switch (dataType) {
-	    
-	    // 8 bits
-	case TIFFField.TIFF_BYTE:
-	case TIFFField.TIFF_SBYTE:
-	case TIFFField.TIFF_UNDEFINED:
-	    byte bytes[] = field.getAsBytes();
-	
-	    for (int i=0; i<count; i++) {
-		output.write(bytes[i]);
-	    }
-
-	    for (int i = 0; i < (4 - count); i++) {
-		output.write(0);
-	    }
-
-	    break;
-
-	    // unsigned 16 bits
-	case TIFFField.TIFF_SHORT:
-	    char shorts[] = field.getAsChars();
-
-	    for (int i=0; i<count; i++) {
-		writeUnsignedShort(shorts[i]);
-	    }
-
-	    for (int i = 0; i < (2 - count); i++) {
-		writeUnsignedShort(0);
-	    }
-
-	    break;
-	    
-	    // signed 16 bits
-	case TIFFField.TIFF_SSHORT:
-	    short sshorts[] = field.getAsShorts();
-
-	    for (int i=0; i<count; i++) {
-		writeUnsignedShort(sshorts[i]);
-	    }
-
-	    for (int i = 0; i < (2 - count); i++) {
-		writeUnsignedShort(0);
-	    }
-
-	    break;
-	    
-	    // unsigned 32 bits
-	case TIFFField.TIFF_LONG:
-            writeLong(field.getAsLong(0));
-	    break;
-	    
-	    // signed 32 bits
-	case TIFFField.TIFF_SLONG:
-            writeLong(field.getAsInt(0));
-	    break;
-
-        case TIFFField.TIFF_FLOAT:
-            writeLong(Float.floatToIntBits(field.getAsFloat(0)));
-            break;
-
-        case TIFFField.TIFF_ASCII:
-            int asciiByteCount = 0;
-	    for (int i=0; i<count; i++) {
-                byte[] stringBytes = field.getAsString(i).getBytes();
-                output.write(stringBytes);
-                asciiByteCount += stringBytes.length;
-                if(stringBytes[stringBytes.length-1] != (byte)0) {
-                    output.write(0);
-                    asciiByteCount++;
-                }
-            }
-	    for (int i = 0; i < (4 - asciiByteCount); i++) {
-		output.write(0);
-	    }
-            break;
-	    
-        default:
-            throw new RuntimeException(JaiI18N.getString("TIFFImageEncoder10"));
-	}
-	
-    }
-
     private void writeValues(TIFFField field) throws IOException {
 
 	int dataType = field.getType();
@@ -1765,6 +1605,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 	    
 	    // unsigned 32 bits
 	case TIFFField.TIFF_LONG:
+	case TIFFField.TIFF_IFD:
 	    long longs[] = field.getAsLongs();
 	    for (int i=0; i<count; i++) {
 		writeLong(longs[i]);
@@ -1778,6 +1619,16 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 		writeLong(slongs[i]);
 	    }
 	    break;
+
+	    // 64 bits
+	case TIFFField.TIFF_LONG8:
+	case TIFFField.TIFF_SLONG8:
+	case TIFFField.TIFF_IFD8:
+	    long longs8[] = field.getAsLongs();
+	    for (int i=0; i<count; i++) {
+		writeLong8(longs8[i]);
+	    }
+	    break;
 		    
         case TIFFField.TIFF_FLOAT:
             float[] floats = field.getAsFloats();
@@ -1857,6 +1708,25 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         }
     }
 
+    private void writeLong8(long l) throws IOException {
+        if(isLittleEndian) {
+            writeLong(l & 0xffffffffL);
+            writeLong(l >>> 32);
+        } else {
+            writeLong(l >>> 32);
+            writeLong(l & 0xffffffffL);
+        }
+    }
+
+    // Writes a count or offset: 4 bytes, or 8 bytes in BigTIFF.
+    private void writeOffset(long l) throws IOException {
+        if(isBigTIFF) {
+            writeLong8(l);
+        } else {
+            writeLong(l);
+        }
+    }
+
     /**
      * Returns the current offset in the supplied OutputStream.
      * This method should only be used if compressing data.
@@ -1871,84 +1741,4 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             throw new IllegalStateException();
         }
     }
-
-    /**
-     * Performs PackBits compression on a tile of data.
-     */
-    private static int compressPackBits(byte[] data, int numRows,
-                                        int bytesPerRow, byte[] compData) {
-        int inOffset = 0;
-        int outOffset = 0;
-
-        for(int i = 0; i < numRows; i++) {
-            outOffset = packBits(data, inOffset, bytesPerRow,
-                                 compData, outOffset);
-            inOffset += bytesPerRow;
-        }
-
-        return outOffset;
-    }
-
-    /**
-     * Performs PackBits compression for a single buffer of data.
-     * This should be called for each row of each tile. The returned
-     * value is the offset into the output buffer after compression.
-     */
-    private static int packBits(byte[] input, int inOffset, int inCount,
-                                byte[] output, int outOffset) {
-        int inMax = inOffset + inCount - 1;
-        int inMaxMinus1 = inMax - 1;
-
-        while(inOffset <= inMax) {
-            int run = 1;
-            byte replicate = input[inOffset];
-            while(run < 127 && inOffset < inMax &&
-                  input[inOffset] == input[inOffset+1]) {
-                run++;
-                inOffset++;
-            }
-            if(run > 1) {
-                inOffset++;
-                output[outOffset++] = (byte)(-(run - 1));
-                output[outOffset++] = replicate;
-            }
-
-            run = 0;
-            int saveOffset = outOffset;
-            while(run < 128 &&
-                  ((inOffset < inMax &&
-                    input[inOffset] != input[inOffset+1]) ||
-                   (inOffset < inMaxMinus1 &&
-                    input[inOffset] != input[inOffset+2]))) {
-                run++;
-                output[++outOffset] = input[inOffset++];
-            }
-            if(run > 0) {
-                output[saveOffset] = (byte)(run - 1);
-                outOffset++;
-            }
-
-            if(inOffset == inMax) {
-                if(run > 0 && run < 128) {
-                    output[saveOffset]++;
-                    output[outOffset++] = input[inOffset++];
-                } else {
-                    output[outOffset++] = (byte)0;
-                    output[outOffset++] = input[inOffset++];
-                }
-            }
-        }
-
-        return outOffset;
-    }
-
-    private static int deflate(Deflater deflater,
-                               byte[] inflated, byte[] deflated) {
-        deflater.setInput(inflated);
-        deflater.finish();
-        int numCompressedBytes = deflater.deflate(deflated);
-        deflater.reset();
-        return numCompressedBytes;
-    }
 }
-
@@ -0,0 +1,560 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.codecimpl;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.eclipse.imagen.media.codec.TIFFEncodeParam;
+
+/**
+ * Writes the data segments, that is the strips or tiles, of an image
+ * being encoded by <code>TIFFImageEncoder</code> with any compression
+ * but JPEG.  An instance holds the buffers and compressor state needed
+ * for one segment at a time, so that segments may be encoded
+ * concurrently by one instance per thread.
+ */
+class TIFFSegmentEncoder {
+
+    // Compression types
+    private static final int COMP_NONE      =
+        TIFFEncodeParam.COMPRESSION_NONE;
+    private static final int COMP_GROUP3_1D =
+        TIFFEncodeParam.COMPRESSION_GROUP3_1D;
+    private static final int COMP_GROUP3_2D =
+        TIFFEncodeParam.COMPRESSION_GROUP3_2D;
+    private static final int COMP_GROUP4    =
+        TIFFEncodeParam.COMPRESSION_GROUP4;
+    private static final int COMP_PACKBITS  =
+        TIFFEncodeParam.COMPRESSION_PACKBITS;
+    private static final int COMP_DEFLATE   =
+        TIFFEncodeParam.COMPRESSION_DEFLATE;
+
+    private final int compression;
+    private final SampleModel sampleModel;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final long bytesPerRow;
+    private final boolean inverseFill;
+    private final boolean T4encode2D;
+    private final boolean T4PadEOLs;
+    private final int deflateLevel;
+
+    private final int sampleSize;
+    private final int numBands;
+    private final int dataType;
+
+    // Whether to test for contiguous data.
+    private final boolean checkContiguous;
+
+    private TIFFFaxEncoder faxEncoder = null;
+    private Deflater deflater = null;
+    private byte[] compressBuf = null;
+
+    // Buffer for up to tileHeight rows of pixels
+    private int[] pixels = null;
+    private float[] fpixels = null;
+
+    // Buffer to hold tileHeight lines of the data to be written to the
+    // file, so we can use array writes.
+    private byte[] bpixels = null;
+
+    /**
+     * Constructs an encoder of the data segments of images laid out
+     * according to <code>sampleModel</code>.
+     */
+    TIFFSegmentEncoder(int compression, SampleModel sampleModel,
+                       int tileWidth, int tileHeight, long bytesPerRow,
+                       boolean inverseFill, boolean T4encode2D,
+                       boolean T4PadEOLs, int deflateLevel) {
+        this.compression = compression;
+        this.sampleModel = sampleModel;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.bytesPerRow = bytesPerRow;
+        this.inverseFill = inverseFill;
+        this.T4encode2D = T4encode2D;
+        this.T4PadEOLs = T4PadEOLs;
+        this.deflateLevel = deflateLevel;
+
+        sampleSize = sampleModel.getSampleSize(0);
+        numBands = sampleModel.getNumBands();
+        dataType = sampleModel.getDataType();
+
+        checkContiguous =
+            ((sampleSize == 1 &&
+              sampleModel instanceof MultiPixelPackedSampleModel &&
+              dataType == DataBuffer.TYPE_BYTE) ||
+             (sampleSize == 8 &&
+              sampleModel instanceof ComponentSampleModel));
+
+        long bytesPerTile = bytesPerRow * tileHeight;
+
+        int bufSize = 0;
+        switch(compression) {
+        case COMP_GROUP3_1D:
+            // This initial buffer size is based on an alternating 1-0
+            // pattern generating the most bits when converted to code
+            // words: 9 bits out for each pair of bits in. So the number
+            // of bit pairs is determined, multiplied by 9, converted to
+            // bytes, and a ceil() is taken to account for fill bits at the
+            // end of each line.  The "2" addend accounts for the case
+            // of the pattern beginning with black.  The buffer is intended
+            // to hold only a single row.
+            bufSize = (int)Math.ceil((((tileWidth + 1)/2)*9 + 2)/8.0);
+            faxEncoder = new TIFFFaxEncoder(inverseFill);
+            break;
+        case COMP_GROUP3_2D:
+        case COMP_GROUP4:
+            // Calculate the maximum row as the G3-1D size plus the EOL,
+            // multiply this by the number of rows in the tile, and add
+            // 6 EOLs for the RTC (return to control).
+            bufSize = (int)Math.ceil((((tileWidth + 1)/2)*9 + 2)/8.0);
+            bufSize = tileHeight*(bufSize + 2) + 12;
+            faxEncoder = new TIFFFaxEncoder(inverseFill);
+            break;
+        case COMP_PACKBITS:
+            bufSize = (int)(bytesPerTile +
+                            ((bytesPerRow+127)/128)*tileHeight);
+            break;
+        case COMP_DEFLATE:
+            bufSize = (int)bytesPerTile;
+            deflater = new Deflater(deflateLevel);
+            break;
+        default:
+            bufSize = 0;
+        }
+        if(bufSize != 0) {
+            compressBuf = new byte[bufSize];
+        }
+
+        if(dataType == DataBuffer.TYPE_BYTE) {
+            bpixels = new byte[tileHeight * tileWidth * numBands];
+        } else if(dataType == DataBuffer.TYPE_SHORT ||
+                  dataType == DataBuffer.TYPE_USHORT) {
+            bpixels = new byte[2 * tileHeight * tileWidth * numBands];
+        } else if(dataType == DataBuffer.TYPE_INT ||
+                  dataType == DataBuffer.TYPE_FLOAT) {
+            bpixels = new byte[4 * tileHeight * tileWidth * numBands];
+        }
+    }
+
+    /**
+     * Returns a new encoder with the same parameters and buffers of its
+     * own.
+     */
+    TIFFSegmentEncoder copy() {
+        return new TIFFSegmentEncoder(compression, sampleModel,
+                                      tileWidth, tileHeight, bytesPerRow,
+                                      inverseFill, T4encode2D, T4PadEOLs,
+                                      deflateLevel);
+    }
+
+    /** Releases the resources held by the compressor. */
+    void dispose() {
+        if(deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * Writes the segment holding <code>rows</code> rows of the image
+     * starting at <code>(col, row)</code>, whose pixels are in
+     * <code>src</code>, and returns the number of bytes written.
+     */
+    int encode(Raster src, int col, int row, int rows, OutputStream output)
+        throws IOException {
+        int size = rows * tileWidth * numBands;
+
+        boolean useDataBuffer = false;
+        if(checkContiguous) {
+            if(sampleSize == 8) { // 8-bit
+                ComponentSampleModel csm =
+                    (ComponentSampleModel)src.getSampleModel();
+                int[] bankIndices = csm.getBankIndices();
+                int[] bandOffsets = csm.getBandOffsets();
+                int pixelStride = csm.getPixelStride();
+                int lineStride = csm.getScanlineStride();
+
+                if(pixelStride != numBands ||
+                   lineStride != bytesPerRow) {
+                    useDataBuffer = false;
+                } else {
+                    useDataBuffer = true;
+                    for(int i = 0;
+                        useDataBuffer && i < numBands;
+                        i++) {
+                        if(bankIndices[i] != 0 ||
+                           bandOffsets[i] != i) {
+                            useDataBuffer = false;
+                        }
+                    }
+                }
+            } else { // 1-bit
+                MultiPixelPackedSampleModel mpp =
+                    (MultiPixelPackedSampleModel)src.getSampleModel();
+                if(mpp.getNumBands() == 1 &&
+                   mpp.getDataBitOffset() == 0 &&
+                   mpp.getPixelBitStride() == 1) {
+                    useDataBuffer = true;
+                }
+            }
+        }
+
+        if(!useDataBuffer) {
+            if(dataType == DataBuffer.TYPE_FLOAT) {
+                fpixels = src.getPixels(col, row, tileWidth, rows,
+                                        fpixels);
+            } else {
+                pixels = src.getPixels(col, row, tileWidth, rows,
+                                       pixels);
+            }
+        }
+
+        int index;
+
+        int pixel = 0;
+        int k = 0;
+        switch(sampleSize) {
+
+        case 1:
+
+            if(useDataBuffer) {
+                byte[] btmp =
+                    ((DataBufferByte)src.getDataBuffer()).getData();
+                MultiPixelPackedSampleModel mpp =
+                    (MultiPixelPackedSampleModel)src.getSampleModel();
+                int lineStride = mpp.getScanlineStride();
+                int inOffset =
+                    mpp.getOffset(col -
+                                  src.getSampleModelTranslateX(),
+                                  row -
+                                  src.getSampleModelTranslateY());
+                if(lineStride == (int)bytesPerRow) {
+                    System.arraycopy(btmp, inOffset,
+                                     bpixels, 0,
+                                     (int)bytesPerRow*rows);
+                } else {
+                    int outOffset = 0;
+                    for(int j = 0; j < rows; j++) {
+                        System.arraycopy(btmp, inOffset,
+                                         bpixels, outOffset,
+                                         (int)bytesPerRow);
+                        inOffset += lineStride;
+                        outOffset += (int)bytesPerRow;
+                    }
+                }
+            } else {
+                index = 0;
+
+                // For each of the rows in a strip
+                for (int i=0; i<rows; i++) {
+
+                    // Write number of pixels exactly divisible by 8
+                    for (int j=0; j<tileWidth/8; j++) {
+
+                        pixel =
+                            (pixels[index++] << 7) |
+                            (pixels[index++] << 6) |
+                            (pixels[index++] << 5) |
+                            (pixels[index++] << 4) |
+                            (pixels[index++] << 3) |
+                            (pixels[index++] << 2) |
+                            (pixels[index++] << 1) |
+                            pixels[index++];
+                        bpixels[k++] = (byte)pixel;
+                    }
+
+                    // Write the pixels remaining after division by 8
+                    if (tileWidth%8 > 0) {
+                        pixel = 0;
+                        for (int j=0; j<tileWidth%8; j++) {
+                            pixel |= (pixels[index++] << (7 - j));
+                        }
+                        bpixels[k++] = (byte)pixel;
+                    }
+                }
+            }
+
+            if(compression == COMP_NONE) {
+                int numBytes = rows * ((tileWidth+7)/8);
+                output.write(bpixels, 0, numBytes);
+                return numBytes;
+            } else if(compression == COMP_GROUP3_1D) {
+                int rowStride = (tileWidth + 7)/8;
+                int rowOffset = 0;
+                int numCompressedBytes = 0;
+                for(int tileRow = 0; tileRow < rows; tileRow++) {
+                    int numCompressedBytesInRow =
+                        faxEncoder.encodeRLE(bpixels,
+                                             rowOffset, 0, tileWidth,
+                                             compressBuf);
+                    output.write(compressBuf,
+                                 0, numCompressedBytesInRow);
+                    rowOffset += rowStride;
+                    numCompressedBytes += numCompressedBytesInRow;
+                }
+                return numCompressedBytes;
+            } else if(compression == COMP_GROUP3_2D) {
+                int numCompressedBytes =
+                    faxEncoder.encodeT4(!T4encode2D,// 1D == !2D
+                                        T4PadEOLs,
+                                        bpixels,
+                                        (tileWidth+7)/8,
+                                        0,
+                                        tileWidth,
+                                        rows,
+                                        compressBuf);
+                output.write(compressBuf, 0, numCompressedBytes);
+                return numCompressedBytes;
+            } else if(compression == COMP_GROUP4) {
+                int numCompressedBytes =
+                    faxEncoder.encodeT6(bpixels,
+                                        (tileWidth+7)/8,
+                                        0,
+                                        tileWidth,
+                                        rows,
+                                        compressBuf);
+                output.write(compressBuf, 0, numCompressedBytes);
+                return numCompressedBytes;
+            }
+            break;
+
+        case 4:
+
+            index = 0;
+
+            // For each of the rows in a strip
+            for (int i=0; i<rows; i++) {
+
+                // Write  the number of pixels that will fit into an
+                // even number of nibbles.
+                for (int j=0; j<tileWidth/2; j++) {
+                    pixel = (pixels[index++] << 4) | pixels[index++];
+                    bpixels[k++] = (byte)pixel;
+                }
+
+                // Last pixel for odd-length lines
+                if ((tileWidth % 2) == 1) {
+                    pixel = pixels[index++] << 4;
+                    bpixels[k++] = (byte)pixel;
+                }
+            }
+
+            if(compression == COMP_NONE) {
+                int numBytes = rows * ((tileWidth+1)/2);
+                output.write(bpixels, 0, numBytes);
+                return numBytes;
+            }
+            break;
+
+        case 8:
+
+            if(useDataBuffer) {
+                byte[] btmp =
+                    ((DataBufferByte)src.getDataBuffer()).getData();
+                ComponentSampleModel csm =
+                    (ComponentSampleModel)src.getSampleModel();
+                int inOffset =
+                    csm.getOffset(col -
+                                  src.getSampleModelTranslateX(),
+                                  row -
+                                  src.getSampleModelTranslateY());
+                int lineStride = csm.getScanlineStride();
+                if(lineStride == (int)bytesPerRow) {
+                    System.arraycopy(btmp,
+                                     inOffset,
+                                     bpixels, 0,
+                                     (int)bytesPerRow*rows);
+                } else {
+                    int outOffset = 0;
+                    for(int j = 0; j < rows; j++) {
+                        System.arraycopy(btmp, inOffset,
+                                         bpixels, outOffset,
+                                         (int)bytesPerRow);
+                        inOffset += lineStride;
+                        outOffset += (int)bytesPerRow;
+                    }
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    bpixels[i] = (byte)pixels[i];
+                }
+            }
+
+            if(compression == COMP_NONE) {
+                output.write(bpixels, 0, size);
+                return size;
+            }
+            break;
+
+        case 16:
+
+            int ls = 0;
+            for (int i = 0; i < size; i++) {
+                short value = (short)pixels[i];
+                bpixels[ls++] = (byte)((value & 0xff00) >> 8);
+                bpixels[ls++] = (byte)(value & 0x00ff);
+            }
+
+            if(compression == COMP_NONE) {
+                output.write(bpixels, 0, size*2);
+                return size*2;
+            }
+            break;
+
+        case 32:
+            if(dataType == DataBuffer.TYPE_INT) {
+                int li = 0;
+                for (int i = 0; i < size; i++) {
+                    int value = pixels[i];
+                    bpixels[li++] = (byte)((value & 0xff000000) >> 24);
+                    bpixels[li++] = (byte)((value & 0x00ff0000) >> 16);
+                    bpixels[li++] = (byte)((value & 0x0000ff00) >> 8);
+                    bpixels[li++] = (byte)(value & 0x000000ff);
+                }
+            } else { // DataBuffer.TYPE_FLOAT
+                int lf = 0;
+                for (int i = 0; i < size; i++) {
+                    int value = Float.floatToIntBits(fpixels[i]);
+                    bpixels[lf++] = (byte)((value & 0xff000000) >> 24);
+                    bpixels[lf++] = (byte)((value & 0x00ff0000) >> 16);
+                    bpixels[lf++] = (byte)((value & 0x0000ff00) >> 8);
+                    bpixels[lf++] = (byte)(value & 0x000000ff);
+                }
+            }
+            if(compression == COMP_NONE) {
+                output.write(bpixels, 0, size*4);
+                return size*4;
+            }
+            break;
+
+        }
+
+        // PackBits and Deflate apply to all sample sizes.
+        if(compression == COMP_PACKBITS) {
+            int numCompressedBytes =
+                compressPackBits(bpixels, rows,
+                                 (int)bytesPerRow,
+                                 compressBuf);
+            output.write(compressBuf, 0, numCompressedBytes);
+            return numCompressedBytes;
+        } else if(compression == COMP_DEFLATE) {
+            return deflate(deflater, bpixels, compressBuf, output);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Performs PackBits compression on a tile of data.
+     */
+    private static int compressPackBits(byte[] data, int numRows,
+                                        int bytesPerRow, byte[] compData) {
+        int inOffset = 0;
+        int outOffset = 0;
+
+        for(int i = 0; i < numRows; i++) {
+            outOffset = packBits(data, inOffset, bytesPerRow,
+                                 compData, outOffset);
+            inOffset += bytesPerRow;
+        }
+
+        return outOffset;
+    }
+
+    /**
+     * Performs PackBits compression for a single buffer of data.
+     * This should be called for each row of each tile. The returned
+     * value is the offset into the output buffer after compression.
+     */
+    private static int packBits(byte[] input, int inOffset, int inCount,
+                                byte[] output, int outOffset) {
+        int inMax = inOffset + inCount - 1;
+        int inMaxMinus1 = inMax - 1;
+
+        while(inOffset <= inMax) {
+            int run = 1;
+            byte replicate = input[inOffset];
+            while(run < 127 && inOffset < inMax &&
+                  input[inOffset] == input[inOffset+1]) {
+                run++;
+                inOffset++;
+            }
+            if(run > 1) {
+                inOffset++;
+                output[outOffset++] = (byte)(-(run - 1));
+                output[outOffset++] = replicate;
+            }
+
+            run = 0;
+            int saveOffset = outOffset;
+            while(run < 128 &&
+                  ((inOffset < inMax &&
+                    input[inOffset] != input[inOffset+1]) ||
+                   (inOffset < inMaxMinus1 &&
+                    input[inOffset] != input[inOffset+2]))) {
+                run++;
+                output[++outOffset] = input[inOffset++];
+            }
+            if(run > 0) {
+                output[saveOffset] = (byte)(run - 1);
+                outOffset++;
+            }
+
+            if(inOffset == inMax) {
+                if(run > 0 && run < 128) {
+                    output[saveOffset]++;
+                    output[outOffset++] = input[inOffset++];
+                } else {
+                    output[outOffset++] = (byte)0;
+                    output[outOffset++] = input[inOffset++];
+                }
+            }
+        }
+
+        return outOffset;
+    }
+
+    /**
+     * Deflates a buffer of data to a stream, returning the number of
+     * compressed bytes written.  Data which do not compress to the size
+     * of the output buffer are written in several parts.
+     */
+    private static int deflate(Deflater deflater, byte[] inflated,
+                               byte[] deflated, OutputStream output)
+        throws IOException {
+        deflater.setInput(inflated);
+        deflater.finish();
+        int numCompressedBytes = 0;
+        while(!deflater.finished()) {
+            int numBytes = deflater.deflate(deflated);
+            output.write(deflated, 0, numBytes);
+            numCompressedBytes += numBytes;
+        }
+        deflater.reset();
+        return numCompressedBytes;
+    }
+}
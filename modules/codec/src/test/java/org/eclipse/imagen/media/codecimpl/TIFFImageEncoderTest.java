@@ -0,0 +1,232 @@
+package org.eclipse.imagen.media.codecimpl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.eclipse.imagen.media.codec.ByteArraySeekableStream;
+import org.eclipse.imagen.media.codec.ImageCodec;
+import org.eclipse.imagen.media.codec.ImageDecoder;
+import org.eclipse.imagen.media.codec.SeekableStream;
+import org.eclipse.imagen.media.codec.TIFFDirectory;
+import org.eclipse.imagen.media.codec.TIFFEncodeParam;
+import org.eclipse.imagen.media.codec.TIFFField;
+import org.junit.jupiter.api.Test;
+
+public class TIFFImageEncoderTest {
+
+  private static final int TAG_STRIP_OFFSETS = 273;
+  private static final int TAG_TILE_OFFSETS = 324;
+
+  // Private tags for the extra fields.
+  private static final int TAG_LONG8 = 65000;
+  private static final int TAG_LONG8_ARRAY = 65001;
+  private static final int TAG_IFD8 = 65002;
+  private static final int TAG_LONG = 65003;
+  private static final int TAG_ASCII = 65004;
+
+  /**
+   * The SHA-256 digests of the classic TIFF output of each case of
+   * <code>createClassicParam()</code>, as written by the encoder before
+   * BigTIFF support was added.
+   */
+  private static final String[][] CLASSIC_DIGESTS = {
+    {"gray",
+     "3d9902f43f90a77d235047e1c94728c04b5c98c653058c7eaf0846d0d5e1ff81"},
+    {"rgbPackBitsLittleEndian",
+     "c0a925045bb7b8a964df30fe4d6e046dd1164f3d94128d21cd4b4ebedb4734d6"},
+    {"rgbTiled",
+     "02df2f2bc615bfcc015d98196f3b9237b6b3156917f8420894439596e7cdb386"},
+    {"ushort",
+     "aae11398c0d38d6718116acd5a1632e75a44db9d2953847edcdaeb56a2666324"},
+    {"binary",
+     "65faf8b1b7b246305d7afa72acf754982d5488c150048bd1b6b9a14b9568a48f"},
+    {"multiPage",
+     "8779239d618806834069b27c5bd8a792640a4689414689df8635f986400913c1"},
+    {"extraFields",
+     "f2739745b361e51ec087a6245e7b445c3d92ca73a7e2f04e7f831c1d1096695b"},
+  };
+
+  private static BufferedImage createImage(int width, int height, int type) {
+    BufferedImage image = new BufferedImage(width, height, type);
+    WritableRaster raster = image.getRaster();
+    for (int b = 0; b < raster.getNumBands(); b++) {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          raster.setSample(x, y, b, (x * 37 + y * 11 + b * 101 + x * y) & 0xff);
+        }
+      }
+    }
+    return image;
+  }
+
+  private static RenderedImage createClassicImage(String name) {
+    if (name.equals("gray") || name.equals("multiPage") || name.equals("extraFields")) {
+      return createImage(13, 11, BufferedImage.TYPE_BYTE_GRAY);
+    } else if (name.equals("rgbPackBitsLittleEndian")) {
+      return createImage(13, 11, BufferedImage.TYPE_3BYTE_BGR);
+    } else if (name.equals("rgbTiled")) {
+      return createImage(48, 32, BufferedImage.TYPE_3BYTE_BGR);
+    } else if (name.equals("ushort")) {
+      return createImage(9, 7, BufferedImage.TYPE_USHORT_GRAY);
+    } else {
+      return createImage(21, 5, BufferedImage.TYPE_BYTE_BINARY);
+    }
+  }
+
+  private static TIFFEncodeParam createClassicParam(String name) {
+    TIFFEncodeParam param = new TIFFEncodeParam();
+    if (name.equals("rgbPackBitsLittleEndian")) {
+      param.setCompression(TIFFEncodeParam.COMPRESSION_PACKBITS);
+      param.setLittleEndian(true);
+    } else if (name.equals("rgbTiled")) {
+      param.setWriteTiled(true);
+      param.setTileSize(16, 16);
+    } else if (name.equals("binary")) {
+      param.setCompression(TIFFEncodeParam.COMPRESSION_PACKBITS);
+    } else if (name.equals("multiPage")) {
+      param.setExtraImages(
+          Arrays.asList(new Object[] {createImage(7, 5, BufferedImage.TYPE_3BYTE_BGR)})
+              .iterator());
+    } else if (name.equals("extraFields")) {
+      param.setExtraFields(new TIFFField[] {
+        new TIFFField(TAG_LONG, TIFFField.TIFF_LONG, 3, new long[] {1L, 2L, 0xffffffffL}),
+        new TIFFField(TAG_ASCII, TIFFField.TIFF_ASCII, 1, new String[] {"extra"})
+      });
+    }
+    return param;
+  }
+
+  private static byte[] encode(RenderedImage image, TIFFEncodeParam param) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageCodec.createImageEncoder("TIFF", out, param).encode(image);
+    return out.toByteArray();
+  }
+
+  private static String digest(byte[] data) throws NoSuchAlgorithmException {
+    StringBuffer hex = new StringBuffer();
+    byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+    for (int i = 0; i < hash.length; i++) {
+      hex.append(Integer.toHexString((hash[i] & 0xff) | 0x100).substring(1));
+    }
+    return hex.toString();
+  }
+
+  private static int readShort(byte[] data, int offset, boolean littleEndian) {
+    int b0 = data[offset] & 0xff;
+    int b1 = data[offset + 1] & 0xff;
+    return littleEndian ? b0 | (b1 << 8) : (b0 << 8) | b1;
+  }
+
+  private static void assertSamePixels(RenderedImage expected, RenderedImage actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    Raster e = expected.getData();
+    Raster a = actual.getData();
+    assertEquals(e.getNumBands(), a.getNumBands());
+    for (int b = 0; b < e.getNumBands(); b++) {
+      assertArrayEquals(
+          e.getSamples(0, 0, e.getWidth(), e.getHeight(), b, (int[]) null),
+          a.getSamples(a.getMinX(), a.getMinY(), a.getWidth(), a.getHeight(), b, (int[]) null),
+          "band " + b);
+    }
+  }
+
+  @Test
+  public void testClassicOutputIsUnchanged() throws Exception {
+    for (int i = 0; i < CLASSIC_DIGESTS.length; i++) {
+      String name = CLASSIC_DIGESTS[i][0];
+      byte[] data = encode(createClassicImage(name), createClassicParam(name));
+      assertEquals(CLASSIC_DIGESTS[i][1], digest(data), name);
+      assertEquals(42, readShort(data, 2, data[0] == 'I'), name);
+    }
+  }
+
+  @Test
+  public void testBigTIFFRoundTrip() throws Exception {
+    // Multiples of the tile size, as tiles are read from the images
+    // whole.
+    RenderedImage first = createImage(48, 32, BufferedImage.TYPE_3BYTE_BGR);
+    RenderedImage second = createImage(32, 48, BufferedImage.TYPE_BYTE_GRAY);
+    long[] offsets = {0x123456789aL, 0L, 0xfedcba9876543210L};
+    int[] compressions = {
+      TIFFEncodeParam.COMPRESSION_NONE,
+      TIFFEncodeParam.COMPRESSION_PACKBITS,
+      TIFFEncodeParam.COMPRESSION_DEFLATE
+    };
+
+    for (int le = 0; le < 2; le++) {
+      for (int tiled = 0; tiled < 2; tiled++) {
+        for (int c = 0; c < compressions.length; c++) {
+          String name = "littleEndian=" + le + " tiled=" + tiled + " compression=" + c;
+          TIFFEncodeParam param = new TIFFEncodeParam();
+          param.setBigTIFF(true);
+          param.setLittleEndian(le == 1);
+          param.setCompression(compressions[c]);
+          if (tiled == 1) {
+            param.setWriteTiled(true);
+            param.setTileSize(16, 16);
+          }
+          param.setExtraImages(Arrays.asList(new Object[] {second}).iterator());
+          param.setExtraFields(new TIFFField[] {
+            new TIFFField(TAG_LONG8, TIFFField.TIFF_LONG8, 1, new long[] {0x100000000L}),
+            new TIFFField(TAG_LONG8_ARRAY, TIFFField.TIFF_LONG8, 3, offsets),
+            new TIFFField(TAG_IFD8, TIFFField.TIFF_IFD8, 1, new long[] {0x1234567890L})
+          });
+
+          byte[] data = encode(first, param);
+
+          // The BigTIFF header: magic number 43, 8-byte offsets.
+          assertEquals(43, readShort(data, 2, le == 1), name);
+          assertEquals(8, readShort(data, 4, le == 1), name);
+          assertEquals(0, readShort(data, 6, le == 1), name);
+
+          SeekableStream stream = new ByteArraySeekableStream(data);
+          assertEquals(2, TIFFDirectory.getNumDirectories(stream), name);
+          TIFFDirectory dir0 = new TIFFDirectory(stream, 0);
+          TIFFDirectory dir1 = new TIFFDirectory(stream, 1);
+          assertTrue(dir0.isBigTIFF(), name);
+          assertEquals(le == 0, dir0.isBigEndian(), name);
+          assertEquals(dir1.getIFDOffset(), dir0.getNextIFDOffset(), name);
+          assertEquals(0L, dir1.getNextIFDOffset(), name);
+
+          int offsetTag = tiled == 1 ? TAG_TILE_OFFSETS : TAG_STRIP_OFFSETS;
+          assertEquals(TIFFField.TIFF_LONG8, dir0.getField(offsetTag).getType(), name);
+          assertEquals(TIFFField.TIFF_LONG8, dir1.getField(offsetTag).getType(), name);
+
+          TIFFField long8 = dir0.getField(TAG_LONG8);
+          assertEquals(TIFFField.TIFF_LONG8, long8.getType(), name);
+          assertEquals(0x100000000L, long8.getAsLong(0), name);
+          TIFFField long8Array = dir0.getField(TAG_LONG8_ARRAY);
+          assertEquals(TIFFField.TIFF_LONG8, long8Array.getType(), name);
+          assertArrayEquals(offsets, long8Array.getAsLongs(), name);
+          TIFFField ifd8 = dir0.getField(TAG_IFD8);
+          assertEquals(TIFFField.TIFF_IFD8, ifd8.getType(), name);
+          assertEquals(0x1234567890L, ifd8.getAsLong(0), name);
+
+          ImageDecoder decoder = ImageCodec.createImageDecoder("tiff", stream, null);
+          assertEquals(2, decoder.getNumPages(), name);
+          assertSamePixels(first, decoder.decodeAsRenderedImage(0));
+          assertSamePixels(second, decoder.decodeAsRenderedImage(1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testClassicIsDefault() throws Exception {
+    byte[] data = encode(createClassicImage("gray"), new TIFFEncodeParam());
+    assertFalse(new TIFFDirectory(new ByteArraySeekableStream(data), 0).isBigTIFF());
+  }
+}
@@ -493,7 +493,7 @@ public abstract class AreaOpImage extends OpImage {
 
                 // Make a destRectangle
                 Rectangle dstSubRect = new Rectangle(x1,y1,w,h);
-                computeRect(sources, dest, dstSubRect);
+                computeRectInStrips(sources, dest, dstSubRect);
 
                 // Recycle the source tile
                 if(s.overlapsMultipleTiles(srcSubRect)) {
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.reflect.Method;
+import java.util.Hashtable;
+import java.util.Map;
+
+/**
+ * A <code>PointOpImage</code> which computes a chain of single-source
+ * <code>PointOpImage</code>s in one pass.  Each stage of the chain is
+ * the rendering of one node; the source of this image is the source of
+ * the first stage and its layout is that of the last stage.
+ *
+ * <p> A destination rectangle is computed in strips of rows small enough
+ * for the intermediate results to remain in the processor cache.  Each
+ * stage but the last writes its strip into a scratch
+ * <code>WritableRaster</code> which is reused for all strips of the
+ * rectangle, and the last stage writes directly into the destination
+ * tile.  The stages are therefore neither asked for tiles nor do they
+ * add tiles to the cache, and their own <code>computeRect()</code>
+ * methods give exactly the same results as the unfused chain.
+ *
+ * <p> Only stages which compute their tiles by means of the
+ * <code>computeTile()</code> method of <code>PointOpImage</code> from
+ * cobbled sources, whose bounds equal those of their source, and which
+ * do not operate on the colormap may be fused.
+ *
+ * @see JAI#KEY_FUSE_POINT_OPERATIONS
+ */
+final class FusedPointOpImage extends PointOpImage {
+
+    /** The approximate number of samples in a strip of a stage. */
+    private static final int STRIP_SAMPLES = 16384;
+
+    /** Cache of the fusibility of <code>PointOpImage</code> classes. */
+    private static Hashtable fusibleClasses = new Hashtable();
+
+    /** The stages, in order of evaluation. */
+    private PointOpImage[] stages;
+
+    /**
+     * Returns an image computing <code>rendering</code> in one pass
+     * together with its source, or <code>rendering</code> itself if
+     * either is not a fusible <code>PointOpImage</code>.  If the source
+     * is itself a <code>FusedPointOpImage</code> its stages are reused.
+     *
+     * @param rendering The rendering of a node.
+     * @param configuration The configuration of the node.
+     */
+    static RenderedImage fuse(RenderedImage rendering, Map configuration) {
+        if (!isFusible(rendering)) {
+            return rendering;
+        }
+
+        PointOpImage last = (PointOpImage)rendering;
+        PlanarImage source = last.getSource(0);
+
+        PointOpImage[] sourceStages;
+        if (source instanceof FusedPointOpImage) {
+            sourceStages = ((FusedPointOpImage)source).stages;
+        } else if (isFusible(source)) {
+            sourceStages = new PointOpImage[] {(PointOpImage)source};
+        } else {
+            return rendering;
+        }
+
+        PointOpImage[] stages = new PointOpImage[sourceStages.length + 1];
+        System.arraycopy(sourceStages, 0, stages, 0, sourceStages.length);
+        stages[sourceStages.length] = last;
+
+        return new FusedPointOpImage(stages, configuration);
+    }
+
+    /**
+     * Whether an image is a single-source <code>PointOpImage</code> with
+     * the same bounds as its source which may be computed one rectangle
+     * at a time by its <code>computeRect(Raster[], WritableRaster,
+     * Rectangle)</code> method.
+     */
+    private static boolean isFusible(RenderedImage image) {
+        if (!(image instanceof PointOpImage) ||
+            image instanceof FusedPointOpImage) {
+            return false;
+        }
+
+        PointOpImage op = (PointOpImage)image;
+        if (op.getNumSources() != 1 ||
+            !op.cobbleSources ||
+            op.isColormapOperation() ||
+            !op.getBounds().equals(op.getSource(0).getBounds())) {
+            return false;
+        }
+
+        Class c = op.getClass();
+        Boolean fusible = (Boolean)fusibleClasses.get(c);
+        if (fusible == null) {
+            fusible = Boolean.valueOf(isFusibleClass(c));
+            fusibleClasses.put(c, fusible);
+        }
+        return fusible.booleanValue();
+    }
+
+    /**
+     * Whether a <code>PointOpImage</code> class inherits
+     * <code>getTile()</code> and <code>computeTile()</code> and
+     * overrides <code>computeRect(Raster[], WritableRaster,
+     * Rectangle)</code>.
+     */
+    private static boolean isFusibleClass(Class c) {
+        try {
+            Class[] tileArgs = new Class[] {int.class, int.class};
+            if (!c.getMethod("getTile", tileArgs).getDeclaringClass().equals(
+                    OpImage.class) ||
+                !c.getMethod("computeTile", tileArgs).getDeclaringClass().equals(
+                    PointOpImage.class)) {
+                return false;
+            }
+
+            Class[] rectArgs = new Class[] {Raster[].class,
+                                            WritableRaster.class,
+                                            Rectangle.class};
+            for (; c != PointOpImage.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("computeRect", rectArgs);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // Look in the superclass.
+                }
+            }
+        } catch (NoSuchMethodException e) {
+            // Not reached as the tile methods are public.
+        } catch (SecurityException e) {
+            // Do not fuse what can not be inspected.
+        }
+        return false;
+    }
+
+    /**
+     * Constructs a <code>FusedPointOpImage</code>.
+     *
+     * @param stages The stages, in order of evaluation.
+     * @param configuration The configuration of the last stage.
+     */
+    private FusedPointOpImage(PointOpImage[] stages, Map configuration) {
+        super(stages[0].getSource(0),
+              new ImageLayout(stages[stages.length - 1]),
+              configuration, true);
+
+        this.stages = stages;
+    }
+
+    /**
+     * Computes a rectangle of the last stage by computing all stages in
+     * turn for each strip of rows.
+     *
+     * @param sources The cobbled source of the first stage.
+     * @param dest The tile containing the rectangle to be computed.
+     * @param destRect The rectangle within the tile to be computed.
+     */
+    protected void computeRect(Raster[] sources,
+                               WritableRaster dest,
+                               Rectangle destRect) {
+        int numStages = stages.length;
+
+        int maxBands = 1;
+        for (int i = 0; i < numStages; i++) {
+            maxBands = Math.max(maxBands,
+                                stages[i].getSampleModel().getNumBands());
+        }
+        int stripHeight = Math.max(1, Math.min(destRect.height,
+            STRIP_SAMPLES/(destRect.width*maxBands)));
+
+        // The scratch rasters of all stages but the last.
+        Point origin = new Point(destRect.x, destRect.y);
+        WritableRaster[] scratch = new WritableRaster[numStages - 1];
+        for (int i = 0; i < numStages - 1; i++) {
+            SampleModel sm =
+                stages[i].getSampleModel().createCompatibleSampleModel(
+                    destRect.width, stripHeight);
+            scratch[i] = Raster.createWritableRaster(sm, origin);
+        }
+
+        Raster[] stageSources = new Raster[1];
+        Rectangle strip = new Rectangle(destRect.x, 0, destRect.width, 0);
+        int maxY = destRect.y + destRect.height;
+        for (int y = destRect.y; y < maxY; y += stripHeight) {
+            strip.y = y;
+            strip.height = Math.min(stripHeight, maxY - y);
+
+            stageSources[0] = sources[0];
+            for (int i = 0; i < numStages - 1; i++) {
+                WritableRaster stageDest =
+                    scratch[i].createWritableChild(destRect.x, destRect.y,
+                                                   strip.width, strip.height,
+                                                   strip.x, strip.y, null);
+                stages[i].computeRect(stageSources, stageDest, strip);
+                stageSources[0] = stageDest;
+            }
+            stages[numStages - 1].computeRect(stageSources, dest, strip);
+        }
+    }
+}
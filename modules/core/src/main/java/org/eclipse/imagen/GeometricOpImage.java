@@ -685,7 +685,7 @@ public abstract class GeometricOpImage extends OpImage {
                     source.getData(srcRect);
             }
 
-            computeRect(rasterSources, dest, destRect);
+            computeRectInStrips(rasterSources, dest, destRect);
 
             for (int i = 0; i < numSources; i++) {
                 Raster sourceData = rasterSources[i];
@@ -704,7 +704,7 @@ public abstract class GeometricOpImage extends OpImage {
             for (int i = 0; i < numSources; i++) {
                 imageSources[i] = getSource(i);
             }
-            computeRect(imageSources, dest, destRect);
+            computeRectInStrips(imageSources, dest, destRect);
         }
 
         return dest;
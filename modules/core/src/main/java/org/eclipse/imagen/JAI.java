@@ -176,6 +176,8 @@ public final class JAI {
     private static final int HINT_CACHED_TILE_RECYCLING_ENABLED = 123;
     private static final int HINT_TRANSFORM_ON_COLORMAP = 124;
     private static final int HINT_IMAGING_LISTENER = 125;
+    private static final int HINT_FUSE_POINT_OPERATIONS = 126;
+    private static final int HINT_MAP_FILES = 127;
 
     //
     // Public keys
@@ -403,7 +405,12 @@ public final class JAI {
      * Key for <code>Boolean</code> object values which specify
      * whether automatic recycling of application-visible tiles
      * should occur.  The common <code>RenderingHints</code> contain
-     * a <code>FALSE</code>-valued hint corresponding to this key.
+     * a <code>FALSE</code>-valued hint corresponding to this key.  When
+     * it is <code>TRUE</code> the tiles evicted from the tile cache are
+     * also passed to
+     * {@link RecyclingTileFactory#reclaimTile(java.awt.image.Raster)}
+     * if the <code>TileRecycler</code> is a
+     * <code>RecyclingTileFactory</code>.
      *
      * @see OpImage#OpImage(Vector,ImageLayout,Map,boolean)
      *
@@ -531,6 +538,38 @@ public final class JAI {
 	new RenderingKey(HINT_IMAGING_LISTENER,
 			 ImagingListener.class);
 
+    /**
+     * Key that indicates whether the rendering of a <code>RenderedOp</code>
+     * whose operation and whose source's operation are both rendered as
+     * single-source {@link PointOpImage}s of the same bounds computes both
+     * operations in one pass.  The intermediate images of a chain of such
+     * operations are then neither computed a tile at a time nor cached.
+     * The corresponding object must be a <code>Boolean</code>.  The
+     * common <code>RenderingHints</code> do not contain a default hint
+     * corresponding to this key.  The default behavior is equivalent to
+     * setting a hint with a value of <code>Boolean.FALSE</code>.
+     */
+    public static RenderingHints.Key KEY_FUSE_POINT_OPERATIONS =
+	new RenderingKey(HINT_FUSE_POINT_OPERATIONS,
+			 Boolean.class);
+
+    /**
+     * Key that indicates whether the "FileLoad" and "TIFF" operations
+     * read a local file through a memory mapping of it, by means of a
+     * <code>MappedFileSeekableStream</code>, rather than by system calls.
+     * The "TIFF" operation maps the file only if its source is a
+     * <code>FileSeekableStream</code>.  Mapping is not the default since
+     * the mapping takes address space for the whole file and, on some
+     * platforms, keeps the file from being deleted or truncated until it
+     * is released when the image is garbage collected.  The
+     * corresponding object must be a <code>Boolean</code>.  The common
+     * <code>RenderingHints</code> do not contain a default hint
+     * corresponding to this key.  The default behavior is equivalent to
+     * setting a hint with a value of <code>Boolean.FALSE</code>.
+     */
+    public static RenderingHints.Key KEY_MAP_FILES =
+	new RenderingKey(HINT_MAP_FILES, Boolean.class);
+
     /**
      * Initial default tile size. Applies to both dimensions.
      */
@@ -32,6 +32,7 @@ import java.util.Vector;
 
 import org.eclipse.imagen.media.util.ImageUtil;
 import org.eclipse.imagen.media.util.JDKWorkarounds;
+import org.eclipse.imagen.media.util.TileCancellation;
 
 /**
  * This is the base class for all image operations.  It provides a home
@@ -200,6 +201,12 @@ public abstract class OpImage extends PlanarImage {
      */
     public static final int OP_NETWORK_BOUND = 3;
 
+    /**
+     * The approximate number of pixels of the strips between which the
+     * computation of a tile checks whether it has been cancelled.
+     */
+    private static final int STRIP_PIXELS = 64*1024;
+
     /**
      * A constant equal to what would be returned by
      * <code>ImageLayout.getValidMask()</code> if all fields were set.
@@ -792,11 +799,15 @@ public abstract class OpImage extends PlanarImage {
      * is enabled, then invoking <code>dispose()</code> will cause each
      * of the tiles of this image currently in the cache to be passed to
      * the configured <code>TileRecycler</code></li> via
-     * {@link TileRecycler#recycleTile(Raster)}.</li>
+     * {@link TileRecycler#recycleTile(Raster)}.  If the
+     * <code>TileRecycler</code> is a {@link RecyclingTileFactory} and
+     * tile recycling is enabled, the tiles evicted from the cache are
+     * also passed to {@link RecyclingTileFactory#reclaimTile(Raster)}.</li>
      * <li> <code>JAI.KEY_CACHED_TILE_RECYCLING_ENABLED</code>: specifies a
      * <code>Boolean</code> value which indicates whether {#dispose()}
      * should pass to <code>tileRecycler.recycleTile()</code> any image
-     * tiles remaining in the cache.</li>
+     * tiles remaining in the cache, and whether the tiles evicted from
+     * the cache may be reclaimed.</li>
      * </ul>
      *
      * <p> The <code>cobbleSources</code> indicates which one of the two
@@ -1108,7 +1119,10 @@ public abstract class OpImage extends PlanarImage {
      * <p> This method attempts to retrieve the requested tile from the
      * cache.  If the tile is not currently in the cache, it schedules
      * the tile for computation and adds it to the cache once the tile
-     * has been computed.
+     * has been computed.  If the tile is computed on behalf of a
+     * <code>TileRequest</code> which has been cancelled, a
+     * <code>CancellationException</code> is thrown instead of scheduling
+     * the tile; see <code>TileCancellation</code>.
      *
      * <p> If a subclass overrides this method, then it needs to handle
      * tile caching and scheduling.  It should also override
@@ -1128,6 +1142,9 @@ public abstract class OpImage extends PlanarImage {
             tile = getTileFromCache(tileX, tileY);
 
             if (tile == null) {         // tile not in cache
+                // Do not start a tile of a cancelled request.
+                TileCancellation.checkCancelled();
+
                 try {
                     tile = scheduler.scheduleTile(this, tileX, tileY);
                 } catch (OutOfMemoryError e) {
@@ -1203,7 +1220,7 @@ public abstract class OpImage extends PlanarImage {
                 rasterSources[i] = srcRect != null && srcRect.isEmpty() ?
                     null : source.getData(srcRect);
             }
-            computeRect(rasterSources, dest, destRect);
+            computeRectInStrips(rasterSources, dest, destRect);
 
             for (int i = 0; i < numSources; i++) {
                 Raster sourceData = rasterSources[i];
@@ -1221,7 +1238,7 @@ public abstract class OpImage extends PlanarImage {
             for (int i = 0; i < numSources; i++) {
                 imageSources[i] = getSource(i);
             }
-            computeRect(imageSources, dest, destRect);
+            computeRectInStrips(imageSources, dest, destRect);
         }
 
         return dest;
@@ -1299,6 +1316,77 @@ public abstract class OpImage extends PlanarImage {
                                    JaiI18N.getString("OpImage1"));
     }
 
+    /**
+     * Calls <code>computeRect(Raster[], WritableRaster, Rectangle)</code>
+     * for <code>destRect</code>.  If the tile is computed on behalf of a
+     * request which may be cancelled, the rectangle is computed in strips
+     * of rows and <code>TileCancellation</code> is checked between them,
+     * so that a long running tile is abandoned early.
+     *
+     * @throws java.util.concurrent.CancellationException if the request
+     *         has been cancelled.
+     */
+    final void computeRectInStrips(Raster[] sources,
+                                   WritableRaster dest,
+                                   Rectangle destRect) {
+        int stripHeight = getStripHeight(destRect);
+        if (stripHeight >= destRect.height) {
+            computeRect(sources, dest, destRect);
+            return;
+        }
+
+        int maxY = destRect.y + destRect.height;
+        for (int y = destRect.y; y < maxY; y += stripHeight) {
+            if (y > destRect.y) {
+                TileCancellation.checkCancelled();
+            }
+            computeRect(sources, dest,
+                        new Rectangle(destRect.x, y, destRect.width,
+                                      Math.min(stripHeight, maxY - y)));
+        }
+    }
+
+    /**
+     * Calls <code>computeRect(PlanarImage[], WritableRaster, Rectangle)</code>
+     * for <code>destRect</code>, in strips of rows between which
+     * <code>TileCancellation</code> is checked if the tile is computed
+     * on behalf of a request which may be cancelled.
+     *
+     * @throws java.util.concurrent.CancellationException if the request
+     *         has been cancelled.
+     */
+    final void computeRectInStrips(PlanarImage[] sources,
+                                   WritableRaster dest,
+                                   Rectangle destRect) {
+        int stripHeight = getStripHeight(destRect);
+        if (stripHeight >= destRect.height) {
+            computeRect(sources, dest, destRect);
+            return;
+        }
+
+        int maxY = destRect.y + destRect.height;
+        for (int y = destRect.y; y < maxY; y += stripHeight) {
+            if (y > destRect.y) {
+                TileCancellation.checkCancelled();
+            }
+            computeRect(sources, dest,
+                        new Rectangle(destRect.x, y, destRect.width,
+                                      Math.min(stripHeight, maxY - y)));
+        }
+    }
+
+    /**
+     * Returns the number of rows of the strips in which
+     * <code>destRect</code> is computed: all of them unless the
+     * computation may be cancelled.
+     */
+    private static int getStripHeight(Rectangle destRect) {
+        if (!TileCancellation.isCancellable()) {
+            return destRect.height;
+        }
+        return Math.max(STRIP_PIXELS / Math.max(destRect.width, 1), 1);
+    }
+
     /**
      * Returns a list of indices of the tiles of a given source image
      * that may be required in order to compute a given tile.
@@ -1544,6 +1632,28 @@ public abstract class OpImage extends PlanarImage {
      * @since JAI 1.1
      */
     public TileRequest queueTiles(Point[] tileIndices) {
+        return queueTiles(tileIndices, 0, 0L);
+    }
+
+    /**
+     * Queues a list of tiles for computation with the given priority and
+     * deadline.  Registered listeners will be notified after each tile
+     * has been computed or cancelled.  The event source parameter passed
+     * to such listeners will be the <code>TileScheduler</code> and the
+     * image parameter will be this image.
+     *
+     * @param tileIndices A list of tile indices indicating which tiles
+     *        to schedule for computation.
+     * @param priority The priority of the request; higher values are
+     *        computed first.
+     * @param deadline The time as returned by
+     *        <code>System.currentTimeMillis()</code> after which the tiles
+     *        are no longer needed, or zero if there is no deadline.
+     * @throws IllegalArgumentException  If <code>tileIndices</code> is
+     *         <code>null</code>.
+     */
+    public TileRequest queueTiles(Point[] tileIndices,
+                                  int priority, long deadline) {
         if (tileIndices == null) {
 	    throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
         }
@@ -1573,7 +1683,8 @@ public abstract class OpImage extends PlanarImage {
         }
 
         // Queue the tiles to the scheduler.
-        return scheduler.scheduleTiles(this, tileIndices, tileListeners);
+        return scheduler.scheduleTiles(this, tileIndices, tileListeners,
+                                       priority, deadline);
     }
 
     /**
@@ -1967,6 +2078,17 @@ public abstract class OpImage extends PlanarImage {
         return tileRecycler;
     }
 
+    /**
+     * Returns whether cached tile recycling was enabled by means of the
+     * configuration variable
+     * <code>JAI.KEY_CACHED_TILE_RECYCLING_ENABLED</code>.  Only then are
+     * the tiles of this image evicted from a cache passed to
+     * {@link RecyclingTileFactory#reclaimTile(Raster)}.
+     */
+    public boolean isCachedTileRecyclingEnabled() {
+        return isCachedTileRecyclingEnabled;
+    }
+
     /**
      * Creates a <code>WritableRaster</code> at the given tile grid position.
      * The superclass method {@link #createWritableRaster(SampleModel,Point)}
@@ -33,11 +33,14 @@ import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.eclipse.imagen.media.util.PropertyUtil;
@@ -249,6 +252,120 @@ public class OperationRegistry implements Externalizable {
      */
     private Hashtable factories;
 
+    /**
+     * The resolved <code>FactoryOrder</code> of each descriptor under
+     * each registry mode, keyed by the <code>CaselessStringKey</code> of
+     * the mode name and then by that of the descriptor name.  A published
+     * <code>Map</code> is never modified: an order is added by publishing
+     * a copy, and every change to the descriptors, factories or
+     * preferences publishes an empty <code>Map</code> instead.  The orders
+     * may therefore be read without any lock.
+     */
+    private volatile Map factoryOrders = new HashMap();
+
+    /** The number of times <code>factoryOrders</code> was discarded. */
+    private volatile long factoryOrderVersion = 0L;
+
+    /** The lock for publishing <code>factoryOrders</code>. */
+    private final Object factoryOrderLock = new Object();
+
+    /**
+     * The factories of a descriptor registered against a registry mode
+     * in the order of the iteration returned by
+     * <code>getFactoryIterator()</code>, together with the
+     * <code>FactoryCache</code> which invokes them.  Instances are
+     * immutable.
+     */
+    static final class FactoryOrder {
+
+	/** The <code>FactoryCache</code> of the registry mode. */
+	final FactoryCache cache;
+
+	/** The unmodifiable ordered <code>List</code> of factories. */
+	final List factories;
+
+	FactoryOrder(FactoryCache cache, List factories) {
+	    this.cache = cache;
+	    this.factories =
+		Collections.unmodifiableList(new ArrayList(factories));
+	}
+    }
+
+    /**
+     * Discards all resolved factory orders.  This is invoked at the start
+     * of every method which may change the order of the factories of
+     * a descriptor.
+     */
+    private void invalidateFactoryOrders() {
+	synchronized (factoryOrderLock) {
+	    factoryOrderVersion++;
+	    factoryOrders = new HashMap();
+	}
+    }
+
+    /**
+     * Returns the resolved factory order of a descriptor under a registry
+     * mode, or <code>null</code> if it has not been resolved since the
+     * registry last changed.  No lock is taken.
+     */
+    final FactoryOrder lookupFactoryOrder(String modeName,
+					  String descriptorName) {
+
+	if ((modeName == null) || (descriptorName == null))
+	    return null;
+
+	Map modeOrders = (Map)factoryOrders.get(
+				new CaselessStringKey(modeName));
+
+	if (modeOrders == null)
+	    return null;
+
+	return (FactoryOrder)modeOrders.get(
+				new CaselessStringKey(descriptorName));
+    }
+
+    /**
+     * Returns the factory order of a descriptor under a registry mode,
+     * resolving and publishing it if necessary, or <code>null</code> if
+     * no factory is registered.
+     */
+    private FactoryOrder getFactoryOrder(String modeName,
+					 String descriptorName) {
+
+	FactoryOrder order = lookupFactoryOrder(modeName, descriptorName);
+
+	if (order != null)
+	    return order;
+
+	long version = factoryOrderVersion;
+
+	List list = resolveFactoryList(modeName, descriptorName);
+
+	if (list == null)
+	    return null;
+
+	order = new FactoryOrder(getFactoryCache(modeName), list);
+
+	synchronized (factoryOrderLock) {
+
+	    // Do not publish an order resolved before the registry changed.
+	    if (version == factoryOrderVersion) {
+		CaselessStringKey modeKey = new CaselessStringKey(modeName);
+
+		Map orders = new HashMap(factoryOrders);
+		Map modeOrders = (Map)orders.get(modeKey);
+		modeOrders = modeOrders == null ?
+		    new HashMap() : new HashMap(modeOrders);
+
+		modeOrders.put(new CaselessStringKey(descriptorName), order);
+		orders.put(modeKey, modeOrders);
+		factoryOrders = orders;
+	    }
+	}
+
+	return order;
+    }
+
     /**
      * Get the <code>FactoryCache</code> associated with a specified
      * mode. If it does not exist but the mode is a valid registry mode
@@ -314,6 +431,8 @@ public class OperationRegistry implements Externalizable {
 	// Create a Hashtable to hold a FactoryCache for each
 	// known registry mode.
 	factories   = new Hashtable();
+
+	invalidateFactoryOrders();
     }
 
     /**
@@ -631,6 +750,8 @@ public class OperationRegistry implements Externalizable {
      */
     public void removeRegistryMode(String modeName) {
 
+	invalidateFactoryOrders();
+
 	if (getDescriptorCache(modeName) != null)
 	    descriptors.remove(new CaselessStringKey(modeName));
 
@@ -685,6 +806,8 @@ public class OperationRegistry implements Externalizable {
       * @since JAI 1.1
       */
     public void registerDescriptor(RegistryElementDescriptor descriptor) {
+	invalidateFactoryOrders();
+
 	if (descriptor == null)
 	    throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
 
@@ -729,6 +852,8 @@ public class OperationRegistry implements Externalizable {
       */
     public void unregisterDescriptor(RegistryElementDescriptor descriptor) {
 
+	invalidateFactoryOrders();
+
 	if (descriptor == null)
 	    throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
 
@@ -990,6 +1115,8 @@ public class OperationRegistry implements Externalizable {
                                      String preferredProductName,
                                      String otherProductName) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 
 	if (dc != null)
@@ -1026,6 +1153,8 @@ public class OperationRegistry implements Externalizable {
                                        String preferredProductName,
                                        String otherProductName) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 
 	if (dc != null)
@@ -1052,6 +1181,8 @@ public class OperationRegistry implements Externalizable {
     public void clearProductPreferences(String modeName,
                                        String descriptorName) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 
 	if (dc != null)
@@ -1168,6 +1299,8 @@ public class OperationRegistry implements Externalizable {
                                 String productName,
                                 Object factory) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1228,6 +1361,8 @@ public class OperationRegistry implements Externalizable {
                                   String productName,
                                   Object factory) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1289,6 +1424,8 @@ public class OperationRegistry implements Externalizable {
                                      Object preferredOp,
                                      Object otherOp) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1349,6 +1486,8 @@ public class OperationRegistry implements Externalizable {
                                        Object preferredOp,
                                        Object otherOp) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1401,6 +1540,8 @@ public class OperationRegistry implements Externalizable {
                                         String descriptorName,
                                         String productName) {
 
+	invalidateFactoryOrders();
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1544,6 +1685,9 @@ public class OperationRegistry implements Externalizable {
       * <code>Iterator</code> will traverse a collection containing the
       * single factory.
       *
+      * <p> The order is resolved once and reused until the descriptors,
+      * factories or preferences of the registry next change.
+      *
       * @param modeName the registry mode name as a <code>String</code>
       * @param descriptorName the descriptor name as a <code>String</code>
       *
@@ -1562,6 +1706,22 @@ public class OperationRegistry implements Externalizable {
     public Iterator getFactoryIterator(String modeName,
                                        String descriptorName) {
 
+	FactoryOrder order = getFactoryOrder(modeName, descriptorName);
+
+	return order == null ? null : order.factories.iterator();
+    }
+
+    /**
+      * Returns a <code>List</code> of all factory objects registered
+      * with the specified mode and descriptor names in the order of the
+      * iteration returned by <code>getFactoryIterator()</code>, or
+      * <code>null</code> if there are none, sorting the products and
+      * the factories of each product according to the preferences set
+      * between them.
+      */
+    private List resolveFactoryList(String modeName,
+				    String descriptorName) {
+
 	DescriptorCache dc = getDescriptorCache(modeName);
 	FactoryCache    fc = getFactoryCache(modeName);
 
@@ -1588,13 +1748,13 @@ public class OperationRegistry implements Externalizable {
 		    list.addAll(plist);
 	    }
 
-	    return list.iterator();
+	    return list;
 
 	} else {
 	    List list = fc.getFactoryList(descriptorName, null);
 
 	    if (list != null)
-		return list.iterator();
+		return list;
 	}
 
 	return null;
@@ -1623,10 +1783,10 @@ public class OperationRegistry implements Externalizable {
       */
     public Object getFactory(String modeName, String descriptorName) {
 
-	Iterator it = getFactoryIterator(modeName, descriptorName);
+	FactoryOrder order = getFactoryOrder(modeName, descriptorName);
 
-	if ((it != null) && it.hasNext())
-	    return it.next();
+	if ((order != null) && !order.factories.isEmpty())
+	    return order.factories.get(0);
 
 	return null;
     }
@@ -1657,12 +1817,25 @@ public class OperationRegistry implements Externalizable {
                                 String descriptorName,
                                 Object[] args) {
 
-	Iterator it = getFactoryIterator(modeName, descriptorName);
+	FactoryOrder order = getFactoryOrder(modeName, descriptorName);
 
-	if (it == null)
+	if (order == null)
 	    return null;
 
-	FactoryCache fc = getFactoryCache(modeName);
+	return invokeFactory(order, descriptorName, args);
+    }
+
+    /**
+      * Invokes the factories of a resolved <code>FactoryOrder</code> in
+      * turn with the supplied parameters as described in
+      * <code>invokeFactory(String, String, Object[])</code>.
+      */
+    final Object invokeFactory(FactoryOrder order,
+			       String descriptorName,
+			       Object[] args) {
+
+	Iterator it = order.factories.iterator();
+	FactoryCache fc = order.cache;
         ImagingListener listener =
             JAI.getDefaultInstance().getImagingListener();
         Exception savedOne = null;
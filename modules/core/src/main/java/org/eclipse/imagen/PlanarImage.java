@@ -2638,6 +2638,30 @@ public abstract class PlanarImage implements ImageJAI, RenderedImage {
      * @since JAI 1.1
      */
     public TileRequest queueTiles(Point[] tileIndices) {
+        return queueTiles(tileIndices, 0, 0L);
+    }
+
+    /**
+     * Queues a list of tiles for computation with the given priority and
+     * deadline.  Registered listeners will be notified after each tile
+     * has been computed or cancelled.  This method is otherwise identical
+     * to <code>queueTiles(Point[])</code>, which uses a priority of zero
+     * and no deadline.
+     *
+     * @param tileIndices A list of tile indices indicating which tiles
+     *        to schedule for computation.
+     * @param priority The priority of the request; higher values are
+     *        computed first.
+     * @param deadline The time as returned by
+     *        <code>System.currentTimeMillis()</code> after which the tiles
+     *        are no longer needed, or zero if there is no deadline.
+     * @throws IllegalArgumentException  If <code>tileIndices</code> is
+     *         <code>null</code>.
+     *
+     * @see TileScheduler#scheduleTiles(PlanarImage,Point[],TileComputationListener[],int,long)
+     */
+    public TileRequest queueTiles(Point[] tileIndices,
+                                  int priority, long deadline) {
         if(tileIndices == null) {
             throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
         }
@@ -2645,7 +2669,9 @@ public abstract class PlanarImage implements ImageJAI, RenderedImage {
         TileComputationListener[] listeners = getTileComputationListeners();
         return JAI.getDefaultInstance().getTileScheduler().scheduleTiles(this,
                                                                   tileIndices,
-                                                                  listeners);
+                                                                  listeners,
+                                                                  priority,
+                                                                  deadline);
     }
 
     /**
@@ -860,7 +860,7 @@ public abstract class PointOpImage extends OpImage {
             Rectangle destRect = new Rectangle(destMinX, destMinY,
                                                destMaxX - destMinX,
                                                destMaxY - destMinY);
-            computeRect(sources, dest, destRect);
+            computeRectInStrips(sources, dest, destRect);
         } else if (recyclingSource0Tile && sameBounds && sameTileGrid) {
             // Recycling tile from first of layout-compatible sources.
             Raster[] sources = new Raster[numSrcs];
@@ -871,7 +871,7 @@ public abstract class PointOpImage extends OpImage {
             Rectangle destRect = new Rectangle(destMinX, destMinY,
                                                destMaxX - destMinX,
                                                destMaxY - destMinY);
-            computeRect(sources, dest, destRect);
+            computeRectInStrips(sources, dest, destRect);
         } else {
             // Clip against source bounds only if necessary.
             if (!sameBounds) {
@@ -917,7 +917,7 @@ public abstract class PointOpImage extends OpImage {
                     sources[i] = getSource(i).getTile(tileX, tileY);
                 }
 
-                computeRect(sources, dest, destRect);
+                computeRectInStrips(sources, dest, destRect);
             } else {
                 //
                 // The tileWidth and tileHeight of the source image
@@ -972,7 +972,7 @@ public abstract class PointOpImage extends OpImage {
                         subRect.y = y1;
                         subRect.width = w;
                         subRect.height = h;
-                        computeRect(sources, dest, subRect);
+                        computeRectInStrips(sources, dest, subRect);
                     }
                 }
             }
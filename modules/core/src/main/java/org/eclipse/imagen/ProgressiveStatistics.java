@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen;
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.util.Vector;
+
+/**
+ * A handle on a statistic of a <code>StatisticsOpImage</code> which is
+ * accumulated progressively as the source tiles are computed.  It is
+ * obtained from <code>StatisticsOpImage.getProgressiveStatistics()</code>;
+ * for an operation node the <code>StatisticsOpImage</code> is its
+ * rendering:
+ *
+ * <pre>
+ * RenderedOp op = JAI.create("histogram", pb);
+ * ProgressiveStatistics ps = ((StatisticsOpImage)op.getRendering())
+ *     .getProgressiveStatistics("histogram", 0.05);
+ * ps.waitForCompletion(0L);
+ * Histogram h = (Histogram)ps.getStatistics();
+ * </pre>
+ *
+ * <p> The tiles are processed by the threads of the default
+ * <code>TileScheduler</code> and this object is notified of each tile by
+ * means of the <code>TileComputationListener</code> interface.  At any
+ * time <code>getStatistics()</code> returns the statistic over the tiles
+ * processed so far.  As the tiles are processed in an order which spreads
+ * them evenly over the image, this is an estimate of the statistic of
+ * the whole image which is refined as tiles complete, and which is exact
+ * once all the tiles have been processed.
+ *
+ * <p> When only a fraction of the tiles is requested the estimate is
+ * final once they have been processed.  The error of the estimate is
+ * bounded by <code>getConfidenceBound()</code> in terms of the mean of
+ * the samples of each band, from the spread of the means of the tiles.
+ *
+ * @see StatisticsOpImage
+ */
+public final class ProgressiveStatistics {
+
+    /** The image whose statistic is accumulated. */
+    private StatisticsOpImage image;
+
+    /** The name of the statistic. */
+    private String name;
+
+    /** The indices of the tiles to process. */
+    private Point[] tileIndices;
+
+    /**
+     * The number of tiles of the image within the region of interest,
+     * of which the tiles to process may be a sample.
+     */
+    private int numImageTiles;
+
+    /** The partial statistics over the tiles processed so far. */
+    private StatisticsOpImage.PartialStatistics total;
+
+    /** The sums of the pixels of each processed tile, if known. */
+    private Vector tileSums = new Vector();
+
+    /** The claims on the tiles to process. */
+    private TileClaims claims;
+
+    /** The number of tiles processed. */
+    private int numProcessed = 0;
+
+    /** The number of tiles cancelled or whose computation failed. */
+    private int numFailed = 0;
+
+    /** The first failure to compute a tile. */
+    private Throwable failure = null;
+
+    /** The scheduled tiles. */
+    private TileRequest request;
+
+    /**
+     * Constructs a <code>ProgressiveStatistics</code> and schedules the
+     * tiles for computation.
+     */
+    ProgressiveStatistics(StatisticsOpImage image, String name,
+                          Point[] tileIndices, int numImageTiles,
+                          StatisticsOpImage.PartialStatistics total) {
+        this.image = image;
+        this.name = name;
+        this.tileIndices = tileIndices;
+        this.numImageTiles = numImageTiles;
+        this.total = total;
+        claims = new TileClaims(tileIndices);
+
+        if (tileIndices.length == 0) {
+            complete();
+            return;
+        }
+
+        TileComputationListener listener = new TileComputationListener() {
+                public void tileComputed(Object eventSource,
+                                         TileRequest[] requests,
+                                         PlanarImage image,
+                                         int tileX, int tileY,
+                                         Raster tile) {
+                    accumulate(tileX, tileY, tile);
+                }
+
+                public void tileCancelled(Object eventSource,
+                                          TileRequest[] requests,
+                                          PlanarImage image,
+                                          int tileX, int tileY) {
+                    skip(tileX, tileY, null);
+                }
+
+                public void tileComputationFailure(Object eventSource,
+                                                   TileRequest[] requests,
+                                                   PlanarImage image,
+                                                   int tileX, int tileY,
+                                                   Throwable situation) {
+                    skip(tileX, tileY, situation);
+                }
+            };
+
+        TileRequest r = JAI.getDefaultInstance().getTileScheduler()
+            .scheduleTiles(image.getSource(0), tileIndices,
+                           new TileComputationListener[] {listener});
+        synchronized (this) {
+            request = r;
+        }
+    }
+
+    /** Returns the name of the statistic. */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the statistic over the tiles processed so far, as a new
+     * object of the class of the property of the same name of the
+     * image.
+     */
+    public synchronized Object getStatistics() {
+        Object stats = image.createStatistics(name);
+        total.store(stats);
+        return stats;
+    }
+
+    /** Returns the number of tiles to process. */
+    public int getNumTiles() {
+        return tileIndices.length;
+    }
+
+    /** Returns the number of tiles processed so far. */
+    public synchronized int getNumProcessedTiles() {
+        return numProcessed;
+    }
+
+    /**
+     * Returns whether all the tiles to process have been processed,
+     * cancelled or have failed to be computed.
+     */
+    public synchronized boolean isComplete() {
+        return numProcessed + numFailed == tileIndices.length;
+    }
+
+    /**
+     * Returns whether the statistic is exact, that is whether all the
+     * tiles of the image within the region of interest have been
+     * processed.
+     */
+    public synchronized boolean isExact() {
+        return numProcessed == numImageTiles;
+    }
+
+    /**
+     * Returns the first failure to compute a tile, or <code>null</code>
+     * if there has been none.
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until all the tiles have been processed or the given number
+     * of milliseconds has elapsed and returns whether all the tiles have
+     * been processed.
+     *
+     * @param timeout  The maximum number of milliseconds to wait, or 0
+     *        to wait until all the tiles have been processed.
+     *
+     * @throws InterruptedException  If the current thread is interrupted.
+     */
+    public synchronized boolean waitForCompletion(long timeout)
+        throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (!isComplete()) {
+            if (timeout == 0L) {
+                wait();
+            } else {
+                long delay = end - System.currentTimeMillis();
+                if (delay <= 0L) {
+                    break;
+                }
+                wait(delay);
+            }
+        }
+        return isComplete();
+    }
+
+    /**
+     * Cancels the computation of the tiles which have not yet been
+     * processed.  The statistic is not refined any further.
+     */
+    public void cancel() {
+        TileRequest r;
+        synchronized (this) {
+            r = request;
+        }
+        if (r != null) {
+            JAI.getDefaultInstance().getTileScheduler().cancelTiles(r, null);
+        }
+    }
+
+    /**
+     * Returns the standard error of the mean of the samples of each band
+     * over the processed tiles as an estimate of that over the image, or
+     * <code>null</code> if it is unknown for this statistic or fewer
+     * than two tiles have been processed.  The error is zero once all the
+     * tiles of the image have been processed.
+     *
+     * <p> The tiles are taken as a sample of clusters of pixels.  The
+     * error is computed from the spread of the means of the tiles about
+     * the overall mean, weighted by their numbers of pixels, with the
+     * finite population correction.
+     */
+    public synchronized double[] getStandardError() {
+        int m = tileSums.size();
+        if (isExact()) {
+            int numBands = image.getSampleModel().getNumBands();
+            return new double[numBands];
+        } else if (m < 2) {
+            return null;
+        }
+
+        int numBands = ((double[])tileSums.get(0)).length - 1;
+        double count = 0.0;
+        double[] sum = new double[numBands];
+        for (int t = 0; t < m; t++) {
+            double[] s = (double[])tileSums.get(t);
+            count += s[0];
+            for (int b = 0; b < numBands; b++) {
+                sum[b] += s[b + 1];
+            }
+        }
+        if (count == 0.0) {
+            return null;
+        }
+
+        double meanCount = count/m;
+        double correction = 1.0 - (double)m/numImageTiles;
+        double[] error = new double[numBands];
+        for (int b = 0; b < numBands; b++) {
+            double mean = sum[b]/count;
+            double variance = 0.0;
+            for (int t = 0; t < m; t++) {
+                double[] s = (double[])tileSums.get(t);
+                double residual = s[b + 1] - mean*s[0];
+                variance += residual*residual;
+            }
+            variance /= m - 1;
+            error[b] = Math.sqrt(correction*variance/m)/meanCount;
+        }
+        return error;
+    }
+
+    /**
+     * Returns the half width of the confidence interval about the mean of
+     * the samples of each band over the processed tiles, at the given
+     * confidence level, within which the mean over the image lies.  The
+     * distribution of the estimate is taken to be normal.  Returns
+     * <code>null</code> if the standard error is unknown.
+     *
+     * @param confidence  The confidence level, for example 0.95.
+     *
+     * @throws IllegalArgumentException  If <code>confidence</code> is
+     *         not greater than 0 and less than 1.
+     */
+    public double[] getConfidenceBound(double confidence) {
+        if (!(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("ProgressiveStatistics0"));
+        }
+
+        double[] error = getStandardError();
+        if (error != null) {
+            double z = getNormalQuantile(0.5 + confidence/2.0);
+            for (int b = 0; b < error.length; b++) {
+                error[b] *= z;
+            }
+        }
+        return error;
+    }
+
+    /** Accumulates the statistic over a computed tile. */
+    private void accumulate(int tileX, int tileY, Raster tile) {
+        int index = claims.claim(tileX, tileY);
+        if (index < 0) {
+            return;
+        }
+
+        StatisticsOpImage.PartialStatistics partial;
+        try {
+            partial = image.createPartialStatistics(name);
+            partial.accumulate(image.clipTile(tile, tileIndices[index]));
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        } catch (Error e) {
+            fail(e);
+            throw e;
+        }
+
+        synchronized (this) {
+            total.merge(partial);
+            double[] sums = partial.getSums();
+            if (sums != null) {
+                tileSums.add(sums);
+            }
+            numProcessed++;
+            if (isComplete()) {
+                complete();
+            }
+            notifyAll();
+        }
+    }
+
+    /** Accounts for a tile which has been cancelled or has failed. */
+    private void skip(int tileX, int tileY, Throwable situation) {
+        if (claims.claim(tileX, tileY) >= 0) {
+            fail(situation);
+        }
+    }
+
+    private synchronized void fail(Throwable situation) {
+        if (failure == null) {
+            failure = situation;
+        }
+        numFailed++;
+        if (isComplete()) {
+            complete();
+        }
+        notifyAll();
+    }
+
+    /** Stores an exact statistic as a property of the image. */
+    private void complete() {
+        if (isExact()) {
+            image.setStatistics(name, getStatistics());
+        }
+    }
+
+    /**
+     * Returns the quantile of the standard normal distribution at
+     * probability <code>p</code>, by the rational approximation of
+     * P. J. Acklam whose relative error is less than 1.2e-9.
+     */
+    private static double getNormalQuantile(double p) {
+        final double[] a = {-3.969683028665376e+01,  2.209460984245205e+02,
+                            -2.759285104469687e+02,  1.383577518672690e+02,
+                            -3.066479806614716e+01,  2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01,  1.615858368580409e+02,
+                            -1.556989798598866e+02,  6.680131188771972e+01,
+                            -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01,
+                            -2.400758277161838e+00, -2.549732539343734e+00,
+                             4.374664141464968e+00,  2.938163982698783e+00};
+        final double[] d = { 7.784695709041462e-03,  3.224671290700398e-01,
+                             2.445134137142996e+00,  3.754408661907416e+00};
+
+        if (p < 0.02425) {
+            double q = Math.sqrt(-2.0*Math.log(p));
+            return (((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5]) /
+                ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1.0);
+        } else if (p > 1.0 - 0.02425) {
+            double q = Math.sqrt(-2.0*Math.log(1.0 - p));
+            return -(((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5]) /
+                ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1.0);
+        } else {
+            double q = p - 0.5;
+            double r = q*q;
+            return (((((a[0]*r + a[1])*r + a[2])*r + a[3])*r + a[4])*r + a[5])*q /
+                (((((b[0]*r + b[1])*r + b[2])*r + b[3])*r + b[4])*r + 1.0);
+        }
+    }
+}
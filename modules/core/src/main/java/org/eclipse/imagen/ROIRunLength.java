@@ -0,0 +1,1085 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import org.eclipse.imagen.media.util.ImageUtil;
+
+/**
+ * A class representing a region of interest as runs of pixels along
+ * each row.  The runs of a row are held as an array of the X
+ * coordinates at which each run starts and ends, in increasing order,
+ * so that the storage is proportional to the length of the boundary
+ * of the region rather than to its area.
+ *
+ * <p> Queries on a rectangle examine only the runs of the rows it
+ * covers, and the union, intersection, difference and exclusive or of
+ * two <code>ROIRunLength</code>s merge their runs row by row in time
+ * proportional to the number of runs.  An <code>ROI</code> of another
+ * class given to these operations is first converted.  The
+ * <code>getCoverage()</code> method tells whether a rectangle such as a
+ * tile lies entirely outside the region, entirely inside it or
+ * partially inside it, so that operations may skip or copy whole
+ * tiles.
+ *
+ * <p> An <code>ROIRunLength</code> is immutable.  Its image
+ * representation is created when first requested and
+ * <code>getAsShape()</code> returns <code>null</code>.
+ *
+ * @see ROI
+ * @see ROIShape
+ */
+public class ROIRunLength extends ROI {
+
+    /** The value of <code>getCoverage()</code> for a rectangle none of
+        whose pixels lie within the region. */
+    public static final int OUTSIDE = 0;
+
+    /** The value of <code>getCoverage()</code> for a rectangle all of
+        whose pixels lie within the region. */
+    public static final int INSIDE = 1;
+
+    /** The value of <code>getCoverage()</code> for a rectangle some but
+        not all of whose pixels lie within the region. */
+    public static final int PARTIAL = 2;
+
+    // The operations merging the runs of two rows.
+    private static final int OP_ADD = 0;
+    private static final int OP_SUBTRACT = 1;
+    private static final int OP_INTERSECT = 2;
+    private static final int OP_XOR = 3;
+
+    /** The runs of a row with no pixel in the region. */
+    private static final int[] NO_RUNS = new int[0];
+
+    /** The number of rows of another ROI converted at a time. */
+    private static final int STRIP_HEIGHT = 64;
+
+    /** The flatness of the curves of a Shape converted to runs. */
+    private static final double FLATNESS = 0.1;
+
+    /** The Y coordinate of the first row. */
+    private final int minY;
+
+    /**
+     * The runs of each row, starting at <code>minY</code>.  The pixels
+     * of a row from <code>runs[2*k]</code> inclusive to
+     * <code>runs[2*k + 1]</code> exclusive lie in the region.  The runs
+     * neither overlap nor abut and the arrays are never modified.
+     */
+    private final int[][] rows;
+
+    /** The bounds of the pixels in the region. */
+    private final Rectangle bounds;
+
+    /**
+     * Constructs an <code>ROIRunLength</code> from a single band
+     * <code>RenderedImage</code>.  The pixels whose value is greater
+     * than or equal to <code>threshold</code> lie in the region.  As for
+     * <code>ROI</code>, a binary image with a positive threshold is
+     * taken to include its non-zero pixels.  The image is read tile by
+     * tile.
+     *
+     * @param im A single band <code>RenderedImage</code>.
+     * @param threshold The inclusion threshold.
+     *
+     * @throws IllegalArgumentException if <code>im</code> is
+     *         <code>null</code> or has more than one band.
+     */
+    public ROIRunLength(RenderedImage im, int threshold) {
+        this(scanImage(im, threshold, null));
+    }
+
+    /**
+     * Constructs an <code>ROIRunLength</code> from a <code>Shape</code>.
+     * A pixel lies in the region if its center lies inside the
+     * <code>Shape</code> according to the winding rule of its path, as
+     * when the <code>Shape</code> is filled without antialiasing.  The
+     * runs are found directly from the edges of the <code>Shape</code>
+     * without rendering it.
+     *
+     * @param s A <code>Shape</code>.
+     *
+     * @throws IllegalArgumentException if <code>s</code> is
+     *         <code>null</code>.
+     */
+    public ROIRunLength(Shape s) {
+        this(scanShape(s));
+    }
+
+    /**
+     * Constructs an <code>ROIRunLength</code> holding the same pixels as
+     * another <code>ROI</code>.
+     *
+     * @param roi An <code>ROI</code>.
+     *
+     * @throws IllegalArgumentException if <code>roi</code> is
+     *         <code>null</code>.
+     */
+    public ROIRunLength(ROI roi) {
+        this(scanROI(roi, null));
+    }
+
+    /**
+     * Constructs an <code>ROIRunLength</code> holding the pixels of
+     * another <code>ROI</code> which lie within a rectangle.  Only that
+     * part of the other <code>ROI</code> is examined.
+     *
+     * @param roi An <code>ROI</code>.
+     * @param clip The rectangle outside which pixels are excluded.
+     *
+     * @throws IllegalArgumentException if <code>roi</code> or
+     *         <code>clip</code> is <code>null</code>.
+     */
+    public ROIRunLength(ROI roi, Rectangle clip) {
+        this(scanROI(roi, checkNotNull(clip)));
+    }
+
+    private ROIRunLength(Rows rows) {
+        this(rows.minY, rows.toArray());
+    }
+
+    /**
+     * Constructs an <code>ROIRunLength</code> from the runs of
+     * consecutive rows, dropping any empty rows at either end.
+     */
+    private ROIRunLength(int minY, int[][] rows) {
+        int first = 0;
+        int last = rows.length;
+        while (first < last && rows[first].length == 0) {
+            first++;
+        }
+        while (last > first && rows[last - 1].length == 0) {
+            last--;
+        }
+        if (first > 0 || last < rows.length) {
+            int[][] trimmed = new int[last - first][];
+            System.arraycopy(rows, first, trimmed, 0, last - first);
+            rows = trimmed;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            int[] runs = rows[i];
+            if (runs.length > 0) {
+                minX = Math.min(minX, runs[0]);
+                maxX = Math.max(maxX, runs[runs.length - 1]);
+            }
+        }
+
+        this.minY = minY + first;
+        this.rows = rows;
+        this.bounds = rows.length == 0 ?
+            new Rectangle() :
+            new Rectangle(minX, this.minY, maxX - minX, rows.length);
+    }
+
+    private static Rectangle checkNotNull(Rectangle clip) {
+        if (clip == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+        return clip;
+    }
+
+    /**
+     * Finds the runs of the pixels of an image within a region whose
+     * value is at least a threshold.
+     */
+    private static Rows scanImage(RenderedImage im, int threshold,
+                                  Rectangle region) {
+        if (im == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        SampleModel sm = im.getSampleModel();
+        if (sm.getNumBands() != 1) {
+            throw new IllegalArgumentException(JaiI18N.getString("ROI0"));
+        }
+        if (threshold >= 1 && ImageUtil.isBinary(sm)) {
+            threshold = 1;
+        }
+
+        Rectangle r = new Rectangle(im.getMinX(), im.getMinY(),
+                                    im.getWidth(), im.getHeight());
+        if (region != null) {
+            r = r.intersection(region);
+        }
+        if (r.isEmpty()) {
+            return new Rows(r.y, 0);
+        }
+        Rows rows = new Rows(r.y, r.height);
+
+        int tileWidth = im.getTileWidth();
+        int tileHeight = im.getTileHeight();
+        int xOffset = im.getTileGridXOffset();
+        int yOffset = im.getTileGridYOffset();
+        int txMin = PlanarImage.XToTileX(r.x, xOffset, tileWidth);
+        int txMax = PlanarImage.XToTileX(r.x + r.width - 1,
+                                         xOffset, tileWidth);
+        int tyMin = PlanarImage.YToTileY(r.y, yOffset, tileHeight);
+        int tyMax = PlanarImage.YToTileY(r.y + r.height - 1,
+                                         yOffset, tileHeight);
+
+        Raster[] tiles = new Raster[txMax - txMin + 1];
+        int[] samples = new int[Math.min(tileWidth, r.width)];
+        for (int ty = tyMin; ty <= tyMax; ty++) {
+            for (int tx = txMin; tx <= txMax; tx++) {
+                tiles[tx - txMin] = im.getTile(tx, ty);
+            }
+
+            int y0 = PlanarImage.tileYToY(ty, yOffset, tileHeight);
+            int yStart = Math.max(r.y, y0);
+            int yEnd = Math.min(r.y + r.height, y0 + tileHeight);
+            for (int y = yStart; y < yEnd; y++) {
+                for (int tx = txMin; tx <= txMax; tx++) {
+                    int x0 = PlanarImage.tileXToX(tx, xOffset, tileWidth);
+                    int xStart = Math.max(r.x, x0);
+                    int xEnd = Math.min(r.x + r.width, x0 + tileWidth);
+                    tiles[tx - txMin].getSamples(xStart, y, xEnd - xStart, 1,
+                                                 0, samples);
+
+                    // Runs continuing into the next tile are joined
+                    // by Rows.add().
+                    int start = -1;
+                    for (int i = 0; i < xEnd - xStart; i++) {
+                        if (samples[i] >= threshold) {
+                            if (start < 0) {
+                                start = xStart + i;
+                            }
+                        } else if (start >= 0) {
+                            rows.add(y, start, xStart + i);
+                            start = -1;
+                        }
+                    }
+                    if (start >= 0) {
+                        rows.add(y, start, xEnd);
+                    }
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Finds the runs of the pixels whose center lies inside a
+     * <code>Shape</code> by intersecting the center line of each row
+     * with the edges of the flattened path.
+     */
+    private static Rows scanShape(Shape s) {
+        if (s == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        // The rows whose center lies within the bounds.
+        Rectangle2D b = s.getBounds2D();
+        int yMin = (int)Math.ceil(b.getMinY() - 0.5);
+        int yMax = (int)Math.ceil(b.getMaxY() - 0.5);
+        if (yMax <= yMin) {
+            return new Rows(yMin, 0);
+        }
+
+        // Each edge is {top, bottom, x at top, dx/dy, direction}.
+        ArrayList edges = new ArrayList();
+        PathIterator pi = s.getPathIterator(null, FLATNESS);
+        boolean evenOdd = pi.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        double[] coords = new double[6];
+        double startX = 0.0, startY = 0.0, lastX = 0.0, lastY = 0.0;
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                // A filled path is implicitly closed.
+                addEdge(edges, lastX, lastY, startX, startY);
+                startX = lastX = coords[0];
+                startY = lastY = coords[1];
+                break;
+            case PathIterator.SEG_LINETO:
+                addEdge(edges, lastX, lastY, coords[0], coords[1]);
+                lastX = coords[0];
+                lastY = coords[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                addEdge(edges, lastX, lastY, startX, startY);
+                lastX = startX;
+                lastY = startY;
+                break;
+            }
+            pi.next();
+        }
+        addEdge(edges, lastX, lastY, startX, startY);
+
+        Collections.sort(edges, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return Double.compare(((double[])o1)[0], ((double[])o2)[0]);
+            }
+        });
+
+        Rows rows = new Rows(yMin, yMax - yMin);
+        int numEdges = edges.size();
+        double[][] active = new double[numEdges][];
+        double[] crossings = new double[numEdges];
+        int[] directions = new int[numEdges];
+        int numActive = 0;
+        int next = 0;
+        for (int y = yMin; y < yMax; y++) {
+            double center = y + 0.5;
+
+            // Update the edges crossing the center line of the row.
+            while (next < numEdges &&
+                   ((double[])edges.get(next))[0] <= center) {
+                active[numActive++] = (double[])edges.get(next++);
+            }
+            int n = 0;
+            for (int i = 0; i < numActive; i++) {
+                if (active[i][1] > center) {
+                    active[n++] = active[i];
+                }
+            }
+            numActive = n;
+
+            // Sort the crossings by insertion as there are usually few.
+            for (int i = 0; i < numActive; i++) {
+                double[] e = active[i];
+                double x = e[2] + (center - e[0])*e[3];
+                int j = i;
+                while (j > 0 && crossings[j - 1] > x) {
+                    crossings[j] = crossings[j - 1];
+                    directions[j] = directions[j - 1];
+                    j--;
+                }
+                crossings[j] = x;
+                directions[j] = (int)e[4];
+            }
+
+            // A pixel is inside if its center is at or after an entering
+            // crossing and before the next leaving one.
+            int winding = 0;
+            int start = 0;
+            for (int i = 0; i < numActive; i++) {
+                boolean wasInside =
+                    evenOdd ? (winding & 1) != 0 : winding != 0;
+                winding += directions[i];
+                boolean isInside =
+                    evenOdd ? (winding & 1) != 0 : winding != 0;
+                if (isInside && !wasInside) {
+                    start = (int)Math.ceil(crossings[i] - 0.5);
+                } else if (wasInside && !isInside) {
+                    int end = (int)Math.ceil(crossings[i] - 0.5);
+                    if (end > start) {
+                        rows.add(y, start, end);
+                    }
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /** Adds a non-horizontal line segment to a list of edges. */
+    private static void addEdge(ArrayList edges,
+                                double x0, double y0,
+                                double x1, double y1) {
+        if (y0 == y1) {
+            return;
+        }
+        double slope = (x1 - x0)/(y1 - y0);
+        if (y0 < y1) {
+            edges.add(new double[] {y0, y1, x0, slope, 1.0});
+        } else {
+            edges.add(new double[] {y1, y0, x1, slope, -1.0});
+        }
+    }
+
+    /**
+     * Finds the runs of the pixels of another <code>ROI</code> within a
+     * rectangle, or within its bounds if the rectangle is
+     * <code>null</code>.
+     */
+    private static Rows scanROI(ROI roi, Rectangle clip) {
+        if (roi == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        Rectangle region = roi.getBounds();
+        if (clip != null) {
+            region = region.intersection(clip);
+        }
+        if (region.isEmpty()) {
+            return new Rows(region.y, 0);
+        }
+
+        // An ROI of the base class holds a binary image.
+        if (roi.getClass() == ROI.class) {
+            return scanImage(roi.getAsImage(), 1, region);
+        }
+
+        Rows rows = new Rows(region.y, region.height);
+        int xEnd = region.x + region.width;
+        int yEnd = region.y + region.height;
+
+        if (roi instanceof ROIRunLength) {
+            ROIRunLength rl = (ROIRunLength)roi;
+            for (int y = region.y; y < yEnd; y++) {
+                int[] runs = rl.getRuns(y);
+                for (int k = findRun(runs, region.x);
+                     k < runs.length && runs[k] < xEnd; k += 2) {
+                    rows.add(y, Math.max(runs[k], region.x),
+                             Math.min(runs[k + 1], xEnd));
+                }
+            }
+            return rows;
+        }
+
+        // Convert a strip of rows at a time so that an ROI holding an
+        // image does not copy all of it at once.
+        for (int y = region.y; y < yEnd; y += STRIP_HEIGHT) {
+            Rectangle strip =
+                new Rectangle(region.x, y,
+                              region.width, Math.min(STRIP_HEIGHT, yEnd - y));
+            LinkedList rectList =
+                roi.getAsRectangleList(strip.x, strip.y,
+                                       strip.width, strip.height, false);
+            if (rectList == null) {
+                continue;
+            }
+
+            ListIterator it = rectList.listIterator(0);
+            while (it.hasNext()) {
+                Rectangle rect = strip.intersection((Rectangle)it.next());
+                if (!rect.isEmpty()) {
+                    for (int j = rect.y; j < rect.y + rect.height; j++) {
+                        rows.add(j, rect.x, rect.x + rect.width);
+                    }
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns the runs of a row.  The array is that held by this
+     * object and must not be modified.
+     */
+    int[] getRuns(int y) {
+        int i = y - minY;
+        return i >= 0 && i < rows.length ? rows[i] : NO_RUNS;
+    }
+
+    /**
+     * Returns the index in the runs of a row of the start of the first
+     * run ending after a given X coordinate, or the length of the runs
+     * if there is none.
+     */
+    static int findRun(int[] runs, int x) {
+        int lo = 0;
+        int hi = runs.length/2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runs[2*mid + 1] > x) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return 2*lo;
+    }
+
+    /** Returns the bounds of the ROI as a <code>Rectangle</code>. */
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /** Returns the bounds of the ROI as a <code>Rectangle2D</code>. */
+    public Rectangle2D getBounds2D() {
+        return new Rectangle2D.Float((float)bounds.x, (float)bounds.y,
+                                     (float)bounds.width,
+                                     (float)bounds.height);
+    }
+
+    /**
+     * Returns <code>true</code> if the ROI contains the point (x, y).
+     *
+     * @param x An int specifying the X coordinate of the pixel to be queried.
+     * @param y An int specifying the Y coordinate of the pixel to be queried.
+     * @return <code>true</code> if the pixel lies within the ROI.
+     */
+    public boolean contains(int x, int y) {
+        int[] runs = getRuns(y);
+        int k = findRun(runs, x);
+        return k < runs.length && runs[k] <= x;
+    }
+
+    /**
+     * Returns <code>true</code> if a given <code>Rectangle</code> is
+     * entirely included within the ROI.
+     *
+     * @param rect A <code>Rectangle</code> specifying the region to be tested
+     *        for inclusion.
+     * @throws IllegalArgumentException if rect is null.
+     * @return <code>true</code> if the rectangle is entirely
+     *         contained within the ROI.
+     */
+    public boolean contains(Rectangle rect) {
+        return getCoverage(rect) == INSIDE;
+    }
+
+    /**
+     * Returns <code>true</code> if a given <code>Rectangle</code>
+     * intersects the ROI.
+     *
+     * @param rect A <code>Rectangle</code> specifying the region to be tested
+     *        for inclusion.
+     * @throws IllegalArgumentException if rect is null.
+     * @return <code>true</code> if the rectangle intersects the ROI.
+     */
+    public boolean intersects(Rectangle rect) {
+        return getCoverage(rect) != OUTSIDE;
+    }
+
+    /**
+     * Returns whether the pixels of a rectangle lie outside, inside or
+     * partially inside the ROI.  Only the runs of the rows of the
+     * rectangle are examined, and the examination stops as soon as the
+     * rectangle is known to be partially inside.
+     *
+     * @param rect A <code>Rectangle</code>.
+     * @throws IllegalArgumentException if rect is null.
+     * @return <code>OUTSIDE</code> if no pixel of the rectangle lies
+     *         within the ROI, including if it is empty,
+     *         <code>INSIDE</code> if all of them do and
+     *         <code>PARTIAL</code> otherwise.
+     */
+    public int getCoverage(Rectangle rect) {
+        if (rect == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        if (rect.isEmpty() || !bounds.intersects(rect)) {
+            return OUTSIDE;
+        }
+
+        int xEnd = rect.x + rect.width;
+        int yStart = Math.max(rect.y, bounds.y);
+        int yEnd = Math.min(rect.y + rect.height, bounds.y + bounds.height);
+        boolean isAnyInside = false;
+        boolean isAnyOutside = !bounds.contains(rect);
+        for (int y = yStart; y < yEnd; y++) {
+            int[] runs = getRuns(y);
+            int k = findRun(runs, rect.x);
+            if (k < runs.length && runs[k] < xEnd) {
+                isAnyInside = true;
+                if (runs[k] > rect.x || runs[k + 1] < xEnd) {
+                    isAnyOutside = true;
+                }
+            } else {
+                isAnyOutside = true;
+            }
+            if (isAnyInside && isAnyOutside) {
+                return PARTIAL;
+            }
+        }
+
+        return isAnyInside ? INSIDE : OUTSIDE;
+    }
+
+    /**
+     * Adds another <code>ROI</code> to this one and returns the result
+     * as a new <code>ROIRunLength</code>.  The supplied
+     * <code>ROI</code> is converted if it is not an
+     * <code>ROIRunLength</code>.
+     *
+     * @param roi An ROI.
+     * @throws IllegalArgumentException if roi is null.
+     * @return A new ROIRunLength containing the new ROI data.
+     */
+    public ROI add(ROI roi) {
+        return combine(roi, OP_ADD);
+    }
+
+    /**
+     * Subtracts another <code>ROI</code> from this one and returns the
+     * result as a new <code>ROIRunLength</code>.  The supplied
+     * <code>ROI</code> is converted within the bounds of this one if it
+     * is not an <code>ROIRunLength</code>.
+     *
+     * @param roi An ROI.
+     * @throws IllegalArgumentException if roi is null.
+     * @return A new ROIRunLength containing the new ROI data.
+     */
+    public ROI subtract(ROI roi) {
+        return combine(roi, OP_SUBTRACT);
+    }
+
+    /**
+     * Intersects another <code>ROI</code> with this one and returns the
+     * result as a new <code>ROIRunLength</code>.  The supplied
+     * <code>ROI</code> is converted within the bounds of this one if it
+     * is not an <code>ROIRunLength</code>.
+     *
+     * @param roi An ROI.
+     * @throws IllegalArgumentException if roi is null.
+     * @return A new ROIRunLength containing the new ROI data.
+     */
+    public ROI intersect(ROI roi) {
+        return combine(roi, OP_INTERSECT);
+    }
+
+    /**
+     * Exclusive-ors another <code>ROI</code> with this one and returns
+     * the result as a new <code>ROIRunLength</code>.  The supplied
+     * <code>ROI</code> is converted if it is not an
+     * <code>ROIRunLength</code>.
+     *
+     * @param roi An ROI.
+     * @throws IllegalArgumentException if roi is null.
+     * @return A new ROIRunLength containing the new ROI data.
+     */
+    public ROI exclusiveOr(ROI roi) {
+        return combine(roi, OP_XOR);
+    }
+
+    /** Merges the runs of this ROI with those of another row by row. */
+    private ROIRunLength combine(ROI roi, int op) {
+        if (roi == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        // Pixels outside this ROI do not matter to the result of a
+        // subtraction or an intersection.
+        ROIRunLength other;
+        if (roi instanceof ROIRunLength) {
+            other = (ROIRunLength)roi;
+        } else if (op == OP_SUBTRACT || op == OP_INTERSECT) {
+            other = new ROIRunLength(roi, bounds);
+        } else {
+            other = new ROIRunLength(roi);
+        }
+
+        int yStart, yEnd;
+        switch (op) {
+        case OP_SUBTRACT:
+            yStart = minY;
+            yEnd = minY + rows.length;
+            break;
+        case OP_INTERSECT:
+            yStart = Math.max(minY, other.minY);
+            yEnd = Math.min(minY + rows.length,
+                            other.minY + other.rows.length);
+            break;
+        default:
+            if (rows.length == 0) {
+                return other;
+            } else if (other.rows.length == 0) {
+                return this;
+            }
+            yStart = Math.min(minY, other.minY);
+            yEnd = Math.max(minY + rows.length,
+                            other.minY + other.rows.length);
+        }
+
+        int[][] result = new int[Math.max(0, yEnd - yStart)][];
+        for (int y = yStart; y < yEnd; y++) {
+            result[y - yStart] = combine(getRuns(y), other.getRuns(y), op);
+        }
+        return new ROIRunLength(yStart, result);
+    }
+
+    /**
+     * Merges the runs of two rows by sweeping over the starts and ends
+     * of both in order.
+     */
+    private static int[] combine(int[] a, int[] b, int op) {
+        if (b.length == 0) {
+            return op == OP_INTERSECT ? NO_RUNS : a;
+        } else if (a.length == 0) {
+            return op == OP_ADD || op == OP_XOR ? b : NO_RUNS;
+        }
+
+        int[] result = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        boolean inA = false;
+        boolean inB = false;
+        boolean inResult = false;
+        while (i < a.length || j < b.length) {
+            int x = Math.min(i < a.length ? a[i] : Integer.MAX_VALUE,
+                             j < b.length ? b[j] : Integer.MAX_VALUE);
+            if (i < a.length && a[i] == x) {
+                inA = !inA;
+                i++;
+            }
+            if (j < b.length && b[j] == x) {
+                inB = !inB;
+                j++;
+            }
+
+            boolean in;
+            switch (op) {
+            case OP_ADD:
+                in = inA || inB;
+                break;
+            case OP_SUBTRACT:
+                in = inA && !inB;
+                break;
+            case OP_INTERSECT:
+                in = inA && inB;
+                break;
+            default:
+                in = inA != inB;
+            }
+
+            if (in != inResult) {
+                result[n++] = x;
+                inResult = in;
+            }
+        }
+
+        if (n == 0) {
+            return NO_RUNS;
+        } else if (n < result.length) {
+            int[] trimmed = new int[n];
+            System.arraycopy(result, 0, trimmed, 0, n);
+            result = trimmed;
+        }
+        return result;
+    }
+
+    /**
+     * Performs an affine transformation and returns the result as a new
+     * ROI.  A translation by whole pixels moves the runs and returns a
+     * new <code>ROIRunLength</code>; any other transformation is
+     * performed on the image of the ROI by an "Affine" RIF using
+     * nearest neighbor interpolation.
+     *
+     * @param at an AffineTransform specifying the transformation.
+     * @throws IllegalArgumentException if at is null.
+     * @return a new ROI containing the transformed ROI data.
+     */
+    public ROI transform(AffineTransform at) {
+        if (at == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        int type = at.getType();
+        double tx = at.getTranslateX();
+        double ty = at.getTranslateY();
+        if ((type == AffineTransform.TYPE_IDENTITY ||
+             type == AffineTransform.TYPE_TRANSLATION) &&
+            tx == (int)tx && ty == (int)ty) {
+            int dx = (int)tx;
+            int[][] moved = new int[rows.length][];
+            for (int i = 0; i < rows.length; i++) {
+                int[] runs = rows[i];
+                moved[i] = runs.length == 0 ? NO_RUNS : new int[runs.length];
+                for (int k = 0; k < runs.length; k++) {
+                    moved[i][k] = runs[k] + dx;
+                }
+            }
+            return new ROIRunLength(minY + (int)ty, moved);
+        }
+
+        return super.transform(at);
+    }
+
+    /**
+     * Returns a <code>PlanarImage</code> representation of the
+     * <code>ROI</code>.  The image is a bilevel image covering the bounds
+     * of the ROI, or a single excluded pixel if the ROI is empty, and is
+     * created when first requested.
+     *
+     * @return The <code>ROI</code> as a <code>PlanarImage</code>.
+     */
+    public PlanarImage getAsImage() {
+        if (theImage != null) {
+            return theImage;
+        }
+
+        Rectangle r = bounds.isEmpty() ?
+            new Rectangle(bounds.x, bounds.y, 1, 1) : bounds;
+        SampleModel sm =
+            new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE,
+                                            r.width, r.height, 1);
+        TiledImage ti = new TiledImage(r.x, r.y, r.width, r.height,
+                                       r.x, r.y,
+                                       sm, PlanarImage.createColorModel(sm));
+
+        WritableRaster tile = ti.getWritableTile(0, 0);
+        DataBufferByte db = (DataBufferByte)tile.getDataBuffer();
+        byte[] data = db.getData();
+        int lineStride =
+            ((MultiPixelPackedSampleModel)tile.getSampleModel())
+                .getScanlineStride();
+        for (int i = 0; i < rows.length; i++) {
+            int[] runs = rows[i];
+            int offset = db.getOffset() + i*lineStride;
+            for (int k = 0; k < runs.length; k += 2) {
+                int start = runs[k] - r.x;
+                int end = runs[k + 1] - r.x;
+                for (int x = start; x < end; x++) {
+                    data[offset + (x >> 3)] |= (byte)(0x80 >>> (x & 7));
+                }
+            }
+        }
+        ti.releaseWritableTile(0, 0);
+
+        theImage = ti;
+        return theImage;
+    }
+
+    /**
+     * Returns a bitmask for a given rectangular region of the ROI
+     * indicating whether the pixel is included in the region of
+     * interest.  The results are packed into 32-bit integers, with
+     * the MSB considered to lie on the left, and the first row and bit
+     * of the mask correspond to (x, y).  Bits for pixels outside the
+     * rectangle are zeroed.
+     *
+     * @param x The X coordinate of the upper left corner of the rectangle.
+     * @param y The Y coordinate of the upper left corner of the rectangle.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param mask A two-dimensional array of ints at least
+     *        (width + 31)/32 entries wide and (height) entries tall,
+     *        or null.
+     * @return A reference to the <code>mask</code> parameter, or
+     *         to a newly constructed array if <code>mask</code> is
+     *         <code>null</code>.  If the specified rectangle does not
+     *         intersect the bounds of the ROI then <code>null</code> is
+     *         returned.
+     */
+    public int[][] getAsBitmask(int x, int y,
+                                int width, int height,
+                                int[][] mask) {
+        if (!bounds.intersects(new Rectangle(x, y, width, height))) {
+            return null;
+        }
+
+        int bitmaskIntWidth = (width + 31)/32;
+        if (mask == null) {
+            mask = new int[height][bitmaskIntWidth];
+        } else if (mask.length < height || mask[0].length < bitmaskIntWidth) {
+            throw new RuntimeException(JaiI18N.getString("ROI3"));
+        }
+
+        int xEnd = x + width;
+        for (int j = 0; j < height; j++) {
+            int[] maskRow = mask[j];
+            Arrays.fill(maskRow, 0, bitmaskIntWidth, 0);
+
+            int[] runs = getRuns(y + j);
+            for (int k = findRun(runs, x);
+                 k < runs.length && runs[k] < xEnd; k += 2) {
+                int start = Math.max(runs[k], x) - x;
+                int end = Math.min(runs[k + 1], xEnd) - x;
+                for (int b = start; b < end; b++) {
+                    maskRow[b >> 5] |= 0x80000000 >>> (b & 31);
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Returns a <code>LinkedList</code> of <code>Rectangle</code>s for
+     * a given rectangular region of the ROI.  When merging, runs of
+     * successive rows which start and end at the same X coordinates
+     * are extended as they are found, so that a rectangle entirely
+     * inside the ROI yields a single <code>Rectangle</code>.
+     *
+     * @param x The X coordinate of the upper left corner of the rectangle.
+     * @param y The Y coordinate of the upper left corner of the rectangle.
+     * @param width The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param mergeRectangles <code>true</code> if the <code>Rectangle</code>s
+     *        are to be merged into a minimal set.
+     * @return A <code>LinkedList</code> of <code>Rectangle</code>s.
+     *         If the specified rectangle does not intersect the bounds
+     *         of the ROI then <code>null</code> is returned.
+     */
+    protected LinkedList getAsRectangleList(int x, int y,
+                                            int width, int height,
+                                            boolean mergeRectangles) {
+        Rectangle rect = bounds.intersection(new Rectangle(x, y,
+                                                           width, height));
+        if (rect.isEmpty()) {
+            return null;
+        }
+
+        LinkedList rectList = new LinkedList();
+        int xEnd = rect.x + rect.width;
+
+        // The Rectangles reaching the previous and the current row.
+        Rectangle[] previous = new Rectangle[0];
+        int numPrevious = 0;
+        Rectangle[] current = new Rectangle[0];
+
+        for (int j = rect.y; j < rect.y + rect.height; j++) {
+            int[] runs = getRuns(j);
+            int k = findRun(runs, rect.x);
+            if (current.length < runs.length/2) {
+                current = new Rectangle[runs.length/2];
+            }
+
+            int numCurrent = 0;
+            int p = 0;
+            for (; k < runs.length && runs[k] < xEnd; k += 2) {
+                int start = Math.max(runs[k], rect.x);
+                int w = Math.min(runs[k + 1], xEnd) - start;
+
+                Rectangle r = null;
+                if (mergeRectangles) {
+                    while (p < numPrevious && previous[p].x < start) {
+                        p++;
+                    }
+                    if (p < numPrevious && previous[p].x == start &&
+                        previous[p].width == w) {
+                        r = previous[p++];
+                        r.height++;
+                    }
+                }
+                if (r == null) {
+                    r = new Rectangle(start, j, w, 1);
+                    rectList.addLast(r);
+                }
+                current[numCurrent++] = r;
+            }
+
+            Rectangle[] swap = previous;
+            previous = current;
+            current = swap;
+            numPrevious = numCurrent;
+        }
+
+        return rectList;
+    }
+
+    /**
+     * Accumulates runs row by row.  Runs added in increasing order along
+     * a row are joined to the last one where they overlap or abut it;
+     * rows receiving runs out of order are sorted and merged once all
+     * have been added.
+     */
+    private static final class Rows {
+
+        final int minY;
+
+        private final int[][] runs;
+
+        private final int[] lengths;
+
+        private final boolean[] isUnsorted;
+
+        Rows(int minY, int height) {
+            this.minY = minY;
+            runs = new int[height][];
+            lengths = new int[height];
+            isUnsorted = new boolean[height];
+        }
+
+        void add(int y, int start, int end) {
+            int i = y - minY;
+            int[] row = runs[i];
+            int n = lengths[i];
+            if (n > 0 && start <= row[n - 1]) {
+                if (start >= row[n - 2]) {
+                    row[n - 1] = Math.max(row[n - 1], end);
+                    return;
+                }
+                isUnsorted[i] = true;
+            }
+
+            if (row == null) {
+                row = runs[i] = new int[4];
+            } else if (n == row.length) {
+                int[] grown = new int[2*n];
+                System.arraycopy(row, 0, grown, 0, n);
+                row = runs[i] = grown;
+            }
+            row[n] = start;
+            row[n + 1] = end;
+            lengths[i] = n + 2;
+        }
+
+        int[][] toArray() {
+            int[][] result = new int[runs.length][];
+            for (int i = 0; i < runs.length; i++) {
+                int n = lengths[i];
+                if (n == 0) {
+                    result[i] = NO_RUNS;
+                } else if (isUnsorted[i]) {
+                    result[i] = normalize(runs[i], n);
+                } else if (n == runs[i].length) {
+                    result[i] = runs[i];
+                } else {
+                    result[i] = new int[n];
+                    System.arraycopy(runs[i], 0, result[i], 0, n);
+                }
+            }
+            return result;
+        }
+
+        /** Sorts runs by their start and merges those which overlap
+            or abut. */
+        private static int[] normalize(int[] row, int n) {
+            long[] keys = new long[n/2];
+            for (int k = 0; k < n; k += 2) {
+                keys[k/2] =
+                    ((long)row[k] << 32) | ((row[k + 1] - row[k]) & 0xffffffffL);
+            }
+            Arrays.sort(keys);
+
+            int[] merged = new int[n];
+            int m = 0;
+            for (int k = 0; k < keys.length; k++) {
+                int start = (int)(keys[k] >> 32);
+                int end = start + (int)keys[k];
+                if (m > 0 && start <= merged[m - 1]) {
+                    merged[m - 1] = Math.max(merged[m - 1], end);
+                } else {
+                    merged[m++] = start;
+                    merged[m++] = end;
+                }
+            }
+
+            int[] result = new int[m];
+            System.arraycopy(merged, 0, result, 0, m);
+            return result;
+        }
+    }
+}
@@ -29,10 +29,8 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
+import java.lang.reflect.Array;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Observable;
 
 import org.eclipse.imagen.media.util.DataBufferUtils;
@@ -81,6 +79,19 @@ import org.eclipse.imagen.media.util.DataBufferUtils;
  * first iteration.
  * </p>
  *
+ * <p> The recycled arrays are kept in a pool which retains at most
+ * <code>getMemoryCapacity()</code> bytes.  Arrays are pooled by data
+ * type, number of banks and bank size, and each thread keeps a couple
+ * of recently recycled arrays of its own which it reuses without
+ * synchronizing with other threads.  The <code>JAI</code> default
+ * instance supplies a <code>RecyclingTileFactory</code> as both the
+ * <code>TileFactory</code> and the <code>TileRecycler</code> of every
+ * operation.  If an operation enables
+ * <code>JAI.KEY_CACHED_TILE_RECYCLING_ENABLED</code>, its tiles which are
+ * evicted from the tile cache are passed to <code>reclaimTile()</code>,
+ * whereby their arrays are reused once the tiles are no longer
+ * referenced.</p>
+ *
  * @since JAI 1.1.2
  */
 public class RecyclingTileFactory extends Observable
@@ -118,30 +129,25 @@ public class RecyclingTileFactory extends Observable
     }
     */
 
+    /** The default memory capacity of the pool: 32 megabytes. */
+    private static final long DEFAULT_MEMORY_CAPACITY = 32L * 1024L * 1024L;
+
     /**
-     * Cache of recycled arrays.  The key in this mapping is a
-     * <code>Long</code> which is formed for a given two-dimensional
-     * array as
+     * Pool of recycled arrays.  The arrays are the internal data banks of
+     * <code>DataBuffer</code>s, pooled by a key which is formed for a
+     * given two-dimensional array as
      *
      * <pre>
      * long type;     // DataBuffer.TYPE_*
      * long numBanks; // Number of banks
      * long size;     // Size of each bank
-     * Long key = new Long((type << 56) | (numBanks << 32) | size);
+     * long key = (type << 56) | (numBanks << 32) | size;
      * </pre>
      *
      * where the value of <code>type</code> is one of the constants
-     * <code>DataBuffer.TYPE_*</code>.  The value corresponding to each key
-     * is an <code>ArrayList</code> of <code>SoftReferences</code> to the
-     * internal data banks of <code>DataBuffer</code>s of tiles wherein the
-     * data bank array has the type and dimensions implied by the key.
+     * <code>DataBuffer.TYPE_*</code>.
      */
-    private HashMap recycledArrays = new HashMap(32);
-
-    /**
-     * The amount of memory currrently used for array storage.
-     */
-    private long memoryUsed = 0L;
+    private final TileArrayPool pool;
 
     // XXX Inline this method or make it public?
     private static long getBufferSizeCSM(ComponentSampleModel csm) {
@@ -176,10 +182,9 @@ public class RecyclingTileFactory extends Observable
     }
 
     /**
-     * Returns a <code>SoftReference</code> to the internal bank
-     * data of the <code>DataBuffer</code>.
+     * Returns the internal bank data of the <code>DataBuffer</code>.
      */
-    private static SoftReference getBankReference(DataBuffer db) {
+    private static Object getBankData(DataBuffer db) {
         Object array = null;
 
         switch(db.getDataType()) {
@@ -207,7 +212,23 @@ public class RecyclingTileFactory extends Observable
 
         }
 
-        return new SoftReference(array);
+        return array;
+    }
+
+    /**
+     * Returns the pool key of the internal bank data of a
+     * <code>DataBuffer</code>, or <code>-1</code> if its banks differ in
+     * length.
+     */
+    private static long getBankKey(DataBuffer db, Object bankData) {
+        int numBanks = Array.getLength(bankData);
+        int size = Array.getLength(Array.get(bankData, 0));
+        for(int i = 1; i < numBanks; i++) {
+            if(Array.getLength(Array.get(bankData, i)) != size) {
+                return -1L;
+            }
+        }
+        return TileArrayPool.key(db.getDataType(), numBanks, size);
     }
 
     /**
@@ -241,9 +262,29 @@ public class RecyclingTileFactory extends Observable
     }
 
     /**
-     * Constructs a <code>RecyclingTileFactory</code>.
+     * Constructs a <code>RecyclingTileFactory</code> which retains
+     * at most 32 megabytes of recycled arrays.
+     */
+    public RecyclingTileFactory() {
+        this(DEFAULT_MEMORY_CAPACITY);
+    }
+
+    /**
+     * Constructs a <code>RecyclingTileFactory</code> which retains
+     * at most the given amount of memory in recycled arrays.
+     *
+     * @param memoryCapacity The maximum memory retained, in bytes.
+     *        Arrays are not recycled if it is zero.
+     *
+     * @throws IllegalArgumentException if <code>memoryCapacity</code>
+     *         is negative.
      */
-    public RecyclingTileFactory() {}
+    public RecyclingTileFactory(long memoryCapacity) {
+        if(memoryCapacity < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("RecyclingTileFactory0"));
+        }
+        pool = new TileArrayPool(memoryCapacity);
+    }
 
     /**
      * Returns <code>true</code>.
@@ -260,14 +301,50 @@ public class RecyclingTileFactory extends Observable
     }
 
     public long getMemoryUsed() {
-        return memoryUsed;
+        return pool.getMemoryUsed();
     }
 
     public void flush() {
-        synchronized(recycledArrays) {
-            recycledArrays.clear();
-            memoryUsed = 0L;
+        pool.flush();
+    }
+
+    /**
+     * Returns the maximum amount of memory, in bytes, retained in
+     * recycled arrays.
+     */
+    public long getMemoryCapacity() {
+        return pool.getMemoryCapacity();
+    }
+
+    /**
+     * Sets the maximum amount of memory, in bytes, retained in recycled
+     * arrays.  Arrays are dropped if the memory used exceeds the new
+     * capacity.  Arrays are not recycled if it is zero.
+     *
+     * @throws IllegalArgumentException if <code>memoryCapacity</code>
+     *         is negative.
+     */
+    public void setMemoryCapacity(long memoryCapacity) {
+        if(memoryCapacity < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("RecyclingTileFactory0"));
         }
+        pool.setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Returns the number of tiles created by <code>createTile()</code>
+     * using a recycled array.
+     */
+    public long getHitCount() {
+        return pool.getHitCount();
+    }
+
+    /**
+     * Returns the number of tiles created by <code>createTile()</code>
+     * for which no recycled array was available.
+     */
+    public long getMissCount() {
+        return pool.getMissCount();
     }
 
     public WritableRaster createTile(SampleModel sampleModel,
@@ -308,7 +385,7 @@ public class RecyclingTileFactory extends Observable
 
         if(size != 0) {
             Object array =
-                getRecycledArray(type, numBanks, size);
+                pool.take(TileArrayPool.key(type, numBanks, size));
             if(array != null) {
                 switch(type) {
                 case DataBuffer.TYPE_BYTE:
@@ -406,82 +483,61 @@ public class RecyclingTileFactory extends Observable
      */
     public void recycleTile(Raster tile) {
         DataBuffer db = tile.getDataBuffer();
-
-        Long key = new Long(((long)db.getDataType() << 56) |
-                            ((long)db.getNumBanks() << 32) |
-                            (long)db.getSize());
+        Object bankData = getBankData(db);
+        long key = getBankKey(db, bankData);
 
         if(DEBUG) {
             System.out.println("Recycling array for: "+
                                db.getDataType()+" "+
                                db.getNumBanks()+" "+
                                db.getSize());
-            //System.out.println("recycleTile(); key = "+key);
         }
 
-        synchronized(recycledArrays) {
-            Object value = recycledArrays.get(key);
-            ArrayList arrays = null;
-            if(value != null) {
-                arrays = (ArrayList)value;
-            } else {
-                arrays = new ArrayList();
-            }
-
-            memoryUsed += getDataBankSize(db.getDataType(),
-                                          db.getNumBanks(),
-                                          db.getSize());
-
-            arrays.add(getBankReference(db));
-
-            if(value == null) {
-                recycledArrays.put(key, arrays);
-            }
+        if(key != -1L) {
+            pool.release(bankData, key);
         }
     }
 
     /**
-     * Retrieve an array of the specified type and length.
+     * Recycles the arrays of the given tile once neither the tile nor
+     * any other <code>Raster</code> sharing its <code>DataBuffer</code>
+     * is referenced any longer.  Unlike <code>recycleTile()</code>
+     * this method may be invoked for a tile which is still in use.  It
+     * is invoked for tiles evicted from the tile cache of an image which
+     * has enabled <code>JAI.KEY_CACHED_TILE_RECYCLING_ENABLED</code>.
+     *
+     * <p> Only the references to the <code>DataBuffer</code> are
+     * tracked.  An array obtained from it, for example by
+     * <code>DataBufferByte.getData()</code>, must not be retained once
+     * the tile is no longer referenced, as it may then be handed out
+     * as part of another tile and overwritten.</p>
+     *
+     * @param tile A tile whose arrays may be reused when it is garbage.
+     * @throws IllegalArgumentException if <code>tile</code> is
+     *         <code>null</code>.
      */
-    private Object getRecycledArray(int arrayType,
-                                    long numBanks,
-                                    long arrayLength) {
-        Long key = new Long(((long)arrayType << 56) |
-                            numBanks << 32 |
-                            arrayLength);
-
-        if(DEBUG) {
-            System.out.println("Attempting to get array for: "+
-                               arrayType+" "+numBanks+" "+arrayLength);
-            //System.out.println("Attempting to get array for key "+key);
+    public void reclaimTile(Raster tile) {
+        if(tile == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
         }
 
-        synchronized(recycledArrays) {
-            Object value = recycledArrays.get(key);
-
-            if(value != null) {
-                ArrayList arrays = (ArrayList)value;
-                for(int idx = arrays.size() - 1; idx >= 0; idx--) {
-                    SoftReference bankRef = (SoftReference)arrays.remove(idx);
-                    memoryUsed -= getDataBankSize(arrayType,
-                                                  (int)numBanks,
-                                                  (int)arrayLength);
-                    if(idx == 0) {
-                        recycledArrays.remove(key);
-                    }
-
-                    Object array = bankRef.get();
-                    if(array != null) {
-                        return array;
-                    }
-
-                    if(DEBUG) System.out.println("null reference");
-                }
-            }
+        DataBuffer db = tile.getDataBuffer();
+        int type = db.getDataType();
+        if(type < DataBuffer.TYPE_BYTE || type > DataBuffer.TYPE_DOUBLE) {
+            return;
         }
 
-        //if(DEBUG) System.out.println("getRecycledArray() returning "+array);
+        Object bankData;
+        try {
+            bankData = getBankData(db);
+        } catch(ClassCastException e) {
+            // A DataBuffer of another implementation: not recycled.
+            return;
+        }
 
-        return null;
+        long key = getBankKey(db, bankData);
+        if(key != -1L) {
+            pool.reclaim(db, bankData, key);
+        }
     }
 }
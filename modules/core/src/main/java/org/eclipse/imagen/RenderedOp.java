@@ -841,6 +841,14 @@ public class RenderedOp extends PlanarImage
         // in creating a new RCE with this node as its source which would
         // be fired as usual to all listeners and sinks.
 
+        // Compute point operations together with those of the source
+        // if so requested.
+        RenderingHints hints = nodeSupport.getRenderingHints();
+        if (hints != null &&
+            Boolean.TRUE.equals(hints.get(JAI.KEY_FUSE_POINT_OPERATIONS))) {
+            rendering = FusedPointOpImage.fuse(rendering, hints);
+        }
+
         // Ensure that the rendering is a PlanarImage.
         PlanarImage instance = PlanarImage.wrapRenderedImage(rendering);
 
@@ -2339,6 +2347,31 @@ public class RenderedOp extends PlanarImage
         return theImage.queueTiles(tileIndices);
     }
 
+    /**
+     * Renders the node if it has not already been rendered, and
+     * queues a list of tiles for computation with the given priority and
+     * deadline.  Registered listeners will be notified after each tile
+     * has been computed or cancelled.
+     *
+     * <p> The <code>TileScheduler</code> of the rendering is used to
+     * process the tiles.
+     *
+     * @param tileIndices A list of tile indices indicating which tiles
+     *        to schedule for computation.
+     * @param priority The priority of the request; higher values are
+     *        computed first.
+     * @param deadline The time as returned by
+     *        <code>System.currentTimeMillis()</code> after which the tiles
+     *        are no longer needed, or zero if there is no deadline.
+     * @throws IllegalArgumentException  If <code>tileIndices</code> is
+     *         <code>null</code>.
+     */
+    public TileRequest queueTiles(Point[] tileIndices,
+                                  int priority, long deadline) {
+        createRendering();
+        return theImage.queueTiles(tileIndices, priority, deadline);
+    }
+
     /**
      * Issue an advisory cancellation request to nullify processing of
      * the indicated tiles.
@@ -1107,7 +1107,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
 	    }
 
 	    // Compute the destination tile.
-	    computeRect(sources, dest, destRect);
+	    computeRectInStrips(sources, dest, destRect);
 	} else {
             // Source Rect straddles 2 or more tiles
 
@@ -1187,7 +1187,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
 				}
 
 				// Compute the destination tile.
-				computeRect(sources, dest, wDestRect);
+				computeRectInStrips(sources, dest, wDestRect);
 			    }
 			}
 
@@ -1233,7 +1233,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
                                 }
 
                                 // Compute the destination tile.
-                                computeRect(sources, dest, hDestRect);
+                                computeRectInStrips(sources, dest, hDestRect);
                             }
 			}
 		    }
@@ -1263,7 +1263,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
 			    }
 
 			    // Compute the destination tile.
-			    computeRect(sources, dest, newDestRect);
+			    computeRectInStrips(sources, dest, newDestRect);
 			}
 
                         //
@@ -1326,7 +1326,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
                                                                 extender);
                                 }
 
-                                computeRect(sources, dest, RTDestRect);
+                                computeRectInStrips(sources, dest, RTDestRect);
                             }
 
                             // Bottom Edge
@@ -1375,7 +1375,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
                                                                 extender);
                                 }
 
-                                computeRect(sources, dest, BTDestRect);
+                                computeRectInStrips(sources, dest, BTDestRect);
                             }
 
                             // Lower Right Area
@@ -1410,7 +1410,7 @@ public abstract class ScaleOpImage extends GeometricOpImage {
                                                                 extender);
                                 }
 
-                                computeRect(sources, dest, LRTDestRect);
+                                computeRectInStrips(sources, dest, LRTDestRect);
                             }
                         }
                     }
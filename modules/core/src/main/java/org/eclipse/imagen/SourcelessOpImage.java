@@ -139,7 +139,7 @@ public abstract class SourcelessOpImage extends OpImage {
                                        sampleModel.getWidth(),
                                        sampleModel.getHeight());
         Rectangle destRect = rect.intersection(getBounds());
-        computeRect((PlanarImage[])null, dest, destRect);
+        computeRectInStrips((PlanarImage[])null, dest, destRect);
         return dest;
     }
     
@@ -20,6 +20,8 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.Vector;
 
 import org.eclipse.imagen.media.util.PropertyUtil;
@@ -48,9 +50,17 @@ import org.eclipse.imagen.media.util.PropertyUtil;
  *
  * <p> Subclasses should provide implementations
  * of the <code>getStatisticsNames</code>, <code>createStatistics</code>,
- * and <code>accumulateStatistics</code> methods.
+ * and <code>accumulateStatistics</code> methods.  Subclasses whose
+ * statistics may be accumulated separately over several tiles and then
+ * merged may also override <code>createPartialStatistics</code> to
+ * return a <code>PartialStatistics</code>; the tiles are then processed
+ * in parallel by the threads of the <code>TileScheduler</code>, and the
+ * statistics may be accumulated progressively by means of
+ * <code>getProgressiveStatistics</code>.  Otherwise the tiles are
+ * processed one after another by <code>accumulateStatistics</code>.
  * 
  * @see OpImage
+ * @see ProgressiveStatistics
  */
 public abstract class StatisticsOpImage extends OpImage {
     
@@ -61,6 +71,12 @@ public abstract class StatisticsOpImage extends OpImage {
      */
     protected ROI roi;
 
+    /**
+     * The region of interest within the source bounds as runs of pixels,
+     * converted when the tiles to process are first determined.
+     */
+    private ROIRunLength roiRuns;
+
     /** The X coordinate of the initial sample. */
     protected int xStart;
 
@@ -254,53 +270,20 @@ public abstract class StatisticsOpImage extends OpImage {
                 stats = createStatistics(name);
 
                 if (!stats.equals(java.awt.Image.UndefinedProperty)) {
-                    PlanarImage source = getSource(0);
-
-                    // Cycle throw all source tiles.
-                    int minTileX = source.getMinTileX();
-                    int maxTileX = source.getMaxTileX();
-                    int minTileY = source.getMinTileY();
-                    int maxTileY = source.getMaxTileY();
-
-                    for (int y = minTileY; y <= maxTileY; y++) {
-                        for (int x = minTileX; x <= maxTileX; x++) {
-                            // Determine the required region of this tile.
-                            // (Note that getTileRect() instersects tile and
-                            // image bounds.)
-                            Rectangle tileRect = getTileRect(x, y);
-
-                            // Process if and only if within ROI bounds.
-                            if (roi.intersects(tileRect)) {
-
-                                // If checking for skipped tiles determine
-                                // whether this tile is "hit".
-                                if(checkForSkippedTiles &&
-                                   tileRect.x >= xStart &&
-                                   tileRect.y >= yStart) {
-                                    // Determine the offset within the tile.
-                                    int offsetX =
-                                        (xPeriod -
-                                         ((tileRect.x - xStart) % xPeriod)) %
-                                        xPeriod;
-                                    int offsetY =
-                                        (yPeriod -
-                                         ((tileRect.y - yStart) % yPeriod)) %
-                                        yPeriod;
-
-                                    // Continue with next tile if offset
-                                    // is larger than either tile dimension.
-                                    if(offsetX >= tileRect.width ||
-                                       offsetY >= tileRect.height) {
-                                        continue;
-                                    }
-                                }
-
-                                // Accumulate statistics for this tile.
-                                accumulateStatistics(name,
-                                                     source.getData(tileRect),
-                                                     stats);
-                            }
+                    Point[] tileIndices = getStatisticsTileIndices();
+
+                    PartialStatistics total = tileIndices.length > 1 ?
+                        createPartialStatistics(name) : null;
+                    if (total == null) {
+                        // Accumulate statistics tile by tile.
+                        for (int i = 0; i < tileIndices.length; i++) {
+                            accumulateStatistics(name,
+                                                 getSourceTile(tileIndices[i]),
+                                                 stats);
                         }
+                    } else {
+                        new Accumulation(name, tileIndices, total).run();
+                        total.store(stats);
                     }
 
                     // Store the generated property in Hastable.
@@ -312,6 +295,329 @@ public abstract class StatisticsOpImage extends OpImage {
         return stats;
     }
 
+    /**
+     * Starts accumulating one of the available statistics and returns a
+     * handle on its progress, or <code>null</code> if the statistic is
+     * not recognized or may not be accumulated progressively.  The
+     * source tiles are scheduled for computation at once, in an order
+     * such that those processed at any time are spread evenly over the
+     * region of interest, and the statistics returned by the handle are
+     * refined as each tile completes.
+     *
+     * <p> If <code>fraction</code> is less than 1, only that fraction of
+     * the tiles is processed.  The tiles form a stratified sample and the
+     * statistics are then an estimate whose error may be bounded by
+     * <code>ProgressiveStatistics.getConfidenceBound()</code>.
+     *
+     * <p> When all the tiles have been processed the statistic is also
+     * stored as a property of this image.
+     *
+     * @param name  The name of the statistic.
+     * @param fraction  The fraction of the tiles to process, greater than
+     *        0 and less than or equal to 1.
+     *
+     * @throws IllegalArgumentException  If <code>name</code> is
+     *         <code>null</code>.
+     * @throws IllegalArgumentException  If <code>fraction</code> is not
+     *         greater than 0 and less than or equal to 1.
+     */
+    public ProgressiveStatistics getProgressiveStatistics(String name,
+                                                          double fraction) {
+        if (name == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+        if (!(fraction > 0.0 && fraction <= 1.0)) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("StatisticsOpImage0"));
+        }
+
+        if (createStatistics(name).equals(java.awt.Image.UndefinedProperty)) {
+            return null;
+        }
+        PartialStatistics total = createPartialStatistics(name);
+        if (total == null) {
+            return null;
+        }
+
+        Point[] tileIndices = getStatisticsTileIndices();
+        int numTiles = tileIndices.length;
+        sortStratified(tileIndices);
+        if (fraction < 1.0) {
+            int numSampled =
+                Math.max(1, (int)Math.ceil(fraction*tileIndices.length));
+            Point[] sampled = new Point[Math.min(numSampled, numTiles)];
+            System.arraycopy(tileIndices, 0, sampled, 0, sampled.length);
+            tileIndices = sampled;
+        }
+
+        return new ProgressiveStatistics(this, name, tileIndices, numTiles,
+                                         total);
+    }
+
+    /**
+     * Stores a statistic accumulated progressively over all the tiles as
+     * a property unless it has already been generated.
+     */
+    synchronized void setStatistics(String name, Object stats) {
+        if (super.getProperty(name).equals(java.awt.Image.UndefinedProperty)) {
+            setProperty(name, stats);
+        }
+    }
+
+    /**
+     * Sorts tile indices so that any number of leading tiles are spread
+     * evenly over the tile grid.  The tiles are first sorted along the
+     * Z-order curve, by the interleaved bits of their indices, so that
+     * tiles close along the curve are close in the grid.  They are then
+     * taken along the curve from a random start in bit-reversed order,
+     * so that the first 2<sup>k</sup> tiles are a systematic sample
+     * spread evenly along the curve.  The random start makes the mean of
+     * any leading tiles an unbiased estimate of that of all the tiles.
+     */
+    private static void sortStratified(Point[] tileIndices) {
+        int n = tileIndices.length;
+        if (n < 2) {
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, tileIndices[i].x);
+            minY = Math.min(minY, tileIndices[i].y);
+            maxX = Math.max(maxX, tileIndices[i].x);
+            maxY = Math.max(maxY, tileIndices[i].y);
+        }
+
+        // The number of bits of the tile indices, of which at most 16
+        // are interleaved.
+        int bits = 32 - Integer.numberOfLeadingZeros(
+            Math.max(maxX - minX, maxY - minY));
+        int shift = Math.max(0, bits - 16);
+        bits -= shift;
+
+        // Each key holds the interleaved bits in its high 32 bits and the
+        // index of the tile in its low 31 bits.
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (tileIndices[i].x - minX) >> shift;
+            int y = (tileIndices[i].y - minY) >> shift;
+            long code = 0;
+            for (int b = 0; b < bits; b++) {
+                code |= (long)((x >> b) & 1) << (2*b);
+                code |= (long)((y >> b) & 1) << (2*b + 1);
+            }
+            keys[i] = (code << 31) | i;
+        }
+        Arrays.sort(keys);
+
+        int start = new Random().nextInt(n);
+        int orderBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+        Point[] sorted = new Point[n];
+        int count = 0;
+        for (int r = 0; r < 1 << orderBits; r++) {
+            int position = Integer.reverse(r) >>> (32 - orderBits);
+            if (position < n) {
+                long key = keys[(position + start) % n];
+                sorted[count++] = tileIndices[(int)(key & 0x7fffffffL)];
+            }
+        }
+        System.arraycopy(sorted, 0, tileIndices, 0, n);
+    }
+
+    /**
+     * Returns the indices of the source tiles which contain samples
+     * within the region of interest.
+     */
+    private Point[] getStatisticsTileIndices() {
+        PlanarImage source = getSource(0);
+        ROIRunLength runs = getRunLengthROI();
+
+        // Cycle throw all source tiles.
+        int minTileX = source.getMinTileX();
+        int maxTileX = source.getMaxTileX();
+        int minTileY = source.getMinTileY();
+        int maxTileY = source.getMaxTileY();
+
+        Vector indices = new Vector();
+        for (int y = minTileY; y <= maxTileY; y++) {
+            for (int x = minTileX; x <= maxTileX; x++) {
+                // Determine the required region of this tile.
+                // (Note that getTileRect() instersects tile and
+                // image bounds.)
+                Rectangle tileRect = getTileRect(x, y);
+
+                // Process if and only if some pixel is within the ROI.
+                if (runs.intersects(tileRect)) {
+
+                    // If checking for skipped tiles determine
+                    // whether this tile is "hit".
+                    if(checkForSkippedTiles &&
+                       tileRect.x >= xStart &&
+                       tileRect.y >= yStart) {
+                        // Determine the offset within the tile.
+                        int offsetX =
+                            (xPeriod -
+                             ((tileRect.x - xStart) % xPeriod)) %
+                            xPeriod;
+                        int offsetY =
+                            (yPeriod -
+                             ((tileRect.y - yStart) % yPeriod)) %
+                            yPeriod;
+
+                        // Continue with next tile if offset
+                        // is larger than either tile dimension.
+                        if(offsetX >= tileRect.width ||
+                           offsetY >= tileRect.height) {
+                            continue;
+                        }
+                    }
+
+                    indices.add(new Point(x, y));
+                }
+            }
+        }
+
+        Point[] tileIndices = new Point[indices.size()];
+        indices.copyInto(tileIndices);
+        return tileIndices;
+    }
+
+    /**
+     * Returns the region of interest within the source bounds as runs
+     * of pixels, converting it on the first call.  The tiles outside it
+     * are then skipped without reading its image or geometry.  The
+     * <code>roi</code> field itself is left as supplied.
+     */
+    private synchronized ROIRunLength getRunLengthROI() {
+        if (roiRuns == null) {
+            roiRuns = new ROIRunLength(roi, getSource(0).getBounds());
+        }
+        return roiRuns;
+    }
+
+    /**
+     * Returns the part of a source tile within the bounds of the image.
+     * The samples are those of the tile itself rather than a copy.
+     */
+    private Raster getSourceTile(Point tileIndex) {
+        return clipTile(getSource(0).getTile(tileIndex.x, tileIndex.y),
+                        tileIndex);
+    }
+
+    /** Restricts a source tile to the bounds of the image. */
+    Raster clipTile(Raster tile, Point tileIndex) {
+        Rectangle tileRect = getTileRect(tileIndex.x, tileIndex.y);
+        if (tile.getBounds().equals(tileRect)) {
+            return tile;
+        }
+        return tile.createChild(tileRect.x, tileRect.y,
+                                tileRect.width, tileRect.height,
+                                tileRect.x, tileRect.y, null);
+    }
+
+    /**
+     * The accumulation of a statistic over the source tiles in parallel.
+     * The tiles are scheduled for computation with the default
+     * <code>TileScheduler</code> and the statistic of each tile is
+     * accumulated into a partial statistics object by the thread which
+     * has computed it.  The calling thread meanwhile takes the remaining
+     * tiles from the end of the list so that the accumulation completes
+     * even if the scheduler has no thread to spare, for example if the
+     * statistic is requested while a tile is computed.  The partial
+     * statistics are merged one at a time into the total.
+     */
+    private class Accumulation implements TileComputationListener {
+
+        private String name;
+
+        private Point[] tileIndices;
+
+        private TileClaims claims;
+
+        /** The partial statistics over all the tiles. */
+        private PartialStatistics total;
+
+        Accumulation(String name, Point[] tileIndices,
+                     PartialStatistics total) {
+            this.name = name;
+            this.tileIndices = tileIndices;
+            this.total = total;
+            claims = new TileClaims(tileIndices);
+        }
+
+        /** Accumulates the statistic over all the tiles. */
+        void run() {
+            TileScheduler scheduler =
+                JAI.getDefaultInstance().getTileScheduler();
+            TileRequest request =
+                scheduler.scheduleTiles(getSource(0), tileIndices,
+                                        new TileComputationListener[] {this});
+
+            int index;
+            while ((index = claims.claimLast()) >= 0) {
+                accumulate(index, null);
+            }
+
+            // No tile is left in the queue whose statistics are needed.
+            scheduler.cancelTiles(request, null);
+
+            claims.await();
+        }
+
+        /**
+         * Accumulates and merges the statistic of a claimed tile, which
+         * is got from the source if <code>tile</code> is
+         * <code>null</code>.
+         */
+        private void accumulate(int index, Raster tile) {
+            Throwable situation = null;
+            try {
+                tile = tile == null ?
+                    getSourceTile(tileIndices[index]) :
+                    clipTile(tile, tileIndices[index]);
+                PartialStatistics partial = createPartialStatistics(name);
+                partial.accumulate(tile);
+                synchronized (this) {
+                    total.merge(partial);
+                }
+            } catch (RuntimeException e) {
+                situation = e;
+            } catch (Error e) {
+                situation = e;
+            }
+            claims.done(situation);
+        }
+
+        public void tileComputed(Object eventSource,
+                                 TileRequest[] requests,
+                                 PlanarImage image, int tileX, int tileY,
+                                 Raster tile) {
+            int index = claims.claim(tileX, tileY);
+            if (index >= 0) {
+                accumulate(index, tile);
+            }
+        }
+
+        public void tileCancelled(Object eventSource,
+                                  TileRequest[] requests,
+                                  PlanarImage image, int tileX, int tileY) {
+            // The calling thread accumulates the tiles left unclaimed.
+        }
+
+        public void tileComputationFailure(Object eventSource,
+                                           TileRequest[] requests,
+                                           PlanarImage image,
+                                           int tileX, int tileY,
+                                           Throwable situation) {
+            if (claims.claim(tileX, tileY) >= 0) {
+                claims.done(situation);
+            }
+        }
+    }
+
     /**
      * Returns a list of property names that are recognized by this image.
      *
@@ -389,4 +695,80 @@ public abstract class StatisticsOpImage extends OpImage {
     protected abstract void accumulateStatistics(String name,
                                                  Raster source,
                                                  Object stats);
+
+    /**
+     * Returns an object into which the named statistic may be
+     * accumulated over some of the source tiles, so that the statistic
+     * may be accumulated over several tiles at once and the results
+     * merged, or <code>null</code> if the statistic can only be
+     * accumulated one tile after another by
+     * <code>accumulateStatistics</code>.  This method may be invoked by
+     * several threads at once.
+     *
+     * <p> The implementation in this class returns <code>null</code>.
+     *
+     * @param name  The name of the statistic to be gathered.
+     */
+    protected PartialStatistics createPartialStatistics(String name) {
+        return null;
+    }
+
+    /**
+     * A statistic accumulated over some of the source tiles.  Objects
+     * returned by <code>createPartialStatistics</code> are each used by
+     * one thread at a time; the statistic of every tile is accumulated
+     * into a new object which is then merged into a total, and the
+     * total is stored into a statistics object generated by
+     * <code>createStatistics</code>.
+     *
+     * @see StatisticsOpImage#createPartialStatistics
+     */
+    protected static abstract class PartialStatistics {
+
+        /** Constructs a <code>PartialStatistics</code>. */
+        protected PartialStatistics() {}
+
+        /**
+         * Accumulates the statistic on the specified region.  The
+         * region of interest and X and Y sampling rate should be
+         * respected.  This method is invoked by several threads at once
+         * with distinct objects and should not modify the state of the
+         * image.
+         *
+         * @param source  A <code>Raster</code> containing source pixels.
+         */
+        protected abstract void accumulate(Raster source);
+
+        /**
+         * Merges another partial statistic into this one, as if the
+         * regions over which the former has been accumulated had been
+         * passed to <code>accumulate</code>.  The partial statistics of
+         * the tiles are merged one at a time but in no particular order.
+         *
+         * @param partial  A partial statistic of the same name.
+         */
+        protected abstract void merge(PartialStatistics partial);
+
+        /**
+         * Stores the statistic into a statistics object.  This object
+         * is not modified.
+         *
+         * @param stats  A statistics object generated by a previous call
+         *        to <code>createStatistics</code>.
+         */
+        protected abstract void store(Object stats);
+
+        /**
+         * Returns the number of pixels over which the statistic has been
+         * accumulated followed by the sum of the samples of each band
+         * over these pixels, or <code>null</code> if they are unknown.
+         * They are used by <code>ProgressiveStatistics</code> to bound
+         * the error of an estimate.
+         *
+         * <p> The implementation in this class returns <code>null</code>.
+         */
+        protected double[] getSums() {
+            return null;
+        }
+    }
 }
@@ -34,6 +34,10 @@ import org.eclipse.imagen.media.util.RWLock;
  * or a write lock. Exceptions are caught and the lock is released
  * before the exception is re-thrown.
  *
+ * <p> Factories are however looked up without the lock once their
+ * order has been resolved, since the resolved order is immutable and
+ * is discarded by every change to the registry.
+ *
  * @since JAI 1.1
  */
 final class ThreadSafeOperationRegistry extends OperationRegistry {
@@ -448,6 +452,11 @@ final class ThreadSafeOperationRegistry extends OperationRegistry {
 
     public Iterator getFactoryIterator(String modeName,
 				       String descriptorName) {
+	// A resolved factory order is immutable and is read without the lock.
+	FactoryOrder order = lookupFactoryOrder(modeName, descriptorName);
+	if (order != null)
+	    return order.factories.iterator();
+
 	try {
 	    lock.forReading();
 	    Iterator t = super.getFactoryIterator(modeName, descriptorName);
@@ -460,6 +469,12 @@ final class ThreadSafeOperationRegistry extends OperationRegistry {
     }
 
     public Object getFactory(String modeName, String descriptorName) {
+	// See getFactoryIterator().
+	FactoryOrder order = lookupFactoryOrder(modeName, descriptorName);
+	if (order != null)
+	    return order.factories.isEmpty() ?
+		null : order.factories.get(0);
+
 	try {
 	    lock.forReading();
 	    Object t = super.getFactory(modeName, descriptorName);
@@ -475,6 +490,11 @@ final class ThreadSafeOperationRegistry extends OperationRegistry {
     public Object invokeFactory(String modeName,
 				String descriptorName,
 				Object[] args) {
+	// See getFactoryIterator().
+	FactoryOrder order = lookupFactoryOrder(modeName, descriptorName);
+	if (order != null)
+	    return invokeFactory(order, descriptorName, args);
+
 	try {
 	    lock.forReading();
 	    Object t = super.invokeFactory(modeName, descriptorName, args);
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen;
+
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of the data bank arrays of tiles, used by
+ * <code>RecyclingTileFactory</code>.
+ *
+ * <p> Arrays are pooled in classes of identical data type, number of
+ * banks and bank size, so that every array handed out has exactly the
+ * length its <code>DataBuffer</code> expects.  Each thread first uses a
+ * small slot of its own which requires no coordination with other
+ * threads.  The arrays which do not fit there go to a shared stack per
+ * class as long as the memory retained by these stacks does not exceed
+ * the capacity of the pool; otherwise they are dropped.
+ *
+ * <p> Arrays may be released immediately, when the caller guarantees
+ * that they are no longer used, or be registered for reclamation.  A
+ * registered array only enters the pool once the garbage collector has
+ * found its <code>DataBuffer</code> to be unreachable, so that it can
+ * not be overwritten while a <code>Raster</code> still refers to it.
+ * Registrations are identified by the first bank of the array, as the
+ * <code>getBankData()</code> methods of the buffers return a new array
+ * of the same banks on each call, and an array registered for
+ * reclamation is not pooled again if it is also released.  The memory
+ * of the registered arrays counts towards the capacity of the pool and
+ * further registrations are ignored while it is exhausted.
+ */
+final class TileArrayPool {
+
+    /** The number of arrays in the slot of each thread. */
+    private static final int LOCAL_CAPACITY = 2;
+
+    /** The shared stacks, mapping a class key to an ArrayDeque. */
+    private final ConcurrentHashMap classes = new ConcurrentHashMap();
+
+    /** The memory retained by the shared stacks. */
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    /** The maximum memory retained by the shared stacks. */
+    private volatile long memoryCapacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The slots of the live threads, to account for their memory. */
+    private final Map slots = Collections.synchronizedMap(new WeakHashMap());
+
+    private final ThreadLocal slot = new ThreadLocal() {
+        protected Object initialValue() {
+            Slot s = new Slot();
+            slots.put(Thread.currentThread(), s);
+            return s;
+        }
+    };
+
+    /** Queue of the reclaimed arrays whose buffers have been collected. */
+    private final ReferenceQueue reclaimed = new ReferenceQueue();
+
+    /**
+     * The first banks of the arrays registered for reclamation, mapped
+     * to the <code>Reclaimed</code> references which keep them reachable.
+     * Guarded by itself.
+     */
+    private final Map pending = new IdentityHashMap();
+
+    /** The memory of the arrays in <code>pending</code>.  Guarded by
+        <code>pending</code>. */
+    private long pendingMemoryUsed = 0L;
+
+    TileArrayPool(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+    }
+
+    /** Returns the class key of an array. */
+    static long key(int type, long numBanks, long size) {
+        return ((long)type << 56) | (numBanks << 32) | size;
+    }
+
+    /** Returns the memory used by an array of the class of a key. */
+    private static long getMemorySize(long key) {
+        return (long)DataBuffer.getDataTypeSize((int)(key >>> 56)) / 8L *
+               ((key >>> 32) & 0xFFFFFFL) * (key & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns a pooled array of the class of <code>key</code>, or
+     * <code>null</code> if there is none.
+     */
+    Object take(long key) {
+        drain();
+
+        Object array = ((Slot)slot.get()).take(key);
+
+        if (array == null) {
+            ArrayDeque stack = (ArrayDeque)classes.get(new Long(key));
+            if (stack != null) {
+                synchronized (stack) {
+                    array = stack.pollLast();
+                }
+                if (array != null) {
+                    memoryUsed.addAndGet(-getMemorySize(key));
+                }
+            }
+        }
+
+        if (array != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return array;
+    }
+
+    /**
+     * Makes an array which is no longer used by the caller available
+     * for reuse.  Arrays registered for reclamation are ignored as they
+     * will be released when they are no longer referenced.
+     */
+    void release(Object array, long key) {
+        synchronized (pending) {
+            if (pending.containsKey(Array.get(array, 0))) {
+                return;
+            }
+        }
+        drain();
+        put(array, key);
+    }
+
+    /**
+     * Registers the data array of a buffer for reuse once the buffer is
+     * no longer reachable.
+     */
+    void reclaim(DataBuffer db, Object array, long key) {
+        long capacity = memoryCapacity;
+        if (capacity <= 0) {
+            return;
+        }
+        drain();
+
+        Object bank = Array.get(array, 0);
+        long size = getMemorySize(key);
+        synchronized (pending) {
+            if (!pending.containsKey(bank) &&
+                memoryUsed.get() + pendingMemoryUsed + size <= capacity) {
+                pending.put(bank,
+                            new Reclaimed(db, reclaimed, array, bank, key));
+                pendingMemoryUsed += size;
+            }
+        }
+    }
+
+    /** Moves the arrays whose buffers have been collected to the pool. */
+    private void drain() {
+        Reclaimed r;
+        while ((r = (Reclaimed)reclaimed.poll()) != null) {
+            synchronized (pending) {
+                // The registration may have been dropped meanwhile.
+                if (pending.remove(r.bank) != r) {
+                    continue;
+                }
+                pendingMemoryUsed -= getMemorySize(r.key);
+            }
+            put(r.array, r.key);
+        }
+    }
+
+    private void put(Object array, long key) {
+        long capacity = memoryCapacity;
+        if (capacity <= 0) {
+            return;
+        }
+
+        if (((Slot)slot.get()).put(array, key)) {
+            return;
+        }
+
+        long size = getMemorySize(key);
+        if (memoryUsed.addAndGet(size) > capacity) {
+            // Full: let the array be garbage collected.
+            memoryUsed.addAndGet(-size);
+            return;
+        }
+
+        Long k = new Long(key);
+        ArrayDeque stack = (ArrayDeque)classes.get(k);
+        if (stack == null) {
+            ArrayDeque s = new ArrayDeque();
+            stack = (ArrayDeque)classes.putIfAbsent(k, s);
+            if (stack == null) {
+                stack = s;
+            }
+        }
+        synchronized (stack) {
+            stack.addLast(array);
+        }
+    }
+
+    /**
+     * Returns the memory retained by the pool, including that of the
+     * arrays registered for reclamation, in bytes.
+     */
+    long getMemoryUsed() {
+        long used = memoryUsed.get();
+        synchronized (pending) {
+            used += pendingMemoryUsed;
+        }
+        synchronized (slots) {
+            Iterator iter = slots.values().iterator();
+            while (iter.hasNext()) {
+                used += ((Slot)iter.next()).getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Sets the maximum memory retained by the shared stacks, dropping
+     * arrays if necessary.
+     */
+    void setMemoryCapacity(long memoryCapacity) {
+        this.memoryCapacity = memoryCapacity;
+
+        Iterator iter = classes.entrySet().iterator();
+        while (iter.hasNext() && memoryUsed.get() > memoryCapacity) {
+            Map.Entry e = (Map.Entry)iter.next();
+            long size = getMemorySize(((Long)e.getKey()).longValue());
+            ArrayDeque stack = (ArrayDeque)e.getValue();
+            synchronized (stack) {
+                while (memoryUsed.get() > memoryCapacity &&
+                       stack.pollFirst() != null) {
+                    memoryUsed.addAndGet(-size);
+                }
+            }
+        }
+
+        if (memoryCapacity <= 0) {
+            clearSlots();
+            synchronized (pending) {
+                pending.clear();
+                pendingMemoryUsed = 0L;
+            }
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Drops all pooled arrays.  Arrays registered for reclamation are
+     * still pooled when their buffers are collected.
+     */
+    void flush() {
+        Iterator iter = classes.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry e = (Map.Entry)iter.next();
+            long size = getMemorySize(((Long)e.getKey()).longValue());
+            ArrayDeque stack = (ArrayDeque)e.getValue();
+            synchronized (stack) {
+                memoryUsed.addAndGet(-size * stack.size());
+                stack.clear();
+            }
+        }
+        clearSlots();
+    }
+
+    private void clearSlots() {
+        synchronized (slots) {
+            Iterator iter = slots.values().iterator();
+            while (iter.hasNext()) {
+                ((Slot)iter.next()).clear();
+            }
+        }
+    }
+
+    /**
+     * The arrays retained by a single thread.  Only the owning thread
+     * takes and puts arrays; the lock is uncontended except when the
+     * pool is flushed or measured.
+     */
+    private static final class Slot {
+
+        private final Object[] arrays = new Object[LOCAL_CAPACITY];
+        private final long[] keys = new long[LOCAL_CAPACITY];
+
+        synchronized Object take(long key) {
+            for (int i = 0; i < LOCAL_CAPACITY; i++) {
+                if (arrays[i] != null && keys[i] == key) {
+                    Object array = arrays[i];
+                    arrays[i] = null;
+                    return array;
+                }
+            }
+            return null;
+        }
+
+        synchronized boolean put(Object array, long key) {
+            for (int i = 0; i < LOCAL_CAPACITY; i++) {
+                if (arrays[i] == null) {
+                    arrays[i] = array;
+                    keys[i] = key;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized long getMemoryUsed() {
+            long used = 0L;
+            for (int i = 0; i < LOCAL_CAPACITY; i++) {
+                if (arrays[i] != null) {
+                    used += getMemorySize(keys[i]);
+                }
+            }
+            return used;
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < LOCAL_CAPACITY; i++) {
+                arrays[i] = null;
+            }
+        }
+    }
+
+    /**
+     * A reference to a <code>DataBuffer</code> which keeps its data array
+     * to be pooled once the buffer has been collected.
+     */
+    private static final class Reclaimed extends WeakReference {
+
+        final Object array;
+        final Object bank;
+        final long key;
+
+        Reclaimed(DataBuffer db, ReferenceQueue queue,
+                  Object array, Object bank, long key) {
+            super(db, queue);
+            this.array = array;
+            this.bank = bank;
+            this.key = key;
+        }
+    }
+}
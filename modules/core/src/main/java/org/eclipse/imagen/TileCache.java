@@ -94,6 +94,26 @@ public interface TileCache {
      * @param tileY The Y index of the tile in the owner's tile grid.
      */
     Raster getTile(RenderedImage owner, int tileX, int tileY);
+
+    /**
+     * Returns whether the cache holds a tile, without retrieving it.
+     * Unlike <code>getTile()</code>, this method does not count as a hit
+     * or a miss, does not change the order in which the tiles are
+     * removed by memory control and does not move the tile between
+     * storage tiers, so that it may be used to probe the cache, e.g., to
+     * decide whether to compute or fetch the tile ahead of its use.
+     *
+     * <p> The default implementation returns <code>false</code> since
+     * whether a tile is held may not be found by means of the other
+     * methods without side effects.
+     *
+     * @param owner The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileX The X index of the tile in the owner's tile grid.
+     * @param tileY The Y index of the tile in the owner's tile grid.
+     */
+    default boolean containsTile(RenderedImage owner, int tileX, int tileY) {
+        return false;
+    }
     
     /**
      * Retrieves an array of all tiles in the cache which are owned by the
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen;
+import java.awt.Point;
+
+/**
+ * The claims of the threads which process a list of tiles at once, each
+ * tile by exactly one of them.  A thread claims a tile before processing
+ * it and reports it as done, with the failure if any, afterwards.
+ *
+ * <p> The thread which starts the work claims tiles from the end of the
+ * list with <code>claimLast()</code> until none is left, so the work
+ * completes even if no other thread helps, and then waits in
+ * <code>await()</code> for the tiles being processed by the others.
+ * Once a tile has failed no more tiles are handed out by
+ * <code>claimFirst()</code> or <code>claimLast()</code>.
+ *
+ * <p> The index of a tile in the list is found from its tile indices in
+ * constant time.
+ */
+final class TileClaims {
+
+    /** The indices of the tiles. */
+    private Point[] tileIndices;
+
+    /** The bounds of the tile indices. */
+    private int minTileX, minTileY, numTilesX, numTilesY;
+
+    /**
+     * The index in the list plus one of each tile within the bounds of
+     * the tile indices, in row major order, or zero if it is not listed.
+     */
+    private int[] grid;
+
+    /** Whether each tile has been claimed. */
+    private boolean[] isClaimed;
+
+    /** The index of the first tile which may not have been claimed. */
+    private int firstUnclaimed;
+
+    /** The index of the last tile which may not have been claimed. */
+    private int lastUnclaimed;
+
+    /** The number of tiles which are done or have been given up. */
+    private int numDone = 0;
+
+    /** The first failure to process a tile. */
+    private Throwable failure = null;
+
+    /** Constructs the claims on a list of tiles. */
+    TileClaims(Point[] tileIndices) {
+        this.tileIndices = tileIndices;
+        isClaimed = new boolean[tileIndices.length];
+        firstUnclaimed = 0;
+        lastUnclaimed = tileIndices.length - 1;
+
+        if (tileIndices.length == 0) {
+            grid = new int[0];
+            return;
+        }
+
+        int maxTileX = minTileX = tileIndices[0].x;
+        int maxTileY = minTileY = tileIndices[0].y;
+        for (int i = 1; i < tileIndices.length; i++) {
+            minTileX = Math.min(minTileX, tileIndices[i].x);
+            minTileY = Math.min(minTileY, tileIndices[i].y);
+            maxTileX = Math.max(maxTileX, tileIndices[i].x);
+            maxTileY = Math.max(maxTileY, tileIndices[i].y);
+        }
+        numTilesX = maxTileX - minTileX + 1;
+        numTilesY = maxTileY - minTileY + 1;
+
+        grid = new int[numTilesX*numTilesY];
+        for (int i = 0; i < tileIndices.length; i++) {
+            grid[(tileIndices[i].y - minTileY)*numTilesX +
+                 tileIndices[i].x - minTileX] = i + 1;
+        }
+    }
+
+    /** Returns the number of tiles. */
+    int getNumTiles() {
+        return tileIndices.length;
+    }
+
+    /** Returns the tile indices of the tile at an index of the list. */
+    Point getTileIndices(int index) {
+        return tileIndices[index];
+    }
+
+    /** Returns the index of a tile in the list, or -1. */
+    int indexOf(int tileX, int tileY) {
+        int i = tileX - minTileX;
+        int j = tileY - minTileY;
+        if (i < 0 || j < 0 || i >= numTilesX || j >= numTilesY) {
+            return -1;
+        }
+        return grid[j*numTilesX + i] - 1;
+    }
+
+    /**
+     * Claims a tile and returns its index in the list, or -1 if it is not
+     * listed or has been claimed.
+     */
+    synchronized int claim(int tileX, int tileY) {
+        int index = indexOf(tileX, tileY);
+        if (index < 0 || isClaimed[index]) {
+            return -1;
+        }
+        isClaimed[index] = true;
+        return index;
+    }
+
+    /**
+     * Claims the first tile which has not been claimed and returns its
+     * index, or -1 if all the tiles have been claimed or a tile has
+     * failed.
+     */
+    synchronized int claimFirst() {
+        if (giveUpOnFailure()) {
+            return -1;
+        }
+        while (firstUnclaimed < isClaimed.length &&
+               isClaimed[firstUnclaimed]) {
+            firstUnclaimed++;
+        }
+        if (firstUnclaimed == isClaimed.length) {
+            return -1;
+        }
+        isClaimed[firstUnclaimed] = true;
+        return firstUnclaimed;
+    }
+
+    /**
+     * Claims the last tile which has not been claimed and returns its
+     * index, or -1 if all the tiles have been claimed or a tile has
+     * failed.
+     */
+    synchronized int claimLast() {
+        if (giveUpOnFailure()) {
+            return -1;
+        }
+        while (lastUnclaimed >= 0 && isClaimed[lastUnclaimed]) {
+            lastUnclaimed--;
+        }
+        if (lastUnclaimed < 0) {
+            return -1;
+        }
+        isClaimed[lastUnclaimed] = true;
+        return lastUnclaimed;
+    }
+
+    /**
+     * If a tile has failed, claims the tiles left and counts them as done
+     * so that <code>await()</code> only waits for the tiles being
+     * processed.
+     */
+    private boolean giveUpOnFailure() {
+        if (failure == null) {
+            return false;
+        }
+        for (int i = firstUnclaimed; i <= lastUnclaimed; i++) {
+            if (!isClaimed[i]) {
+                isClaimed[i] = true;
+                numDone++;
+            }
+        }
+        firstUnclaimed = isClaimed.length;
+        lastUnclaimed = -1;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Reports a claimed tile as done and returns whether all the tiles
+     * are done.
+     *
+     * @param situation The failure to process the tile, or
+     *        <code>null</code>.
+     */
+    synchronized boolean done(Throwable situation) {
+        if (failure == null) {
+            failure = situation;
+        }
+        numDone++;
+        notifyAll();
+        return numDone == tileIndices.length;
+    }
+
+    /** Returns the first failure to process a tile, or <code>null</code>. */
+    synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until all the tiles are done and throws the first failure to
+     * process a tile, if any.  An interrupt does not end the wait, as the
+     * tiles being processed are still in use, but is kept as the
+     * interrupted status of the thread.
+     */
+    void await() {
+        boolean isInterrupted = false;
+        Throwable situation;
+        synchronized (this) {
+            giveUpOnFailure();
+            while (numDone < tileIndices.length) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            situation = failure;
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (situation instanceof RuntimeException) {
+            throw (RuntimeException)situation;
+        } else if (situation instanceof Error) {
+            throw (Error)situation;
+        } else if (situation != null) {
+            throw new RuntimeException(situation);
+        }
+    }
+}
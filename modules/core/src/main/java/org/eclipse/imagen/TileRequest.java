@@ -105,6 +105,42 @@ public interface TileRequest {
      */
     int getTileStatus(int tileX, int tileY);
 
+    /**
+     * Returns the number of tiles of the request which have the specified
+     * status (optional operation).  This may be used to monitor how many
+     * tiles are still queued, are being computed or have been cancelled.
+     * The status levels which are not supported by the implementation
+     * have a count of zero.
+     *
+     * <p> The default implementation invokes <code>getTileStatus()</code>
+     * for each tile of the request.
+     *
+     * @param status One of the <code>TILE_STATUS_*</code> constants
+     * defined in this interface.
+     *
+     * @exception UnsupportedOperationException if
+     * <code>isStatusAvailable()</code> returns <code>false</code>.
+     * @exception IllegalArgumentException if <code>status</code> is not
+     * one of the <code>TILE_STATUS_*</code> constants.
+     */
+    default int getTileCount(int status) {
+        if (!isStatusAvailable()) {
+            throw new UnsupportedOperationException();
+        }
+        if (status < TILE_STATUS_PENDING || status > TILE_STATUS_FAILED) {
+            throw new IllegalArgumentException();
+        }
+
+        Point[] indices = getTileIndices();
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (getTileStatus(indices[i].x, indices[i].y) == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Issues a request to the <code>TileScheduler</code> which generated
      * this <code>TileRequest</code> to cancel all tiles in the supplied
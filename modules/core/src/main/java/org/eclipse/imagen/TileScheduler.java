@@ -107,6 +107,42 @@ public interface TileScheduler {
     TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
                               TileComputationListener[] tileListeners);
 
+    /**
+     * Schedule a list of tiles for computation with the given priority
+     * and deadline.  The listeners are notified as with
+     * <code>scheduleTiles(PlanarImage,Point[],TileComputationListener[])</code>,
+     * whose requests have a priority of zero and no deadline.
+     *
+     * <p> Queued tiles of a request with a higher priority should be
+     * computed before those of requests with a lower priority.  Tiles
+     * which have not been computed when the deadline passes should be
+     * cancelled as if by <code>cancelTiles()</code>.  Both are hints
+     * which an implementation may ignore.
+     *
+     * <p> The default implementation ignores <code>priority</code> and
+     * <code>deadline</code> and invokes
+     * <code>scheduleTiles(target, tileIndices, tileListeners)</code>.
+     *
+     * @param target A <code>PlanarImage</code> whose tiles are to be computed.
+     * @param tileIndices A list of tile indices indicating which tiles
+     *        to schedule for computation.
+     * @param tileListeners <code>TileComputationListener</code>s to be
+     *        informed of tile computation status; may be <code>null</code>.
+     * @param priority The priority of the request; higher values are
+     *        computed first.
+     * @param deadline The time as returned by
+     *        <code>System.currentTimeMillis()</code> after which the tiles
+     *        are no longer needed, or zero if there is no deadline.
+     * @return The <code>TileRequest</code> for this set of tiles.
+     * @throws IllegalArgumentException if <code>target</code> or
+     *         <code>tileIndices</code> is <code>null</code>.
+     */
+    default TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
+                                      TileComputationListener[] tileListeners,
+                                      int priority, long deadline) {
+        return scheduleTiles(target, tileIndices, tileListeners);
+    }
+
     /**
      * Issues an advisory cancellation request to the
      * <code>TileScheduler</code> stating that the indicated tiles of the
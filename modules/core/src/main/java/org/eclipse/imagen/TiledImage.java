@@ -24,6 +24,7 @@ import java.awt.Shape;
 import java.awt.geom.Area;
 import java.awt.image.BandedSampleModel;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
@@ -33,11 +34,16 @@ import java.awt.image.WritableRaster;
 import java.awt.image.WritableRenderedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.lang.reflect.Array;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
+import org.eclipse.imagen.iterator.WritableRandomIter;
+import org.eclipse.imagen.media.iterator.WritableRandomIterHeld;
+import org.eclipse.imagen.media.util.DataBufferUtils;
 import org.eclipse.imagen.media.util.JDKWorkarounds;
 
 /**
@@ -71,6 +77,22 @@ import org.eclipse.imagen.media.util.JDKWorkarounds;
  * shortcut is to call <code>setData()</code>, which copies a rectangular
  * region or an area specified by a <code>ROI</code> from a supplied
  * <code>Raster</code> directly into the <code>TiledImage</code>.
+ * Samples held in arrays may be written with <code>setSamples()</code>
+ * and <code>setPixels()</code>, and many scattered samples through the
+ * iterator returned by <code>createWritableIterator()</code>, both of
+ * which get and release each tile once.
+ *
+ * <p> Any number of threads may get and release writable tiles at once;
+ * the counts of writers are updated atomically.  The
+ * <code>TileObserver</code>s are notified after a count has been updated
+ * and outside of any lock, by the thread which got or released the tile.
+ * Since the notifications of different threads are not ordered, an
+ * observer should check <code>isTileWritable()</code> rather than rely on
+ * the order of the notifications of a tile.  The
+ * <code>set()</code> and <code>setData()</code> methods split their work
+ * by destination tile and copy the tiles in parallel on the threads of
+ * the common <code>ForkJoinPool</code>, so the source image or
+ * <code>Raster</code> must allow concurrent reads.
  *
  * <p> A final way to modify the contents of a <code>TiledImage</code>
  * is through calls to the object returned by <code>createGraphics()</code>.
@@ -116,7 +138,11 @@ public class TiledImage extends PlanarImage
     /** The tile array. */
     protected WritableRaster[][] tiles;
 
-    /** The number of writers of each tile; -1 indicates a locked tile. */
+    /**
+     * The number of writers of each tile; -1 indicates a locked tile.
+     * The counts are read and updated while synchronized on the array,
+     * which is shared with all ancestors.
+     */
     protected int[][] writers;
 
     /** The current set of TileObservers. */
@@ -134,12 +160,18 @@ public class TiledImage extends PlanarImage
     /** The sub-banding list with respect to the ancestor. */
     private int[] bandList = null;
 
-    /** The number of writable tiles; shared with all ancestors. */
+    /**
+     * The number of writable tiles; shared with all ancestors and
+     * guarded by <code>writers</code>.
+     */
     private int[] numWritableTiles = null;
 
     /** The ROI to be used with the source image of uncomputed tiles. */
     private ROI srcROI = null;
 
+    /** The runs of pixels of <code>srcROI</code> within the overlap. */
+    private ROIRunLength srcRuns = null;
+
     /** The bounds of the intersection of the source image bounds with
        those of this image and with the source ROI if present. */
     private Rectangle overlapBounds = null;
@@ -473,41 +505,23 @@ public class TiledImage extends PlanarImage
     }
 
     /**
-     * Overlays a set of pixels described by an Area from an image
-     * onto a tile.
-     *
-     * @param tile
-     * @param im
-     * @param a
+     * Overlays the pixels of a rectangle within a region of interest
+     * from an image onto a tile.  The rectangle is skipped if it lies
+     * outside the region and copied whole if it lies inside it;
+     * otherwise its pixels are read once and copied run by run.
      */
     private void overlayPixels(WritableRaster tile,
                                RenderedImage im,
-                               Area a) {
-        ROIShape rs = new ROIShape(a);
-        Rectangle bounds = rs.getBounds();
-        LinkedList rectList =
-            rs.getAsRectangleList(bounds.x, bounds.y,
-                                  bounds.width, bounds.height);
-        int numRects = rectList.size();
-        for(int i = 0; i < numRects; i++) {
-            Rectangle rect = (Rectangle)rectList.get(i);
-            WritableRaster child =
-                tile.createWritableChild(rect.x, rect.y,
-                                         rect.width, rect.height,
-                                         rect.x, rect.y,
-                                         bandList);
-            im.copyData(child);
+                               Rectangle rect,
+                               ROIRunLength runs) {
+        switch (runs.getCoverage(rect)) {
+        case ROIRunLength.OUTSIDE:
+            return;
+        case ROIRunLength.INSIDE:
+            overlayPixels(tile, im, rect);
+            return;
         }
-    }
 
-    /**
-     * Overlays a set of pixels described by a bitmask
-     * onto a tile.
-     */
-    private void overlayPixels(WritableRaster tile,
-                               RenderedImage im,
-                               Rectangle rect,
-                               int[][] bitmask) {
         Raster r = im.getData(rect);
 
         // If this is sub-banded child image, create a child of the
@@ -519,46 +533,91 @@ public class TiledImage extends PlanarImage
                                             bandList);
         }
 
-        // Create a buffer suitable for transferring pixels
-        Object data = r.getDataElements(rect.x, rect.y, null);
-
-	// The bitmask passed in might have undefined values outside
-	// the specified rect - therefore make sure that those bits
-	// are ignored.
-	int leftover = rect.width % 32;
-	int bitWidth = ((rect.width+31)/32) - (leftover > 0 ? 1 : 0);
-        int y = rect.y;
+        // Create a buffer suitable for transferring a row of pixels.
+        Object data = r.getDataElements(rect.x, rect.y, rect.width, 1, null);
+
+        int xEnd = rect.x + rect.width;
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            int[] row = runs.getRuns(y);
+            for (int k = ROIRunLength.findRun(row, rect.x);
+                 k < row.length && row[k] < xEnd; k += 2) {
+                int start = Math.max(row[k], rect.x);
+                int width = Math.min(row[k + 1], xEnd) - start;
+                r.getDataElements(start, y, width, 1, data);
+                tile.setDataElements(start, y, width, 1, data);
+            }
+        }
+    }
 
-        for (int j = 0; j < rect.height; j++, y++) {
-            int[] rowMask = bitmask[j];
-            int   i, x = rect.x;
+    /**
+     * A write into a rectangle of tiles of this image, split by tile.
+     * Tasks which write tiles from the start of the rectangle are
+     * submitted to the common <code>ForkJoinPool</code>.  The calling
+     * thread meanwhile writes the remaining tiles from the end of the
+     * rectangle, so that the write completes even if the pool has no
+     * thread to spare, and returns once every tile has been written.
+     */
+    private abstract class TileWrite {
 
-            for (i = 0; i < bitWidth; i++) {
-                int mask32 = rowMask[i];
-                int bit = 0x80000000;
+        private TileClaims claims;
 
-                for (int b = 0; b < 32; b++, x++) {
-                    if ((mask32 & bit) != 0) {
-                        r.getDataElements(x, y, data);
-                        tile.setDataElements(x, y, data);
-                    }
-                    bit >>>= 1;
+        TileWrite(int txMin, int tyMin, int txMax, int tyMax) {
+            Point[] tileIndices =
+                new Point[(txMax - txMin + 1)*(tyMax - tyMin + 1)];
+            int k = 0;
+            for (int j = tyMin; j <= tyMax; j++) {
+                for (int i = txMin; i <= txMax; i++) {
+                    tileIndices[k++] = new Point(i, j);
                 }
             }
+            claims = new TileClaims(tileIndices);
+        }
 
-	    if (leftover > 0) {
-		int mask32 = rowMask[i];
-                int bit = 0x80000000;
+        /** Writes a tile of this image. */
+        abstract void write(int tileX, int tileY);
 
-                for (int b = 0; b < leftover; b++, x++) {
-                    if ((mask32 & bit) != 0) {
-                        r.getDataElements(x, y, data);
-                        tile.setDataElements(x, y, data);
-                    }
-                    bit >>>= 1;
-                }
-	    }
-	}
+        /** Writes all the tiles. */
+        void run() {
+            if (claims.getNumTiles() == 1) {
+                Point p = claims.getTileIndices(0);
+                write(p.x, p.y);
+                return;
+            }
+
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int numTasks =
+                Math.min(claims.getNumTiles() - 1, pool.getParallelism());
+            for (int t = 0; t < numTasks; t++) {
+                pool.execute(new Runnable() {
+                        public void run() {
+                            int index;
+                            while ((index = claims.claimFirst()) >= 0) {
+                                writeClaimed(index);
+                            }
+                        }
+                    });
+            }
+
+            int index;
+            while ((index = claims.claimLast()) >= 0) {
+                writeClaimed(index);
+            }
+            claims.await();
+        }
+
+        /** Writes a claimed tile, recording rather than throwing failures. */
+        private void writeClaimed(int index) {
+            Throwable situation = null;
+            try {
+                Point p = claims.getTileIndices(index);
+                write(p.x, p.y);
+            } catch (RuntimeException e) {
+                situation = e;
+            } catch (Error e) {
+                situation = e;
+            }
+            claims.done(situation);
+        }
     }
 
     /**
@@ -578,7 +637,7 @@ public class TiledImage extends PlanarImage
      * @throws <code>IllegalArgumentException</code> if <code>im</code> is
      *         <code>null</code>.
      */
-    public void set(RenderedImage im) {
+    public void set(final RenderedImage im) {
 
         if ( im == null ) {
             throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
@@ -606,20 +665,21 @@ public class TiledImage extends PlanarImage
         int txMax = XToTileX(imRect.x + imRect.width - 1);
         int tyMax = YToTileY(imRect.y + imRect.height - 1);
 
-        // Loop over all in-bound tiles, find ones that have been computed
-        for (int j = tyMin; j <= tyMax; j++) {
-            for (int i = txMin; i <= txMax; i++) {
+        // Overlay all in-bound tiles which have been computed.
+        final Rectangle overlap = imRect;
+        new TileWrite(txMin, tyMin, txMax, tyMax) {
+            void write(int i, int j) {
                 WritableRaster t;
                 if ((t = tiles[i - minTileX][j - minTileY]) != null
                     && !isTileLocked(i, j)) {
                     Rectangle tileRect = getTileRect(i, j);
-                    tileRect = tileRect.intersection(imRect);
+                    tileRect = tileRect.intersection(overlap);
                     if(!tileRect.isEmpty()) {
                         overlayPixels(t, im, tileRect);
                     }
                 }
             }
-        }
+        }.run();
 
         // Cache the (wrapped) source image and clear the source ROI.
         PlanarImage src = PlanarImage.wrapRenderedImage(im);
@@ -629,6 +689,7 @@ public class TiledImage extends PlanarImage
             setSource(src, 0);
         }
         srcROI = null;
+        srcRuns = null;
         overlapBounds = imRect;
 
         // Add the source as fallback PropertySource.
@@ -655,7 +716,7 @@ public class TiledImage extends PlanarImage
      * @throws <code>IllegalArgumentException</code> either parameter is
      *         <code>null</code>.
      */
-    public void set(RenderedImage im, ROI roi) {
+    public void set(final RenderedImage im, final ROI roi) {
 
         if ( im == null ) {
             throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
@@ -671,11 +732,12 @@ public class TiledImage extends PlanarImage
 
         // Return if there is not a common intersection among this
         // image and the source image and the region of interest.
-        Rectangle overlap = imRect.intersection(roi.getBounds());
-        if(overlap.isEmpty() ||
-           (overlap = overlap.intersection(getBounds())).isEmpty()) {
+        Rectangle bounds = imRect.intersection(roi.getBounds());
+        if(bounds.isEmpty() ||
+           (bounds = bounds.intersection(getBounds())).isEmpty()) {
             return;
         }
+        final Rectangle overlap = bounds;
 
         // Unset buffer sharing flag.
         areBuffersShared = false;
@@ -686,42 +748,23 @@ public class TiledImage extends PlanarImage
         int txMax = XToTileX(overlap.x + overlap.width - 1);
         int tyMax = YToTileY(overlap.y + overlap.height - 1);
 
-        Shape roiShape = roi.getAsShape();
-        Area roiArea = null;
-        if (roiShape != null) {
-            roiArea = new Area(roiShape);
-        }
+        // Convert the ROI within the overlap once so that each tile is
+        // skipped, copied whole or copied run by run.
+        final ROIRunLength runs = new ROIRunLength(roi, overlap);
 
-        // Loop over all in-bound tiles, find ones that have been computed
-        for (int j = tyMin; j <= tyMax; j++) {
-            for (int i = txMin; i <= txMax; i++) {
+        // Overlay all in-bound tiles which have been computed.
+        new TileWrite(txMin, tyMin, txMax, tyMax) {
+            void write(int i, int j) {
                 WritableRaster t;
                 if ((t = tiles[i - minTileX][j - minTileY]) != null &&
                     !isTileLocked(i, j)) {
                     Rectangle rect = getTileRect(i, j).intersection(overlap);
                     if(!rect.isEmpty()) {
-                        if (roiShape != null) {
-                            Area a = new Area(rect);
-                            a.intersect(roiArea);
-
-                            if(!a.isEmpty()) {
-                                overlayPixels(t, im, a);
-                            }
-                        } else {
-                            int[][] bitmask =
-                                roi.getAsBitmask(rect.x, rect.y,
-                                                 rect.width,
-                                                 rect.height,
-                                                 null);
-
-                            if(bitmask != null && bitmask.length > 0) {
-                                overlayPixels(t, im, rect, bitmask);
-                            }
-                        }
+                        overlayPixels(t, im, rect, runs);
                     }
                 }
             }
-        }
+        }.run();
 
         // Cache the (wrapped) source image and the source ROI.
         PlanarImage src = PlanarImage.wrapRenderedImage(im);
@@ -731,6 +774,7 @@ public class TiledImage extends PlanarImage
             setSource(src, 0);
         }
         srcROI = roi;
+        srcRuns = runs;
         overlapBounds = overlap;
 
         // Add the source as fallback PropertySource.
@@ -975,95 +1019,91 @@ public class TiledImage extends PlanarImage
             return;
         }
 
+        // Do nothing if tile is non-null, i.e., already computed.
         synchronized(tiles) {
-            // Do nothing if tile is non-null, i.e., already computed.
-            if(tiles[tileX - minTileX][tileY - minTileY] == null) {
-                // If sharing buffers, do so.
-                if(areBuffersShared) {
-                    Raster srcTile = src.getTile(tileX, tileY);
-                    if(srcTile instanceof WritableRaster) {
-                        tiles[tileX - minTileX][tileY - minTileY] =
-                            (WritableRaster)srcTile;
-                    } else {
-                        Point location = new Point(srcTile.getMinX(),
-                                                   srcTile.getMinY());
-                        tiles[tileX - minTileX][tileY - minTileY] =
-                            Raster.createWritableRaster(sampleModel,
-                                                        srcTile.getDataBuffer(),
-                                                        location);
-                    }
-                    return;
-                }
+            if(tiles[tileX - minTileX][tileY - minTileY] != null) {
+                return;
+            }
+        }
 
-                // Create the tile using the ancestor SampleModel.
-                tiles[tileX - minTileX][tileY - minTileY] =
-                    createWritableRaster(ancestorSampleModel,
-                                         new Point(tileXToX(tileX),
-                                                   tileYToY(tileY)));
-                WritableRaster tile = tiles[tileX - minTileX][tileY - minTileY];
+        // The tile is computed without holding the lock so that distinct
+        // tiles may be computed at once.  If the same tile is computed by
+        // two threads the first one stored is kept.
+        WritableRaster tile = computeTile(src, tileX, tileY);
 
-                // If a source is available try to set the tile's data.
-                if(src != null) {
-                    // Get the bounds of the tile's support.
-                    Rectangle tileRect = getTileRect(tileX, tileY);
+        synchronized(tiles) {
+            if(tiles[tileX - minTileX][tileY - minTileY] == null) {
+                tiles[tileX - minTileX][tileY - minTileY] = tile;
+            }
+        }
+    }
 
-                    // Determine the intersection of the tile and the overlap.
-                    Rectangle rect = overlapBounds.intersection(tileRect);
+    /**
+     * Creates a tile and sets its data from the source if available.
+     */
+    private WritableRaster computeTile(PlanarImage src,
+                                       int tileX, int tileY) {
+        // If sharing buffers, do so.
+        if(areBuffersShared) {
+            Raster srcTile = src.getTile(tileX, tileY);
+            if(srcTile instanceof WritableRaster) {
+                return (WritableRaster)srcTile;
+            } else {
+                Point location = new Point(srcTile.getMinX(),
+                                           srcTile.getMinY());
+                return Raster.createWritableRaster(sampleModel,
+                                                   srcTile.getDataBuffer(),
+                                                   location);
+            }
+        }
 
-                    // Bail if this doesn't intersect the effective overlap.
-                    if(rect.isEmpty()) {
-                        return;
-                    }
+        // Create the tile using the ancestor SampleModel.
+        WritableRaster tile =
+            createWritableRaster(ancestorSampleModel,
+                                 new Point(tileXToX(tileX),
+                                           tileYToY(tileY)));
 
-                    // If a source ROI is present, use it.
-                    if(srcROI != null) {
-                        // Attempt to get the ROI as a Shape.
-                        Shape roiShape = srcROI.getAsShape();
+        // If a source is available try to set the tile's data.
+        if(src != null) {
+            // Get the bounds of the tile's support.
+            Rectangle tileRect = getTileRect(tileX, tileY);
 
-                        if (roiShape != null) {
-                            // Determine the area of overlap.
-                            Area a = new Area(rect);
-                            a.intersect(new Area(roiShape));
+            // Determine the intersection of the tile and the overlap.
+            Rectangle rect = overlapBounds.intersection(tileRect);
 
-                            if(!a.isEmpty()) {
-                                // If the area is non-empty overlay the pixels.
-                                overlayPixels(tile, src, a);
-                            }
-                        } else {
-                            int[][] bitmask =
-                                srcROI.getAsBitmask(rect.x, rect.y,
-                                                    rect.width, rect.height,
-                                                    null);
+            // Bail if this doesn't intersect the effective overlap.
+            if(rect.isEmpty()) {
+                return tile;
+            }
 
-                            overlayPixels(tile, src, rect, bitmask);
-                        }
-                    } else {
-                        // If the intersection equals the tile area, copy data into
-                        // the entire tile.  If the tile straddles the edge of the
-                        // source, copy only into the intersection.
-                        if(!rect.isEmpty()) {
-                            if(bandList == null && rect.equals(tileRect)) {
-                                // The current image has the same bands in the
-                                // same order as its ancestor TiledImage and
-                                // the requested tile is completely within "src".
-                                if (tileRect.equals(tile.getBounds()))
-                                    src.copyData(tile);
-                                else
-                                    src.copyData(
-                                        tile.createWritableChild(rect.x, rect.y,
-                                                                 rect.width,
-                                                                 rect.height,
-                                                                 rect.x,
-                                                                 rect.y,
-                                                                 null));
-                            } else {
-                                overlayPixels(tile, src, rect);
-                            }
-                        }
-                    }
+            // If a source ROI is present, use it.
+            if(srcRuns != null) {
+                overlayPixels(tile, src, rect, srcRuns);
+            } else {
+                // If the intersection equals the tile area, copy data into
+                // the entire tile.  If the tile straddles the edge of the
+                // source, copy only into the intersection.
+                if(bandList == null && rect.equals(tileRect)) {
+                    // The current image has the same bands in the
+                    // same order as its ancestor TiledImage and
+                    // the requested tile is completely within "src".
+                    if (tileRect.equals(tile.getBounds()))
+                        src.copyData(tile);
+                    else
+                        src.copyData(
+                            tile.createWritableChild(rect.x, rect.y,
+                                                     rect.width,
+                                                     rect.height,
+                                                     rect.x,
+                                                     rect.y,
+                                                     null));
+                } else {
+                    overlayPixels(tile, src, rect);
                 }
             }
         }
+
+        return tile;
     }
 
     /**
@@ -1117,17 +1157,25 @@ public class TiledImage extends PlanarImage
         }
 
         createTile(tileX, tileY);
-        ++writers[tileX - minTileX][tileY - minTileY];
 
-        if (writers[tileX - minTileX][tileY - minTileY] == 1) {
-            numWritableTiles[0]++;
+        // The count is updated under the lock but the observers are
+        // notified once it has been left, so that an observer may call
+        // back into this image from any thread.
+        boolean isFirstWriter;
+        synchronized(writers) {
+            if(writers[tileX - minTileX][tileY - minTileY] < 0) {
+                return null;
+            }
 
-            Enumeration e = tileObservers.elements();
-            while (e.hasMoreElements()) {
-                TileObserver t = (TileObserver)e.nextElement();
-                t.tileUpdate(this, tileX, tileY, true);
+            isFirstWriter =
+                ++writers[tileX - minTileX][tileY - minTileY] == 1;
+            if (isFirstWriter) {
+                numWritableTiles[0]++;
             }
         }
+        if (isFirstWriter) {
+            notifyTileObservers(tileX, tileY, true);
+        }
 
         // For non-sub-banded image return the tile directly.
         if(bandList == null) {
@@ -1152,25 +1200,36 @@ public class TiledImage extends PlanarImage
      * @param tileY the Y index of the tile.
      */
     public void releaseWritableTile(int tileX, int tileY) {
-        if(isTileLocked(tileX, tileY)) {
-            return;
-        }
-
-        --writers[tileX - minTileX][tileY - minTileY];
+        boolean isLastWriter;
+        synchronized(writers) {
+            if(isTileLocked(tileX, tileY)) {
+                return;
+            }
 
-        if (writers[tileX - minTileX][tileY - minTileY] < 0) {
-            throw new RuntimeException(JaiI18N.getString("TiledImage1"));
-        }
+            --writers[tileX - minTileX][tileY - minTileY];
 
-        if (writers[tileX - minTileX][tileY - minTileY] == 0) {
-            numWritableTiles[0]--;
+            if (writers[tileX - minTileX][tileY - minTileY] < 0) {
+                throw new RuntimeException(JaiI18N.getString("TiledImage1"));
+            }
 
-            Enumeration e = tileObservers.elements();
-            while (e.hasMoreElements()) {
-                TileObserver t = (TileObserver)e.nextElement();
-                t.tileUpdate(this, tileX, tileY, false);
+            isLastWriter = writers[tileX - minTileX][tileY - minTileY] == 0;
+            if (isLastWriter) {
+                numWritableTiles[0]--;
             }
         }
+        if (isLastWriter) {
+            notifyTileObservers(tileX, tileY, false);
+        }
+    }
+
+    /** Notifies the <code>TileObserver</code>s of a change of a tile. */
+    private void notifyTileObservers(int tileX, int tileY,
+                                     boolean willBeWritable) {
+        Enumeration e = tileObservers.elements();
+        while (e.hasMoreElements()) {
+            TileObserver t = (TileObserver)e.nextElement();
+            t.tileUpdate(this, tileX, tileY, willBeWritable);
+        }
     }
 
     /**
@@ -1197,8 +1256,14 @@ public class TiledImage extends PlanarImage
         // Force the tile to be computed if it has not yet been.
         createTile(tileX, tileY);
 
-        // Set the corresponding writers count to -1.
-        writers[tileX - minTileX][tileY - minTileY] = -1;
+        // Set the corresponding writers count to -1 unless a writer
+        // has got the tile meanwhile.
+        synchronized(writers) {
+            if(isTileWritable(tileX, tileY)) {
+                return false;
+            }
+            writers[tileX - minTileX][tileY - minTileY] = -1;
+        }
 
         return true;
     }
@@ -1211,7 +1276,9 @@ public class TiledImage extends PlanarImage
      * @return Whether the tile is locked.
      */
     protected boolean isTileLocked(int tileX, int tileY) {
-	return writers[tileX - minTileX][tileY - minTileY] < 0;
+        synchronized(writers) {
+            return writers[tileX - minTileX][tileY - minTileY] < 0;
+        }
     }
 
     /**
@@ -1224,10 +1291,10 @@ public class TiledImage extends PlanarImage
      * @param r a <code>Raster</code> containing pixels to be copied
      * into the <code>TiledImage</code>.
      */
-    public void setData(Raster r) {
+    public void setData(final Raster r) {
         // Return if the intersection of the image and Raster bounds is empty.
-        Rectangle rBounds = r.getBounds();
-        if((rBounds = rBounds.intersection(getBounds())).isEmpty()) {
+        final Rectangle rBounds = r.getBounds().intersection(getBounds());
+        if(rBounds.isEmpty()) {
             return;
         }
 
@@ -1237,8 +1304,8 @@ public class TiledImage extends PlanarImage
         int txMax = XToTileX(rBounds.x + rBounds.width - 1);
         int tyMax = YToTileY(rBounds.y + rBounds.height - 1);
 
-        for(int ty = tyMin; ty <= tyMax; ty++) {
-            for(int tx = txMin; tx <= txMax; tx++) {
+        new TileWrite(txMin, tyMin, txMax, tyMax) {
+            void write(int tx, int ty) {
                 WritableRaster wr = getWritableTile(tx, ty);
                 if(wr != null) {
                     // XXX bpb 02/04/1999
@@ -1264,7 +1331,7 @@ public class TiledImage extends PlanarImage
                     releaseWritableTile(tx, ty);
                 }
             }
-        }
+        }.run();
     }
 
     /**
@@ -1278,7 +1345,7 @@ public class TiledImage extends PlanarImage
      * into the <code>TiledImage</code>.
      * @param roi The region of interest.
      */
-    public void setData(Raster r, ROI roi) {
+    public void setData(final Raster r, ROI roi) {
         // Return if the intersection of the image bounds, the Raster,
         // and the ROI bounds is empty.
         Rectangle rBounds = r.getBounds();
@@ -1288,7 +1355,7 @@ public class TiledImage extends PlanarImage
         }
 
         // Get the Rectangle list representation of the ROI.
-        LinkedList rectList =
+        final LinkedList rectList =
             roi.getAsRectangleList(rBounds.x, rBounds.y,
                                    rBounds.width, rBounds.height);
 
@@ -1298,10 +1365,10 @@ public class TiledImage extends PlanarImage
         int txMax = XToTileX(rBounds.x + rBounds.width - 1);
         int tyMax = YToTileY(rBounds.y + rBounds.height - 1);
 
-        int numRects = rectList.size();
+        final int numRects = rectList.size();
 
-        for(int ty = tyMin; ty <= tyMax; ty++) {
-            for(int tx = txMin; tx <= txMax; tx++) {
+        new TileWrite(txMin, tyMin, txMax, tyMax) {
+            void write(int tx, int ty) {
                 WritableRaster wr = getWritableTile(tx, ty);
                 if(wr != null) {
                     Rectangle tileRect = getTileRect(tx, ty);
@@ -1325,7 +1392,7 @@ public class TiledImage extends PlanarImage
                     releaseWritableTile(tx, ty);
                 }
             }
-        }
+        }.run();
     }
 
     /**
@@ -1343,6 +1410,12 @@ public class TiledImage extends PlanarImage
      * changes in tile writability before the writer has a chance to
      * make any modifications.
      *
+     * <p> The observers are called on the thread which gets or releases
+     * the tile, without any lock of this image being held.  Since
+     * <code>set()</code> and <code>setData()</code> write tiles in
+     * parallel, an observer may be called from several worker threads at
+     * once and must be thread-safe.
+     *
      * @param observer An object implementing the
      * <code>TileObserver</code> interface.
      */
@@ -1377,11 +1450,14 @@ public class TiledImage extends PlanarImage
             Vector v = new Vector();
             int count = 0;
 
-            for (int j = 0; j < tilesY; j++) {
-                for (int i = 0; i < tilesX; i++) {
-                    if (writers[i][j] > 0) {
-                        v.addElement(new Point(i + minTileX, j + minTileY));
-                        ++count;
+            synchronized(writers) {
+                for (int j = 0; j < tilesY; j++) {
+                    for (int i = 0; i < tilesX; i++) {
+                        if (writers[i][j] > 0) {
+                            v.addElement(new Point(i + minTileX,
+                                                   j + minTileY));
+                            ++count;
+                        }
                     }
                 }
             }
@@ -1403,7 +1479,9 @@ public class TiledImage extends PlanarImage
      * while registering to learn of future writers.
      */
     public boolean hasTileWriters() {
-        return numWritableTiles[0] > 0;
+        synchronized(writers) {
+            return numWritableTiles[0] > 0;
+        }
     }
 
     /**
@@ -1413,7 +1491,9 @@ public class TiledImage extends PlanarImage
      * @param tileY the Y index of the tile.
      */
     public boolean isTileWritable(int tileX, int tileY) {
-        return writers[tileX - minTileX][tileY - minTileY] > 0;
+        synchronized(writers) {
+            return writers[tileX - minTileX][tileY - minTileY] > 0;
+        }
     }
 
     /**
@@ -1548,6 +1628,449 @@ public class TiledImage extends PlanarImage
         return t.getSampleDouble(x, y, b);
     }
 
+    /**
+     * Sets the samples of a band of a rectangle of pixels from an
+     * <code>int</code> array containing one sample per pixel in
+     * row-major order.  Each tile overlapped by the rectangle is got for
+     * writing and released once, so the <code>TileObserver</code>s are
+     * notified once per tile, and if the tiles have a
+     * <code>ComponentSampleModel</code> the samples are stored directly in
+     * the data arrays of the tiles.  Locked tiles are not written.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param b The band of the samples.
+     * @param iArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>iArray</code> is
+     *         <code>null</code> or too small, if the rectangle is not
+     *         within the image bounds or if the band is out of range.
+     *
+     * @see WritableRaster#setSamples(int,int,int,int,int,int[])
+     */
+    public void setSamples(int x, int y, int w, int h, int b, int[] iArray) {
+        setRect(x, y, w, h, b, 1, iArray, iArray == null ? 0 : iArray.length);
+    }
+
+    /**
+     * Sets the samples of a band of a rectangle of pixels from a
+     * <code>float</code> array containing one sample per pixel in
+     * row-major order.  The tiles are written as by
+     * <code>setSamples(int,int,int,int,int,int[])</code>.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param b The band of the samples.
+     * @param fArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>fArray</code> is
+     *         <code>null</code> or too small, if the rectangle is not
+     *         within the image bounds or if the band is out of range.
+     */
+    public void setSamples(int x, int y, int w, int h, int b,
+                           float[] fArray) {
+        setRect(x, y, w, h, b, 1, fArray, fArray == null ? 0 : fArray.length);
+    }
+
+    /**
+     * Sets the samples of a band of a rectangle of pixels from a
+     * <code>double</code> array containing one sample per pixel in
+     * row-major order.  The tiles are written as by
+     * <code>setSamples(int,int,int,int,int,int[])</code>.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param b The band of the samples.
+     * @param dArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>dArray</code> is
+     *         <code>null</code> or too small, if the rectangle is not
+     *         within the image bounds or if the band is out of range.
+     */
+    public void setSamples(int x, int y, int w, int h, int b,
+                           double[] dArray) {
+        setRect(x, y, w, h, b, 1, dArray, dArray == null ? 0 : dArray.length);
+    }
+
+    /**
+     * Sets a rectangle of pixels from an <code>int</code> array
+     * containing all the samples of each pixel in turn in row-major
+     * order.  The tiles are written as by
+     * <code>setSamples(int,int,int,int,int,int[])</code>.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param iArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>iArray</code> is
+     *         <code>null</code> or too small or if the rectangle is not
+     *         within the image bounds.
+     *
+     * @see WritableRaster#setPixels(int,int,int,int,int[])
+     */
+    public void setPixels(int x, int y, int w, int h, int[] iArray) {
+        setRect(x, y, w, h, 0, sampleModel.getNumBands(),
+                iArray, iArray == null ? 0 : iArray.length);
+    }
+
+    /**
+     * Sets a rectangle of pixels from a <code>float</code> array
+     * containing all the samples of each pixel in turn in row-major
+     * order.  The tiles are written as by
+     * <code>setSamples(int,int,int,int,int,int[])</code>.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param fArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>fArray</code> is
+     *         <code>null</code> or too small or if the rectangle is not
+     *         within the image bounds.
+     */
+    public void setPixels(int x, int y, int w, int h, float[] fArray) {
+        setRect(x, y, w, h, 0, sampleModel.getNumBands(),
+                fArray, fArray == null ? 0 : fArray.length);
+    }
+
+    /**
+     * Sets a rectangle of pixels from a <code>double</code> array
+     * containing all the samples of each pixel in turn in row-major
+     * order.  The tiles are written as by
+     * <code>setSamples(int,int,int,int,int,int[])</code>.
+     *
+     * @param x The X coordinate of the upper-left pixel.
+     * @param y The Y coordinate of the upper-left pixel.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param dArray The samples.
+     *
+     * @throws IllegalArgumentException if <code>dArray</code> is
+     *         <code>null</code> or too small or if the rectangle is not
+     *         within the image bounds.
+     */
+    public void setPixels(int x, int y, int w, int h, double[] dArray) {
+        setRect(x, y, w, h, 0, sampleModel.getNumBands(),
+                dArray, dArray == null ? 0 : dArray.length);
+    }
+
+    /**
+     * Returns a <code>WritableRandomIter</code> over a rectangle of this
+     * image which gets each tile for writing when it is first accessed
+     * and holds it until the <code>done()</code> method of the iterator
+     * is called.  Each tile is therefore got and released once however
+     * the pixels are visited, and if the tiles have a
+     * <code>ComponentSampleModel</code> the samples are read and written
+     * directly in their data arrays.  The tiles remain writable, and
+     * <code>clearTiles()</code> may not be called, until
+     * <code>done()</code> is called.  Accessing a pixel of a locked
+     * tile throws an <code>IllegalStateException</code>.
+     *
+     * @param bounds The rectangle of the iterator, or <code>null</code>
+     *        for the whole image.
+     */
+    public WritableRandomIter createWritableIterator(Rectangle bounds) {
+        if(bounds == null) {
+            bounds = getBounds();
+        }
+        return new WritableRandomIterHeld(this, bounds);
+    }
+
+    /**
+     * Writes the samples of <code>numBands</code> consecutive bands
+     * starting at band <code>b</code> of a rectangle of pixels, the
+     * samples of a pixel being consecutive in <code>data</code>.
+     */
+    private void setRect(int x, int y, int w, int h, int b, int numBands,
+                         Object data, int length) {
+        if(data == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+        if(w < 0 || h < 0 || !getBounds().contains(x, y, w, h)) {
+            throw new IllegalArgumentException(JaiI18N.getString("TiledImage3"));
+        }
+        if(b < 0 || b + numBands > sampleModel.getNumBands()) {
+            throw new IllegalArgumentException(JaiI18N.getString("TiledImage5"));
+        }
+        if((long)w*h*numBands > length) {
+            throw new IllegalArgumentException(JaiI18N.getString("TiledImage4"));
+        }
+        if(w == 0 || h == 0) {
+            return;
+        }
+
+        Rectangle region = new Rectangle(x, y, w, h);
+        int txMin = XToTileX(x);
+        int tyMin = YToTileY(y);
+        int txMax = XToTileX(x + w - 1);
+        int tyMax = YToTileY(y + h - 1);
+
+        for(int ty = tyMin; ty <= tyMax; ty++) {
+            for(int tx = txMin; tx <= txMax; tx++) {
+                WritableRaster wr = getWritableTile(tx, ty);
+                if(wr == null) {
+                    continue;
+                }
+                try {
+                    Rectangle rect = wr.getBounds().intersection(region);
+                    if(!(wr.getSampleModel() instanceof ComponentSampleModel) ||
+                       !setRectCSM(wr, rect, region, b, numBands, data)) {
+                        setRectFallback(wr, rect, region, b, numBands, data);
+                    }
+                } finally {
+                    releaseWritableTile(tx, ty);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the part <code>rect</code> of the region of
+     * <code>setRect()</code> directly into the data arrays of a tile
+     * having a <code>ComponentSampleModel</code>.  Returns
+     * <code>false</code>, having written nothing, if the data arrays of
+     * the <code>DataBuffer</code> of the tile are not accessible.
+     */
+    private static boolean setRectCSM(WritableRaster wr, Rectangle rect,
+                                      Rectangle region, int b, int numBands,
+                                      Object data) {
+        ComponentSampleModel csm = (ComponentSampleModel)wr.getSampleModel();
+        DataBuffer db = wr.getDataBuffer();
+        int dataType = csm.getDataType();
+        int pixelStride = csm.getPixelStride();
+        int scanlineStride = csm.getScanlineStride();
+        int[] bankIndices = csm.getBankIndices();
+        int[] bandOffsets = csm.getBandOffsets();
+        int[] dbOffsets = db.getOffsets();
+
+        int dstLineOffset =
+            (rect.y - wr.getSampleModelTranslateY())*scanlineStride +
+            (rect.x - wr.getSampleModelTranslateX())*pixelStride;
+        int srcLineOffset =
+            ((rect.y - region.y)*region.width + rect.x - region.x)*numBands;
+
+        Object[] bankData = new Object[numBands];
+        try {
+            for(int k = 0; k < numBands; k++) {
+                bankData[k] = DataBufferUtils.getData(db, bankIndices[b + k]);
+            }
+        } catch(ClassCastException e) {
+            // A DataBuffer subclass of its own.
+            return false;
+        }
+
+        for(int k = 0; k < numBands; k++) {
+            int bank = bankIndices[b + k];
+            int dstOffset = dstLineOffset + bandOffsets[b + k] + dbOffsets[bank];
+            int srcOffset = srcLineOffset + k;
+            for(int j = 0; j < rect.height; j++) {
+                copySamples(data, srcOffset, numBands,
+                            bankData[k], dstOffset, pixelStride,
+                            rect.width, dataType);
+                dstOffset += scanlineStride;
+                srcOffset += region.width*numBands;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the part <code>rect</code> of the region of
+     * <code>setRect()</code> into a tile a row at a time by means of
+     * the <code>WritableRaster</code>.
+     */
+    private static void setRectFallback(WritableRaster wr, Rectangle rect,
+                                        Rectangle region, int b, int numBands,
+                                        Object data) {
+        int rowLength = rect.width*numBands;
+        Object row = Array.newInstance(data.getClass().getComponentType(),
+                                       rowLength);
+        int srcOffset =
+            ((rect.y - region.y)*region.width + rect.x - region.x)*numBands;
+        boolean isPixels = numBands == wr.getNumBands();
+
+        for(int y = rect.y; y < rect.y + rect.height; y++) {
+            System.arraycopy(data, srcOffset, row, 0, rowLength);
+            srcOffset += region.width*numBands;
+
+            if(row instanceof int[]) {
+                if(isPixels) {
+                    wr.setPixels(rect.x, y, rect.width, 1, (int[])row);
+                } else {
+                    wr.setSamples(rect.x, y, rect.width, 1, b, (int[])row);
+                }
+            } else if(row instanceof float[]) {
+                if(isPixels) {
+                    wr.setPixels(rect.x, y, rect.width, 1, (float[])row);
+                } else {
+                    wr.setSamples(rect.x, y, rect.width, 1, b, (float[])row);
+                }
+            } else {
+                if(isPixels) {
+                    wr.setPixels(rect.x, y, rect.width, 1, (double[])row);
+                } else {
+                    wr.setSamples(rect.x, y, rect.width, 1, b, (double[])row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies <code>count</code> samples from an <code>int</code>,
+     * <code>float</code> or <code>double</code> array into a data array
+     * of the given type, converting them as the <code>setSample()</code>
+     * methods of <code>WritableRaster</code> do.
+     */
+    private static void copySamples(Object src, int srcPos, int srcStride,
+                                    Object dst, int dstPos, int dstStride,
+                                    int count, int dataType) {
+        if(src instanceof int[]) {
+            int[] s = (int[])src;
+            switch(dataType) {
+            case DataBuffer.TYPE_BYTE:
+                byte[] bd = (byte[])dst;
+                for(int i = 0; i < count; i++) {
+                    bd[dstPos] = (byte)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                short[] sd = (short[])dst;
+                for(int i = 0; i < count; i++) {
+                    sd[dstPos] = (short)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                int[] id = (int[])dst;
+                for(int i = 0; i < count; i++) {
+                    id[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                float[] fd = (float[])dst;
+                for(int i = 0; i < count; i++) {
+                    fd[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                double[] dd = (double[])dst;
+                for(int i = 0; i < count; i++) {
+                    dd[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            }
+        } else if(src instanceof float[]) {
+            float[] s = (float[])src;
+            switch(dataType) {
+            case DataBuffer.TYPE_BYTE:
+                byte[] bd = (byte[])dst;
+                for(int i = 0; i < count; i++) {
+                    bd[dstPos] = (byte)(int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                short[] sd = (short[])dst;
+                for(int i = 0; i < count; i++) {
+                    sd[dstPos] = (short)(int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                int[] id = (int[])dst;
+                for(int i = 0; i < count; i++) {
+                    id[dstPos] = (int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                float[] fd = (float[])dst;
+                for(int i = 0; i < count; i++) {
+                    fd[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                double[] dd = (double[])dst;
+                for(int i = 0; i < count; i++) {
+                    dd[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            }
+        } else {
+            double[] s = (double[])src;
+            switch(dataType) {
+            case DataBuffer.TYPE_BYTE:
+                byte[] bd = (byte[])dst;
+                for(int i = 0; i < count; i++) {
+                    bd[dstPos] = (byte)(int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                short[] sd = (short[])dst;
+                for(int i = 0; i < count; i++) {
+                    sd[dstPos] = (short)(int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                int[] id = (int[])dst;
+                for(int i = 0; i < count; i++) {
+                    id[dstPos] = (int)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                float[] fd = (float[])dst;
+                for(int i = 0; i < count; i++) {
+                    fd[dstPos] = (float)s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                double[] dd = (double[])dst;
+                for(int i = 0; i < count; i++) {
+                    dd[dstPos] = s[srcPos];
+                    srcPos += srcStride;
+                    dstPos += dstStride;
+                }
+                break;
+            }
+        }
+    }
+
     /**
      * Implementation of <code>PropertyChangeListener</code>.
      *
@@ -572,7 +572,7 @@ public abstract class WarpOpImage extends GeometricOpImage {
                       source.getData(srcRect);
 
             // Compute the destination tile.
-            computeRect(srcs, dest, destRect);
+            computeRectInStrips(srcs, dest, destRect);
 
             // Recycle the source tile
             if(source.overlapsMultipleTiles(srcRect)) {
@@ -580,7 +580,7 @@ public abstract class WarpOpImage extends GeometricOpImage {
             }
         } else {
             PlanarImage[] srcs = { source };
-            computeRect(srcs, dest, destRect);
+            computeRectInStrips(srcs, dest, destRect);
         }
 
         return dest;
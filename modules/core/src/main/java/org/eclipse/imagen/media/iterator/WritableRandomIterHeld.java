@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.iterator;
+import java.awt.Rectangle;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.awt.image.WritableRenderedImage;
+
+import org.eclipse.imagen.PlanarImage;
+import org.eclipse.imagen.iterator.WritableRandomIter;
+import org.eclipse.imagen.media.util.DataBufferUtils;
+
+/**
+ * A <code>WritableRandomIter</code> which gets each tile of a
+ * <code>WritableRenderedImage</code> for writing when it is first
+ * accessed and holds it until <code>done()</code> is called, unlike
+ * <code>WritableRandomIterFallback</code> which releases a tile as soon
+ * as another one is accessed.  The samples of tiles having a
+ * <code>ComponentSampleModel</code> are accessed directly in the data
+ * arrays of their <code>DataBuffer</code>s.
+ *
+ * <p> Accessing a pixel of a tile which the image does not return for
+ * writing, such as a tile locked by a <code>TiledImage</code>, throws
+ * an <code>IllegalStateException</code>.  Only the tiles which have
+ * been got are released by <code>done()</code>.
+ */
+public final class WritableRandomIterHeld implements WritableRandomIter {
+
+    // The data type of a tile whose SampleModel is not a
+    // ComponentSampleModel.
+    private static final int TYPE_OTHER = -1;
+
+    private WritableRenderedImage im;
+    private Rectangle bounds;
+
+    private int tileWidth;
+    private int tileHeight;
+    private int tileGridXOffset;
+    private int tileGridYOffset;
+    private int minTileX;
+    private int minTileY;
+    private int numTilesX;
+
+    // The tiles held, in row-major order from (minTileX, minTileY).
+    private WritableRaster[] heldTiles;
+
+    // The current tile and its bounds, the maxima being exclusive.
+    private WritableRaster tile = null;
+    private int tileMinX = 0;
+    private int tileMinY = 0;
+    private int tileMaxX = 0;
+    private int tileMaxY = 0;
+
+    // The layout of the data of the current tile.
+    private int dataType;
+    private int numBands;
+    private int pixelStride;
+    private int scanlineStride;
+    private int[] bandOffsets;
+
+    // The data array of each band of the current tile.
+    private byte[][] byteData;
+    private short[][] shortData;
+    private int[][] intData;
+    private float[][] floatData;
+    private double[][] doubleData;
+
+    public WritableRandomIterHeld(WritableRenderedImage im,
+                                  Rectangle bounds) {
+        this.im = im;
+        this.bounds = bounds.intersection(
+            new Rectangle(im.getMinX(), im.getMinY(),
+                          im.getWidth(), im.getHeight()));
+
+        tileWidth = im.getTileWidth();
+        tileHeight = im.getTileHeight();
+        tileGridXOffset = im.getTileGridXOffset();
+        tileGridYOffset = im.getTileGridYOffset();
+
+        numBands = im.getSampleModel().getNumBands();
+        bandOffsets = new int[numBands];
+        byteData = new byte[numBands][];
+        shortData = new short[numBands][];
+        intData = new int[numBands][];
+        floatData = new float[numBands][];
+        doubleData = new double[numBands][];
+
+        if (this.bounds.isEmpty()) {
+            heldTiles = new WritableRaster[0];
+            return;
+        }
+
+        minTileX = PlanarImage.XToTileX(this.bounds.x,
+                                        tileGridXOffset, tileWidth);
+        minTileY = PlanarImage.YToTileY(this.bounds.y,
+                                        tileGridYOffset, tileHeight);
+        int maxTileX =
+            PlanarImage.XToTileX(this.bounds.x + this.bounds.width - 1,
+                                 tileGridXOffset, tileWidth);
+        int maxTileY =
+            PlanarImage.YToTileY(this.bounds.y + this.bounds.height - 1,
+                                 tileGridYOffset, tileHeight);
+        numTilesX = maxTileX - minTileX + 1;
+        heldTiles = new WritableRaster[numTilesX*(maxTileY - minTileY + 1)];
+    }
+
+    /**
+     * Makes the tile containing the pixel (x, y) current, getting it
+     * for writing if it is not yet held.
+     *
+     * @throws IllegalStateException if the image does not return the
+     *         tile for writing.
+     */
+    private void makeCurrent(int x, int y) {
+        if (x >= tileMinX && x < tileMaxX && y >= tileMinY && y < tileMaxY) {
+            return;
+        }
+
+        if (!bounds.contains(x, y)) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+
+        int tileX = PlanarImage.XToTileX(x, tileGridXOffset, tileWidth);
+        int tileY = PlanarImage.YToTileY(y, tileGridYOffset, tileHeight);
+        int index = (tileY - minTileY)*numTilesX + tileX - minTileX;
+        if (heldTiles[index] == null) {
+            WritableRaster wr = im.getWritableTile(tileX, tileY);
+            if (wr == null) {
+                throw new IllegalStateException(
+                    JaiI18N.getString("WritableRandomIterHeld0"));
+            }
+            heldTiles[index] = wr;
+        }
+        tile = heldTiles[index];
+
+        tileMinX = tile.getMinX();
+        tileMinY = tile.getMinY();
+        tileMaxX = tileMinX + tile.getWidth();
+        tileMaxY = tileMinY + tile.getHeight();
+
+        SampleModel sm = tile.getSampleModel();
+        if (!(sm instanceof ComponentSampleModel)) {
+            dataType = TYPE_OTHER;
+            return;
+        }
+
+        ComponentSampleModel csm = (ComponentSampleModel)sm;
+        DataBuffer db = tile.getDataBuffer();
+        int[] bankIndices = csm.getBankIndices();
+        int[] csmBandOffsets = csm.getBandOffsets();
+        int[] dbOffsets = db.getOffsets();
+
+        dataType = csm.getDataType();
+        pixelStride = csm.getPixelStride();
+        scanlineStride = csm.getScanlineStride();
+
+        // Fold the translation of the tile into the band offsets so
+        // that a sample is found at y*scanlineStride + x*pixelStride.
+        int origin = tile.getSampleModelTranslateY()*scanlineStride +
+            tile.getSampleModelTranslateX()*pixelStride;
+        for (int b = 0; b < numBands; b++) {
+            int bank = bankIndices[b];
+            bandOffsets[b] = csmBandOffsets[b] + dbOffsets[bank] - origin;
+
+            Object data;
+            try {
+                data = DataBufferUtils.getData(db, bank);
+            } catch (ClassCastException e) {
+                // A DataBuffer subclass of its own.
+                dataType = TYPE_OTHER;
+                return;
+            }
+            switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                byteData[b] = (byte[])data;
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                shortData[b] = (short[])data;
+                break;
+            case DataBuffer.TYPE_INT:
+                intData[b] = (int[])data;
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                floatData[b] = (float[])data;
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                doubleData[b] = (double[])data;
+                break;
+            }
+        }
+    }
+
+    public int getSample(int x, int y, int b) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return byteData[b][i + bandOffsets[b]] & 0xff;
+        case DataBuffer.TYPE_USHORT:
+            return shortData[b][i + bandOffsets[b]] & 0xffff;
+        case DataBuffer.TYPE_SHORT:
+            return shortData[b][i + bandOffsets[b]];
+        case DataBuffer.TYPE_INT:
+            return intData[b][i + bandOffsets[b]];
+        case DataBuffer.TYPE_FLOAT:
+            return (int)floatData[b][i + bandOffsets[b]];
+        case DataBuffer.TYPE_DOUBLE:
+            return (int)doubleData[b][i + bandOffsets[b]];
+        default:
+            return tile.getSample(x, y, b);
+        }
+    }
+
+    public float getSampleFloat(int x, int y, int b) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_FLOAT:
+            return floatData[b][i + bandOffsets[b]];
+        case DataBuffer.TYPE_DOUBLE:
+            return (float)doubleData[b][i + bandOffsets[b]];
+        case TYPE_OTHER:
+            return tile.getSampleFloat(x, y, b);
+        default:
+            return (float)getSample(x, y, b);
+        }
+    }
+
+    public double getSampleDouble(int x, int y, int b) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_FLOAT:
+            return floatData[b][i + bandOffsets[b]];
+        case DataBuffer.TYPE_DOUBLE:
+            return doubleData[b][i + bandOffsets[b]];
+        case TYPE_OTHER:
+            return tile.getSampleDouble(x, y, b);
+        default:
+            return (double)getSample(x, y, b);
+        }
+    }
+
+    public int[] getPixel(int x, int y, int[] iArray) {
+        if (iArray == null) {
+            iArray = new int[numBands];
+        }
+        for (int b = 0; b < numBands; b++) {
+            iArray[b] = getSample(x, y, b);
+        }
+        return iArray;
+    }
+
+    public float[] getPixel(int x, int y, float[] fArray) {
+        if (fArray == null) {
+            fArray = new float[numBands];
+        }
+        for (int b = 0; b < numBands; b++) {
+            fArray[b] = getSampleFloat(x, y, b);
+        }
+        return fArray;
+    }
+
+    public double[] getPixel(int x, int y, double[] dArray) {
+        if (dArray == null) {
+            dArray = new double[numBands];
+        }
+        for (int b = 0; b < numBands; b++) {
+            dArray[b] = getSampleDouble(x, y, b);
+        }
+        return dArray;
+    }
+
+    public void setSample(int x, int y, int b, int s) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            byteData[b][i + bandOffsets[b]] = (byte)s;
+            break;
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            shortData[b][i + bandOffsets[b]] = (short)s;
+            break;
+        case DataBuffer.TYPE_INT:
+            intData[b][i + bandOffsets[b]] = s;
+            break;
+        case DataBuffer.TYPE_FLOAT:
+            floatData[b][i + bandOffsets[b]] = s;
+            break;
+        case DataBuffer.TYPE_DOUBLE:
+            doubleData[b][i + bandOffsets[b]] = s;
+            break;
+        default:
+            tile.setSample(x, y, b, s);
+        }
+    }
+
+    public void setSample(int x, int y, int b, float s) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_FLOAT:
+            floatData[b][i + bandOffsets[b]] = s;
+            break;
+        case DataBuffer.TYPE_DOUBLE:
+            doubleData[b][i + bandOffsets[b]] = s;
+            break;
+        case TYPE_OTHER:
+            tile.setSample(x, y, b, s);
+            break;
+        default:
+            setSample(x, y, b, (int)s);
+        }
+    }
+
+    public void setSample(int x, int y, int b, double s) {
+        makeCurrent(x, y);
+        int i = y*scanlineStride + x*pixelStride;
+        switch (dataType) {
+        case DataBuffer.TYPE_FLOAT:
+            floatData[b][i + bandOffsets[b]] = (float)s;
+            break;
+        case DataBuffer.TYPE_DOUBLE:
+            doubleData[b][i + bandOffsets[b]] = s;
+            break;
+        case TYPE_OTHER:
+            tile.setSample(x, y, b, s);
+            break;
+        default:
+            setSample(x, y, b, (int)s);
+        }
+    }
+
+    public void setPixel(int x, int y, int[] iArray) {
+        for (int b = 0; b < numBands; b++) {
+            setSample(x, y, b, iArray[b]);
+        }
+    }
+
+    public void setPixel(int x, int y, float[] fArray) {
+        for (int b = 0; b < numBands; b++) {
+            setSample(x, y, b, fArray[b]);
+        }
+    }
+
+    public void setPixel(int x, int y, double[] dArray) {
+        for (int b = 0; b < numBands; b++) {
+            setSample(x, y, b, dArray[b]);
+        }
+    }
+
+    /** Releases all the tiles which have been got for writing. */
+    public void done() {
+        for (int index = 0; index < heldTiles.length; index++) {
+            if (heldTiles[index] != null) {
+                heldTiles[index] = null;
+                im.releaseWritableTile(minTileX + index%numTilesX,
+                                       minTileY + index/numTilesX);
+            }
+        }
+        tile = null;
+        tileMaxX = tileMinX;
+        tileMaxY = tileMinY;
+    }
+}
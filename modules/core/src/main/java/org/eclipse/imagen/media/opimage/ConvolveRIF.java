@@ -28,6 +28,7 @@ import org.eclipse.imagen.KernelJAI;
 
 /**
  * @see ConvolveOpImage
+ * @see FFTConvolveOpImage
  */
 public class ConvolveRIF implements RenderedImageFactory {
 
@@ -74,6 +75,15 @@ public class ConvolveRIF implements RenderedImageFactory {
                                                layout,
                                                kJAI);
 
+        } else if (dataType != DataBuffer.TYPE_FLOAT &&
+                   dataType != DataBuffer.TYPE_DOUBLE &&
+                   kJAI.getWidth()*kJAI.getHeight() >=
+                   FFTConvolveOpImage.MIN_KERNEL_SIZE) {
+            return new FFTConvolveOpImage(paramBlock.getRenderedSource(0),
+                                          extender,
+                                          renderHints,
+                                          layout,
+                                          kJAI);
         } else {
             return new ConvolveOpImage(paramBlock.getRenderedSource(0),
                                        extender,
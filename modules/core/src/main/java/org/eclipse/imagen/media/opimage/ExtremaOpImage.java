@@ -156,16 +156,99 @@ public class ExtremaOpImage extends StatisticsOpImage {
         return t == 0 ? pos : pos + (period - t);
     }
 
-    protected void accumulateStatistics(String name,
-                                        Raster source,
-                                        Object stats) {
+    /** Initializes the accessor of the source. */
+    private void initialize() {
         if(!isInitialized) {
             srcPA = new PixelAccessor(getSourceImage(0));
             srcSampleType = srcPA.sampleType == PixelAccessor.TYPE_BIT ?
                 DataBuffer.TYPE_BYTE : srcPA.sampleType;
             isInitialized = true;
         }
+    }
+
+    protected void accumulateStatistics(String name,
+                                        Raster source,
+                                        Object stats) {
+        initialize();
+
+        accumulatePixels(source, null);
+
+        // No pixel may have been sampled yet.
+        if (extrema != null) {
+            copyStatistics(name, stats);
+        }
+    }
+
+    /**
+     * Returns the minimum and maximum of each band over some tiles.  The
+     * locations of the extrema are only accumulated one tile after
+     * another.
+     */
+    protected PartialStatistics createPartialStatistics(String name) {
+        if (saveLocations) {
+            return null;
+        }
+        initialize();
+        return new PartialExtrema(name);
+    }
+
+    /**
+     * The extrema of each band over some tiles, whose elements are
+     * <code>null</code> until a pixel has been found.
+     */
+    private final class PartialExtrema extends PartialStatistics {
+        final String name;
+        final double[][] ext = new double[2][];
 
+        PartialExtrema(String name) {
+            this.name = name;
+        }
+
+        protected void accumulate(Raster source) {
+            accumulatePixels(source, ext);
+        }
+
+        protected void merge(PartialStatistics partial) {
+            double[][] partialExt = ((PartialExtrema)partial).ext;
+            if (partialExt[0] == null) {
+                return;
+            } else if (ext[0] == null) {
+                ext[0] = (double[])partialExt[0].clone();
+                ext[1] = (double[])partialExt[1].clone();
+            } else {
+                for (int i = 0; i < srcPA.numBands; i++) {
+                    ext[0][i] = Math.min(ext[0][i], partialExt[0][i]);
+                    ext[1][i] = Math.max(ext[1][i], partialExt[1][i]);
+                }
+            }
+        }
+
+        protected void store(Object stats) {
+            if (ext[0] == null) {
+                return;
+            }
+
+            if (name.equalsIgnoreCase("extrema")) {
+                double[][] s = (double[][])stats;
+                System.arraycopy(ext[0], 0, s[0], 0, srcPA.numBands);
+                System.arraycopy(ext[1], 0, s[1], 0, srcPA.numBands);
+            } else if (name.equalsIgnoreCase("minimum")) {
+                System.arraycopy(ext[0], 0, (double[])stats, 0,
+                                 srcPA.numBands);
+            } else if (name.equalsIgnoreCase("maximum")) {
+                System.arraycopy(ext[1], 0, (double[])stats, 0,
+                                 srcPA.numBands);
+            }
+        }
+    }
+
+    /**
+     * Accumulates the extrema of the sampled pixels of a
+     * <code>Raster</code> within the region of interest into
+     * <code>ext</code>, or into the state of this image if
+     * <code>ext</code> is <code>null</code>.
+     */
+    private void accumulatePixels(Raster source, double[][] ext) {
         Rectangle srcBounds = getSourceImage(0).getBounds().intersection(
                                                   source.getBounds());
 
@@ -199,32 +282,46 @@ public class ExtremaOpImage extends StatisticsOpImage {
                 continue;	// no pixel to count in this rectangle
             }
 
-            initializeState(source);
+            double[][] ex;
+            if (ext == null) {
+                initializeState(source);
+                ex = extrema;
+            } else {
+                if (ext[0] == null) {
+                    // Initialize the extrema with the first sampled pixel.
+                    ext[0] = source.getPixel(rect.x, rect.y, (double[])null);
+                    ext[1] = (double[])ext[0].clone();
+                }
+                ex = ext;
+            }
 
             UnpackedImageData uid = srcPA.getPixels(source, rect,
                                                     srcSampleType, false);
             switch (uid.type) {
             case DataBuffer.TYPE_BYTE:
-                accumulateStatisticsByte(uid);
+                accumulateStatisticsByte(uid, ex);
                 break;
             case DataBuffer.TYPE_USHORT:
-                accumulateStatisticsUShort(uid);
+                accumulateStatisticsUShort(uid, ex);
                 break;
             case DataBuffer.TYPE_SHORT:
-                accumulateStatisticsShort(uid);
+                accumulateStatisticsShort(uid, ex);
                 break;
             case DataBuffer.TYPE_INT:
-                accumulateStatisticsInt(uid);
+                accumulateStatisticsInt(uid, ex);
                 break;
             case DataBuffer.TYPE_FLOAT:
-                accumulateStatisticsFloat(uid);
+                accumulateStatisticsFloat(uid, ex);
                 break;
             case DataBuffer.TYPE_DOUBLE:
-                accumulateStatisticsDouble(uid);
+                accumulateStatisticsDouble(uid, ex);
                 break;
             }
         }
+    }
 
+    /** Copies the extrema or their locations into a statistics object. */
+    private void copyStatistics(String name, Object stats) {
         if (name.equalsIgnoreCase("extrema")) {
             double[][] ext = (double[][])stats;
             for (int i = 0; i < srcPA.numBands; i++) {
@@ -253,7 +350,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
 	}
     }
 
-    private void accumulateStatisticsByte(UnpackedImageData uid) {
+    private void accumulateStatisticsByte(UnpackedImageData uid,
+                                          double[][] extrema) {
         Rectangle rect = uid.rect;
         byte[][] data = uid.getByteData();
         int lineStride = uid.lineStride;
@@ -366,7 +464,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
         }
     }
 
-    private void accumulateStatisticsUShort(UnpackedImageData uid) {
+    private void accumulateStatisticsUShort(UnpackedImageData uid,
+                                            double[][] extrema) {
         Rectangle rect = uid.rect;
         short[][] data = uid.getShortData();
         int lineStride = uid.lineStride;
@@ -479,7 +578,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
         }
     }
 
-    private void accumulateStatisticsShort(UnpackedImageData uid) {
+    private void accumulateStatisticsShort(UnpackedImageData uid,
+                                           double[][] extrema) {
         Rectangle rect = uid.rect;
         short[][] data = uid.getShortData();
         int lineStride = uid.lineStride;
@@ -592,7 +692,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
         }
     }
 
-    private void accumulateStatisticsInt(UnpackedImageData uid) {
+    private void accumulateStatisticsInt(UnpackedImageData uid,
+                                         double[][] extrema) {
         Rectangle rect = uid.rect;
         int[][] data = uid.getIntData();
         int lineStride = uid.lineStride;
@@ -705,7 +806,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
         }
     }
 
-    private void accumulateStatisticsFloat(UnpackedImageData uid) {
+    private void accumulateStatisticsFloat(UnpackedImageData uid,
+                                           double[][] extrema) {
         Rectangle rect = uid.rect;
         float[][] data = uid.getFloatData();
         int lineStride = uid.lineStride;
@@ -818,7 +920,8 @@ public class ExtremaOpImage extends StatisticsOpImage {
         }
     }
 
-    private void accumulateStatisticsDouble(UnpackedImageData uid) {
+    private void accumulateStatisticsDouble(UnpackedImageData uid,
+                                            double[][] extrema) {
         Rectangle rect = uid.rect;
         double[][] data = uid.getDoubleData();
         int lineStride = uid.lineStride;
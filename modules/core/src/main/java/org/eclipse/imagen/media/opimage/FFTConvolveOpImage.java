@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.opimage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.eclipse.imagen.AreaOpImage;
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.ImageLayout;
+import org.eclipse.imagen.KernelJAI;
+import org.eclipse.imagen.media.util.MathJAI;
+
+/**
+ * An OpImage class to perform convolution on a source image by means
+ * of the fast Fourier transform.
+ *
+ * <p> The result is that of <code>ConvolveOpImage</code>, up to the
+ * rounding errors of floating point arithmetic, but the cost per
+ * destination sample grows with the logarithm of the kernel size rather
+ * than with the kernel size itself.  It is therefore used for large
+ * kernels which are not separable.
+ *
+ * <p> Each destination rectangle is divided into blocks which are
+ * computed by the overlap-save method: the source samples under a block,
+ * extended by the padding of the kernel, are transformed, multiplied by
+ * the transform of the kernel and transformed back, and the samples which
+ * are not affected by the circular wrap around of the transform form the
+ * block.  Two bands are transformed at once as the real and imaginary
+ * parts of a complex image, which is possible as the kernel is real.
+ *
+ * <p> Only images of integral data types are convolved this way, as a
+ * NaN or infinite sample would spread over the whole transform block.
+ *
+ * @see ConvolveOpImage
+ * @see FFT
+ * @see KernelJAI
+ */
+final class FFTConvolveOpImage extends AreaOpImage {
+
+    /**
+     * The minimum number of elements of a kernel for which the
+     * transform is faster than the direct convolution.
+     */
+    static final int MIN_KERNEL_SIZE = 11*11;
+
+    /**
+     * The minimum length of the transforms, to which the block size
+     * grows with the kernel size.
+     */
+    private static final int MIN_LENGTH = 32;
+
+    /**
+     * The reciprocal of the resolution to which the sums are rounded
+     * before they are stored, far coarser than the error of the
+     * transforms and finer than the precision of the float sums of
+     * <code>ConvolveOpImage</code>.
+     */
+    private static final double SNAP = 65536.0;
+
+    /**
+     * The magnitude above which the sums are too large to be rounded to
+     * a multiple of <code>1/SNAP</code>.
+     */
+    private static final double MAX_SNAPPED = (double)(1L << 36);
+
+    /**
+     * The kernel with which to do the convolve operation.
+     */
+    protected KernelJAI kernel;
+
+    /** Kernel variables. */
+    private int kw, kh, kx, ky;
+
+    /**
+     * The transforms of the kernel, keyed by the lengths of the
+     * transforms, each an array of the real and imaginary parts.
+     */
+    private Hashtable kernelTransforms = new Hashtable();
+
+    /**
+     * Creates a FFTConvolveOpImage given the image source and
+     * pre-rotated convolution kernel.  The image dimensions are derived
+     * from the source image.  The tile grid layout, SampleModel, and
+     * ColorModel may optionally be specified by an ImageLayout
+     * object.
+     *
+     * @param source a RenderedImage.
+     * @param extender a BorderExtender, or null.
+     * @param layout an ImageLayout optionally containing the tile grid layout,
+     *        SampleModel, and ColorModel, or null.
+     * @param kernel the pre-rotated convolution KernelJAI.
+     */
+    public FFTConvolveOpImage(RenderedImage source,
+                              BorderExtender extender,
+                              Map config,
+                              ImageLayout layout,
+                              KernelJAI kernel) {
+	super(source,
+              layout,
+              config,
+              true,
+              extender,
+              kernel.getLeftPadding(),
+              kernel.getRightPadding(),
+              kernel.getTopPadding(),
+              kernel.getBottomPadding());
+
+	this.kernel = kernel;
+	kw = kernel.getWidth();
+	kh = kernel.getHeight();
+	kx = kernel.getXOrigin();
+	ky = kernel.getYOrigin();
+    }
+
+    /**
+     * Performs convolution on a specified rectangle. The sources are
+     * cobbled.
+     *
+     * @param sources an array of source Rasters, guaranteed to provide all
+     *                necessary source data for computing the output.
+     * @param dest a WritableRaster tile containing the area to be computed.
+     * @param destRect the rectangle within dest to be processed.
+     */
+    protected void computeRect(Raster[] sources,
+                               WritableRaster dest,
+                               Rectangle destRect) {
+        Raster source = sources[0];
+        int numBands = dest.getNumBands();
+        int dataType = dest.getSampleModel().getDataType();
+
+        // The lengths of the transforms and the size of the blocks.
+        int nx = getLength(destRect.width, kw);
+        int ny = getLength(destRect.height, kh);
+        int blockWidth = nx - kw + 1;
+        int blockHeight = ny - kh + 1;
+
+        double[][] kernelTransform = getKernelTransform(nx, ny);
+        double[] kr = kernelTransform[0];
+        double[] ki = kernelTransform[1];
+
+        FFT forwardX = new FFT(true, new Integer(FFT.SCALING_NONE), nx);
+        FFT forwardY = new FFT(true, new Integer(FFT.SCALING_NONE), ny);
+        FFT inverseX =
+            new FFT(false, new Integer(FFT.SCALING_DIMENSIONS), nx);
+        FFT inverseY =
+            new FFT(false, new Integer(FFT.SCALING_DIMENSIONS), ny);
+
+        double[] real = new double[nx*ny];
+        double[] imag = new double[nx*ny];
+        double[] samples =
+            new double[(blockWidth + kw - 1)*(blockHeight + kh - 1)];
+
+        int xEnd = destRect.x + destRect.width;
+        int yEnd = destRect.y + destRect.height;
+        for (int y = destRect.y; y < yEnd; y += blockHeight) {
+            int bh = Math.min(blockHeight, yEnd - y);
+            int sh = bh + kh - 1;
+            for (int x = destRect.x; x < xEnd; x += blockWidth) {
+                int bw = Math.min(blockWidth, xEnd - x);
+                int sw = bw + kw - 1;
+
+                for (int b = 0; b < numBands; b += 2) {
+                    // Load a band into each of the real and imaginary
+                    // parts, padded with zeros.
+                    Arrays.fill(real, 0.0);
+                    Arrays.fill(imag, 0.0);
+                    source.getSamples(x - kx, y - ky, sw, sh, b, samples);
+                    for (int j = 0; j < sh; j++) {
+                        System.arraycopy(samples, j*sw, real, j*nx, sw);
+                    }
+                    if (b + 1 < numBands) {
+                        source.getSamples(x - kx, y - ky, sw, sh, b + 1,
+                                          samples);
+                        for (int j = 0; j < sh; j++) {
+                            System.arraycopy(samples, j*sw, imag, j*nx, sw);
+                        }
+                    }
+
+                    transform(forwardX, forwardY, real, imag, nx, ny, sh);
+
+                    for (int i = 0; i < real.length; i++) {
+                        double r = real[i];
+                        double m = imag[i];
+                        real[i] = r*kr[i] - m*ki[i];
+                        imag[i] = r*ki[i] + m*kr[i];
+                    }
+
+                    transform(inverseX, inverseY, real, imag, nx, ny, ny);
+
+                    setSamples(dest, x, y, bw, bh, b, real, nx, dataType);
+                    if (b + 1 < numBands) {
+                        setSamples(dest, x, y, bw, bh, b + 1, imag, nx,
+                                   dataType);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the transforms along an axis of a rectangle,
+     * the smaller of a power of two a few times larger than the kernel
+     * and the power of two holding the whole rectangle with its padding.
+     */
+    private static int getLength(int size, int kernelSize) {
+        int blockLength = Math.max(MIN_LENGTH,
+            MathJAI.nextPositivePowerOf2(4*(kernelSize - 1)));
+        return Math.min(blockLength,
+            MathJAI.nextPositivePowerOf2(size + kernelSize - 1));
+    }
+
+    /**
+     * Returns the transform of the kernel for transforms of the given
+     * lengths.  The kernel is reflected through its upper left element
+     * so that the circular convolution by it computes the sums of
+     * <code>ConvolveOpImage</code>.
+     */
+    private synchronized double[][] getKernelTransform(int nx, int ny) {
+        Long key = new Long(((long)nx << 32) | ny);
+        double[][] kernelTransform = (double[][])kernelTransforms.get(key);
+        if (kernelTransform != null) {
+            return kernelTransform;
+        }
+
+        float[] kdata = kernel.getKernelData();
+        double[] real = new double[nx*ny];
+        double[] imag = new double[nx*ny];
+        for (int u = 0; u < kh; u++) {
+            int row = ((ny - u) % ny)*nx;
+            for (int v = 0; v < kw; v++) {
+                real[row + (nx - v) % nx] = kdata[u*kw + v];
+            }
+        }
+
+        transform(new FFT(true, new Integer(FFT.SCALING_NONE), nx),
+                  new FFT(true, new Integer(FFT.SCALING_NONE), ny),
+                  real, imag, nx, ny, ny);
+
+        kernelTransform = new double[][] {real, imag};
+        kernelTransforms.put(key, kernelTransform);
+        return kernelTransform;
+    }
+
+    /**
+     * Transforms in place a complex image of <code>nx</code> by
+     * <code>ny</code> elements, stored by rows, whose rows from
+     * <code>rows</code> on are zero.
+     */
+    private static void transform(FFT fftX, FFT fftY,
+                                  double[] real, double[] imag,
+                                  int nx, int ny, int rows) {
+        for (int j = 0; j < rows; j++) {
+            int offset = j*nx;
+            fftX.setData(DataBuffer.TYPE_DOUBLE,
+                         real, offset, 1, imag, offset, 1, nx);
+            fftX.transform();
+            fftX.getData(DataBuffer.TYPE_DOUBLE,
+                         real, offset, 1, imag, offset, 1);
+        }
+
+        for (int i = 0; i < nx; i++) {
+            fftY.setData(DataBuffer.TYPE_DOUBLE,
+                         real, i, nx, imag, i, nx, ny);
+            fftY.transform();
+            fftY.getData(DataBuffer.TYPE_DOUBLE,
+                         real, i, nx, imag, i, nx);
+        }
+    }
+
+    /**
+     * Stores a block of a band of the destination, rounding and clamping
+     * as <code>ConvolveOpImage</code> does.  The sums are first rounded
+     * to a multiple of <code>1/SNAP</code>, which removes the error of
+     * the transforms, so that a sum which is exactly halfway between two
+     * integers is rounded the same way as by the direct convolution.
+     */
+    private static void setSamples(WritableRaster dest,
+                                   int x, int y, int width, int height,
+                                   int band, double[] data, int nx,
+                                   int dataType) {
+        int min, max;
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            min = 0;
+            max = 255;
+            break;
+        case DataBuffer.TYPE_USHORT:
+            min = 0;
+            max = 0xffff;
+            break;
+        case DataBuffer.TYPE_SHORT:
+            min = Short.MIN_VALUE;
+            max = Short.MAX_VALUE;
+            break;
+        default:
+            min = Integer.MIN_VALUE;
+            max = Integer.MAX_VALUE;
+            break;
+        }
+
+        int[] s = new int[width*height];
+        int k = 0;
+        for (int j = 0; j < height; j++) {
+            int offset = j*nx;
+            for (int i = 0; i < width; i++) {
+                double d = data[offset + i];
+                if (d > -MAX_SNAPPED && d < MAX_SNAPPED) {
+                    d = Math.rint(d*SNAP)/SNAP;
+                }
+                int val = (int)(d + 0.5);
+                if (val < min) {
+                    val = min;
+                } else if (val > max) {
+                    val = max;
+                }
+                s[k++] = val;
+            }
+        }
+        dest.setSamples(x, y, width, height, band, s);
+    }
+}
@@ -21,7 +21,9 @@ import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
 import java.awt.image.renderable.RenderedImageFactory;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
 
@@ -31,6 +33,7 @@ import org.eclipse.imagen.OperationRegistry;
 import org.eclipse.imagen.RenderedImageAdapter;
 import org.eclipse.imagen.media.codec.FileSeekableStream;
 import org.eclipse.imagen.media.codec.ImageDecodeParam;
+import org.eclipse.imagen.media.codec.MappedFileSeekableStream;
 import org.eclipse.imagen.media.codec.SeekableStream;
 import org.eclipse.imagen.media.util.ImageUtil;
 import org.eclipse.imagen.registry.RIFRegistry;
@@ -100,6 +103,26 @@ public class FileLoadRIF implements RenderedImageFactory {
     /** Constructor. */
     public FileLoadRIF() {}
 
+    /**
+     * Opens a local file as a <code>MappedFileSeekableStream</code> if
+     * <code>JAI.KEY_MAP_FILES</code> is set and the file can be mapped,
+     * otherwise as a <code>FileSeekableStream</code>.
+     */
+    private static SeekableStream openFile(String fileName,
+                                           RenderingHints hints)
+        throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        if (hints != null &&
+            Boolean.TRUE.equals(hints.get(JAI.KEY_MAP_FILES))) {
+            try {
+                return new MappedFileSeekableStream(file);
+            } catch (IOException e) {
+                // Mapping failed, e.g., for lack of address space.
+            }
+        }
+        return new FileSeekableStream(file);
+    }
+
     /**
      * Creates an image from a String containing a file name.
      */
@@ -113,7 +136,7 @@ public class FileLoadRIF implements RenderedImageFactory {
 
 	    SeekableStream src = null;
 	    try {
-                src = new FileSeekableStream(fileName);
+                src = openFile(fileName, hints);
             } catch (FileNotFoundException fnfe) {
 		// Try to get the file as an InputStream resource. This would
 		// happen when the application and image file are packaged in
@@ -106,4 +106,64 @@ final class HistogramOpImage extends StatisticsOpImage {
         Histogram histogram = (Histogram)stats;
         histogram.countPixels(source, roi, xStart, yStart, xPeriod, yPeriod);
     }
+
+    protected PartialStatistics createPartialStatistics(String name) {
+        if (!name.equalsIgnoreCase("histogram")) {
+            return null;
+        }
+        return new PartialHistogram();
+    }
+
+    /** A histogram over some tiles. */
+    private final class PartialHistogram extends PartialStatistics {
+        final Histogram histogram =
+            new Histogram(numBins, lowValue, highValue);
+
+        protected void accumulate(Raster source) {
+            histogram.countPixels(source, roi,
+                                  xStart, yStart, xPeriod, yPeriod);
+        }
+
+        protected void merge(PartialStatistics partial) {
+            addBins(((PartialHistogram)partial).histogram, histogram);
+        }
+
+        protected void store(Object stats) {
+            addBins(histogram, (Histogram)stats);
+        }
+
+        /**
+         * Returns the number of pixels and the sum of the centers of the
+         * bins of their samples.
+         */
+        protected double[] getSums() {
+            double[] sums = new double[numBands + 1];
+            for (int b = 0; b < numBands; b++) {
+                int[] bins = histogram.getBins(b);
+                double binWidth = (highValue[b] - lowValue[b])/numBins[b];
+                double center = lowValue[b] + binWidth/2.0;
+                double count = 0.0;
+                double sum = 0.0;
+                for (int i = 0; i < bins.length; i++) {
+                    count += bins[i];
+                    sum += bins[i]*center;
+                    center += binWidth;
+                }
+                sums[0] = count;
+                sums[b + 1] = sum;
+            }
+            return sums;
+        }
+    }
+
+    /** Adds the bins of a histogram to those of another. */
+    private void addBins(Histogram histogram, Histogram sum) {
+        for (int b = 0; b < numBands; b++) {
+            int[] bins = histogram.getBins(b);
+            int[] sumBins = sum.getBins(b);
+            for (int i = 0; i < bins.length; i++) {
+                sumBins[i] += bins[i];
+            }
+        }
+    }
 }
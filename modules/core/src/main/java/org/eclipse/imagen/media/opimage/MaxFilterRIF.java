@@ -30,6 +30,7 @@ import org.eclipse.imagen.operator.MaxFilterShape;
  *  Creates a MaxFilterOpImage subclass for the given input
  *  mask type
  *  @see MaxFilterOpImage
+ *  @see RunningExtremaFilterOpImage
  */
 public class MaxFilterRIF implements RenderedImageFactory {
 
@@ -55,6 +56,21 @@ public class MaxFilterRIF implements RenderedImageFactory {
             (MaxFilterShape)paramBlock.getObjectParameter(0);
         int maskSize = paramBlock.getIntParameter(1);
         RenderedImage ri = paramBlock.getRenderedSource(0);
+
+        // The square mask is separable and a running extremum along
+        // the rows and then along the columns costs a constant time per
+        // sample whatever the mask size.
+        if((maskType.equals(MaxFilterDescriptor.MAX_MASK_SQUARE) ||
+            maskType.equals(MaxFilterDescriptor.MAX_MASK_SQUARE_SEPARABLE)) &&
+           maskSize % 2 == 1 &&
+           maskSize >= RunningExtremaFilterOpImage.MIN_MASK_SIZE) {
+           return new RunningExtremaFilterOpImage(ri,
+                                                  extender,
+                                                  renderHints,
+                                                  layout,
+                                                  maskSize,
+                                                  true);
+        }
         
         if(maskType.equals(MaxFilterDescriptor.MAX_MASK_SQUARE)) {
            return new MaxFilterSquareOpImage(ri,
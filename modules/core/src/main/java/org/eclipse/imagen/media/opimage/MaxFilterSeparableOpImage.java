@@ -266,7 +266,7 @@ final class MaxFilterSeparableOpImage extends MaxFilterOpImage {
                      int imageOffset = srcPixelOffset;
 		     maxval = Integer.MIN_VALUE;
                      for (int v = 0; v < wp; v++)  {
-                          val = srcData[imageOffset] & 0xfff;
+                          val = srcData[imageOffset] & 0xffff;
                           imageOffset += srcPixelStride;
 			  maxval = (val > maxval) ? val : maxval;
                      }
@@ -42,12 +42,10 @@ public class MeanOpImage extends StatisticsOpImage {
     private boolean isInitialized = false;
 
     /**
-     * Note: For very large images, these two variables may be overflowed.
-     * An alternative would be to have a set for each tile. But then, the
-     * user could specify very large tile size.
+     * Note: For very large images, the sums may lose precision.
      */
     private double[] totalPixelValue;
-    private int totalPixelCount;
+    private long totalPixelCount;
 
     private PixelAccessor srcPA;
 
@@ -100,9 +98,8 @@ public class MeanOpImage extends StatisticsOpImage {
         }
     }
 
-    protected void accumulateStatistics(String name,
-                                        Raster source,
-                                        Object stats) {
+    /** Initializes the accessor of the source and the sums. */
+    private void initialize() {
         if(!isInitialized) {
             srcPA = new PixelAccessor(getSourceImage(0));
             srcSampleType = srcPA.sampleType == PixelAccessor.TYPE_BIT ?
@@ -112,7 +109,79 @@ public class MeanOpImage extends StatisticsOpImage {
             totalPixelCount = 0;
             isInitialized = true;
         }
+    }
+
+    protected void accumulateStatistics(String name,
+                                        Raster source,
+                                        Object stats) {
+        initialize();
+
+        totalPixelCount += accumulatePixels(source, totalPixelValue);
+
+        if(name.equalsIgnoreCase("mean")) {
+            // This is a totally disgusting hack but no worse than the
+            // code was before ... bpb 1 September 2000
+            double[] mean = (double[])stats;
+            if (totalPixelCount != 0) {
+                for (int i = 0; i < srcPA.numBands; i++) {
+                    mean[i] = totalPixelValue[i] /
+                        (double)totalPixelCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sums of the samples of each band and the number of
+     * pixels over some tiles.
+     */
+    protected PartialStatistics createPartialStatistics(String name) {
+        if (!name.equalsIgnoreCase("mean")) {
+            return null;
+        }
+        initialize();
+        return new PartialMean();
+    }
+
+    /** The sums of the samples of each band and the number of pixels. */
+    private final class PartialMean extends PartialStatistics {
+        final double[] pixelValue = new double[srcPA.numBands];
+        long pixelCount = 0;
 
+        protected void accumulate(Raster source) {
+            pixelCount += accumulatePixels(source, pixelValue);
+        }
+
+        protected void merge(PartialStatistics partial) {
+            PartialMean partialMean = (PartialMean)partial;
+            for (int i = 0; i < srcPA.numBands; i++) {
+                pixelValue[i] += partialMean.pixelValue[i];
+            }
+            pixelCount += partialMean.pixelCount;
+        }
+
+        protected void store(Object stats) {
+            double[] mean = (double[])stats;
+            if (pixelCount != 0) {
+                for (int i = 0; i < srcPA.numBands; i++) {
+                    mean[i] = pixelValue[i] / (double)pixelCount;
+                }
+            }
+        }
+
+        protected double[] getSums() {
+            double[] sums = new double[srcPA.numBands + 1];
+            sums[0] = pixelCount;
+            System.arraycopy(pixelValue, 0, sums, 1, srcPA.numBands);
+            return sums;
+        }
+    }
+
+    /**
+     * Adds the sampled pixels of a <code>Raster</code> within the region
+     * of interest to the sums of each band and returns their number.
+     */
+    private long accumulatePixels(Raster source, double[] pixelValue) {
         Rectangle srcBounds = getSourceImage(0).getBounds().intersection(
                                                   source.getBounds());
 
@@ -126,11 +195,12 @@ public class MeanOpImage extends StatisticsOpImage {
                                               srcBounds.width,
                                               srcBounds.height);
             if (rectList == null) {
-                return; // ROI does not intersect with Raster boundary.
+                return 0; // ROI does not intersect with Raster boundary.
             }
         }
         ListIterator iterator = rectList.listIterator(0);
 
+        long pixelCount = 0;
         while (iterator.hasNext()) {
             Rectangle rect = srcBounds.intersection((Rectangle)iterator.next());
             int tx = rect.x;
@@ -151,40 +221,33 @@ public class MeanOpImage extends StatisticsOpImage {
 
             switch (uid.type) {
             case DataBuffer.TYPE_BYTE:
-                accumulateStatisticsByte(uid);
+                accumulateStatisticsByte(uid, pixelValue);
                 break;
             case DataBuffer.TYPE_USHORT:
-                accumulateStatisticsUShort(uid);
+                accumulateStatisticsUShort(uid, pixelValue);
                 break;
             case DataBuffer.TYPE_SHORT:
-                accumulateStatisticsShort(uid);
+                accumulateStatisticsShort(uid, pixelValue);
                 break;
             case DataBuffer.TYPE_INT:
-                accumulateStatisticsInt(uid);
+                accumulateStatisticsInt(uid, pixelValue);
                 break;
             case DataBuffer.TYPE_FLOAT:
-                accumulateStatisticsFloat(uid);
+                accumulateStatisticsFloat(uid, pixelValue);
                 break;
             case DataBuffer.TYPE_DOUBLE:
-                accumulateStatisticsDouble(uid);
+                accumulateStatisticsDouble(uid, pixelValue);
                 break;
             }
-        }
 
-        if(name.equalsIgnoreCase("mean")) {
-            // This is a totally disgusting hack but no worse than the
-            // code was before ... bpb 1 September 2000
-            double[] mean = (double[])stats;
-            if (totalPixelCount != 0) {
-                for (int i = 0; i < srcPA.numBands; i++) {
-                    mean[i] = totalPixelValue[i] /
-                        (double)totalPixelCount;
-                }
-            }
+            pixelCount += (long)Math.ceil((double)rect.height / yPeriod) *
+                          (long)Math.ceil((double)rect.width / xPeriod);
         }
+        return pixelCount;
     }
 
-    private void accumulateStatisticsByte(UnpackedImageData uid) {
+    private void accumulateStatisticsByte(UnpackedImageData uid,
+                                          double[] pixelValue) {
         Rectangle rect = uid.rect;
         byte[][] data = uid.getByteData();
         int lineStride = uid.lineStride;
@@ -201,15 +264,14 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po] & 0xff;
+                    pixelValue[b] += d[po] & 0xff;
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 
-    private void accumulateStatisticsUShort(UnpackedImageData uid) {
+    private void accumulateStatisticsUShort(UnpackedImageData uid,
+                                            double[] pixelValue) {
         Rectangle rect = uid.rect;
         short[][] data = uid.getShortData();
         int lineStride = uid.lineStride;
@@ -226,15 +288,14 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po] & 0xffff;
+                    pixelValue[b] += d[po] & 0xffff;
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 
-    private void accumulateStatisticsShort(UnpackedImageData uid) {
+    private void accumulateStatisticsShort(UnpackedImageData uid,
+                                           double[] pixelValue) {
         Rectangle rect = uid.rect;
         short[][] data = uid.getShortData();
         int lineStride = uid.lineStride;
@@ -251,15 +312,14 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po];
+                    pixelValue[b] += d[po];
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 
-    private void accumulateStatisticsInt(UnpackedImageData uid) {
+    private void accumulateStatisticsInt(UnpackedImageData uid,
+                                         double[] pixelValue) {
         Rectangle rect = uid.rect;
         int[][] data = uid.getIntData();
         int lineStride = uid.lineStride;
@@ -276,15 +336,14 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po];
+                    pixelValue[b] += d[po];
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 
-    private void accumulateStatisticsFloat(UnpackedImageData uid) {
+    private void accumulateStatisticsFloat(UnpackedImageData uid,
+                                           double[] pixelValue) {
         Rectangle rect = uid.rect;
         float[][] data = uid.getFloatData();
         int lineStride = uid.lineStride;
@@ -301,15 +360,14 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po];
+                    pixelValue[b] += d[po];
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 
-    private void accumulateStatisticsDouble(UnpackedImageData uid) {
+    private void accumulateStatisticsDouble(UnpackedImageData uid,
+                                            double[] pixelValue) {
         Rectangle rect = uid.rect;
         double[][] data = uid.getDoubleData();
         int lineStride = uid.lineStride;
@@ -326,11 +384,9 @@ public class MeanOpImage extends StatisticsOpImage {
                 int lastPixel = lo + rect.width * pixelStride;
 
                 for (int po = lo; po < lastPixel; po += pixelInc) {
-                    totalPixelValue[b] += d[po];
+                    pixelValue[b] += d[po];
                 }
             }
         }
-        totalPixelCount += (int)Math.ceil((double)rect.height / yPeriod) *
-                           (int)Math.ceil((double)rect.width / xPeriod);
     }
 }
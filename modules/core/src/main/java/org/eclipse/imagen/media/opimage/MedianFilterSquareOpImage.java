@@ -17,6 +17,7 @@
 
 package org.eclipse.imagen.media.opimage;
 import java.awt.image.RenderedImage;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.eclipse.imagen.BorderExtender;
@@ -31,6 +32,18 @@ import org.eclipse.imagen.operator.MedianFilterDescriptor;
  */
 final class MedianFilterSquareOpImage extends MedianFilterOpImage {
 
+    /**
+     * The minimum mask size for which byte data are filtered by means
+     * of histograms.
+     */
+    private static final int BYTE_HISTOGRAM_MASK_SIZE = 5;
+
+    /**
+     * The minimum mask size for which unsigned short data are filtered
+     * by means of histograms.
+     */
+    private static final int USHORT_HISTOGRAM_MASK_SIZE = 5;
+
     /**
      * Creates a MedianFilterSquareOpImage with the given source and
      * maskSize.  The image dimensions are derived from the source
@@ -59,6 +72,11 @@ final class MedianFilterSquareOpImage extends MedianFilterOpImage {
     protected void byteLoop(RasterAccessor src, 
                             RasterAccessor dst,
                             int filterSize) {
+        if (filterSize >= BYTE_HISTOGRAM_MASK_SIZE) {
+            byteHistogramLoop(src, dst, filterSize);
+            return;
+        }
+
         int dwidth = dst.getWidth();
         int dheight = dst.getHeight();
         int dnumBands = dst.getNumBands();
@@ -110,6 +128,251 @@ final class MedianFilterSquareOpImage extends MedianFilterOpImage {
         }
     }
 
+    /**
+     * Performs median filtering of byte data in constant time per
+     * sample with the algorithm of Perreault and Hebert.  A histogram of
+     * the samples of each source column within the mask is kept up to
+     * date as the mask moves down, and the histogram of the mask is
+     * updated as it moves right by adding the histogram of the column
+     * which enters it and subtracting that of the column which leaves
+     * it.  The histograms have a coarse level of 16 bins and a fine level
+     * of 256 bins; only the coarse level of the mask is always up to
+     * date, the 16 fine bins within a coarse bin being updated when the
+     * median falls in it.
+     */
+    private void byteHistogramLoop(RasterAccessor src, 
+                                   RasterAccessor dst,
+                                   int filterSize) {
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+        int dnumBands = dst.getNumBands();
+ 
+        byte dstDataArrays[][] = dst.getByteDataArrays();
+        int dstBandOffsets[] = dst.getBandOffsets();
+        int dstPixelStride = dst.getPixelStride();
+        int dstScanlineStride = dst.getScanlineStride();
+ 
+        byte srcDataArrays[][] = src.getByteDataArrays();
+        int srcBandOffsets[] = src.getBandOffsets();
+        int srcPixelStride = src.getPixelStride();
+        int srcScanlineStride = src.getScanlineStride();
+
+        int wp = filterSize;
+        int swidth = dwidth + wp - 1;
+        int target = (wp*wp)/2;
+
+        int columnCoarse[] = new int[swidth*16];
+        int columnFine[] = new int[swidth*256];
+        int coarse[] = new int[16];
+        int fine[] = new int[256];
+        // The column at which each fine segment of the mask histogram
+        // starts, or -1 if it is out of date.
+        int segmentColumns[] = new int[16];
+
+        for (int k = 0; k < dnumBands; k++)  {
+            byte dstData[] = dstDataArrays[k];
+            byte srcData[] = srcDataArrays[k];
+            int srcScanlineOffset = srcBandOffsets[k];
+            int dstScanlineOffset = dstBandOffsets[k];
+
+            Arrays.fill(columnCoarse, 0);
+            Arrays.fill(columnFine, 0);
+
+            // Add all the rows of the mask but the last one.
+            for (int u = 0; u < wp - 1; u++) {
+                int imageOffset = srcScanlineOffset + u*srcScanlineStride;
+                for (int c = 0; c < swidth; c++) {
+                    int val = srcData[imageOffset]&0xff;
+                    columnCoarse[c*16 + (val >> 4)]++;
+                    columnFine[c*256 + val]++;
+                    imageOffset += srcPixelStride;
+                }
+            }
+
+            for (int j = 0; j < dheight; j++)  {
+                // Move the column histograms down.
+                int addOffset = srcScanlineOffset + (wp - 1)*srcScanlineStride;
+                int removeOffset = srcScanlineOffset - srcScanlineStride;
+                for (int c = 0; c < swidth; c++) {
+                    int val = srcData[addOffset]&0xff;
+                    columnCoarse[c*16 + (val >> 4)]++;
+                    columnFine[c*256 + val]++;
+                    addOffset += srcPixelStride;
+                    if (j > 0) {
+                        val = srcData[removeOffset]&0xff;
+                        columnCoarse[c*16 + (val >> 4)]--;
+                        columnFine[c*256 + val]--;
+                        removeOffset += srcPixelStride;
+                    }
+                }
+
+                Arrays.fill(coarse, 0);
+                for (int c = 0; c < wp; c++) {
+                    for (int b = 0; b < 16; b++) {
+                        coarse[b] += columnCoarse[c*16 + b];
+                    }
+                }
+                Arrays.fill(segmentColumns, -1);
+
+                int dstPixelOffset = dstScanlineOffset;
+                for (int i = 0; i < dwidth; i++)  {
+                    if (i > 0) {
+                        int add = (i + wp - 1)*16;
+                        int remove = (i - 1)*16;
+                        for (int b = 0; b < 16; b++) {
+                            coarse[b] += columnCoarse[add + b] -
+                                columnCoarse[remove + b];
+                        }
+                    }
+
+                    int sum = 0;
+                    int b = 0;
+                    while (sum + coarse[b] <= target) {
+                        sum += coarse[b++];
+                    }
+
+                    // Bring the fine segment of the coarse bin up to date.
+                    int base = b*16;
+                    int start = segmentColumns[b];
+                    if (start < 0 || i - start >= wp) {
+                        for (int v = 0; v < 16; v++) {
+                            fine[base + v] = 0;
+                        }
+                        for (int c = i; c < i + wp; c++) {
+                            int offset = c*256 + base;
+                            for (int v = 0; v < 16; v++) {
+                                fine[base + v] += columnFine[offset + v];
+                            }
+                        }
+                    } else {
+                        for (int c = start; c < i; c++) {
+                            int add = (c + wp)*256 + base;
+                            int remove = c*256 + base;
+                            for (int v = 0; v < 16; v++) {
+                                fine[base + v] += columnFine[add + v] -
+                                    columnFine[remove + v];
+                            }
+                        }
+                    }
+                    segmentColumns[b] = i;
+
+                    int val = base;
+                    while (sum + fine[val] <= target) {
+                        sum += fine[val++];
+                    }
+
+                    dstData[dstPixelOffset] = (byte)val;
+                    dstPixelOffset += dstPixelStride;
+                }
+                srcScanlineOffset += srcScanlineStride;
+                dstScanlineOffset += dstScanlineStride;
+            }
+        }
+    }
+
+    /**
+     * Performs median filtering of unsigned short data by means of the
+     * histogram of the mask, which is updated as the mask moves right
+     * by adding the samples of the column which enters it and removing
+     * those of the column which leaves it, so that each sample costs a
+     * time proportional to the mask size rather than to its square.  The
+     * histogram has a coarse level of 256 bins to speed up the search of
+     * the median.
+     */
+    private void ushortHistogramLoop(RasterAccessor src, 
+                                     RasterAccessor dst,
+                                     int filterSize) {
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+        int dnumBands = dst.getNumBands();
+ 
+        short dstDataArrays[][] = dst.getShortDataArrays();
+        int dstBandOffsets[] = dst.getBandOffsets();
+        int dstPixelStride = dst.getPixelStride();
+        int dstScanlineStride = dst.getScanlineStride();
+ 
+        short srcDataArrays[][] = src.getShortDataArrays();
+        int srcBandOffsets[] = src.getBandOffsets();
+        int srcPixelStride = src.getPixelStride();
+        int srcScanlineStride = src.getScanlineStride();
+
+        int wp = filterSize;
+        int target = (wp*wp)/2;
+
+        int coarse[] = new int[256];
+        int fine[] = new int[65536];
+
+        for (int k = 0; k < dnumBands; k++)  {
+            short dstData[] = dstDataArrays[k];
+            short srcData[] = srcDataArrays[k];
+            int srcScanlineOffset = srcBandOffsets[k];
+            int dstScanlineOffset = dstBandOffsets[k];
+            for (int j = 0; j < dheight; j++)  {
+                // Add all the columns of the mask but the last one.
+                int columnOffset = srcScanlineOffset;
+                for (int v = 0; v < wp - 1; v++) {
+                    int imageOffset = columnOffset;
+                    for (int u = 0; u < wp; u++) {
+                        int val = srcData[imageOffset]&0xffff;
+                        coarse[val >> 8]++;
+                        fine[val]++;
+                        imageOffset += srcScanlineStride;
+                    }
+                    columnOffset += srcPixelStride;
+                }
+
+                int removeOffset = srcScanlineOffset;
+                int dstPixelOffset = dstScanlineOffset;
+                for (int i = 0; i < dwidth; i++)  {
+                    int imageOffset = columnOffset;
+                    for (int u = 0; u < wp; u++) {
+                        int val = srcData[imageOffset]&0xffff;
+                        coarse[val >> 8]++;
+                        fine[val]++;
+                        imageOffset += srcScanlineStride;
+                    }
+                    columnOffset += srcPixelStride;
+
+                    int sum = 0;
+                    int b = 0;
+                    while (sum + coarse[b] <= target) {
+                        sum += coarse[b++];
+                    }
+                    int val = b << 8;
+                    while (sum + fine[val] <= target) {
+                        sum += fine[val++];
+                    }
+                    dstData[dstPixelOffset] = (short)val;
+                    dstPixelOffset += dstPixelStride;
+
+                    imageOffset = removeOffset;
+                    for (int u = 0; u < wp; u++) {
+                        val = srcData[imageOffset]&0xffff;
+                        coarse[val >> 8]--;
+                        fine[val]--;
+                        imageOffset += srcScanlineStride;
+                    }
+                    removeOffset += srcPixelStride;
+                }
+
+                // Empty the histogram of the remaining columns.
+                for (int v = 0; v < wp - 1; v++) {
+                    int imageOffset = removeOffset;
+                    for (int u = 0; u < wp; u++) {
+                        int val = srcData[imageOffset]&0xffff;
+                        coarse[val >> 8]--;
+                        fine[val]--;
+                        imageOffset += srcScanlineStride;
+                    }
+                    removeOffset += srcPixelStride;
+                }
+
+                srcScanlineOffset += srcScanlineStride;
+                dstScanlineOffset += dstScanlineStride;
+            }
+        }
+    }
+
     protected void shortLoop(RasterAccessor src, 
                              RasterAccessor dst,
                              int filterSize)  {
@@ -167,6 +430,11 @@ final class MedianFilterSquareOpImage extends MedianFilterOpImage {
     protected void ushortLoop(RasterAccessor src, 
                               RasterAccessor dst,
                               int filterSize)  {
+        if (filterSize >= USHORT_HISTOGRAM_MASK_SIZE) {
+            ushortHistogramLoop(src, dst, filterSize);
+            return;
+        }
+
         int dwidth = dst.getWidth();
         int dheight = dst.getHeight();
         int dnumBands = dst.getNumBands();
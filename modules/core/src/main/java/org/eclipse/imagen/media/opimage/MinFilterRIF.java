@@ -30,6 +30,7 @@ import org.eclipse.imagen.operator.MinFilterShape;
  *  Creates a MinFilterOpImage subclass for the given input
  *  mask type
  *  @see MinFilterOpImage
+ *  @see RunningExtremaFilterOpImage
  */
 public class MinFilterRIF implements RenderedImageFactory {
 
@@ -55,6 +56,21 @@ public class MinFilterRIF implements RenderedImageFactory {
             (MinFilterShape)paramBlock.getObjectParameter(0);
         int maskSize = paramBlock.getIntParameter(1);
         RenderedImage ri = paramBlock.getRenderedSource(0);
+
+        // The square mask is separable and a running extremum along
+        // the rows and then along the columns costs a constant time per
+        // sample whatever the mask size.
+        if((maskType.equals(MinFilterDescriptor.MIN_MASK_SQUARE) ||
+            maskType.equals(MinFilterDescriptor.MIN_MASK_SQUARE_SEPARABLE)) &&
+           maskSize % 2 == 1 &&
+           maskSize >= RunningExtremaFilterOpImage.MIN_MASK_SIZE) {
+           return new RunningExtremaFilterOpImage(ri,
+                                                  extender,
+                                                  renderHints,
+                                                  layout,
+                                                  maskSize,
+                                                  false);
+        }
         
         if(maskType.equals(MinFilterDescriptor.MIN_MASK_SQUARE)) {
            return new MinFilterSquareOpImage(ri,
@@ -266,7 +266,7 @@ final class MinFilterSeparableOpImage extends MinFilterOpImage {
                      int imageOffset = srcPixelOffset;
 		     minval = Integer.MAX_VALUE;
                      for (int v = 0; v < wp; v++)  {
-                          val = srcData[imageOffset] & 0xfff;
+                          val = srcData[imageOffset] & 0xffff;
                           imageOffset += srcPixelStride;
 			  minval = (val < minval) ? val : minval;
                      }
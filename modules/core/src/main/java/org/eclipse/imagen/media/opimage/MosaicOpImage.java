@@ -21,12 +21,15 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Vector;
 
@@ -36,6 +39,7 @@ import org.eclipse.imagen.ImageLayout;
 import org.eclipse.imagen.OpImage;
 import org.eclipse.imagen.PlanarImage;
 import org.eclipse.imagen.ROI;
+import org.eclipse.imagen.ROIRunLength;
 import org.eclipse.imagen.RasterAccessor;
 import org.eclipse.imagen.RasterFormatTag;
 import org.eclipse.imagen.media.util.ImageUtil;
@@ -46,6 +50,7 @@ public class MosaicOpImage extends OpImage {
     private static final int WEIGHT_TYPE_ALPHA = 1;
     private static final int WEIGHT_TYPE_ROI = 2;
     private static final int WEIGHT_TYPE_THRESHOLD = 3;
+    private static final int WEIGHT_TYPE_INSIDE = 4;
 
     protected MosaicType mosaicType;
     protected PlanarImage[] sourceAlpha;
@@ -65,7 +70,10 @@ public class MosaicOpImage extends OpImage {
 
     private BorderExtender sourceExtender;
     private BorderExtender zeroExtender;
-    private PlanarImage[] roiImage;
+    private ROIRunLength[] roiRuns;
+
+    /** A tile of ones passed as the ROI of sources covering a tile. */
+    private Raster insideROI;
 
     private static final ImageLayout getLayout(Vector sources,
                                                ImageLayout layout) {
@@ -373,15 +381,84 @@ public class MosaicOpImage extends OpImage {
                 BorderExtender.createInstance(BorderExtender.BORDER_ZERO);
         }
 
-        // Get the ROI images.
+        // The runs of the ROIs are found when first needed.
         if(sourceROI != null) {
-            roiImage = new PlanarImage[numSources];
-            for(int i = 0; i < sourceROI.length; i++) {
-                if(sourceROI[i] != null) {
-                    roiImage[i] = sourceROI[i].getAsImage();
+            roiRuns = new ROIRunLength[numSources];
+        }
+    }
+
+    /**
+     * Returns the runs of pixels of the image of a source ROI, which
+     * are those given a weight.
+     */
+    private ROIRunLength getSourceRuns(int sourceIndex) {
+        synchronized(roiRuns) {
+            if(roiRuns[sourceIndex] == null) {
+                ROI roi = sourceROI[sourceIndex];
+                roiRuns[sourceIndex] = roi instanceof ROIRunLength ?
+                    (ROIRunLength)roi :
+                    new ROIRunLength(roi.getAsImage(), 1);
+            }
+            return roiRuns[sourceIndex];
+        }
+    }
+
+    /**
+     * Returns a byte <code>Raster</code> over a rectangle whose samples
+     * are 1 within a source ROI and 0 elsewhere.
+     */
+    private static Raster createROIRaster(ROIRunLength runs,
+                                          Rectangle rect) {
+        WritableRaster raster =
+            Raster.createBandedRaster(DataBuffer.TYPE_BYTE,
+                                      rect.width, rect.height, 1,
+                                      new Point(rect.x, rect.y));
+        byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+
+        LinkedList rectList =
+            runs.getAsRectangleList(rect.x, rect.y, rect.width, rect.height);
+        if(rectList != null) {
+            ListIterator it = rectList.listIterator(0);
+            while(it.hasNext()) {
+                Rectangle r = (Rectangle)it.next();
+                int offset = (r.y - rect.y)*rect.width + r.x - rect.x;
+                for(int j = 0; j < r.height; j++) {
+                    Arrays.fill(data, offset, offset + r.width, (byte)1);
+                    offset += rect.width;
                 }
             }
         }
+
+        return raster;
+    }
+
+    /**
+     * Returns a byte <code>Raster</code> over a rectangle within a tile
+     * whose samples are all 1.  The rasters share the data of a single
+     * tile, which marks them as wholly inside the ROI of a source.
+     */
+    private synchronized Raster getInsideROIRaster(Rectangle rect) {
+        if(insideROI == null) {
+            WritableRaster raster =
+                Raster.createBandedRaster(DataBuffer.TYPE_BYTE,
+                                          tileWidth, tileHeight, 1, null);
+            Arrays.fill(((DataBufferByte)raster.getDataBuffer()).getData(),
+                        (byte)1);
+            insideROI = raster;
+        }
+
+        return insideROI.createChild(0, 0, rect.width, rect.height,
+                                     rect.x, rect.y, null);
+    }
+
+    /**
+     * Returns whether a source ROI <code>Raster</code> is one returned by
+     * <code>getInsideROIRaster()</code>.
+     */
+    private boolean isInsideROIRaster(Raster roi) {
+        Raster inside = insideROI;
+        return roi != null && inside != null &&
+            roi.getDataBuffer() == inside.getDataBuffer();
     }
 
     public Rectangle mapDestRect(Rectangle destRect,
@@ -432,22 +509,33 @@ public class MosaicOpImage extends OpImage {
             PlanarImage source = getSourceImage(i);
             Rectangle srcRect = mapDestRect(destRect, i);
 
+            // A source weighted by its ROI contributes nothing where the
+            // ROI misses the tile and everywhere where the ROI covers it;
+            // in the latter case its ROI is a shared raster of ones.
+            int coverage = ROIRunLength.PARTIAL;
+            if(sourceROI != null && sourceROI[i] != null &&
+               (sourceAlpha == null || sourceAlpha[i] == null) &&
+               !(srcRect != null && srcRect.isEmpty())) {
+                coverage = getSourceRuns(i).getCoverage(destRect);
+            }
+
             // If srcRect is empty, set the Raster for this source to
             // null; otherwise pass srcRect to getData(). If srcRect
             // is null, getData() will return a Raster containing the
             // data of the entire source image.
-            rasterSources[i] = srcRect != null && srcRect.isEmpty() ?
+            rasterSources[i] =
+                (srcRect != null && srcRect.isEmpty()) ||
+                coverage == ROIRunLength.OUTSIDE ?
                 null : source.getExtendedData(destRect, sourceExtender);
 
             if(rasterSources[i] != null) {
                 if(sourceAlpha != null && sourceAlpha[i] != null) {
                     alpha[i] = sourceAlpha[i].getExtendedData(destRect,
                                                               zeroExtender);
-                }
-
-                if(sourceROI != null && sourceROI[i] != null) {
-                    roi[i] = roiImage[i].getExtendedData(destRect,
-                                                         zeroExtender);
+                } else if(sourceROI != null && sourceROI[i] != null) {
+                    roi[i] = coverage == ROIRunLength.INSIDE ?
+                        getInsideROIRaster(destRect) :
+                        createROIRaster(getSourceRuns(i), destRect);
                 }
             }
         }
@@ -644,7 +732,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -720,6 +809,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -802,6 +894,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -912,7 +1007,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -988,6 +1084,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -1070,6 +1169,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -1180,7 +1282,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -1256,6 +1359,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -1338,6 +1444,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -1448,7 +1557,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -1524,6 +1634,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -1606,6 +1719,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -1716,7 +1832,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -1792,6 +1909,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -1872,6 +1992,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -1982,7 +2105,8 @@ public class MosaicOpImage extends OpImage {
             if(alfa[i] != null) {
                 weightTypes[i] = WEIGHT_TYPE_ALPHA;
             } else if(sourceROI != null && sourceROI[i] != null) {
-                weightTypes[i] = WEIGHT_TYPE_ROI;
+                weightTypes[i] = isInsideROIRaster(roi[i]) ?
+                    WEIGHT_TYPE_INSIDE : WEIGHT_TYPE_ROI;
             }
         }
 
@@ -2058,6 +2182,9 @@ public class MosaicOpImage extends OpImage {
                                     aBandData[s][aPixelOffsets[s]] != 0;
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                setDestValue = true;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 setDestValue =
                                     roi[s].getSample(dstX, dstY, 0) > 0;
@@ -2138,6 +2265,9 @@ public class MosaicOpImage extends OpImage {
                                 }
                                 aPixelOffsets[s] += alfaPixelStride[s];
                                 break;
+                            case WEIGHT_TYPE_INSIDE:
+                                weight = 1.0F;
+                                break;
                             case WEIGHT_TYPE_ROI:
                                 weight =
                                     roi[s].getSample(dstX, dstY, 0) > 0 ?
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.opimage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Map;
+
+import org.eclipse.imagen.AreaOpImage;
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.ImageLayout;
+import org.eclipse.imagen.RasterAccessor;
+import org.eclipse.imagen.RasterFormatTag;
+
+/**
+ * An OpImage class to perform min or max filtering with a square mask
+ * by the van Herk/Gil-Werman algorithm.
+ *
+ * <p> The extremum over a square is the extremum over the columns of
+ * the extrema over the rows, so the filter is applied along the rows and
+ * then along the columns.  Along each line the samples are divided into
+ * blocks of the mask size, and the running extrema from the start and
+ * from the end of each block are computed.  The extremum over any window
+ * is then that of two of these values, so each destination sample costs
+ * a few comparisons whatever the mask size, instead of the square of the
+ * mask size for <code>MinFilterSquareOpImage</code> and
+ * <code>MaxFilterSquareOpImage</code>.
+ *
+ * <p> The maximum is computed as the minimum of the complemented integral
+ * samples or of the negated floating point samples.
+ *
+ * @see MinFilterSquareOpImage
+ * @see MaxFilterSquareOpImage
+ */
+final class RunningExtremaFilterOpImage extends AreaOpImage {
+
+    /** The minimum mask size for which this class is used. */
+    static final int MIN_MASK_SIZE = 3;
+
+    /** The mask size. */
+    private int maskSize;
+
+    /** Whether the maximum rather than the minimum is computed. */
+    private boolean isMax;
+
+    /**
+     * Creates a RunningExtremaFilterOpImage with the given source and
+     * maskSize.  The image dimensions are derived from the source
+     * image.  The tile grid layout, SampleModel, and ColorModel may
+     * optionally be specified by an ImageLayout object.
+     *
+     * @param source a RenderedImage.
+     * @param extender a BorderExtender, or null.
+     * @param layout an ImageLayout optionally containing the tile grid layout,
+     *        SampleModel, and ColorModel, or null.
+     * @param maskSize the mask size, which must be odd.
+     * @param isMax whether max filtering rather than min filtering is
+     *        performed.
+     */
+    public RunningExtremaFilterOpImage(RenderedImage source,
+                                       BorderExtender extender,
+                                       Map config,
+                                       ImageLayout layout,
+                                       int maskSize,
+                                       boolean isMax) {
+        super(source,
+              layout,
+              config,
+              true,
+              extender,
+              (maskSize-1)/2,
+              (maskSize-1)/2,
+              (maskSize/2),
+              (maskSize/2));
+
+        this.maskSize = maskSize;
+        this.isMax = isMax;
+    }
+
+    /**
+     * Performs min or max filtering on a specified rectangle. The sources
+     * are cobbled.
+     *
+     * @param sources an array of source Rasters, guaranteed to provide all
+     *                necessary source data for computing the output.
+     * @param dest a WritableRaster tile containing the area to be computed.
+     * @param destRect the rectangle within dest to be processed.
+     */
+    protected void computeRect(Raster[] sources,
+                               WritableRaster dest,
+                               Rectangle destRect) {
+        // Retrieve format tags.
+        RasterFormatTag[] formatTags = getFormatTags();
+
+        Raster source = sources[0];
+        Rectangle srcRect = mapDestRect(destRect, 0);
+
+        RasterAccessor srcAccessor =
+            new RasterAccessor(source, srcRect,
+                               formatTags[0],
+                               getSourceImage(0).getColorModel());
+        RasterAccessor dstAccessor =
+            new RasterAccessor(dest, destRect,
+                               formatTags[1], getColorModel());
+
+        switch (dstAccessor.getDataType()) {
+        case DataBuffer.TYPE_FLOAT:
+        case DataBuffer.TYPE_DOUBLE:
+            doubleLoop(srcAccessor, dstAccessor);
+            break;
+        default:
+            intLoop(srcAccessor, dstAccessor);
+            break;
+        }
+
+        // If the RasterAccessor object set up a temporary buffer for the
+        // op to write to, tell the RasterAccessor to write that data
+        // to the raster no that we're done with it.
+        if (dstAccessor.isDataCopy()) {
+            dstAccessor.clampDataArrays();
+            dstAccessor.copyDataToRaster();
+        }
+    }
+
+    /** Filters integral data, whose samples all fit in an int. */
+    private void intLoop(RasterAccessor src, RasterAccessor dst) {
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+        int swidth = src.getWidth();
+        int sheight = src.getHeight();
+        int length = Math.max(swidth, sheight);
+
+        int[] samples = new int[swidth*sheight];
+        int[] rowExtrema = new int[dwidth*sheight];
+        int[] extrema = new int[dwidth*dheight];
+        int[] g = new int[length];
+        int[] h = new int[length];
+
+        // The samples are complemented for the maximum.
+        int flip = isMax ? -1 : 0;
+
+        for (int k = 0; k < dst.getNumBands(); k++) {
+            getSamples(src, k, samples, flip);
+            for (int j = 0; j < sheight; j++) {
+                runningMin(samples, j*swidth, 1,
+                           rowExtrema, j*dwidth, 1,
+                           dwidth, maskSize, g, h);
+            }
+            for (int i = 0; i < dwidth; i++) {
+                runningMin(rowExtrema, i, dwidth,
+                           extrema, i, dwidth,
+                           dheight, maskSize, g, h);
+            }
+            setSamples(dst, k, extrema, flip);
+        }
+    }
+
+    /**
+     * Filters floating point data.  As for
+     * <code>MinFilterSquareOpImage</code> and
+     * <code>MaxFilterSquareOpImage</code>, NaN samples are ignored and
+     * the result is bounded by the largest finite value of the data
+     * type, which is also the result for a window of NaN samples.
+     */
+    private void doubleLoop(RasterAccessor src, RasterAccessor dst) {
+        int dwidth = dst.getWidth();
+        int dheight = dst.getHeight();
+        int swidth = src.getWidth();
+        int sheight = src.getHeight();
+        int length = Math.max(swidth, sheight);
+
+        double[] samples = new double[swidth*sheight];
+        double[] rowExtrema = new double[dwidth*sheight];
+        double[] extrema = new double[dwidth*dheight];
+        double[] g = new double[length];
+        double[] h = new double[length];
+
+        double bound = dst.getDataType() == DataBuffer.TYPE_FLOAT ?
+            Float.MAX_VALUE : Double.MAX_VALUE;
+
+        for (int k = 0; k < dst.getNumBands(); k++) {
+            getSamples(src, k, samples, isMax);
+            for (int j = 0; j < sheight; j++) {
+                runningMin(samples, j*swidth, 1,
+                           rowExtrema, j*dwidth, 1,
+                           dwidth, maskSize, bound, g, h);
+            }
+            for (int i = 0; i < dwidth; i++) {
+                runningMin(rowExtrema, i, dwidth,
+                           extrema, i, dwidth,
+                           dheight, maskSize, bound, g, h);
+            }
+            setSamples(dst, k, extrema, isMax);
+        }
+    }
+
+    /**
+     * Copies a band of integral samples by rows, exclusive-oring them
+     * with <code>flip</code>.
+     */
+    private static void getSamples(RasterAccessor src, int band,
+                                   int[] samples, int flip) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int pixelStride = src.getPixelStride();
+        int scanlineStride = src.getScanlineStride();
+        int scanlineOffset = src.getBandOffset(band);
+        int n = 0;
+
+        switch (src.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            byte[] byteData = src.getByteDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = (byteData[offset]&0xff) ^ flip;
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        case DataBuffer.TYPE_USHORT:
+            short[] ushortData = src.getShortDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = (ushortData[offset]&0xffff) ^ flip;
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        case DataBuffer.TYPE_SHORT:
+            short[] shortData = src.getShortDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = shortData[offset] ^ flip;
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        case DataBuffer.TYPE_INT:
+            int[] intData = src.getIntDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = intData[offset] ^ flip;
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        }
+    }
+
+    /**
+     * Stores a band of integral samples by rows, exclusive-oring them
+     * with <code>flip</code>.
+     */
+    private static void setSamples(RasterAccessor dst, int band,
+                                   int[] samples, int flip) {
+        int width = dst.getWidth();
+        int height = dst.getHeight();
+        int pixelStride = dst.getPixelStride();
+        int scanlineStride = dst.getScanlineStride();
+        int scanlineOffset = dst.getBandOffset(band);
+        int n = 0;
+
+        switch (dst.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            byte[] byteData = dst.getByteDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    byteData[offset] = (byte)(samples[n++] ^ flip);
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            short[] shortData = dst.getShortDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    shortData[offset] = (short)(samples[n++] ^ flip);
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        case DataBuffer.TYPE_INT:
+            int[] intData = dst.getIntDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    intData[offset] = samples[n++] ^ flip;
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+            break;
+        }
+    }
+
+    /**
+     * Copies a band of floating point samples by rows, negating them if
+     * <code>negate</code> is <code>true</code>.
+     */
+    private static void getSamples(RasterAccessor src, int band,
+                                   double[] samples, boolean negate) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int pixelStride = src.getPixelStride();
+        int scanlineStride = src.getScanlineStride();
+        int scanlineOffset = src.getBandOffset(band);
+        double sign = negate ? -1.0 : 1.0;
+        int n = 0;
+
+        if (src.getDataType() == DataBuffer.TYPE_FLOAT) {
+            float[] floatData = src.getFloatDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = sign*floatData[offset];
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+        } else {
+            double[] doubleData = src.getDoubleDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    samples[n++] = sign*doubleData[offset];
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+        }
+    }
+
+    /**
+     * Stores a band of floating point samples by rows, negating them if
+     * <code>negate</code> is <code>true</code>.
+     */
+    private static void setSamples(RasterAccessor dst, int band,
+                                   double[] samples, boolean negate) {
+        int width = dst.getWidth();
+        int height = dst.getHeight();
+        int pixelStride = dst.getPixelStride();
+        int scanlineStride = dst.getScanlineStride();
+        int scanlineOffset = dst.getBandOffset(band);
+        double sign = negate ? -1.0 : 1.0;
+        int n = 0;
+
+        if (dst.getDataType() == DataBuffer.TYPE_FLOAT) {
+            float[] floatData = dst.getFloatDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    floatData[offset] = (float)(sign*samples[n++]);
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+        } else {
+            double[] doubleData = dst.getDoubleDataArray(band);
+            for (int j = 0; j < height; j++) {
+                int offset = scanlineOffset;
+                for (int i = 0; i < width; i++) {
+                    doubleData[offset] = sign*samples[n++];
+                    offset += pixelStride;
+                }
+                scanlineOffset += scanlineStride;
+            }
+        }
+    }
+
+    /**
+     * Computes the minima of the <code>count</code> windows of
+     * <code>size</code> consecutive elements of a line of
+     * <code>count + size - 1</code> elements.
+     *
+     * @param src the array holding the line.
+     * @param srcOffset the offset of the first element of the line.
+     * @param srcStride the distance between the elements of the line.
+     * @param dst the array receiving the minima.
+     * @param dstOffset the offset of the first minimum.
+     * @param dstStride the distance between the minima.
+     * @param count the number of windows.
+     * @param size the size of the windows.
+     * @param g work array receiving the minima from the starts of the
+     *        blocks.
+     * @param h work array receiving the minima from the ends of the
+     *        blocks.
+     */
+    private static void runningMin(int[] src, int srcOffset, int srcStride,
+                                   int[] dst, int dstOffset, int dstStride,
+                                   int count, int size, int[] g, int[] h) {
+        int length = count + size - 1;
+        for (int start = 0; start < length; start += size) {
+            int end = Math.min(start + size, length);
+
+            int min = Integer.MAX_VALUE;
+            int offset = srcOffset + start*srcStride;
+            for (int k = start; k < end; k++) {
+                int val = src[offset];
+                min = (val < min) ? val : min;
+                g[k] = min;
+                offset += srcStride;
+            }
+
+            min = Integer.MAX_VALUE;
+            for (int k = end - 1; k >= start; k--) {
+                offset -= srcStride;
+                int val = src[offset];
+                min = (val < min) ? val : min;
+                h[k] = min;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            int a = h[i];
+            int b = g[i + size - 1];
+            dst[dstOffset] = (a < b) ? a : b;
+            dstOffset += dstStride;
+        }
+    }
+
+    /**
+     * Computes the minima of the <code>count</code> windows of
+     * <code>size</code> consecutive elements of a line of
+     * <code>count + size - 1</code> elements.  NaN elements are
+     * skipped and the minima are at most <code>bound</code>.
+     *
+     * @see #runningMin(int[], int, int, int[], int, int, int, int,
+     *      int[], int[])
+     */
+    private static void runningMin(double[] src, int srcOffset, int srcStride,
+                                   double[] dst, int dstOffset, int dstStride,
+                                   int count, int size, double bound,
+                                   double[] g, double[] h) {
+        int length = count + size - 1;
+        for (int start = 0; start < length; start += size) {
+            int end = Math.min(start + size, length);
+
+            double min = bound;
+            int offset = srcOffset + start*srcStride;
+            for (int k = start; k < end; k++) {
+                double val = src[offset];
+                min = (val < min) ? val : min;
+                g[k] = min;
+                offset += srcStride;
+            }
+
+            min = bound;
+            for (int k = end - 1; k >= start; k--) {
+                offset -= srcStride;
+                double val = src[offset];
+                min = (val < min) ? val : min;
+                h[k] = min;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            double a = h[i];
+            double b = g[i + size - 1];
+            dst[dstOffset] = (a < b) ? a : b;
+            dstOffset += dstStride;
+        }
+    }
+}
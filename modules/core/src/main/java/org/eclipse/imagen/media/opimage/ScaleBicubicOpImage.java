@@ -21,6 +21,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.eclipse.imagen.BorderExtender;
@@ -364,15 +365,17 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         byte srcDataArrays[][] = src.getByteDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
+
+	int posylow, posy, posx;
 	int xfrac, yfrac;
-	int s__, s_0, s_1, s_2;
-	int s0_, s00, s01, s02;
-	int s1_, s10, s11, s12;
-	int s2_, s20, s21, s22;
-	int s, dstOffset = 0;	
+	int s;
+
+	// The four source rows interpolated horizontally.  The result of
+	// the interpolation in X depends only on the source row and the
+	// destination column, so each source row is interpolated once and
+	// reused by every destination row which needs it.
+	long rows[][] = new long[4][dwidth];
+	int rowOffsets[] = new int[4];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -380,90 +383,61 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
             byte srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    long row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			long sum = (long)tableDataHi[offsetX]*
+			    (srcData[posx - srcPixelStride] & 0xff);
+			sum += (long)tableDataHi[offsetX + 1]*(srcData[posx] & 0xff);
+			sum += (long)tableDataHi[offsetX + 2]*
+			    (srcData[posx + srcPixelStride] & 0xff);
+			sum += (long)tableDataHi[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride] & 0xff);
+
+			// Intermediate rounding
+			row[i] = (sum + round) >> precisionBits;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		long row0[] = rows[0];
+		long row1[] = rows[1];
+		long row2[] = rows[2];
+		long row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow] & 0xff;
-		    s_0 = srcData[posx + posylow] & 0xff;
-		    s_1 = srcData[posxhigh + posylow] & 0xff;
-		    s_2 = srcData[posxhigh2 + posylow] & 0xff;
-
-		    s0_ = srcData[posxlow + posy] & 0xff;
-		    s00 = srcData[posx + posy] & 0xff;
-		    s01 = srcData[posxhigh + posy] & 0xff;
-		    s02 = srcData[posxhigh2 + posy] & 0xff;
-		    
-		    s1_ = srcData[posxlow + posyhigh] & 0xff;
-		    s10 = srcData[posx + posyhigh] & 0xff;
-		    s11 = srcData[posxhigh + posyhigh] & 0xff;
-		    s12 = srcData[posxhigh2 + posyhigh] & 0xff;
-
-		    s2_ = srcData[posxlow + posyhigh2] & 0xff;
-		    s20 = srcData[posx + posyhigh2] & 0xff;
-		    s21 = srcData[posxhigh + posyhigh2] & 0xff;
-		    s22 = srcData[posxhigh2 + posyhigh2] & 0xff;
-
-		    // Interpolate in X
-		    int offsetX = 4*xfrac;
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-
-		    long sum_ = (long)tableDataHi[offsetX]*s__;
-		    sum_ += (long)tableDataHi[offsetX1]*s_0;
-		    sum_ += (long)tableDataHi[offsetX2]*s_1;
-		    sum_ += (long)tableDataHi[offsetX3]*s_2;
-		    
-		    long sum0 = (long)tableDataHi[offsetX]*s0_;
-		    sum0 += (long)tableDataHi[offsetX1]*s00;
-		    sum0 += (long)tableDataHi[offsetX2]*s01;
-		    sum0 += (long)tableDataHi[offsetX3]*s02;
-		    
-		    long sum1 = (long)tableDataHi[offsetX]*s1_;
-		    sum1 += (long)tableDataHi[offsetX1]*s10;
-		    sum1 += (long)tableDataHi[offsetX2]*s11;
-		    sum1 += (long)tableDataHi[offsetX3]*s12;
-		    
-		    long sum2 = (long)tableDataHi[offsetX]*s2_;
-		    sum2 += (long)tableDataHi[offsetX1]*s20;
-		    sum2 += (long)tableDataHi[offsetX2]*s21;
-		    sum2 += (long)tableDataHi[offsetX3]*s22;
-		    
-		    // Intermediate rounding
-		    sum_ = (sum_ + round) >> precisionBits;
-		    sum0 = (sum0 + round) >> precisionBits;
-		    sum1 = (sum1 + round) >> precisionBits;
-		    sum2 = (sum2 + round) >> precisionBits;
-		    
-		    // Interpolate in Y
-		    int offsetY = 4*yfrac;
-		    long sum = (long)tableDataVi[offsetY]*sum_;
-		    sum += (long)tableDataVi[offsetY + 1]*sum0;
-		    sum += (long)tableDataVi[offsetY + 2]*sum1;
-		    sum += (long)tableDataVi[offsetY + 3]*sum2;
-		    
+		    long sum = (long)tableDataVi[offsetY]*row0[i];
+		    sum += (long)tableDataVi[offsetY + 1]*row1[i];
+		    sum += (long)tableDataVi[offsetY + 2]*row2[i];
+		    sum += (long)tableDataVi[offsetY + 3]*row3[i];
+
 		    s = (int)((sum + round) >> precisionBits);
-			
+
 		    // clamp the value to byte range
 		    if (s > 255) {
 			s = 255;
 		    } else if (s < 0) {
 			s = 0;
 		    }
-		    
+
 		    dstData[dstPixelOffset] = (byte)(s&0xff);
                     dstPixelOffset += dstPixelStride;
 		}
@@ -489,17 +463,14 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         short srcDataArrays[][] = src.getShortDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int dstOffset = 0;
-	
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
+
+	int posylow, posy, posx;
 	int xfrac, yfrac;
-	int s__, s_0, s_1, s_2;
-	int s0_, s00, s01, s02;
-	int s1_, s10, s11, s12;
-	int s2_, s20, s21, s22;
-	int s;	
+	int s;
+
+	// The source rows interpolated in X, as in byteLoop().
+	long rows[][] = new long[4][dwidth];
+	int rowOffsets[] = new int[4];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -507,90 +478,61 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
             short srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    long row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			long sum = (long)tableDataHi[offsetX]*
+			    (srcData[posx - srcPixelStride]);
+			sum += (long)tableDataHi[offsetX + 1]*(srcData[posx]);
+			sum += (long)tableDataHi[offsetX + 2]*
+			    (srcData[posx + srcPixelStride]);
+			sum += (long)tableDataHi[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride]);
+
+			// Intermediate rounding
+			row[i] = (sum + round) >> precisionBits;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		long row0[] = rows[0];
+		long row1[] = rows[1];
+		long row2[] = rows[2];
+		long row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow];
-		    s_0 = srcData[posx + posylow];
-		    s_1 = srcData[posxhigh + posylow];
-		    s_2 = srcData[posxhigh2 + posylow];
-
-		    s0_ = srcData[posxlow + posy];
-		    s00 = srcData[posx + posy];
-		    s01 = srcData[posxhigh + posy];
-		    s02 = srcData[posxhigh2 + posy];
-		    
-		    s1_ = srcData[posxlow + posyhigh];
-		    s10 = srcData[posx + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-		    s12 = srcData[posxhigh2 + posyhigh];
-
-		    s2_ = srcData[posxlow + posyhigh2];
-		    s20 = srcData[posx + posyhigh2];
-		    s21 = srcData[posxhigh + posyhigh2];
-		    s22 = srcData[posxhigh2 + posyhigh2];
-
-		    // Interpolate in X
-		    int offsetX = 4*xfrac;
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-
-		    long sum_ = (long)tableDataHi[offsetX]*s__;
-		    sum_ += (long)tableDataHi[offsetX1]*s_0;
-		    sum_ += (long)tableDataHi[offsetX2]*s_1;
-		    sum_ += (long)tableDataHi[offsetX3]*s_2;
-		    
-		    long sum0 = (long)tableDataHi[offsetX]*s0_;
-		    sum0 += (long)tableDataHi[offsetX1]*s00;
-		    sum0 += (long)tableDataHi[offsetX2]*s01;
-		    sum0 += (long)tableDataHi[offsetX3]*s02;
-		    
-		    long sum1 = (long)tableDataHi[offsetX]*s1_;
-		    sum1 += (long)tableDataHi[offsetX1]*s10;
-		    sum1 += (long)tableDataHi[offsetX2]*s11;
-		    sum1 += (long)tableDataHi[offsetX3]*s12;
-		    
-		    long sum2 = (long)tableDataHi[offsetX]*s2_;
-		    sum2 += (long)tableDataHi[offsetX1]*s20;
-		    sum2 += (long)tableDataHi[offsetX2]*s21;
-		    sum2 += (long)tableDataHi[offsetX3]*s22;
-		    
-		    // Intermediate rounding
-		    sum_ = (sum_ + round) >> precisionBits;
-		    sum0 = (sum0 + round) >> precisionBits;
-		    sum1 = (sum1 + round) >> precisionBits;
-		    sum2 = (sum2 + round) >> precisionBits;
-		    
-		    // Interpolate in Y
-		    int offsetY = 4*yfrac;
-		    long sum = (long)tableDataVi[offsetY]*sum_;
-		    sum += (long)tableDataVi[offsetY + 1]*sum0;
-		    sum += (long)tableDataVi[offsetY + 2]*sum1;
-		    sum += (long)tableDataVi[offsetY + 3]*sum2;
-		    
+		    long sum = (long)tableDataVi[offsetY]*row0[i];
+		    sum += (long)tableDataVi[offsetY + 1]*row1[i];
+		    sum += (long)tableDataVi[offsetY + 2]*row2[i];
+		    sum += (long)tableDataVi[offsetY + 3]*row3[i];
+
 		    s = (int)((sum + round) >> precisionBits);
-			
+
 		    // clamp the value to short range
 		    if (s > Short.MAX_VALUE) {
 			s = Short.MAX_VALUE;
 		    } else if (s < Short.MIN_VALUE) {
 			s = Short.MIN_VALUE;
 		    }
-		    
+
 		    dstData[dstPixelOffset] = (short)s;
                     dstPixelOffset += dstPixelStride;
 		}
@@ -616,108 +558,76 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         short srcDataArrays[][] = src.getShortDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int dstOffset = 0;
-	
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
+
+	int posylow, posy, posx;
 	int xfrac, yfrac;
-	int s__, s_0, s_1, s_2;
-	int s0_, s00, s01, s02;
-	int s1_, s10, s11, s12;
-	int s2_, s20, s21, s22;
 	int s;
-	
+
+	// The source rows interpolated in X, as in byteLoop().
+	long rows[][] = new long[4][dwidth];
+	int rowOffsets[] = new int[4];
+
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
             short dstData[] = dstDataArrays[k];
             short srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    long row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			long sum = (long)tableDataHi[offsetX]*
+			    (srcData[posx - srcPixelStride] & 0xffff);
+			sum += (long)tableDataHi[offsetX + 1]*(srcData[posx] & 0xffff);
+			sum += (long)tableDataHi[offsetX + 2]*
+			    (srcData[posx + srcPixelStride] & 0xffff);
+			sum += (long)tableDataHi[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride] & 0xffff);
+
+			// Intermediate rounding
+			row[i] = (sum + round) >> precisionBits;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		long row0[] = rows[0];
+		long row1[] = rows[1];
+		long row2[] = rows[2];
+		long row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow] & 0xffff;
-		    s_0 = srcData[posx + posylow] & 0xffff;
-		    s_1 = srcData[posxhigh + posylow] & 0xffff;
-		    s_2 = srcData[posxhigh2 + posylow] & 0xffff;
-
-		    s0_ = srcData[posxlow + posy] & 0xffff;
-		    s00 = srcData[posx + posy] & 0xffff;
-		    s01 = srcData[posxhigh + posy] & 0xffff;
-		    s02 = srcData[posxhigh2 + posy] & 0xffff;
-		    
-		    s1_ = srcData[posxlow + posyhigh] & 0xffff;
-		    s10 = srcData[posx + posyhigh] & 0xffff;
-		    s11 = srcData[posxhigh + posyhigh] & 0xffff;
-		    s12 = srcData[posxhigh2 + posyhigh] & 0xffff;
-
-		    s2_ = srcData[posxlow + posyhigh2] & 0xffff;
-		    s20 = srcData[posx + posyhigh2] & 0xffff;
-		    s21 = srcData[posxhigh + posyhigh2] & 0xffff;
-		    s22 = srcData[posxhigh2 + posyhigh2] & 0xffff;
-
-		    // Interpolate in X
-		    int offsetX = 4*xfrac;
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-
-		    long sum_ = (long)tableDataHi[offsetX]*s__;
-		    sum_ += (long)tableDataHi[offsetX1]*s_0;
-		    sum_ += (long)tableDataHi[offsetX2]*s_1;
-		    sum_ += (long)tableDataHi[offsetX3]*s_2;
-		    
-		    long sum0 = (long)tableDataHi[offsetX]*s0_;
-		    sum0 += (long)tableDataHi[offsetX1]*s00;
-		    sum0 += (long)tableDataHi[offsetX2]*s01;
-		    sum0 += (long)tableDataHi[offsetX3]*s02;
-		    
-		    long sum1 = (long)tableDataHi[offsetX]*s1_;
-		    sum1 += (long)tableDataHi[offsetX1]*s10;
-		    sum1 += (long)tableDataHi[offsetX2]*s11;
-		    sum1 += (long)tableDataHi[offsetX3]*s12;
-		    
-		    long sum2 = (long)tableDataHi[offsetX]*s2_;
-		    sum2 += (long)tableDataHi[offsetX1]*s20;
-		    sum2 += (long)tableDataHi[offsetX2]*s21;
-		    sum2 += (long)tableDataHi[offsetX3]*s22;
-		    
-		    // Intermediate rounding
-		    sum_ = (sum_ + round) >> precisionBits;
-		    sum0 = (sum0 + round) >> precisionBits;
-		    sum1 = (sum1 + round) >> precisionBits;
-		    sum2 = (sum2 + round) >> precisionBits;
-		    
-		    // Interpolate in Y
-		    int offsetY = 4*yfrac;
-		    long sum = (long)tableDataVi[offsetY]*sum_;
-		    sum += (long)tableDataVi[offsetY + 1]*sum0;
-		    sum += (long)tableDataVi[offsetY + 2]*sum1;
-		    sum += (long)tableDataVi[offsetY + 3]*sum2;
-		    
+		    long sum = (long)tableDataVi[offsetY]*row0[i];
+		    sum += (long)tableDataVi[offsetY + 1]*row1[i];
+		    sum += (long)tableDataVi[offsetY + 2]*row2[i];
+		    sum += (long)tableDataVi[offsetY + 3]*row3[i];
+
 		    s = (int)((sum + round) >> precisionBits);
-			
+
 		    // clamp the value to ushort range
 		    if (s > 65536) {
 			s = 65536;
 		    } else if (s < 0) {
 			s = 0;
 		    }
-		    
+
 		    dstData[dstPixelOffset] = (short)(s & 0xffff);
                     dstPixelOffset += dstPixelStride;
 		}
@@ -745,99 +655,67 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         int srcDataArrays[][] = src.getIntDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int dstOffset = 0;
-	
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
-	long xfrac, yfrac;
-	int s__, s_0, s_1, s_2;
-	int s0_, s00, s01, s02;
-	int s1_, s10, s11, s12;
-	int s2_, s20, s21, s22;
+
+	int posylow, posy, posx;
+	int xfrac, yfrac;
 	int s;
 
+	// The source rows interpolated in X, as in byteLoop().
+	long rows[][] = new long[4][dwidth];
+	int rowOffsets[] = new int[4];
+
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
             int dstData[] = dstDataArrays[k];
             int srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    long row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			long sum = (long)tableDataHi[offsetX]*
+			    (srcData[posx - srcPixelStride]);
+			sum += (long)tableDataHi[offsetX + 1]*(srcData[posx]);
+			sum += (long)tableDataHi[offsetX + 2]*
+			    (srcData[posx + srcPixelStride]);
+			sum += (long)tableDataHi[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride]);
+
+			// Intermediate rounding
+			row[i] = (sum + round) >> precisionBits;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		long row0[] = rows[0];
+		long row1[] = rows[1];
+		long row2[] = rows[2];
+		long row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow];
-		    s_0 = srcData[posx + posylow];
-		    s_1 = srcData[posxhigh + posylow];
-		    s_2 = srcData[posxhigh2 + posylow];
-
-		    s0_ = srcData[posxlow + posy];
-		    s00 = srcData[posx + posy];
-		    s01 = srcData[posxhigh + posy];
-		    s02 = srcData[posxhigh2 + posy];
-		    
-		    s1_ = srcData[posxlow + posyhigh];
-		    s10 = srcData[posx + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-		    s12 = srcData[posxhigh2 + posyhigh];
-
-		    s2_ = srcData[posxlow + posyhigh2];
-		    s20 = srcData[posx + posyhigh2];
-		    s21 = srcData[posxhigh + posyhigh2];
-		    s22 = srcData[posxhigh2 + posyhigh2];
-
-		    // Interpolate in X
-		    int offsetX = (int)(4*xfrac);
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-
-		    long sum_ = (long)tableDataHi[offsetX]*s__;
-		    sum_ += (long)tableDataHi[offsetX1]*s_0;
-		    sum_ += (long)tableDataHi[offsetX2]*s_1;
-		    sum_ += (long)tableDataHi[offsetX3]*s_2;
-		    
-		    long sum0 = (long)tableDataHi[offsetX]*s0_;
-		    sum0 += (long)tableDataHi[offsetX1]*s00;
-		    sum0 += (long)tableDataHi[offsetX2]*s01;
-		    sum0 += (long)tableDataHi[offsetX3]*s02;
-		    
-		    long sum1 = (long)tableDataHi[offsetX]*s1_;
-		    sum1 += (long)tableDataHi[offsetX1]*s10;
-		    sum1 += (long)tableDataHi[offsetX2]*s11;
-		    sum1 += (long)tableDataHi[offsetX3]*s12;
-		    
-		    long sum2 = (long)tableDataHi[offsetX]*s2_;
-		    sum2 += (long)tableDataHi[offsetX1]*s20;
-		    sum2 += (long)tableDataHi[offsetX2]*s21;
-		    sum2 += (long)tableDataHi[offsetX3]*s22;
-		    
-		    // Intermediate rounding
-		    sum_ = (sum_ + round) >> precisionBits;
-		    sum0 = (sum0 + round) >> precisionBits;
-		    sum1 = (sum1 + round) >> precisionBits;
-		    sum2 = (sum2 + round) >> precisionBits;
-		    
-		    // Interpolate in Y
-		    int offsetY = (int)(4*yfrac);
-		    long sum = (long)tableDataVi[offsetY]*sum_;
-		    sum += (long)tableDataVi[offsetY + 1]*sum0;
-		    sum += (long)tableDataVi[offsetY + 2]*sum1;
-		    sum += (long)tableDataVi[offsetY + 3]*sum2;
-		    
+		    long sum = (long)tableDataVi[offsetY]*row0[i];
+		    sum += (long)tableDataVi[offsetY + 1]*row1[i];
+		    sum += (long)tableDataVi[offsetY + 2]*row2[i];
+		    sum += (long)tableDataVi[offsetY + 3]*row3[i];
+
 		    s = (int)((sum + round) >> precisionBits);
 
 		    dstData[dstPixelOffset] = s;
@@ -865,17 +743,13 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         float srcDataArrays[][] = src.getFloatDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int dstOffset = 0;
 
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
+	int posylow, posy, posx;
 	int xfrac, yfrac;
 
-	float s__, s_0, s_1, s_2;
-	float s0_, s00, s01, s02;
-	float s1_, s10, s11, s12;
-	float s2_, s20, s21, s22;
+	// The source rows interpolated in X, as in byteLoop().
+	double rows[][] = new double[4][dwidth];
+	int rowOffsets[] = new int[4];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -883,77 +757,50 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
             float srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    double row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			double sum = tableDataHf[offsetX]*
+			    (srcData[posx - srcPixelStride]);
+			sum += tableDataHf[offsetX + 1]*(srcData[posx]);
+			sum += tableDataHf[offsetX + 2]*
+			    (srcData[posx + srcPixelStride]);
+			sum += tableDataHf[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride]);
+
+			row[i] = sum;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		double row0[] = rows[0];
+		double row1[] = rows[1];
+		double row2[] = rows[2];
+		double row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow];
-		    s_0 = srcData[posx + posylow];
-		    s_1 = srcData[posxhigh + posylow];
-		    s_2 = srcData[posxhigh2 + posylow];
-
-		    s0_ = srcData[posxlow + posy];
-		    s00 = srcData[posx + posy];
-		    s01 = srcData[posxhigh + posy];
-		    s02 = srcData[posxhigh2 + posy];
-		    
-		    s1_ = srcData[posxlow + posyhigh];
-		    s10 = srcData[posx + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-		    s12 = srcData[posxhigh2 + posyhigh];
-
-		    s2_ = srcData[posxlow + posyhigh2];
-		    s20 = srcData[posx + posyhigh2];
-		    s21 = srcData[posxhigh + posyhigh2];
-		    s22 = srcData[posxhigh2 + posyhigh2];
-
-		    // Perform the bicubic interpolation
-
-		    // Interpolate in X
-		    int offsetX = (int)(4 * xfrac);
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-		    
-		    double sum_ = tableDataHf[offsetX]*s__;
-		    sum_ += tableDataHf[offsetX1]*s_0;
-		    sum_ += tableDataHf[offsetX2]*s_1;
-		    sum_ += tableDataHf[offsetX3]*s_2;
-		    
-		    double sum0 = tableDataHf[offsetX]*s0_;
-		    sum0 += tableDataHf[offsetX1]*s00;
-		    sum0 += tableDataHf[offsetX2]*s01;
-		    sum0 += tableDataHf[offsetX3]*s02;
-		    
-		    double sum1 = tableDataHf[offsetX]*s1_;
-		    sum1 += tableDataHf[offsetX1]*s10;
-		    sum1 += tableDataHf[offsetX2]*s11;
-		    sum1 += tableDataHf[offsetX3]*s12;
-		    
-		    double sum2 = tableDataHf[offsetX]*s2_;
-		    sum2 += tableDataHf[offsetX1]*s20;
-		    sum2 += tableDataHf[offsetX2]*s21;
-		    sum2 += tableDataHf[offsetX3]*s22;
-		    
-		    // Interpolate in Y
-		    int offsetY = (int)(4 * yfrac);
-
-		    double sum = tableDataVf[offsetY]*sum_;
-		    sum += tableDataVf[offsetY + 1]*sum0;
-		    sum += tableDataVf[offsetY + 2]*sum1;
-		    sum += tableDataVf[offsetY + 3]*sum2;
+		    double sum = tableDataVf[offsetY]*row0[i];
+		    sum += tableDataVf[offsetY + 1]*row1[i];
+		    sum += tableDataVf[offsetY + 2]*row2[i];
+		    sum += tableDataVf[offsetY + 3]*row3[i];
 
 		    if (sum > Float.MAX_VALUE) {
 			sum = Float.MAX_VALUE;
@@ -986,17 +833,14 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
 	
         double srcDataArrays[][] = src.getDoubleDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
-	
-	int dstOffset = 0;
-	int posy, posylow, posyhigh, posyhigh2;
-	int posx, posxlow, posxhigh, posxhigh2;
-
-	double s__, s_0, s_1, s_2;
-	double s0_, s00, s01, s02;
-	double s1_, s10, s11, s12;
-	double s2_, s20, s21, s22;
-	double s;
+
+	int posylow, posy, posx;
 	int xfrac, yfrac;
+	double s;
+
+	// The source rows interpolated in X, as in byteLoop().
+	double rows[][] = new double[4][dwidth];
+	int rowOffsets[] = new int[4];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -1004,76 +848,50 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
             double srcData[] = srcDataArrays[k];
 	    int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
 	    for (int j = 0; j < dheight; j++) {
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
-		posy = ypos[j] + bandOffset;
-		posylow = posy - srcScanlineStride;
-		posyhigh = posy + srcScanlineStride;
-		posyhigh2 = posyhigh + srcScanlineStride;
+		posylow = ypos[j] + bandOffset - srcScanlineStride;
+
+		for (int r = 0; r < 4; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    double row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posx = xpos[i] + posy;
+			int offsetX = 4*xfrac;
+
+			double sum = tableDataHd[offsetX]*
+			    (srcData[posx - srcPixelStride]);
+			sum += tableDataHd[offsetX + 1]*(srcData[posx]);
+			sum += tableDataHd[offsetX + 2]*
+			    (srcData[posx + srcPixelStride]);
+			sum += tableDataHd[offsetX + 3]*
+			    (srcData[posx + 2*srcPixelStride]);
+
+			row[i] = sum;
+		    }
+		}
+
+		// Interpolate in Y
+		int offsetY = 4*yfrac;
+		double row0[] = rows[0];
+		double row1[] = rows[1];
+		double row2[] = rows[2];
+		double row3[] = rows[3];
 		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posx = xpos[i];
-		    posxlow = posx - srcPixelStride;
-		    posxhigh = posx + srcPixelStride;
-		    posxhigh2 = posxhigh + srcPixelStride;
-		    
-		    // Get the sixteen surrounding pixel values
-		    s__ = srcData[posxlow + posylow];
-		    s_0 = srcData[posx + posylow];
-		    s_1 = srcData[posxhigh + posylow];
-		    s_2 = srcData[posxhigh2 + posylow];
-
-		    s0_ = srcData[posxlow + posy];
-		    s00 = srcData[posx + posy];
-		    s01 = srcData[posxhigh + posy];
-		    s02 = srcData[posxhigh2 + posy];
-		    
-		    s1_ = srcData[posxlow + posyhigh];
-		    s10 = srcData[posx + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-		    s12 = srcData[posxhigh2 + posyhigh];
-
-		    s2_ = srcData[posxlow + posyhigh2];
-		    s20 = srcData[posx + posyhigh2];
-		    s21 = srcData[posxhigh + posyhigh2];
-		    s22 = srcData[posxhigh2 + posyhigh2];
-
-		    // Perform the bicubic interpolation
-
-		    // Interpolate in X
-		    int offsetX = (int)(4 * xfrac);
-		    int offsetX1 = offsetX + 1;
-		    int offsetX2 = offsetX + 2;
-		    int offsetX3 = offsetX + 3;
-		    
-		    double sum_ = tableDataHd[offsetX]*s__;
-		    sum_ += tableDataHd[offsetX1]*s_0;
-		    sum_ += tableDataHd[offsetX2]*s_1;
-		    sum_ += tableDataHd[offsetX3]*s_2;
-		    
-		    double sum0 = tableDataHd[offsetX]*s0_;
-		    sum0 += tableDataHd[offsetX1]*s00;
-		    sum0 += tableDataHd[offsetX2]*s01;
-		    sum0 += tableDataHd[offsetX3]*s02;
-		    
-		    double sum1 = tableDataHd[offsetX]*s1_;
-		    sum1 += tableDataHd[offsetX1]*s10;
-		    sum1 += tableDataHd[offsetX2]*s11;
-		    sum1 += tableDataHd[offsetX3]*s12;
-		    
-		    double sum2 = tableDataHd[offsetX]*s2_;
-		    sum2 += tableDataHd[offsetX1]*s20;
-		    sum2 += tableDataHd[offsetX2]*s21;
-		    sum2 += tableDataHd[offsetX3]*s22;
-		    
-		    // Interpolate in Y
-		    int offsetY = (int)(4 * yfrac);
-		    s = tableDataVd[offsetY]*sum_;
-		    s += tableDataVd[offsetY + 1]*sum0;
-		    s += tableDataVd[offsetY + 2]*sum1;
-		    s += tableDataVd[offsetY + 3]*sum2;
+		    s = tableDataVd[offsetY]*row0[i];
+		    s += tableDataVd[offsetY + 1]*row1[i];
+		    s += tableDataVd[offsetY + 2]*row2[i];
+		    s += tableDataVd[offsetY + 3]*row3[i];
 
 		    dstData[dstPixelOffset] = s;
                     dstPixelOffset += dstPixelStride;
@@ -1083,6 +901,33 @@ final class ScaleBicubicOpImage extends ScaleOpImage {
         }
     }
 
+    /**
+     * Moves the source row at data offset <code>offset</code>, if it has
+     * already been interpolated in X, from its slot at or after
+     * <code>r</code> in <code>rows</code> to slot <code>r</code> and
+     * returns <code>true</code>.  Otherwise records that slot
+     * <code>r</code> is to hold that row and returns <code>false</code>,
+     * in which case the caller computes it.
+     */
+    private static boolean findRow(Object[] rows, int[] rowOffsets,
+				   int r, int offset) {
+	for (int i = r; i < rowOffsets.length; i++) {
+	    if (rowOffsets[i] == offset) {
+		if (i != r) {
+		    Object row = rows[r];
+		    rows[r] = rows[i];
+		    rows[i] = row;
+		    rowOffsets[i] = rowOffsets[r];
+		    rowOffsets[r] = offset;
+		}
+		return true;
+	    }
+	}
+
+	rowOffsets[r] = offset;
+	return false;
+    }
+
     private synchronized void initTableDataI() {
 	if (tableDataHi == null || tableDataVi == null) {
 	    tableDataHi = interpTable.getHorizontalTableData();
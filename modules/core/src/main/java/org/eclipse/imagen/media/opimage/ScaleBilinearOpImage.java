@@ -21,6 +21,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.eclipse.imagen.BorderExtender;
@@ -486,8 +487,6 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
         byte srcDataArrays[][] = src.getByteDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
 
-	int dstOffset = 0;
-
 	/* Four surrounding pixels are needed for Bilinear interpolation.
 	 * If the dest pixel to be calculated is at (dx, dy) then the
 	 * actual source pixel (sx, sy) required is (dx/scaleX, dy/scaleY).
@@ -503,50 +502,71 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
 	 * s0 = (s01 - s00)*xfrac + s00;
 	 * s1 = (s11 - s10)*xfrac + s10;
 	 * dst(x,y) = (s1 - s0)*yfrac + s0;
+	 *
+	 * s0 and s1 depend only on the source row and the destination
+	 * column, so each source row is interpolated in X once into a
+	 * row buffer and reused by every destination row which needs it.
 	 */
-	
-	int posylow, posyhigh, posxlow, posxhigh;
-	int s00, s01, s10, s11;
 
-	// Precalculate the y positions and store them in an array.
+	int posylow, posy, posxlow;
+	int s00, s01;
+	int s0, s1, s;
 	int xfrac, yfrac;
-	int s, s0, s1;	
-		
+
+	// The two source rows interpolated horizontally, each of which is
+	// computed once and used for all destination rows lying between it
+	// and one of its neighbours.
+	int rows[][] = new int[2][dwidth];
+	int rowOffsets[] = new int[2];
+
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
             byte dstData[] = dstDataArrays[k];
             byte srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    for (int j = 0; j < dheight; j++) {
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
+            for (int j = 0; j < dheight; j++)  {
 
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
-
-		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow] & 0xff;
-		    s01 = srcData[posxhigh + posylow] & 0xff;
-		    s10 = srcData[posxlow + posyhigh] & 0xff;
-		    s11 = srcData[posxhigh + posyhigh] & 0xff;
-		    
-		    // Perform the bilinear interpolation
-		    s0 = (s01 - s00) * xfrac + (s00 << subsampleBits);
-		    s1 = (s11 - s10) * xfrac + (s10 << subsampleBits);
+
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    int row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow] & 0xff;
+			s01 = srcData[posxlow + srcPixelStride] & 0xff;
+
+			row[i] = (s01 - s00) * xfrac + (s00 << subsampleBits);
+		    }
+		}
+
+		// Interpolate in Y
+		int row0[] = rows[0];
+		int row1[] = rows[1];
+                for (int i = 0; i < dwidth; i++)  {
+		    s0 = row0[i];
+		    s1 = row1[i];
+
 		    s = ((s1 - s0) * yfrac + (s0 << subsampleBits) +
 			 round2) >> shift2;
-		    
-		    dstData[dstPixelOffset] = (byte)(s&0xff);		    
-		    dstPixelOffset += dstPixelStride;
+
+		    dstData[dstPixelOffset] = (byte)(s&0xff);
+                    dstPixelOffset += dstPixelStride;
                 }
                 dstScanlineOffset += dstScanlineStride;
-
             }
         }
     }
@@ -570,40 +590,59 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
         short srcDataArrays[][] = src.getShortDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
 
-	int dstOffset = 0;
-	int posylow, posyhigh, posxlow, posxhigh;
-	int s00, s01, s10, s11, s0, s1, s;
+	int posylow, posy, posxlow;
+	int s00, s01;
+	int s0, s1, s;
 	int xfrac, yfrac;
-		
+
+	// The source rows interpolated in X, as in byteLoop().
+	int rows[][] = new int[2][dwidth];
+	int rowOffsets[] = new int[2];
+
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
             short dstData[] = dstDataArrays[k];
             short srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    for (int j = 0; j < dheight; j++) {
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
+            for (int j = 0; j < dheight; j++)  {
+
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
-
-		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow];
-		    s01 = srcData[posxhigh + posylow];
-		    s10 = srcData[posxlow + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-		    
-		    // Perform the bilinear interpolation
-		    s0 = (s01 - s00) * xfrac + (s00 << subsampleBits);
-		    s1 = (s11 - s10) * xfrac + (s10 << subsampleBits);
+
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    int row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow];
+			s01 = srcData[posxlow + srcPixelStride];
+
+			row[i] = (s01 - s00) * xfrac + (s00 << subsampleBits);
+		    }
+		}
+
+		// Interpolate in Y
+		int row0[] = rows[0];
+		int row1[] = rows[1];
+                for (int i = 0; i < dwidth; i++)  {
+		    s0 = row0[i];
+		    s1 = row1[i];
+
 		    s = ((s1 - s0) * yfrac + (s0 << subsampleBits) +
 			 round2) >> shift2;
-		    
+
 		    dstData[dstPixelOffset] = (short)s;
                     dstPixelOffset += dstPixelStride;
                 }
@@ -631,40 +670,59 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
         short srcDataArrays[][] = src.getShortDataArrays(); 	
 	int bandOffsets[] = src.getBandOffsets();
 
-	int dstOffset = 0;
-	int posylow, posyhigh, posxlow, posxhigh;
-	int s00, s01, s10, s11, s0, s1, s;
+	int posylow, posy, posxlow;
+	int s00, s01;
+	int s0, s1, s;
 	int xfrac, yfrac;
-		
+
+	// The source rows interpolated in X, as in byteLoop().
+	int rows[][] = new int[2][dwidth];
+	int rowOffsets[] = new int[2];
+
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
             short dstData[] = dstDataArrays[k];
             short srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
-	    for (int j = 0; j < dheight; j++) {
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
+            for (int j = 0; j < dheight; j++)  {
+
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
-
-		for (int i = 0; i < dwidth; i++) {
-		    xfrac = xfracvalues[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow] & 0xffff;
-		    s01 = srcData[posxhigh + posylow] & 0xffff;
-		    s10 = srcData[posxlow + posyhigh] & 0xffff;
-		    s11 = srcData[posxhigh + posyhigh] & 0xffff;
-		    
-		    // Perform the bilinear interpolation
-		    s0 = (s01 - s00) * xfrac + (s00 << subsampleBits);
-		    s1 = (s11 - s10) * xfrac + (s10 << subsampleBits);
+
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    int row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow] & 0xffff;
+			s01 = srcData[posxlow + srcPixelStride] & 0xffff;
+
+			row[i] = (s01 - s00) * xfrac + (s00 << subsampleBits);
+		    }
+		}
+
+		// Interpolate in Y
+		int row0[] = rows[0];
+		int row1[] = rows[1];
+                for (int i = 0; i < dwidth; i++)  {
+		    s0 = row0[i];
+		    s1 = row1[i];
+
 		    s = ((s1 - s0) * yfrac + (s0 << subsampleBits) +
 			 round2) >> shift2;
-		    
+
 		    dstData[dstPixelOffset] = (short)(s & 0xffff);
                     dstPixelOffset += dstPixelStride;
                 }
@@ -694,12 +752,14 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
         int srcDataArrays[][] = src.getIntDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
 
-	int dstOffset = 0;
-	int posylow, posyhigh, posxlow, posxhigh;
-	int s00, s10, s01, s11;
+	int posylow, posy, posxlow;
+	int s00, s01;
 	long s0, s1;
 	int xfrac, yfrac;
-	int shift = 29 - subsampleBits;
+
+	// The source rows interpolated in X, as in byteLoop().
+	long rows[][] = new long[2][dwidth];
+	int rowOffsets[] = new int[2];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -707,41 +767,44 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
             int srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
             for (int j = 0; j < dheight; j++)  {
+
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvalues[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
 
-                for (int i = 0; i < dwidth; i++)  {
-		    xfrac = xfracvalues[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow];
-		    s01 = srcData[posxhigh + posylow];
-		    s10 = srcData[posxlow + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-
-		    // Perform the bilinear interpolation
-		    if ((s00 | s10) >>> shift == 0) {
-			if ((s01 | s11) >>> shift == 0) {
-			    s0 = (s01 - s00) * xfrac + (s00 << subsampleBits);
-			    s1 = (s11 - s10) * xfrac + (s10 << subsampleBits);
-			} else {
-			    s0 = ((long)s01 - s00) * xfrac + (s00 << subsampleBits);
-			    s1 = ((long)s11 - s10) * xfrac + (s10 << subsampleBits);
-			}
-		    } else {
-			s0 = ((long)s01 - s00) * xfrac + ((long)s00 << subsampleBits);
-			s1 = ((long)s11 - s10) * xfrac + ((long)s10 << subsampleBits);
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
 		    }
 
+		    // Interpolate the row in X
+		    long row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvalues[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow];
+			s01 = srcData[posxlow + srcPixelStride];
+
+			row[i] = ((long)s01 - s00) * xfrac + ((long)s00 << subsampleBits);
+		    }
+		}
+
+		// Interpolate in Y
+		long row0[] = rows[0];
+		long row1[] = rows[1];
+                for (int i = 0; i < dwidth; i++)  {
+		    s0 = row0[i];
+		    s1 = row1[i];
+
 		    dstData[dstPixelOffset] = (int)(((s1 - s0) * yfrac +
 						     (s0 << subsampleBits) +
 						     round2) >> shift2);
-
                     dstPixelOffset += dstPixelStride;
                 }
                 dstScanlineOffset += dstScanlineStride;
@@ -775,11 +838,14 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
 	float srcDataArrays[][] = src.getFloatDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
 
-	float s00, s01, s10, s11;
+	int posylow, posy, posxlow;
+	float s00, s01;
 	float s0, s1;
 	float xfrac, yfrac;
-	int dstOffset = 0;	
-	int posylow, posyhigh, posxlow, posxhigh;
+
+	// The source rows interpolated in X, as in byteLoop().
+	float rows[][] = new float[2][dwidth];
+	int rowOffsets[] = new int[2];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -787,34 +853,47 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
             float srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
             for (int j = 0; j < dheight; j++)  {
+
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvaluesFloat[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
 
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    float row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvaluesFloat[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow];
+			s01 = srcData[posxlow + srcPixelStride];
+
+			row[i] = (s01 - s00) * xfrac + s00;
+		    }
+		}
+
+		// Interpolate in Y
+		float row0[] = rows[0];
+		float row1[] = rows[1];
                 for (int i = 0; i < dwidth; i++)  {
-		    xfrac = xfracvaluesFloat[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow];
-		    s01 = srcData[posxhigh + posylow];
-		    s10 = srcData[posxlow + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-
-		    // Perform the bilinear interpolation
-		    s0 = (s01 - s00) * xfrac + s00;
-		    s1 = (s11 - s10) * xfrac + s10;
-				    	    
-		    dstData[dstPixelOffset] = (s1 - s0) * yfrac + s0;
+		    s0 = row0[i];
+		    s1 = row1[i];
 
+		    dstData[dstPixelOffset] = (s1 - s0) * yfrac + s0;
                     dstPixelOffset += dstPixelStride;
                 }
                 dstScanlineOffset += dstScanlineStride;
             }
-        }	
+        }
     }   
 
     private void doubleLoop(RasterAccessor src, Rectangle dstRect,
@@ -836,11 +915,14 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
 	double srcDataArrays[][] = src.getDoubleDataArrays(); 
 	int bandOffsets[] = src.getBandOffsets();
 
-	double s00, s01, s10, s11;
+	int posylow, posy, posxlow;
+	double s00, s01;
 	double s0, s1;
 	double xfrac, yfrac;
-	int dstOffset = 0;	
-	int posylow, posyhigh, posxlow, posxhigh;
+
+	// The source rows interpolated in X, as in byteLoop().
+	double rows[][] = new double[2][dwidth];
+	int rowOffsets[] = new int[2];
 
 	// Putting band loop outside
 	for (int k = 0; k < dnumBands; k++)  {
@@ -848,36 +930,76 @@ final class ScaleBilinearOpImage extends ScaleOpImage {
             double srcData[] = srcDataArrays[k];
             int dstScanlineOffset = dstBandOffsets[k];
 	    int bandOffset = bandOffsets[k];
+
+	    Arrays.fill(rowOffsets, Integer.MIN_VALUE);
+
             for (int j = 0; j < dheight; j++)  {
+
                 int dstPixelOffset = dstScanlineOffset;
 		yfrac = yfracvaluesFloat[j];
 		posylow = ypos[j] + bandOffset;
-		posyhigh = posylow + srcScanlineStride;
 
+		for (int r = 0; r < 2; r++) {
+		    posy = posylow + r*srcScanlineStride;
+		    if (findRow(rows, rowOffsets, r, posy)) {
+			continue;
+		    }
+
+		    // Interpolate the row in X
+		    double row[] = rows[r];
+		    for (int i = 0; i < dwidth; i++) {
+			xfrac = xfracvaluesFloat[i];
+			posxlow = xpos[i] + posy;
+
+			s00 = srcData[posxlow];
+			s01 = srcData[posxlow + srcPixelStride];
+
+			row[i] = (s01 - s00) * xfrac + s00;
+		    }
+		}
+
+		// Interpolate in Y
+		double row0[] = rows[0];
+		double row1[] = rows[1];
                 for (int i = 0; i < dwidth; i++)  {
-		    xfrac = xfracvaluesFloat[i];
-		    posxlow = xpos[i];
-		    posxhigh = posxlow + srcPixelStride;
-
-		    // Get the four surrounding pixel values
-		    s00 = srcData[posxlow + posylow];
-		    s01 = srcData[posxhigh + posylow];
-		    s10 = srcData[posxlow + posyhigh];
-		    s11 = srcData[posxhigh + posyhigh];
-
-		    // Perform the bilinear interpolation
-		    s0 = (s01 - s00) * xfrac + s00;
-		    s1 = (s11 - s10) * xfrac + s10;
-				    	    
-		    dstData[dstPixelOffset] = (s1 - s0) * yfrac + s0;
+		    s0 = row0[i];
+		    s1 = row1[i];
 
+		    dstData[dstPixelOffset] = (s1 - s0) * yfrac + s0;
                     dstPixelOffset += dstPixelStride;
                 }
                 dstScanlineOffset += dstScanlineStride;
             }
-        }	
+        }
     }   
 
+    /**
+     * Moves the source row at data offset <code>offset</code>, if it has
+     * already been interpolated in X, from its slot at or after
+     * <code>r</code> in <code>rows</code> to slot <code>r</code> and
+     * returns <code>true</code>.  Otherwise records that slot
+     * <code>r</code> is to hold that row and returns <code>false</code>,
+     * in which case the caller computes it.
+     */
+    private static boolean findRow(Object[] rows, int[] rowOffsets,
+				   int r, int offset) {
+	for (int i = r; i < rowOffsets.length; i++) {
+	    if (rowOffsets[i] == offset) {
+		if (i != r) {
+		    Object row = rows[r];
+		    rows[r] = rows[i];
+		    rows[i] = row;
+		    rowOffsets[i] = rowOffsets[r];
+		    rowOffsets[r] = offset;
+		}
+		return true;
+	    }
+	}
+
+	rowOffsets[r] = offset;
+	return false;
+    }
+
 //     public static OpImage createTestImage(OpImageTester oit) {
 //         Interpolation interp =
 //             Interpolation.getInstance(Interpolation.INTERP_BILINEAR);
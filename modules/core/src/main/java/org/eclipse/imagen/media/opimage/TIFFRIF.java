@@ -20,6 +20,9 @@ import java.awt.RenderingHints;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
 import java.awt.image.renderable.RenderedImageFactory;
+import org.eclipse.imagen.JAI;
+import org.eclipse.imagen.media.codec.MappedFileSeekableStream;
+import org.eclipse.imagen.media.codec.SeekableStream;
 
 /**
  * @since EA2
@@ -31,7 +34,9 @@ public class TIFFRIF implements RenderedImageFactory {
 
     /**
      * Creates a <code>RenderedImage</code> representing the contents
-     * of a TIFF-encoded image.
+     * of a TIFF-encoded image.  If <code>JAI.KEY_MAP_FILES</code> is
+     * set and the stream is a <code>FileSeekableStream</code>, the file
+     * is read through a memory mapping of it.
      *
      * @param paramBlock A <code>ParameterBlock</code> containing the TIFF
      *        <code>SeekableStream</code> to read.
@@ -40,6 +45,16 @@ public class TIFFRIF implements RenderedImageFactory {
      */
     public RenderedImage create(ParameterBlock paramBlock,
                                 RenderingHints renderHints) {
+        if (renderHints != null &&
+            Boolean.TRUE.equals(renderHints.get(JAI.KEY_MAP_FILES))) {
+            SeekableStream stream =
+                (SeekableStream)paramBlock.getObjectParameter(0);
+            SeekableStream mapped = MappedFileSeekableStream.map(stream);
+            if (mapped != stream) {
+                paramBlock = (ParameterBlock)paramBlock.clone();
+                paramBlock.set(mapped, 0);
+            }
+        }
         return CodecRIFUtil.create("tiff", paramBlock, renderHints);
     }
 }
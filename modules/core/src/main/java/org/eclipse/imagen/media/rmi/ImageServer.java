@@ -17,6 +17,7 @@
 
 package org.eclipse.imagen.media.rmi;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
@@ -221,6 +222,31 @@ public interface ImageServer extends Remote {
      */
     byte[] getCompressedTile(Long id, int x, int y) throws RemoteException;
 
+    /**
+     * Returns the tiles at the given indices in a single call, in the
+     * order of the indices.  Note that the indices are indices into the
+     * tile array, not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array
+     * @return copies of the tiles as Rasters.
+     */
+    SerializableState[] getTiles(Long id, Point[] indices)
+	throws RemoteException;
+
+    /**
+     * Compresses the tiles at the given indices and returns their
+     * contents in a single call, one byte array per tile in the order of
+     * the indices.  Note that the indices are indices into the tile
+     * array, not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array
+     * @return byte arrays containing the compressed tile contents.
+     */
+    byte[][] getCompressedTiles(Long id, Point[] indices)
+	throws RemoteException;
+
     /**
      * Returns the entire image as a single Raster.
      *
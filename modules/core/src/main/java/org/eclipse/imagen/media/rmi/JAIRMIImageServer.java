@@ -18,6 +18,7 @@
 package org.eclipse.imagen.media.rmi;
 
 import java.awt.Dimension;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
@@ -125,6 +126,12 @@ public class JAIRMIImageServer extends UnicastRemoteObject
      */
     private static Hashtable negotiated = new Hashtable();
 
+    /**
+     * Hashtable to store the tile encoder set up for the negotiated
+     * "tileCodec" capability of each id.
+     */
+    private static Hashtable encoders = new Hashtable();
+
     /**
      * Hashtable to store the number of references existing to a
      * particular id on this server.
@@ -192,6 +199,7 @@ public class JAIRMIImageServer extends UnicastRemoteObject
 	    if (nodes != null) {
 		nodes.remove(id);
 		negotiated.remove(id);
+		encoders.remove(id);
 	    }
 
 	    refCount.remove(id);
@@ -412,83 +420,168 @@ public class JAIRMIImageServer extends UnicastRemoteObject
     public byte[] getCompressedTile(Long id, int x, int y)
 	throws RemoteException {
 
-	TileCodecParameterList tcpl = null;
-	TileEncoderFactory tef = null;
+	TileEncoding encoding = getTileEncoding(id);
+	return encoding.encode(getSource(id).getTile(x, y));
+    }
+
+    /**
+     * Returns the tiles at the given indices.  The tiles are computed
+     * together, and are returned in a single call in the order of the
+     * indices.  Note that the indices are indices into the tile array,
+     * not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array.
+     * @return the tiles as Rasters.
+     */
+    public SerializableState[] getTiles(Long id, Point[] indices)
+	throws RemoteException {
+
+	Raster[] tiles = getSource(id).getTiles(indices);
+	SerializableState[] states = new SerializableState[tiles.length];
+	for (int i = 0; i < tiles.length; i++) {
+	    states[i] = SerializerFactory.getState(tiles[i], null);
+	}
+	return states;
+    }
+
+    /**
+     * Compresses the tiles at the given indices and returns their
+     * contents in a single call, one byte array per tile in the order of
+     * the indices.  Note that the indices are indices into the tile
+     * array, not pixel locations.
+     *
+     * @param id An ID for the source which must be unique across all clients.
+     * @param indices the indices of the requested tiles in the tile array.
+     * @return byte arrays containing the compressed tile contents.
+     */
+    public byte[][] getCompressedTiles(Long id, Point[] indices)
+	throws RemoteException {
+
+	TileEncoding encoding = getTileEncoding(id);
+	Raster[] tiles = getSource(id).getTiles(indices);
+	byte[][] ctiles = new byte[tiles.length][];
+	for (int i = 0; i < tiles.length; i++) {
+	    ctiles[i] = encoding.encode(tiles[i]);
+	}
+	return ctiles;
+    }
+
+    /**
+     * Returns the tile encoder set up for the "tileCodec" capability
+     * negotiated for an id.  The set up is cached until other values are
+     * negotiated.
+     */
+    private static TileEncoding getTileEncoding(Long id) {
+
 	NegotiableCapability codecCap = null;
 
-	if (negotiated != null) {
-	    codecCap = ((NegotiableCapabilitySet)negotiated.get(id)).
-		getNegotiatedValue("tileCodec");
+	NegotiableCapabilitySet ncs =
+	    (NegotiableCapabilitySet)negotiated.get(id);
+	if (ncs != null) {
+	    codecCap = ncs.getNegotiatedValue("tileCodec");
 	}
 
-	if (codecCap != null) {
+	if (codecCap == null) {
+	    throw new RuntimeException(
+				     JaiI18N.getString("JAIRMIImageServer2"));
+	}
 
-	    String category = codecCap.getCategory();
-	    String capabilityName = codecCap.getCapabilityName();
-	    List generators = codecCap.getGenerators();
+	TileEncoding encoding = (TileEncoding)encoders.get(id);
+	if (encoding != null && encoding.codecCap == codecCap) {
+	    return encoding;
+	}
 
-	    Class factory;
-	    for (Iterator i=generators.iterator(); i.hasNext(); ) {
+	String capabilityName = codecCap.getCapabilityName();
+	List generators = codecCap.getGenerators();
 
-		factory = (Class)i.next();
-		if (tef == null &&
-		    TileEncoderFactory.class.isAssignableFrom(factory)) {
-		    try {
-			tef = (TileEncoderFactory)factory.newInstance();
-		    } catch (InstantiationException ie) {
-			throw new RuntimeException(ie.getMessage());
-		    } catch (IllegalAccessException iae) {
-			throw new RuntimeException(iae.getMessage());
-		    }
+	TileEncoderFactory tef = null;
+	Class factory;
+	for (Iterator i=generators.iterator(); i.hasNext(); ) {
+
+	    factory = (Class)i.next();
+	    if (tef == null &&
+		TileEncoderFactory.class.isAssignableFrom(factory)) {
+		try {
+		    tef = (TileEncoderFactory)factory.newInstance();
+		} catch (InstantiationException ie) {
+		    throw new RuntimeException(ie.getMessage());
+		} catch (IllegalAccessException iae) {
+		    throw new RuntimeException(iae.getMessage());
 		}
 	    }
+	}
 
-	    if (tef == null) {
-		throw new RuntimeException(
+	if (tef == null) {
+	    throw new RuntimeException(
 				     JaiI18N.getString("JAIRMIImageServer0"));
-	    }
+	}
 
-	    TileCodecDescriptor tcd =
-		(TileCodecDescriptor)JAI.getDefaultInstance().
-		getOperationRegistry().getDescriptor("tileEncoder",
-						     capabilityName);
+	TileCodecDescriptor tcd =
+	    (TileCodecDescriptor)JAI.getDefaultInstance().
+	    getOperationRegistry().getDescriptor("tileEncoder",
+						 capabilityName);
 
-	    if (tcd.includesSampleModelInfo() == false ||
-		tcd.includesLocationInfo() == false) {
-		throw new RuntimeException(
+	if (tcd.includesSampleModelInfo() == false ||
+	    tcd.includesLocationInfo() == false) {
+	    throw new RuntimeException(
 				     JaiI18N.getString("JAIRMIImageServer1"));
-	    }
+	}
 
-	    ParameterListDescriptor pld =
-		tcd.getParameterListDescriptor("tileEncoder");
+	ParameterListDescriptor pld =
+	    tcd.getParameterListDescriptor("tileEncoder");
 
-	    tcpl = new TileCodecParameterList(capabilityName,
-					      new String[] {"tileEncoder"},
-					      pld);
+	TileCodecParameterList tcpl =
+	    new TileCodecParameterList(capabilityName,
+				       new String[] {"tileEncoder"},
+				       pld);
 
-	    if (pld != null) {
+	if (pld != null) {
 
-		String paramNames[] = pld.getParamNames();
-		String currParam;
-		Object currValue;
+	    String paramNames[] = pld.getParamNames();
+	    String currParam;
+	    Object currValue;
 
-		if (paramNames != null) {
-		    for (int i=0; i<paramNames.length; i++) {
-			currParam = paramNames[i];
-			try {
-			    currValue = codecCap.getNegotiatedValue(currParam);
-			} catch (IllegalArgumentException iae) {
-			    continue;
-			}
-			tcpl.setParameter(currParam, currValue);
+	    if (paramNames != null) {
+		for (int i=0; i<paramNames.length; i++) {
+		    currParam = paramNames[i];
+		    try {
+			currValue = codecCap.getNegotiatedValue(currParam);
+		    } catch (IllegalArgumentException iae) {
+			continue;
 		    }
+		    tcpl.setParameter(currParam, currValue);
 		}
 	    }
+	}
 
-	    Raster r = getSource(id).getTile(x, y);
+	encoding = new TileEncoding(codecCap, tef, tcpl);
+	encoders.put(id, encoding);
+	return encoding;
+    }
+
+    /**
+     * A <code>TileEncoderFactory</code> and the parameters of the
+     * encoders it creates for a negotiated "tileCodec" capability.
+     */
+    private static final class TileEncoding {
+
+	final NegotiableCapability codecCap;
+	final TileEncoderFactory factory;
+	final TileCodecParameterList params;
+
+	TileEncoding(NegotiableCapability codecCap,
+		     TileEncoderFactory factory,
+		     TileCodecParameterList params) {
+	    this.codecCap = codecCap;
+	    this.factory = factory;
+	    this.params = params;
+	}
+
+	byte[] encode(Raster r) {
 	    ByteArrayOutputStream stream = new ByteArrayOutputStream();
-	    TileEncoder encoder = tef.createEncoder(stream, tcpl,
-						    r.getSampleModel());
+	    TileEncoder encoder = factory.createEncoder(stream, params,
+							r.getSampleModel());
 
 	    try {
 		encoder.encode(r);
@@ -497,9 +590,6 @@ public class JAIRMIImageServer extends UnicastRemoteObject
 	    }
 
 	    return stream.toByteArray();
-	} else {
-	    throw new RuntimeException(
-				     JaiI18N.getString("JAIRMIImageServer2"));
 	}
     }
 
@@ -18,6 +18,7 @@
 package org.eclipse.imagen.media.rmi;
 
 import java.awt.Image;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
@@ -32,9 +33,18 @@ import java.io.Serializable;
 import java.net.InetAddress;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.imagen.ImageLayout;
 import org.eclipse.imagen.OperationNode;
@@ -44,6 +54,7 @@ import org.eclipse.imagen.PropertyChangeEventJAI;
 import org.eclipse.imagen.RenderableOp;
 import org.eclipse.imagen.RenderedOp;
 import org.eclipse.imagen.RenderingChangeEvent;
+import org.eclipse.imagen.TileRequest;
 import org.eclipse.imagen.media.util.ImageUtil;
 import org.eclipse.imagen.remote.JAIRMIDescriptor;
 import org.eclipse.imagen.remote.NegotiableCapability;
@@ -89,6 +100,22 @@ public class RMIServerProxy extends PlanarImageServerProxy {
     // Cache the listener
     private ImagingListener listener;
 
+    // The number of tiles requested from the server in a single call.
+    private static final int TILES_PER_CALL = 16;
+
+    // The maximum number of calls for tiles in progress at once.
+    private static final int MAX_CALLS_IN_FLIGHT = 4;
+
+    // The threads making the calls for tiles, shared by all proxies.
+    private static ExecutorService fetchExecutor = null;
+
+    // The batches of tiles being fetched, mapping the index of each tile
+    // to its TileBatch. Guarded by itself.
+    private final Map pendingTiles = new HashMap();
+
+    // The tile decoder set up for the negotiated "tileCodec" capability.
+    private TileDecoding tileDecoding = null;
+
     /**
      * Construct an RMIServerProxy. This constructor should only be used
      * when the source is a RenderedOp on a different server.
@@ -836,108 +863,379 @@ public class RMIServerProxy extends PlanarImageServerProxy {
 	    return null;
 	}
 
+	// If the tile is being fetched in a batch, wait for it.
+	TileBatch batch;
+	synchronized (pendingTiles) {
+	    batch = (TileBatch)pendingTiles.get(new Point(tileX, tileY));
+	}
+	if (batch != null) {
+	    Raster tile = batch.getTile(tileX, tileY);
+	    if (tile != null) {
+		return tile;
+	    }
+	}
+
 	// Since "tileCodec" is the only category that we care about or honor
 	// currently in the remote communication.
 	NegotiableCapability codecCap = getNegotiatedValue("tileCodec");
 
+	TileDecoding decoding =
+	    codecCap == null ? null : getTileDecoding(codecCap);
+
+	try {
+	    // If a compression hint was set, use it
+	    if (decoding != null) {
+		byte ctile[] = remoteImage.getCompressedTile(id,
+							     tileX,
+							     tileY);
+		return decoding.decode(ctile);
+	    } else {
+		// Ask for uncompressed tiles.
+		SerializableState rp = remoteImage.getTile(id, tileX, tileY);
+		return (Raster)(rp.getObject());
+	    }
+	} catch (RemoteException e) {
+            String message = JaiI18N.getString("RMIServerProxy15");
+            listener.errorOccurred(message,
+                                   new RemoteImagingException(message, e),
+                                   this, false);
+//	    throw new RemoteImagingException(ImageUtil.getStackTraceString(e));
+	}
+
+        return null;
+    }
+
+    /**
+     * Returns the tiles at the given indices.  The tiles which are not
+     * cached are requested from the server in batches, each fetched by
+     * a single call, with several calls in progress at once.  The failure
+     * of a batch is reported to the <code>ImagingListener</code>, after
+     * which each of its tiles is requested on its own by
+     * <code>getTile()</code>.
+     *
+     * @param tileIndices An array of Points representing tile indices.
+     * @throws IllegalArgumentException  If <code>tileIndices</code> is
+     *         <code>null</code>.
+     */
+    public Raster[] getTiles(Point[] tileIndices) {
+	if (tileIndices == null) {
+	    throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+	}
+
+	Map batches = fetchTiles(tileIndices);
+
+	Raster[] tiles = new Raster[tileIndices.length];
+	for (int i = 0; i < tileIndices.length; i++) {
+	    Point p = tileIndices[i];
+	    TileBatch batch = (TileBatch)batches.get(p);
+	    if (batch != null) {
+		tiles[i] = batch.getTile(p.x, p.y);
+	    }
+	    if (tiles[i] == null) {
+		tiles[i] = getTile(p.x, p.y);
+	    }
+	}
+
+	return tiles;
+    }
+
+    /**
+     * Queues a list of tiles for computation.  The tiles are requested
+     * from the server in batches as by <code>getTiles()</code>, without
+     * waiting for them; the <code>TileScheduler</code> then obtains
+     * them as they arrive.
+     */
+    public TileRequest queueTiles(Point[] tileIndices,
+				  int priority, long deadline) {
+	if (tileIndices != null) {
+	    fetchTiles(tileIndices);
+	}
+	return super.queueTiles(tileIndices, priority, deadline);
+    }
+
+    /**
+     * Starts fetching in batches the tiles at the given indices which
+     * are neither cached nor already being fetched, and returns a
+     * <code>Map</code> from the index of each tile being fetched to its
+     * <code>TileBatch</code>.
+     */
+    private Map fetchTiles(Point[] tileIndices) {
+	Map batches = new HashMap();
+	List missing = new ArrayList();
+
+	synchronized (pendingTiles) {
+	    for (int i = 0; i < tileIndices.length; i++) {
+		Point p = tileIndices[i];
+		if (p.x < getMinTileX() || p.x > getMaxTileX() ||
+		    p.y < getMinTileY() || p.y > getMaxTileY()) {
+		    continue;
+		}
+
+		Point key = new Point(p);
+		if (batches.containsKey(key)) {
+		    continue;
+		}
+
+		TileBatch batch = (TileBatch)pendingTiles.get(key);
+		if (batch != null) {
+		    batches.put(key, batch);
+		} else if (cache == null ||
+			   !cache.containsTile(this, p.x, p.y)) {
+		    missing.add(key);
+		    batches.put(key, null);
+		}
+	    }
+
+	    for (int start = 0; start < missing.size();
+		 start += TILES_PER_CALL) {
+		int end = Math.min(start + TILES_PER_CALL, missing.size());
+		Point[] indices = (Point[])missing.subList(start, end).
+		    toArray(new Point[end - start]);
+
+		TileBatch batch = new TileBatch(indices);
+		for (int i = 0; i < indices.length; i++) {
+		    pendingTiles.put(indices[i], batch);
+		    batches.put(indices[i], batch);
+		}
+		getFetchExecutor().execute(batch);
+	    }
+	}
+
+	return batches;
+    }
+
+    /**
+     * Reports the failure of a batch of tiles, before its tiles are
+     * requested again one at a time.
+     */
+    private void reportBatchFailure(Exception e) {
+	String message = JaiI18N.getString("RMIServerProxy20");
+	listener.errorOccurred(message,
+			       new RemoteImagingException(message, e),
+			       this, false);
+    }
+
+    /** Requests and decodes the tiles at the given indices. */
+    private Raster[] requestTiles(Point[] indices) throws RemoteException {
+	NegotiableCapability codecCap = getNegotiatedValue("tileCodec");
+
+	Raster[] tiles = new Raster[indices.length];
+	if (codecCap != null) {
+	    TileDecoding decoding = getTileDecoding(codecCap);
+	    byte[][] ctiles = remoteImage.getCompressedTiles(id, indices);
+	    for (int i = 0; i < indices.length; i++) {
+		tiles[i] = decoding.decode(ctiles[i]);
+	    }
+	} else {
+	    SerializableState[] states = remoteImage.getTiles(id, indices);
+	    for (int i = 0; i < indices.length; i++) {
+		tiles[i] = (Raster)(states[i].getObject());
+	    }
+	}
+
+	return tiles;
+    }
+
+    private static synchronized ExecutorService getFetchExecutor() {
+	if (fetchExecutor == null) {
+	    ThreadFactory threadFactory = new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread thread =
+			    new Thread(r, "RMIServerProxy Tile Thread");
+			thread.setDaemon(true);
+			return thread;
+		    }
+		};
+	    fetchExecutor =
+		Executors.newFixedThreadPool(MAX_CALLS_IN_FLIGHT,
+					     threadFactory);
+	}
+	return fetchExecutor;
+    }
+
+    /**
+     * Returns the tile decoder set up for the negotiated "tileCodec"
+     * capability.  The set up is cached until another capability is
+     * negotiated.
+     */
+    private synchronized TileDecoding getTileDecoding(NegotiableCapability
+						      codecCap)
+	throws RemoteImagingException {
+
+	if (tileDecoding != null && tileDecoding.codecCap == codecCap) {
+	    return tileDecoding;
+	}
+
 	TileDecoderFactory tdf = null;
 	TileCodecParameterList tcpl = null;
 
-	if (codecCap != null) {
+	String capabilityName = codecCap.getCapabilityName();
+	List generators = codecCap.getGenerators();
 
-	    String category = codecCap.getCategory();
-	    String capabilityName = codecCap.getCapabilityName();
-	    List generators = codecCap.getGenerators();
+	Class factory;
+	for (Iterator i=generators.iterator(); i.hasNext(); ) {
+	    factory = (Class)i.next();
+	    if (tdf == null &&
+		TileDecoderFactory.class.isAssignableFrom(factory)) {
 
-	    Class factory;
-	    for (Iterator i=generators.iterator(); i.hasNext(); ) {
-		factory = (Class)i.next();
-		if (tdf == null &&
-		    TileDecoderFactory.class.isAssignableFrom(factory)) {
+		try {
+		    tdf = (TileDecoderFactory)factory.newInstance();
+		} catch (InstantiationException ie) {
+		    throw new RemoteImagingException(ImageUtil.getStackTraceString(ie));
+		} catch (IllegalAccessException iae) {
+		    throw new RemoteImagingException(ImageUtil.getStackTraceString(iae));
+		}
+	    }
+	}
+
+	if (tdf == null) {
+	    throw new RemoteImagingException(
+				 JaiI18N.getString("RMIServerProxy0"));
+	}
+
+	TileCodecDescriptor tcd =
+	    (TileCodecDescriptor)registry.getDescriptor("tileDecoder",
+							capabilityName);
+
+	if (tcd.includesSampleModelInfo() == false ||
+	    tcd.includesLocationInfo() == false) {
+	    throw new RemoteImagingException(
+				 JaiI18N.getString("RMIServerProxy1"));
+	}
+
+	ParameterListDescriptor pld =
+	    tcd.getParameterListDescriptor("tileDecoder");
+
+	tcpl = new TileCodecParameterList(capabilityName,
+					  new String[] {"tileDecoder"},
+					  pld);
+
+	// Set parameters on TileCodecParameterList only if there are any
+	// parameters defined.
+	if (pld != null) {
 
+	    String paramNames[] = pld.getParamNames();
+	    String currParam;
+	    Object currValue;
+	    if (paramNames != null) {
+		for (int i=0; i<paramNames.length; i++) {
+		    currParam = paramNames[i];
 		    try {
-			tdf = (TileDecoderFactory)factory.newInstance();
-		    } catch (InstantiationException ie) {
-			throw new RemoteImagingException(ImageUtil.getStackTraceString(ie));
-		    } catch (IllegalAccessException iae) {
-			throw new RemoteImagingException(ImageUtil.getStackTraceString(iae));
+			currValue = codecCap.getNegotiatedValue(currParam);
+		    } catch (IllegalArgumentException iae) {
+			// If this parameter is not defined on the
+			// NegotiableCapability, then move onto the next
+			continue;
 		    }
+
+		    tcpl.setParameter(currParam, currValue);
 		}
 	    }
+	}
 
-	    if (tdf == null) {
-		throw new RemoteImagingException(
-				     JaiI18N.getString("RMIServerProxy0"));
-	    }
+	tileDecoding = new TileDecoding(codecCap, tdf, tcpl);
+	return tileDecoding;
+    }
 
-	    TileCodecDescriptor tcd =
-		(TileCodecDescriptor)registry.getDescriptor("tileDecoder",
-							    capabilityName);
+    /**
+     * A <code>TileDecoderFactory</code> and the parameters of the
+     * decoders it creates for a negotiated "tileCodec" capability.
+     */
+    private static final class TileDecoding {
+
+	final NegotiableCapability codecCap;
+	final TileDecoderFactory factory;
+	final TileCodecParameterList params;
+
+	TileDecoding(NegotiableCapability codecCap,
+		     TileDecoderFactory factory,
+		     TileCodecParameterList params) {
+	    this.codecCap = codecCap;
+	    this.factory = factory;
+	    this.params = params;
+	}
 
-	    if (tcd.includesSampleModelInfo() == false ||
-		tcd.includesLocationInfo() == false) {
-		throw new RemoteImagingException(
-				     JaiI18N.getString("RMIServerProxy1"));
+	Raster decode(byte[] ctile) throws RemoteImagingException {
+	    ByteArrayInputStream stream = new ByteArrayInputStream(ctile);
+	    TileDecoder decoder = factory.createDecoder(stream, params);
+	    try {
+		return decoder.decode();
+	    } catch (java.io.IOException ioe) {
+		throw new RemoteImagingException(ImageUtil.getStackTraceString(ioe));
 	    }
+	}
+    }
 
-	    ParameterListDescriptor pld =
-		tcd.getParameterListDescriptor("tileDecoder");
-
-	    tcpl = new TileCodecParameterList(capabilityName,
-					      new String[] {"tileDecoder"},
-					      pld);
+    /**
+     * The tiles fetched by a single call to the server.  Once fetched
+     * they are added to the tile cache.
+     */
+    private final class TileBatch extends FutureTask {
 
-	    // Set parameters on TileCodecParameterList only if there are any
-	    // parameters defined.
-	    if (pld != null) {
+	private final Point[] indices;
 
-		String paramNames[] = pld.getParamNames();
-		String currParam;
-		Object currValue;
-		if (paramNames != null) {
-		    for (int i=0; i<paramNames.length; i++) {
-			currParam = paramNames[i];
+	TileBatch(final Point[] indices) {
+	    super(new Callable() {
+		    public Object call() throws RemoteException {
 			try {
-			    currValue = codecCap.getNegotiatedValue(currParam);
-			} catch (IllegalArgumentException iae) {
-			    // If this parameter is not defined on the
-			    // NegotiableCapability, then move onto the next
-			    continue;
+			    return requestTiles(indices);
+			} catch (RemoteException e) {
+			    reportBatchFailure(e);
+			    throw e;
+			} catch (RuntimeException e) {
+			    reportBatchFailure(e);
+			    throw e;
 			}
-
-			tcpl.setParameter(currParam, currValue);
 		    }
+		});
+	    this.indices = indices;
+	}
+
+	/**
+	 * Waits for the batch and returns one of its tiles, or
+	 * <code>null</code> if the batch failed.
+	 */
+	Raster getTile(int tileX, int tileY) {
+	    Raster[] tiles;
+	    try {
+		tiles = (Raster[])get();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return null;
+	    } catch (ExecutionException e) {
+		return null;
+	    }
+
+	    for (int i = 0; i < indices.length; i++) {
+		if (indices[i].x == tileX && indices[i].y == tileY) {
+		    return tiles[i];
 		}
 	    }
+	    return null;
 	}
 
-	try {
-	    // If a compression hint was set, use it
-	    if (codecCap != null) {
-		byte ctile[] = remoteImage.getCompressedTile(id,
-							     tileX,
-							     tileY);
-		ByteArrayInputStream stream = new ByteArrayInputStream(ctile);
-		TileDecoder decoder = tdf.createDecoder(stream, tcpl);
-		try {
-		    return decoder.decode();
-		} catch (java.io.IOException ioe) {
-		    throw new RemoteImagingException(ImageUtil.getStackTraceString(ioe));
+	protected void done() {
+	    try {
+		if (cache != null && !isCancelled()) {
+		    Raster[] tiles = (Raster[])get();
+		    for (int i = 0; i < indices.length; i++) {
+			cache.add(RMIServerProxy.this,
+				  indices[i].x, indices[i].y,
+				  tiles[i], tileCacheMetric);
+		    }
+		}
+	    } catch (Exception e) {
+		// The tiles are requested again one at a time.
+	    } finally {
+		synchronized (pendingTiles) {
+		    for (int i = 0; i < indices.length; i++) {
+			if (pendingTiles.get(indices[i]) == this) {
+			    pendingTiles.remove(indices[i]);
+			}
+		    }
 		}
-	    } else {
-		// Ask for uncompressed tiles.
-		SerializableState rp = remoteImage.getTile(id, tileX, tileY);
-		return (Raster)(rp.getObject());
 	    }
-	} catch (RemoteException e) {
-            String message = JaiI18N.getString("RMIServerProxy15");
-            listener.errorOccurred(message,
-                                   new RemoteImagingException(message, e),
-                                   this, false);
-//	    throw new RemoteImagingException(ImageUtil.getStackTraceString(e));
 	}
-
-        return null;
     }
 
     public Object getRemoteProperty(String name)
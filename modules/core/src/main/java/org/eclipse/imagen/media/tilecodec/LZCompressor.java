@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.tilecodec;
+
+import java.io.IOException;
+
+/**
+ * A byte oriented compressor of the Lempel-Ziv family, used by the lz
+ * tile codec.  It favours speed over compression ratio: there is no
+ * entropy coding, and matches are found through a hash table of the
+ * four byte sequences of a 64K window.
+ *
+ * <p> The compressed data are a series of sequences, each made of
+ *
+ * <ul>
+ * <li> a token byte whose high four bits are the number of literals and
+ * whose low four bits are the length of the match minus four;
+ * <li> if the number of literals is fifteen or more, bytes of value 255
+ * followed by a byte of lower value, all of which are added to it;
+ * <li> the literals;
+ * <li> the distance back to the match, on two bytes, least significant
+ * first;
+ * <li> if the length of the match minus four is fifteen or more, bytes
+ * added to it as for the number of literals.
+ * </ul>
+ *
+ * The last sequence has no match and ends with its literals.
+ */
+final class LZCompressor {
+
+    // The minimum length of a match.
+    private static final int MIN_MATCH = 4;
+
+    // The maximum distance back to a match.
+    private static final int MAX_DISTANCE = 0xFFFF;
+
+    // Base 2 logarithm of the size of the hash table.
+    private static final int HASH_LOG = 14;
+
+    // Number of trailing bytes in which no match is looked for.
+    private static final int END_LITERALS = 8;
+
+    // Base 2 logarithm of the number of unmatched bytes after which
+    // the search advances faster.
+    private static final int SKIP_LOG = 6;
+
+    private LZCompressor() {}
+
+    /**
+     * Returns the maximum length of the compressed form of
+     * <code>length</code> bytes.
+     */
+    static int getMaxCompressedLength(int length) {
+	return length + length/255 + 16;
+    }
+
+    /**
+     * Compresses bytes.
+     *
+     * @param src The bytes to compress.
+     * @param srcOff The offset of the first byte to compress.
+     * @param srcLen The number of bytes to compress.
+     * @param dst The array receiving the compressed bytes, of length at
+     *        least <code>getMaxCompressedLength(srcLen)</code>.
+     * @param searchDepth The number of earlier positions compared for
+     *        every match, at least one.  Greater values give longer
+     *        matches at the expense of speed.
+     * @return The number of compressed bytes.
+     */
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst,
+			int searchDepth) {
+	int[] table = new int[1 << HASH_LOG];
+	int[] chain = searchDepth > 1 ? new int[MAX_DISTANCE + 1] : null;
+
+	int end = srcOff + srcLen;
+	int limit = end - END_LITERALS;
+	int anchor = srcOff;
+	int pos = srcOff;
+	int dp = 0;
+
+	// Positions are stored plus one so that zero is an empty entry.
+	while (pos < limit) {
+	    int seq = readInt(src, pos);
+	    int h = hash(seq);
+	    int candidate = table[h] - 1;
+	    table[h] = pos + 1;
+	    if (chain != null) {
+		chain[pos & MAX_DISTANCE] = candidate + 1;
+	    }
+
+	    int matchLen = 0;
+	    int matchPos = 0;
+	    for (int depth = 0;
+		 depth < searchDepth && candidate >= srcOff &&
+		     pos - candidate <= MAX_DISTANCE;
+		 depth++) {
+		if (readInt(src, candidate) == seq) {
+		    int len = MIN_MATCH;
+		    while (pos + len < end &&
+			   src[candidate + len] == src[pos + len]) {
+			len++;
+		    }
+		    if (len > matchLen) {
+			matchLen = len;
+			matchPos = candidate;
+		    }
+		}
+		if (chain == null) {
+		    break;
+		}
+		candidate = chain[candidate & MAX_DISTANCE] - 1;
+	    }
+
+	    if (matchLen == 0) {
+		pos += 1 + ((pos - anchor) >>> SKIP_LOG);
+		continue;
+	    }
+
+	    // Extend the match backwards over the pending literals.
+	    while (pos > anchor && matchPos > srcOff &&
+		   src[pos - 1] == src[matchPos - 1]) {
+		pos--;
+		matchPos--;
+		matchLen++;
+	    }
+
+	    dp = writeSequence(src, anchor, pos - anchor, dst, dp,
+			       pos - matchPos, matchLen);
+
+	    if (chain != null) {
+		// Index the matched bytes to find more matches later.
+		int stop = Math.min(pos + matchLen, limit);
+		for (int p = pos + 1; p < stop; p++) {
+		    int hp = hash(readInt(src, p));
+		    chain[p & MAX_DISTANCE] = table[hp];
+		    table[hp] = p + 1;
+		}
+	    }
+
+	    pos += matchLen;
+	    anchor = pos;
+	}
+
+	return writeSequence(src, anchor, end - anchor, dst, dp, 0, 0);
+    }
+
+    /**
+     * Decompresses bytes compressed by <code>compress()</code>.
+     *
+     * @param src The compressed bytes.
+     * @param srcOff The offset of the first compressed byte.
+     * @param srcLen The number of compressed bytes.
+     * @param dst The array receiving the decompressed bytes.
+     * @param dstLen The number of decompressed bytes.
+     * @throws IOException if the compressed bytes are corrupt.
+     */
+    static void decompress(byte[] src, int srcOff, int srcLen,
+			   byte[] dst, int dstLen) throws IOException {
+	int sp = srcOff;
+	int end = srcOff + srcLen;
+	int dp = 0;
+
+	try {
+	    while (true) {
+		int token = src[sp++] & 0xff;
+
+		int literals = token >>> 4;
+		if (literals == 15) {
+		    int b;
+		    do {
+			b = src[sp++] & 0xff;
+			literals += b;
+		    } while (b == 255);
+		}
+		if (literals > end - sp || literals > dstLen - dp) {
+		    throw new IOException(JaiI18N.getString("LZCompressor0"));
+		}
+		System.arraycopy(src, sp, dst, dp, literals);
+		sp += literals;
+		dp += literals;
+
+		if (sp == end) {
+		    break;
+		}
+
+		int distance = (src[sp] & 0xff) | ((src[sp + 1] & 0xff) << 8);
+		sp += 2;
+
+		int matchLen = token & 0xf;
+		if (matchLen == 15) {
+		    int b;
+		    do {
+			b = src[sp++] & 0xff;
+			matchLen += b;
+		    } while (b == 255);
+		}
+		matchLen += MIN_MATCH;
+
+		if (distance == 0 || distance > dp ||
+		    matchLen > dstLen - dp) {
+		    throw new IOException(JaiI18N.getString("LZCompressor0"));
+		}
+
+		int from = dp - distance;
+		if (distance >= matchLen) {
+		    System.arraycopy(dst, from, dst, dp, matchLen);
+		    dp += matchLen;
+		} else {
+		    // The match overlaps the bytes it produces.
+		    for (int i = 0; i < matchLen; i++) {
+			dst[dp++] = dst[from++];
+		    }
+		}
+	    }
+	} catch (ArrayIndexOutOfBoundsException e) {
+	    throw new IOException(JaiI18N.getString("LZCompressor0"));
+	}
+
+	if (dp != dstLen) {
+	    throw new IOException(JaiI18N.getString("LZCompressor0"));
+	}
+    }
+
+    /** Writes a sequence and returns the new offset in the output. */
+    private static int writeSequence(byte[] src, int literalPos, int literals,
+				     byte[] dst, int dp,
+				     int distance, int matchLen) {
+	int extra = matchLen - MIN_MATCH;
+	int token = (Math.min(literals, 15) << 4) |
+	    (matchLen == 0 ? 0 : Math.min(extra, 15));
+	dst[dp++] = (byte)token;
+	if (literals >= 15) {
+	    dp = writeLength(dst, dp, literals - 15);
+	}
+
+	System.arraycopy(src, literalPos, dst, dp, literals);
+	dp += literals;
+
+	if (matchLen != 0) {
+	    dst[dp++] = (byte)distance;
+	    dst[dp++] = (byte)(distance >>> 8);
+	    if (extra >= 15) {
+		dp = writeLength(dst, dp, extra - 15);
+	    }
+	}
+	return dp;
+    }
+
+    private static int writeLength(byte[] dst, int dp, int length) {
+	while (length >= 255) {
+	    dst[dp++] = (byte)255;
+	    length -= 255;
+	}
+	dst[dp++] = (byte)length;
+	return dp;
+    }
+
+    private static int readInt(byte[] b, int pos) {
+	return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) |
+	    ((b[pos + 2] & 0xff) << 16) | (b[pos + 3] << 24);
+    }
+
+    private static int hash(int seq) {
+	return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.tilecodec;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import org.eclipse.imagen.tilecodec.TileCodecParameterList;
+import org.eclipse.imagen.tilecodec.TileDecoderImpl;
+
+/**
+ * A concrete implementation of the <code>TileDecoderImpl</code> class
+ * for the lz tile codec.  The format of the encoded stream is described
+ * in <code>LZTileEncoder</code>.
+ */
+public class LZTileDecoder extends TileDecoderImpl {
+    /**
+     * Constructs a <code>LZTileDecoder</code>.
+     * <code>LZTileDecoder</code> may throw a
+     * <code>IllegalArgumentException</code> if <code>param</code>'s
+     * <code>getParameterListDescriptor()</code> method does not return
+     * the same descriptor as that from the associated
+     * <code>TileCodecDescriptor</code>'s
+     * <code>getParameterListDescriptor</code> method for the "tileDecoder"
+     * registry mode.
+     *
+     * <p> If param is null, then the default parameter list for decoding
+     * as defined by the associated <code>TileCodecDescriptor</code>'s
+     * <code>getDefaultParameters()</code> method will be used for decoding.
+     *
+     * @param input The <code>InputStream</code> to decode data from.
+     * @param param  The object containing the tile decoding parameters.
+     * @throws IllegalArgumentException if input is null.
+     * @throws IllegalArgumentException if param is not appropriate.
+     */
+    public LZTileDecoder(InputStream input, TileCodecParameterList param) {
+	super("lz", input, param);
+    }
+
+    /**
+     * Returns a <code>Raster</code> that contains the decoded contents
+     * of the <code>InputStream</code> associated with this
+     * <code>TileDecoder</code>.
+     *
+     * <p>This method can perform the decoding correctly only when
+     * <code>includesLocationInfo()</code> returns true.
+     *
+     * @throws IOException if an I/O error occurs while reading from the
+     * associated InputStream.
+     * @throws IllegalArgumentException if the associated
+     * TileCodecDescriptor's includesLocationInfo() returns false.
+     */
+    public Raster decode() throws IOException {
+
+	DataInputStream dis = new DataInputStream(inputStream);
+
+	int method = dis.readUnsignedByte();
+	int distance = dis.readInt();
+	int offset = dis.readInt();
+	int length = dis.readInt();
+	int compressedLength = dis.readInt();
+
+	byte[] data = new byte[length];
+	if (method == LZTileEncoder.STORED) {
+	    dis.readFully(data);
+	} else {
+	    byte[] compressed = new byte[compressedLength];
+	    dis.readFully(compressed);
+	    LZCompressor.decompress(compressed, 0, compressedLength,
+				    data, length);
+	}
+
+	if (distance > 0) {
+	    unpredict(data, offset, length - offset,
+		      LZTileEncoder.getByteOrder(data[1]),
+		      DataBuffer.getDataTypeSize(data[2])/8, distance);
+	}
+
+	return new RawBinaryTileDecoder(new ByteArrayInputStream(data),
+					null).decode();
+    }
+
+    public Raster decode(Point location) throws IOException{
+        return decode();
+    }
+
+    /**
+     * Adds to each element of a range of bytes the element
+     * <code>distance</code> elements before it, reverting the predictor
+     * of <code>LZTileEncoder</code>.
+     */
+    private static void unpredict(byte[] data, int off, int len,
+				  ByteOrder order, int elementSize,
+				  int distance) {
+	ByteBuffer buf = ByteBuffer.wrap(data, off, len).slice();
+	buf.order(order);
+
+	switch (elementSize) {
+	case 1:
+	    for (int i = off + distance; i < off + len; i++) {
+		data[i] += data[i - distance];
+	    }
+	    break;
+	case 2:
+	    ShortBuffer sb = buf.asShortBuffer();
+	    for (int i = distance; i < sb.limit(); i++) {
+		sb.put(i, (short)(sb.get(i) + sb.get(i - distance)));
+	    }
+	    break;
+	case 4:
+	    IntBuffer ib = buf.asIntBuffer();
+	    for (int i = distance; i < ib.limit(); i++) {
+		ib.put(i, ib.get(i) + ib.get(i - distance));
+	    }
+	    break;
+	default:
+	    LongBuffer lb = buf.asLongBuffer();
+	    for (int i = distance; i < lb.limit(); i++) {
+		lb.put(i, lb.get(i) + lb.get(i - distance));
+	    }
+	    break;
+	}
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.tilecodec ;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import org.eclipse.imagen.tilecodec.TileCodecParameterList ;
+import org.eclipse.imagen.tilecodec.TileEncoderImpl ;
+
+/**
+ * A concrete implementation of the <code>TileEncoderImpl</code> class
+ * for the lz tile codec.
+ *
+ * <p> The <code>Raster</code> is first encoded as by the raw binary tile
+ * codec.  Unless the "predictor" parameter is false, each element of the
+ * data which follow the header is then replaced by its difference with the
+ * element of the same band in the previous pixel, which turns smooth
+ * images into runs of small values.  The result is compressed by
+ * <code>LZCompressor</code>.
+ *
+ * <p> The encoded stream starts with a byte which is one if the data are
+ * compressed and zero if they are stored as is, followed by the
+ * <code>int</code>s giving the distance in elements used by the
+ * predictor or zero if it was not applied, the offset of the predicted
+ * data, the length of the data and the length of the compressed data,
+ * and finally by the data.
+ */
+public class LZTileEncoder extends TileEncoderImpl {
+
+    // The methods by which the data are stored.
+    static final int STORED = 0;
+    static final int COMPRESSED = 1;
+
+    /**
+     * Constructs an <code>LZTileEncoder</code>. Concrete implementations
+     * of <code>TileEncoder</code> may throw an
+     * <code>IllegalArgumentException</code> if the
+     * <code>param</code>'s <code>getParameterListDescriptor()</code> method
+     * does not return the same descriptor as that from the associated
+     * <code>TileCodecDescriptor</code>'s 
+     * <code>getParameterListDescriptor</code> method for the "tileEncoder" 
+     * registry mode. 
+     *
+     * <p> If param is null, then the default parameter list for encoding
+     * as defined by the associated <code>TileCodecDescriptor</code>'s 
+     * <code>getDefaultParameters()</code> method will be used for encoding.
+     *
+     * @param output The <code>OutputStream</code> to write encoded data to.
+     * @param param  The object containing the tile encoding parameters.
+     * @throws IllegalArgumentException if param is not the appropriate 
+     * Class type.
+     * @throws IllegalArgumentException is output is null.
+     */
+    public LZTileEncoder(OutputStream output, TileCodecParameterList param) {
+        super("lz", output, param) ;
+    }
+
+    /**
+     * Encodes a <code>Raster</code> and writes the output
+     * to the <code>OutputStream</code> associated with this 
+     * <code>TileEncoder</code>.
+     *
+     * @param ras the <code>Raster</code> to encode.
+     * @throws IOException if an I/O error occurs while writing to the 
+     * OutputStream.
+     * @throws IllegalArgumentException if ras is null.
+     */
+    public void encode(Raster ras) throws IOException {
+	if(ras == null)
+	    throw new IllegalArgumentException(
+			JaiI18N.getString("TileEncoder1")) ;
+
+	ByteArrayOutputStream bos = new ByteArrayOutputStream();
+	new RawBinaryTileEncoder(bos, null).encode(ras);
+	byte[] data = bos.toByteArray();
+
+	int distance = 0;
+	int offset = 0;
+	int type = data[0];
+	if (paramList.getBooleanParameter("predictor") &&
+	    type != RawBinaryTileEncoder.SERIALIZED &&
+	    type != RawBinaryTileEncoder.MULTI_PIXEL_PACKED) {
+	    ByteOrder order = getByteOrder(data[1]);
+	    ByteBuffer header = ByteBuffer.wrap(data);
+	    header.order(order);
+	    int numBands = header.getInt(4 + 4*4);
+	    offset = 4 + 4*RawBinaryTileEncoder.getHeaderSize(type, numBands);
+
+	    // The pixel stride for the component sample models, and one
+	    // for the single pixel packed one.
+	    distance = type == RawBinaryTileEncoder.SINGLE_PIXEL_PACKED ?
+		1 : header.getInt(4 + 4*5);
+	    predict(data, offset, data.length - offset, order,
+		    DataBuffer.getDataTypeSize(data[2])/8, distance);
+	}
+
+	byte[] compressed =
+	    new byte[LZCompressor.getMaxCompressedLength(data.length)];
+	int length = LZCompressor.compress(data, 0, data.length, compressed,
+			       paramList.getIntParameter("searchDepth"));
+
+	DataOutputStream dos = new DataOutputStream(outputStream);
+	if (length < data.length) {
+	    dos.writeByte(COMPRESSED);
+	} else {
+	    dos.writeByte(STORED);
+	    compressed = data;
+	    length = data.length;
+	}
+	dos.writeInt(distance);
+	dos.writeInt(offset);
+	dos.writeInt(data.length);
+	dos.writeInt(length);
+	dos.write(compressed, 0, length);
+	dos.flush();
+    }
+
+    /**
+     * Returns the <code>ByteOrder</code> given by a byte order flag of
+     * the raw binary tile codec.
+     */
+    static ByteOrder getByteOrder(int flag) {
+	return flag == RawBinaryTileEncoder.BIG_ENDIAN ?
+	    ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * Replaces each element of a range of bytes by its difference with
+     * the element <code>distance</code> elements before it.  Floating
+     * point elements are subtracted as integers of the same size, which
+     * can be reverted exactly.
+     */
+    private static void predict(byte[] data, int off, int len,
+				ByteOrder order, int elementSize,
+				int distance) {
+	ByteBuffer buf = ByteBuffer.wrap(data, off, len).slice();
+	buf.order(order);
+
+	switch (elementSize) {
+	case 1:
+	    for (int i = off + len - 1; i >= off + distance; i--) {
+		data[i] -= data[i - distance];
+	    }
+	    break;
+	case 2:
+	    ShortBuffer sb = buf.asShortBuffer();
+	    for (int i = sb.limit() - 1; i >= distance; i--) {
+		sb.put(i, (short)(sb.get(i) - sb.get(i - distance)));
+	    }
+	    break;
+	case 4:
+	    IntBuffer ib = buf.asIntBuffer();
+	    for (int i = ib.limit() - 1; i >= distance; i--) {
+		ib.put(i, ib.get(i) - ib.get(i - distance));
+	    }
+	    break;
+	default:
+	    LongBuffer lb = buf.asLongBuffer();
+	    for (int i = lb.limit() - 1; i >= distance; i--) {
+		lb.put(i, lb.get(i) - lb.get(i - distance));
+	    }
+	    break;
+	}
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.tilecodec;
+
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.imagen.JAI;
+import org.eclipse.imagen.TileFactory;
+import org.eclipse.imagen.media.util.DataBufferUtils;
+import org.eclipse.imagen.media.util.ImageUtil;
+import org.eclipse.imagen.tilecodec.TileCodecParameterList;
+import org.eclipse.imagen.tilecodec.TileDecoderImpl;
+import org.eclipse.imagen.util.ImagingListener;
+
+/**
+ * A concrete implementation of the <code>TileDecoderImpl</code> class
+ * for the raw binary tile codec.  The format of the encoded stream is
+ * described in <code>RawBinaryTileEncoder</code>.
+ *
+ * <p> The tile is created by the <code>TileFactory</code> of the default
+ * instance of <code>JAI</code>, if any, so that the data are read
+ * directly into recycled arrays.
+ */
+public class RawBinaryTileDecoder extends TileDecoderImpl {
+    /**
+     * Constructs a <code>RawBinaryTileDecoder</code>.
+     * <code>RawBinaryTileDecoder</code> may throw a
+     * <code>IllegalArgumentException</code> if <code>param</code>'s
+     * <code>getParameterListDescriptor()</code> method does not return
+     * the same descriptor as that from the associated
+     * <code>TileCodecDescriptor</code>'s
+     * <code>getParameterListDescriptor</code> method for the "tileDecoder"
+     * registry mode.
+     *
+     * <p> If param is null, then the default parameter list for decoding
+     * as defined by the associated <code>TileCodecDescriptor</code>'s
+     * <code>getDefaultParameters()</code> method will be used for decoding.
+     *
+     * @param input The <code>InputStream</code> to decode data from.
+     * @param param  The object containing the tile decoding parameters.
+     * @throws IllegalArgumentException if input is null.
+     * @throws IllegalArgumentException if param is not appropriate.
+     */
+    public RawBinaryTileDecoder(InputStream input,
+                                TileCodecParameterList param) {
+	super("rawbinary", input, param);
+    }
+
+    /**
+     * Returns a <code>Raster</code> that contains the decoded contents
+     * of the <code>InputStream</code> associated with this
+     * <code>TileDecoder</code>.
+     *
+     * <p>This method can perform the decoding correctly only when
+     * <code>includesLocationInfo()</code> returns true.
+     *
+     * @throws IOException if an I/O error occurs while reading from the
+     * associated InputStream.
+     * @throws IllegalArgumentException if the associated
+     * TileCodecDescriptor's includesLocationInfo() returns false.
+     */
+    public Raster decode() throws IOException {
+
+	DataInputStream dis = new DataInputStream(inputStream);
+
+	int type = dis.readUnsignedByte();
+	if (type == RawBinaryTileEncoder.SERIALIZED) {
+	    return decodeSerialized();
+	}
+
+	ByteOrder order =
+	    dis.readUnsignedByte() == RawBinaryTileEncoder.BIG_ENDIAN ?
+	    ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+	int dataType = dis.readUnsignedByte();
+	dis.readUnsignedByte();
+
+	int[] fields = readInts(dis, order, 5);
+	int minX = fields[0];
+	int minY = fields[1];
+	int width = fields[2];
+	int height = fields[3];
+	int numBands = fields[4];
+
+	SampleModel sm;
+	switch (type) {
+	case RawBinaryTileEncoder.COMPONENT:
+	case RawBinaryTileEncoder.BANDED: {
+	    int[] strides = readInts(dis, order, 2);
+	    int[] bankIndices = readInts(dis, order, numBands);
+	    int[] bandOffsets = readInts(dis, order, numBands);
+	    if (type == RawBinaryTileEncoder.BANDED) {
+		sm = new BandedSampleModel(dataType, width, height,
+					   strides[1],
+					   bankIndices, bandOffsets);
+	    } else {
+		sm = new ComponentSampleModel(dataType, width, height,
+					      strides[0], strides[1],
+					      bankIndices, bandOffsets);
+	    }
+	    break;
+	}
+	case RawBinaryTileEncoder.PIXEL_INTERLEAVED: {
+	    int[] strides = readInts(dis, order, 2);
+	    int[] bandOffsets = readInts(dis, order, numBands);
+	    sm = new PixelInterleavedSampleModel(dataType, width, height,
+						 strides[0], strides[1],
+						 bandOffsets);
+	    break;
+	}
+	case RawBinaryTileEncoder.SINGLE_PIXEL_PACKED: {
+	    int scanlineStride = readInts(dis, order, 1)[0];
+	    int[] bitMasks = readInts(dis, order, numBands);
+	    sm = new SinglePixelPackedSampleModel(dataType, width, height,
+						  scanlineStride, bitMasks);
+	    break;
+	}
+	case RawBinaryTileEncoder.MULTI_PIXEL_PACKED: {
+	    int[] values = readInts(dis, order, 3);
+	    sm = new MultiPixelPackedSampleModel(dataType, width, height,
+						 values[0], values[1],
+						 values[2]);
+	    break;
+	}
+	default:
+	    throw new IOException(JaiI18N.getString("RawBinaryTileDecoder0"));
+	}
+
+	int[] banks = readInts(dis, order, 2);
+	int numBanks = banks[0];
+	int bankSize = banks[1];
+
+	WritableRaster tile = createTile(sm, new Point(minX, minY),
+					 numBanks, bankSize);
+	DataBuffer db = tile.getDataBuffer();
+
+	int elementSize = DataBuffer.getDataTypeSize(dataType)/8;
+	int elementsPerBuffer = Math.max(1,
+	    Math.min(RawBinaryTileEncoder.BUFFER_SIZE/elementSize, bankSize));
+	ByteBuffer buf = ByteBuffer.allocate(elementsPerBuffer*elementSize);
+	buf.order(order);
+
+	for (int b = 0; b < numBanks; b++) {
+	    for (int pos = 0; pos < bankSize; pos += elementsPerBuffer) {
+		int n = Math.min(elementsPerBuffer, bankSize - pos);
+		dis.readFully(buf.array(), 0, n*elementSize);
+		buf.clear();
+		switch (dataType) {
+		case DataBuffer.TYPE_BYTE:
+		    buf.get(((DataBufferByte)db).getData(b), pos, n);
+		    break;
+		case DataBuffer.TYPE_USHORT:
+		    buf.asShortBuffer().get(((DataBufferUShort)db).getData(b),
+					    pos, n);
+		    break;
+		case DataBuffer.TYPE_SHORT:
+		    buf.asShortBuffer().get(((DataBufferShort)db).getData(b),
+					    pos, n);
+		    break;
+		case DataBuffer.TYPE_INT:
+		    buf.asIntBuffer().get(((DataBufferInt)db).getData(b),
+					  pos, n);
+		    break;
+		case DataBuffer.TYPE_FLOAT:
+		    buf.asFloatBuffer().get(
+			DataBufferUtils.getDataFloat(db, b), pos, n);
+		    break;
+		case DataBuffer.TYPE_DOUBLE:
+		    buf.asDoubleBuffer().get(
+			DataBufferUtils.getDataDouble(db, b), pos, n);
+		    break;
+		}
+	    }
+	}
+
+	return tile;
+    }
+
+    public Raster decode(Point location) throws IOException{
+        return decode();
+    }
+
+    /** Reads a Raster serialized as by the raw tile codec. */
+    private Raster decodeSerialized() throws IOException {
+	ObjectInputStream ois = new ObjectInputStream(inputStream);
+
+	try {
+	    Object object = ois.readObject();
+	    return TileCodecUtils.deserializeRaster(object);
+	}
+	catch (ClassNotFoundException e) {
+            ImagingListener listener =
+                ImageUtil.getImagingListener((RenderingHints)null);
+            listener.errorOccurred(JaiI18N.getString("ClassNotFound"),
+                                   e, this, false);
+	    return null;
+	}
+	finally {
+	    ois.close();
+	}
+    }
+
+    /** Reads <code>n</code> <code>int</code>s in the given byte order. */
+    private static int[] readInts(DataInputStream dis, ByteOrder order, int n)
+	throws IOException {
+	byte[] bytes = new byte[4*n];
+	dis.readFully(bytes);
+	int[] ints = new int[n];
+	ByteBuffer.wrap(bytes).order(order).asIntBuffer().get(ints);
+	return ints;
+    }
+
+    /**
+     * Creates a tile whose <code>DataBuffer</code> has banks of the given
+     * number and size, starting at offset zero.  The tile comes from the
+     * <code>TileFactory</code> of the default instance of
+     * <code>JAI</code> if it creates such a tile.
+     */
+    private static WritableRaster createTile(SampleModel sm, Point location,
+					     int numBanks, int bankSize) {
+	Object factory =
+	    JAI.getDefaultInstance().getRenderingHint(JAI.KEY_TILE_FACTORY);
+	if (factory instanceof TileFactory) {
+	    WritableRaster tile =
+		((TileFactory)factory).createTile(sm, location);
+	    DataBuffer db = tile.getDataBuffer();
+	    if (db.getDataType() == sm.getDataType() &&
+		db.getNumBanks() == numBanks && db.getSize() == bankSize) {
+		int[] offsets = db.getOffsets();
+		boolean zeroOffsets = true;
+		for (int i = 0; i < offsets.length; i++) {
+		    zeroOffsets &= offsets[i] == 0;
+		}
+		if (zeroOffsets) {
+		    return tile;
+		}
+	    }
+	}
+
+	DataBuffer db;
+	switch (sm.getDataType()) {
+	case DataBuffer.TYPE_BYTE:
+	    db = new DataBufferByte(bankSize, numBanks);
+	    break;
+	case DataBuffer.TYPE_USHORT:
+	    db = new DataBufferUShort(bankSize, numBanks);
+	    break;
+	case DataBuffer.TYPE_SHORT:
+	    db = new DataBufferShort(bankSize, numBanks);
+	    break;
+	case DataBuffer.TYPE_INT:
+	    db = new DataBufferInt(bankSize, numBanks);
+	    break;
+	case DataBuffer.TYPE_FLOAT:
+	    db = DataBufferUtils.createDataBufferFloat(bankSize, numBanks);
+	    break;
+	default:
+	    db = DataBufferUtils.createDataBufferDouble(bankSize, numBanks);
+	    break;
+	}
+	return Raster.createWritableRaster(sm, db, location);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.tilecodec ;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.eclipse.imagen.media.util.DataBufferUtils;
+import org.eclipse.imagen.tilecodec.TileCodecParameterList ;
+import org.eclipse.imagen.tilecodec.TileEncoderImpl ;
+
+/**
+ * A concrete implementation of the <code>TileEncoderImpl</code> class
+ * for the raw binary tile codec.
+ *
+ * <p> The encoded stream starts with a byte giving the type of the
+ * <code>SampleModel</code>.  If the type is <code>SERIALIZED</code> the
+ * <code>SampleModel</code> is not one of the standard classes, and the
+ * rest of the stream is the <code>Raster</code> serialized as by the raw
+ * tile codec.  Otherwise it is followed by a byte giving the byte order of
+ * the rest of the stream, a byte giving the data type and a zero byte,
+ * then by the <code>int</code>s
+ *
+ * <ul>
+ * <li> minX, minY, width, height and number of bands;
+ * <li> for a <code>ComponentSampleModel</code> or
+ * <code>BandedSampleModel</code>, the pixel stride, the scanline stride,
+ * the bank indices and the band offsets;
+ * <li> for a <code>PixelInterleavedSampleModel</code>, the pixel stride,
+ * the scanline stride and the band offsets;
+ * <li> for a <code>SinglePixelPackedSampleModel</code>, the scanline stride
+ * and the bit masks;
+ * <li> for a <code>MultiPixelPackedSampleModel</code>, the number of bits
+ * per pixel, the scanline stride and the data bit offset;
+ * <li> the number of banks and the size of each bank,
+ * </ul>
+ *
+ * and finally by the elements of each bank.
+ */
+public class RawBinaryTileEncoder extends TileEncoderImpl {
+
+    // The types of SampleModel.
+    static final int SERIALIZED = 0;
+    static final int COMPONENT = 1;
+    static final int BANDED = 2;
+    static final int PIXEL_INTERLEAVED = 3;
+    static final int SINGLE_PIXEL_PACKED = 4;
+    static final int MULTI_PIXEL_PACKED = 5;
+
+    // The byte orders.
+    static final int BIG_ENDIAN = 0;
+    static final int LITTLE_ENDIAN = 1;
+
+    // The size of the buffer through which the banks are transferred.
+    static final int BUFFER_SIZE = 64*1024;
+
+    /**
+     * Constructs an <code>RawBinaryTileEncoder</code>. Concrete
+     * implementations of <code>TileEncoder</code> may throw an
+     * <code>IllegalArgumentException</code> if the
+     * <code>param</code>'s <code>getParameterListDescriptor()</code> method
+     * does not return the same descriptor as that from the associated
+     * <code>TileCodecDescriptor</code>'s 
+     * <code>getParameterListDescriptor</code> method for the "tileEncoder" 
+     * registry mode. 
+     *
+     * <p> If param is null, then the default parameter list for encoding
+     * as defined by the associated <code>TileCodecDescriptor</code>'s 
+     * <code>getDefaultParameters()</code> method will be used for encoding.
+     *
+     * @param output The <code>OutputStream</code> to write encoded data to.
+     * @param param  The object containing the tile encoding parameters.
+     * @throws IllegalArgumentException if param is not the appropriate 
+     * Class type.
+     * @throws IllegalArgumentException is output is null.
+     */
+    public RawBinaryTileEncoder(OutputStream output,
+                                TileCodecParameterList param) {
+        super("rawbinary", output, param) ;
+    }
+
+    /**
+     * Encodes a <code>Raster</code> and writes the output
+     * to the <code>OutputStream</code> associated with this 
+     * <code>TileEncoder</code>.
+     *
+     * @param ras the <code>Raster</code> to encode.
+     * @throws IOException if an I/O error occurs while writing to the 
+     * OutputStream.
+     * @throws IllegalArgumentException if ras is null.
+     */
+    public void encode(Raster ras) throws IOException {
+	if(ras == null)
+	    throw new IllegalArgumentException(
+		JaiI18N.getString("TileEncoder1")) ;
+
+	int type = getSampleModelType(ras.getSampleModel());
+	if (type == SERIALIZED) {
+	    outputStream.write(SERIALIZED);
+	    ObjectOutputStream oos = new ObjectOutputStream(outputStream) ;
+	    oos.writeObject(TileCodecUtils.serializeRaster(ras)) ;
+	    oos.close() ;
+	    return;
+	}
+
+	// Only the data of the Raster itself is written, so a Raster
+	// sharing its DataBuffer with a larger one is copied first.
+	SampleModel sm = ras.getSampleModel();
+	int minX = ras.getMinX();
+	int minY = ras.getMinY();
+	int width = ras.getWidth();
+	int height = ras.getHeight();
+	if (ras.getSampleModelTranslateX() != -minX ||
+	    ras.getSampleModelTranslateY() != -minY ||
+	    sm.getWidth() != width || sm.getHeight() != height) {
+	    WritableRaster copy =
+		ras.createCompatibleWritableRaster(minX, minY, width, height);
+	    // The location of ras is added to the offsets given here.
+	    copy.setDataElements(0, 0, ras);
+	    ras = copy;
+	    sm = ras.getSampleModel();
+	}
+
+	DataBuffer db = ras.getDataBuffer();
+	int numBands = sm.getNumBands();
+	int numBanks = db.getNumBanks();
+	int bankSize = db.getSize();
+
+	int[] header = new int[getHeaderSize(type, numBands)];
+	int count = 0;
+	switch (type) {
+	case COMPONENT:
+	case BANDED:
+	case PIXEL_INTERLEAVED:
+	    ComponentSampleModel csm = (ComponentSampleModel)sm;
+	    boolean hasBankIndices = type != PIXEL_INTERLEAVED;
+	    header[5] = csm.getPixelStride();
+	    header[6] = csm.getScanlineStride();
+	    count = 7;
+	    if (hasBankIndices) {
+		int[] bankIndices = csm.getBankIndices();
+		System.arraycopy(bankIndices, 0, header, count, numBands);
+		count += numBands;
+	    }
+	    System.arraycopy(csm.getBandOffsets(), 0, header, count, numBands);
+	    count += numBands;
+	    break;
+	case SINGLE_PIXEL_PACKED:
+	    SinglePixelPackedSampleModel sppsm =
+		(SinglePixelPackedSampleModel)sm;
+	    header[5] = sppsm.getScanlineStride();
+	    System.arraycopy(sppsm.getBitMasks(), 0, header, 6, numBands);
+	    count = 6 + numBands;
+	    break;
+	default:
+	    MultiPixelPackedSampleModel mppsm =
+		(MultiPixelPackedSampleModel)sm;
+	    header[5] = mppsm.getPixelBitStride();
+	    header[6] = mppsm.getScanlineStride();
+	    header[7] = mppsm.getDataBitOffset();
+	    count = 8;
+	    break;
+	}
+	header[0] = minX;
+	header[1] = minY;
+	header[2] = width;
+	header[3] = height;
+	header[4] = numBands;
+	header[count++] = numBanks;
+	header[count++] = bankSize;
+
+	ByteOrder order = ByteOrder.nativeOrder();
+	int dataType = db.getDataType();
+	int elementSize = DataBuffer.getDataTypeSize(dataType)/8;
+
+	ByteBuffer buf = ByteBuffer.allocate(
+	    Math.max(4 + 4*count,
+		     Math.min(BUFFER_SIZE, numBanks*bankSize*elementSize)));
+	buf.order(order);
+
+	buf.put((byte)type);
+	buf.put((byte)(order == ByteOrder.BIG_ENDIAN ?
+		       BIG_ENDIAN : LITTLE_ENDIAN));
+	buf.put((byte)dataType);
+	buf.put((byte)0);
+	buf.asIntBuffer().put(header);
+	outputStream.write(buf.array(), 0, 4 + 4*count);
+
+	int[] offsets = db.getOffsets();
+	int elementsPerBuffer = buf.capacity()/elementSize;
+	for (int b = 0; b < numBanks; b++) {
+	    for (int pos = 0; pos < bankSize; pos += elementsPerBuffer) {
+		int n = Math.min(elementsPerBuffer, bankSize - pos);
+		int off = offsets[b] + pos;
+		buf.clear();
+		switch (dataType) {
+		case DataBuffer.TYPE_BYTE:
+		    buf.put(((DataBufferByte)db).getData(b), off, n);
+		    break;
+		case DataBuffer.TYPE_USHORT:
+		    buf.asShortBuffer().put(((DataBufferUShort)db).getData(b),
+					    off, n);
+		    break;
+		case DataBuffer.TYPE_SHORT:
+		    buf.asShortBuffer().put(((DataBufferShort)db).getData(b),
+					    off, n);
+		    break;
+		case DataBuffer.TYPE_INT:
+		    buf.asIntBuffer().put(((DataBufferInt)db).getData(b),
+					  off, n);
+		    break;
+		case DataBuffer.TYPE_FLOAT:
+		    buf.asFloatBuffer().put(
+			DataBufferUtils.getDataFloat(db, b), off, n);
+		    break;
+		case DataBuffer.TYPE_DOUBLE:
+		    buf.asDoubleBuffer().put(
+			DataBufferUtils.getDataDouble(db, b), off, n);
+		    break;
+		}
+		outputStream.write(buf.array(), 0, n*elementSize);
+	    }
+	}
+	outputStream.flush();
+    }
+
+    /**
+     * Returns the number of <code>int</code>s in the header of an encoded
+     * stream whose <code>SampleModel</code> is of the given type and has
+     * the given number of bands.  The header is preceded by four bytes.
+     */
+    static int getHeaderSize(int type, int numBands) {
+	switch (type) {
+	case COMPONENT:
+	case BANDED:
+	    return 9 + 2*numBands;
+	case PIXEL_INTERLEAVED:
+	    return 9 + numBands;
+	case SINGLE_PIXEL_PACKED:
+	    return 8 + numBands;
+	default:
+	    return 10;
+	}
+    }
+
+    /**
+     * Returns the type of a <code>SampleModel</code> in the encoded
+     * stream, or <code>SERIALIZED</code> if its class is not a standard
+     * one or its data type is not supported.
+     */
+    private static int getSampleModelType(SampleModel sm) {
+	switch (sm.getDataType()) {
+	case DataBuffer.TYPE_BYTE:
+	case DataBuffer.TYPE_USHORT:
+	case DataBuffer.TYPE_SHORT:
+	case DataBuffer.TYPE_INT:
+	case DataBuffer.TYPE_FLOAT:
+	case DataBuffer.TYPE_DOUBLE:
+	    break;
+	default:
+	    return SERIALIZED;
+	}
+
+	Class c = sm.getClass();
+	if (c == ComponentSampleModel.class) {
+	    return COMPONENT;
+	} else if (c == BandedSampleModel.class) {
+	    return BANDED;
+	} else if (c == PixelInterleavedSampleModel.class) {
+	    return PIXEL_INTERLEAVED;
+	} else if (c == SinglePixelPackedSampleModel.class) {
+	    return SINGLE_PIXEL_PACKED;
+	} else if (c == MultiPixelPackedSampleModel.class) {
+	    return MULTI_PIXEL_PACKED;
+	}
+	return SERIALIZED;
+    }
+}
@@ -51,6 +51,20 @@ public interface CacheDiagnostics {
      */
     long getCacheMissCount();
 
+    /**
+     *  Returns the fraction of tile requests, since the counts were
+     *  last reset, which found the tile in the tile cache.  This
+     *  measures the effectiveness of the eviction policy of the cache.
+     *
+     *  <p> The default implementation divides the hit count by the sum
+     *  of the hit and miss counts, and returns 0 if both are zero.
+     */
+    default double getCacheHitRate() {
+        long hits = getCacheHitCount();
+        long requests = hits + getCacheMissCount();
+        return requests == 0 ? 0.0 : (double)hits / requests;
+    }
+
     /** Resets the hit and miss counts to zero. */
     void resetCounts();   // resets hit,miss counts
 }
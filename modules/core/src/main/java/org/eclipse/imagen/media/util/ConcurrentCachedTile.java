@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.util;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+
+import org.eclipse.imagen.CachedTile;
+
+/**
+ * Information associated with a tile cached by
+ * <code>ConcurrentTileCache</code>.
+ *
+ * <p> The lookup fields (<code>key</code>, <code>tile</code>,
+ * <code>memorySize</code>) are immutable and may be read by any thread.
+ * The eviction fields (<code>timeStamp</code> and <code>state</code>)
+ * are only read and written while holding the eviction lock of the
+ * owning cache.
+ *
+ * <p> The hash code of a cached tile is that of its key so that a
+ * <code>TileEvictionPolicy</code> can recognize a tile which is cached
+ * again after having been removed.
+ *
+ * @see ConcurrentTileCache
+ *
+ */
+final class ConcurrentCachedTile implements CachedTile {
+
+    /** The tile has been put in the map but is not yet linked. */
+    static final int NEW = 0;
+
+    /** The tile is known to the eviction policy. */
+    static final int LINKED = 1;
+
+    /** The tile has been removed from the cache. */
+    static final int DEAD = 2;
+
+    final Raster tile;                // the tile to be cached
+    final WeakReference owner;        // the RenderedImage this tile belongs to
+
+    final int tileX;                  // tile X index
+    final int tileY;                  // tile Y index
+
+    final Object tileCacheMetric;     // Metric for weighting tile computation cost
+    final Object key;                 // the key used to hash this tile
+    final long memorySize;            // the memory used by this tile in bytes
+
+    long timeStamp;                   // the last time this tile is accessed
+    int state = NEW;                  // NEW, LINKED or DEAD
+
+    volatile int action = 0;          // add, remove, update from tile cache
+
+    ConcurrentCachedTile(RenderedImage owner,
+                         int tileX,
+                         int tileY,
+                         Raster tile,
+                         Object tileCacheMetric,
+                         Object key) {
+
+        this.owner = new WeakReference(owner);
+        this.tile  = tile;
+        this.tileX = tileX;
+        this.tileY = tileY;
+
+        this.tileCacheMetric = tileCacheMetric;  // may be null
+        this.key = key;
+
+        DataBuffer db = tile.getDataBuffer();
+        memorySize = db.getDataTypeSize(db.getDataType()) / 8L *
+                     db.getSize() * db.getNumBanks();
+    }
+
+    /** Returns the hash code of the key of this tile. */
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /** Returns a string representation of the class object. */
+    public String toString() {
+        RenderedImage o = getOwner();
+        String ostring = o == null ? "null" : o.toString();
+
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+               ": owner = " + ostring +
+               " tileX = " + Integer.toString(tileX) +
+               " tileY = " + Integer.toString(tileY) +
+               " tile = " + tile +
+               " key = " + key +
+               " memorySize = " + Long.toString(memorySize) +
+               " timeStamp = " + Long.toString(timeStamp);
+    }
+
+    /** Returns the cached tile. */
+    public Raster getTile() {
+        return tile;
+    }
+
+    /** Returns the owner of the cached tile. */
+    public RenderedImage getOwner() {
+        return (RenderedImage)owner.get();
+    }
+
+    /** Returns the current time stamp */
+    public long getTileTimeStamp() {
+        return timeStamp;
+    }
+
+    /** Returns the tileCacheMetric object */
+    public Object getTileCacheMetric() {
+        return tileCacheMetric;
+    }
+
+    /** Returns the tile memory size */
+    public long getTileSize() {
+        return memorySize;
+    }
+
+    /** Returns information about the method that
+     *  triggered the notification event.
+     */
+    public int getAction() {
+        return action;
+    }
+}
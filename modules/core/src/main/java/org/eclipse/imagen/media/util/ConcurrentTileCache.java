@@ -0,0 +1,919 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.util;
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.imagen.EnumeratedParameter;
+import org.eclipse.imagen.TileCache;
+
+/**
+ * A <code>TileCache</code> implementation intended for heavily
+ * multi-threaded tile computation.  It may be installed in place of
+ * <code>SunTileCache</code> using <code>JAI.setTileCache()</code> or
+ * supplied to individual operations through the
+ * <code>JAI.KEY_TILE_CACHE</code> rendering hint:
+ *
+ * <pre>
+ * JAI.getDefaultInstance().setTileCache(
+ *     new ConcurrentTileCache(256L * 1024L * 1024L));
+ * </pre>
+ *
+ * <p> <code>SunTileCache</code> serializes every lookup on the cache
+ * monitor because each hit reorders its LRU list.  This implementation
+ * instead keeps the tiles in a lock-striped
+ * <code>ConcurrentHashMap</code> so that lookups never block, and
+ * records hits in a set of small per-thread-striped buffers.  The
+ * eviction order is only maintained by the thread holding the eviction
+ * lock, which replays the buffered hits before it adds or evicts
+ * tiles.  When a buffer is full, further hits on that stripe are
+ * dropped from the eviction order; this only makes that order
+ * approximate and never loses a tile.
+ *
+ * <p> The memory capacity and memory threshold have the same meaning
+ * as in <code>SunTileCache</code>: when the memory used exceeds the
+ * capacity, tiles are removed until the memory used is no more than
+ * <code>memoryThreshold</code> times the capacity.  The tiles to remove
+ * are chosen by a pluggable <code>TileEvictionPolicy</code>, LRU by
+ * default.  A custom <code>Comparator</code> may be set to order
+ * removals, in which case the eviction policy is consulted only if
+ * removing the tiles ordered by the comparator did not release enough
+ * memory.
+ *
+ * <p> The diagnostic actions reported to <code>Observer</code>s are
+ * those returned by <code>SunTileCache.getCachedTileActions()</code>.
+ *
+ * @see SunTileCache
+ * @see TileEvictionPolicy
+ * @see org.eclipse.imagen.TileCache
+ *
+ */
+public final class ConcurrentTileCache extends Observable
+                                       implements TileCache,
+                                                  CacheDiagnostics {
+
+    /** The default memory capacity of the cache (16 MB). */
+    private static final long DEFAULT_MEMORY_CAPACITY = 16L * 1024L * 1024L;
+
+    /** The default map capacity (heuristic) */
+    private static final int DEFAULT_MAP_CAPACITY = 1009;
+
+    /** The map load factor */
+    private static final float LOAD_FACTOR = 0.5F;
+
+    /** The number of hits buffered per stripe; a power of 2. */
+    private static final int READ_BUFFER_SIZE = 32;
+
+    // diagnostic actions, see SunTileCache.getCachedTileActions()
+    private static final int ADD                 = 0;
+    private static final int REMOVE              = 1;
+    private static final int REMOVE_FROM_FLUSH   = 2;
+    private static final int REMOVE_FROM_MEMCON  = 3;
+    private static final int UPDATE_FROM_ADD     = 4;
+    private static final int UPDATE_FROM_GETTILE = 5;
+    private static final int ABOUT_TO_REMOVE     = 6;
+
+    /**
+     * The tile cache.  The "key" is an <code>Object</code> determined
+     * as in <code>SunTileCache</code> and the "value" is a
+     * <code>ConcurrentCachedTile</code>.
+     */
+    private final ConcurrentHashMap cache;
+
+    /** The buffers of hits not yet applied to the eviction order. */
+    private final ReadBuffer[] readBuffers;
+
+    /** Guards the eviction order. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The memory capacity of the cache. */
+    private volatile long memoryCapacity;
+
+    /** The amount of memory to keep after memory control */
+    private volatile float memoryThreshold = 0.75F;
+
+    /** The amount of memory currently being used by the cache. */
+    private final AtomicLong memoryUsage = new AtomicLong();
+
+    /** Tile count used for diagnostics */
+    private final AtomicLong tileCount = new AtomicLong();
+
+    /** Cache hit count */
+    private final LongAdder hitCount = new LongAdder();
+
+    /** Cache miss count */
+    private final LongAdder missCount = new LongAdder();
+
+    /** Diagnostics enable/disable */
+    private volatile boolean diagnostics = false;
+
+    /** A indicator for tile access time; guarded by evictionLock. */
+    private long timeStamp = 0;
+
+    /** Custom comparator used to determine tile cost or
+     *  priority ordering in the tile cache.
+     */
+    private volatile Comparator comparator = null;
+
+    /** The admission and eviction policy; guarded by evictionLock. */
+    private TileEvictionPolicy policy;
+
+    /**
+     * Returns an array of <code>EnumeratedParameter</code>s corresponding
+     * to the numeric values returned by the <code>getAction()</code>
+     * method of the <code>CachedTile</code> implementation used by
+     * <code>ConcurrentTileCache</code>.
+     */
+    public static EnumeratedParameter[] getCachedTileActions() {
+        return SunTileCache.getCachedTileActions();
+    }
+
+    /**
+     * No args constructor. Use the DEFAULT_MEMORY_CAPACITY of 16 Megs.
+     */
+    public ConcurrentTileCache() {
+        this(DEFAULT_MEMORY_CAPACITY);
+    }
+
+    /**
+     * Constructor.  The memory capacity should be explicitly specified.
+     *
+     * @param memoryCapacity  The maximum cache memory size in bytes.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     */
+    public ConcurrentTileCache(long memoryCapacity) {
+        this(memoryCapacity, new LRUTileEvictionPolicy());
+    }
+
+    /**
+     * Constructor.  The memory capacity and eviction policy should be
+     * explicitly specified.
+     *
+     * @param memoryCapacity  The maximum cache memory size in bytes.
+     * @param policy  The policy choosing the tiles to remove.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     * @throws IllegalArgumentException  If <code>policy</code> is
+     *         <code>null</code>.
+     */
+    public ConcurrentTileCache(long memoryCapacity,
+                               TileEvictionPolicy policy) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileCache"));
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        this.memoryCapacity = memoryCapacity;
+        this.policy = policy;
+
+        // One stripe per hardware thread, rounded to a power of 2.
+        int nCPU = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < nCPU && stripes < 64) {
+            stripes <<= 1;
+        }
+
+        cache = new ConcurrentHashMap(DEFAULT_MAP_CAPACITY, LOAD_FACTOR,
+                                      stripes);
+
+        readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    /**
+     * Adds a tile to the cache.
+     *
+     * <p> If the specified tile is already in the cache, it will not be
+     * cached again.  If by adding this tile, the cache exceeds the memory
+     * capacity, older tiles in the cache are removed to keep the cache
+     * memory usage under the specified limit.
+     *
+     * @param owner            The image the tile blongs to.
+     * @param tileX            The tile's X index within the image.
+     * @param tileY            The tile's Y index within the image.
+     * @param tile             The tile to be cached.
+     */
+    public void add(RenderedImage owner,
+                    int tileX,
+                    int tileY,
+                    Raster tile) {
+        add(owner, tileX, tileY, tile, null);
+    }
+
+    /**
+     * Adds a tile to the cache with an associated tile compute cost.
+     *
+     * <p> If the specified tile is already in the cache, it will not be
+     * cached again.  If by adding this tile, the cache exceeds the memory
+     * capacity, older tiles in the cache are removed to keep the cache
+     * memory usage under the specified limit.
+     *
+     * @param owner            The image the tile blongs to.
+     * @param tileX            The tile's X index within the image.
+     * @param tileY            The tile's Y index within the image.
+     * @param tile             The tile to be cached.
+     * @param tileCacheMetric  Metric for prioritizing tiles
+     */
+    public void add(RenderedImage owner,
+                    int tileX,
+                    int tileY,
+                    Raster tile,
+                    Object tileCacheMetric) {
+
+        long capacity = memoryCapacity;
+        if ( capacity == 0 ) {
+            return;
+        }
+
+        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
+        ConcurrentCachedTile ct = (ConcurrentCachedTile)cache.get(key);
+
+        if ( ct != null ) {
+            hitCount.increment();
+            recordAccess(ct);
+
+            if ( diagnostics ) {
+                fireAction(ct, UPDATE_FROM_ADD);
+            }
+            return;
+        }
+
+        ct = new ConcurrentCachedTile(owner, tileX, tileY, tile,
+                                      tileCacheMetric, key);
+
+        // Don't cache tile if adding it would provoke memoryControl()
+        // which would in turn only end up removing the tile.
+        if (memoryUsage.get() + ct.memorySize > capacity &&
+            ct.memorySize > (long)(capacity * memoryThreshold)) {
+            return;
+        }
+
+        ConcurrentCachedTile old =
+            (ConcurrentCachedTile)cache.putIfAbsent(key, ct);
+
+        if ( old != null ) {
+            // Another thread cached the same tile first.
+            hitCount.increment();
+            recordAccess(old);
+
+            if ( diagnostics ) {
+                fireAction(old, UPDATE_FROM_ADD);
+            }
+            return;
+        }
+
+        memoryUsage.addAndGet(ct.memorySize);
+        tileCount.incrementAndGet();
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+
+            // A concurrent remove() may already have retired the tile.
+            if ( ct.state == ConcurrentCachedTile.NEW ) {
+                ct.timeStamp = timeStamp++;
+                ct.state = ConcurrentCachedTile.LINKED;
+                policy.tileAdded(ct);
+            }
+
+            // Bring memory usage down to memoryThreshold % of memory capacity.
+            if ( memoryUsage.get() > memoryCapacity ) {
+                evict();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if ( diagnostics ) {
+            fireAction(ct, ADD);
+        }
+    }
+
+    /**
+     * Removes a tile from the cache.
+     *
+     * <p> If the specified tile is not in the cache, this method
+     * does nothing.
+     */
+    public void remove(RenderedImage owner,
+                       int tileX,
+                       int tileY) {
+
+        if ( memoryCapacity == 0 ) {
+            return;
+        }
+
+        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
+        ConcurrentCachedTile ct = (ConcurrentCachedTile)cache.get(key);
+
+        if ( ct == null ) {
+            return;
+        }
+
+        // Notify observers that a tile is about to be removed.
+        fireAction(ct, ABOUT_TO_REMOVE);
+
+        if ( cache.remove(key, ct) ) {
+            memoryUsage.addAndGet(-ct.memorySize);
+            tileCount.decrementAndGet();
+
+            evictionLock.lock();
+            try {
+                retire(ct);
+            } finally {
+                evictionLock.unlock();
+            }
+
+            if ( diagnostics ) {
+                fireAction(ct, REMOVE);
+            }
+        }
+    }
+
+    /**
+     * Retrieves a tile from the cache.
+     *
+     * <p> If the specified tile is not in the cache, this method
+     * returns <code>null</code>.  If the specified tile is in the
+     * cache, its last-access time is updated.
+     *
+     * @param owner  The image the tile blongs to.
+     * @param tileX  The tile's X index within the image.
+     * @param tileY  The tile's Y index within the image.
+     */
+    public Raster getTile(RenderedImage owner,
+                          int tileX,
+                          int tileY) {
+
+        if ( memoryCapacity == 0 ) {
+            return null;
+        }
+
+        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
+        ConcurrentCachedTile ct = (ConcurrentCachedTile)cache.get(key);
+
+        if ( ct == null ) {
+            missCount.increment();
+            return null;
+        }
+
+        hitCount.increment();
+        recordAccess(ct);
+
+        if ( diagnostics ) {
+            fireAction(ct, UPDATE_FROM_GETTILE);
+        }
+
+        return ct.tile;
+    }
+
+    /**
+     * Returns whether the cache holds a tile without retrieving it.
+     * Neither the statistics nor the eviction policy are updated.
+     *
+     * @param owner  The image the tile belongs to.
+     * @param tileX  The tile's X index within the image.
+     * @param tileY  The tile's Y index within the image.
+     */
+    public boolean containsTile(RenderedImage owner,
+                                int tileX,
+                                int tileY) {
+        if ( memoryCapacity == 0 ) {
+            return false;
+        }
+
+        return cache.containsKey(SunCachedTile.hashKey(owner, tileX, tileY));
+    }
+
+    /**
+     * Retrieves a contiguous array of all tiles in the cache which are
+     * owned by the specified image.  May be <code>null</code> if there
+     * were no tiles in the cache.  The array contains no null entries.
+     *
+     * @param owner The <code>RenderedImage</code> to which the tiles belong.
+     * @return An array of all tiles owned by the specified image or
+     *         <code>null</code> if there are none currently in the cache.
+     */
+    public Raster[] getTiles(RenderedImage owner) {
+        if ( memoryCapacity == 0 || tileCount.get() == 0 ) {
+            return null;
+        }
+
+        int minTx = owner.getMinTileX();
+        int minTy = owner.getMinTileY();
+        int maxTx = minTx + owner.getNumXTiles();
+        int maxTy = minTy + owner.getNumYTiles();
+
+        ArrayList temp = new ArrayList();
+
+        for (int y = minTy; y < maxTy; y++) {
+            for (int x = minTx; x < maxTx; x++) {
+                Raster raster = getTile(owner, x, y);
+
+                if ( raster != null ) {
+                    temp.add(raster);
+                }
+            }
+        }
+
+        int tmpsize = temp.size();
+        return tmpsize > 0 ? (Raster[])temp.toArray(new Raster[tmpsize]) : null;
+    }
+
+    /**
+     * Removes all the tiles that belong to a <code>RenderedImage</code>
+     * from the cache.
+     *
+     * @param owner  The image whose tiles are to be removed from the cache.
+     */
+    public void removeTiles(RenderedImage owner) {
+        if ( memoryCapacity > 0 ) {
+            int minTx = owner.getMinTileX();
+            int minTy = owner.getMinTileY();
+            int maxTx = minTx + owner.getNumXTiles();
+            int maxTy = minTy + owner.getNumYTiles();
+
+            for (int y=minTy; y<maxTy; y++) {
+                for (int x=minTx; x<maxTx; x++) {
+                    remove(owner, x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an array of tiles to the tile cache.
+     *
+     * @param owner The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices An array of <code>Point</code>s containing the
+     *        <code>tileX</code> and <code>tileY</code> indices for each tile.
+     * @param tiles The array of tile <code>Raster</code>s containing tile data.
+     * @param tileCacheMetric Object which provides an ordering metric
+     *        associated with the <code>RenderedImage</code> owner.
+     */
+    public void addTiles(RenderedImage owner,
+                         Point[] tileIndices,
+                         Raster[] tiles,
+                         Object tileCacheMetric) {
+        for ( int i = 0; i < tileIndices.length; i++ ) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i],
+                tileCacheMetric);
+        }
+    }
+
+    /**
+     * Returns an array of tile <code>Raster</code>s from the cache.
+     * Any or all of the elements of the returned array may be <code>null</code>
+     * if the corresponding tile is not in the cache.
+     *
+     * @param owner The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices  An array of <code>Point</code>s containing the
+     *        <code>tileX</code> and <code>tileY</code> indices for each tile.
+     */
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        if ( memoryCapacity == 0 ) {
+            return null;
+        }
+
+        Raster[] tiles = new Raster[tileIndices.length];
+
+        for ( int i = 0; i < tiles.length; i++ ) {
+            tiles[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+
+        return tiles;
+    }
+
+    /** Removes -ALL- tiles from the cache. */
+    public void flush() {
+        evictionLock.lock();
+        try {
+            // reset counters before diagnostics
+            hitCount.reset();
+            missCount.reset();
+
+            Iterator iter = cache.values().iterator();
+            while ( iter.hasNext() ) {
+                ConcurrentCachedTile ct = (ConcurrentCachedTile)iter.next();
+
+                if ( cache.remove(ct.key, ct) ) {
+                    memoryUsage.addAndGet(-ct.memorySize);
+                    tileCount.decrementAndGet();
+                    retire(ct);
+
+                    if ( diagnostics ) {
+                        fireAction(ct, REMOVE_FROM_FLUSH);
+                    }
+                }
+            }
+
+            for ( int i = 0; i < readBuffers.length; i++ ) {
+                readBuffers[i].clear();
+            }
+
+            policy.clear();
+            timeStamp = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cache's tile capacity.
+     *
+     * <p> This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method always returns 0.
+     */
+    public int getTileCapacity() { return 0; }
+
+    /**
+     * Sets the cache's tile capacity to the desired number of tiles.
+     *
+     * <p> This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method does nothing.
+     *
+     * @param tileCapacity  The desired tile capacity for this cache
+     *        in number of tiles.
+     */
+    public void setTileCapacity(int tileCapacity) { }
+
+    /** Returns the cache's memory capacity in bytes. */
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Sets the cache's memory capacity to the desired number of bytes.
+     * If the new memory capacity is smaller than the amount of memory
+     * currently being used by this cache, tiles are removed from the
+     * cache until the memory usage is less than the specified memory
+     * capacity.
+     *
+     * @param memoryCapacity  The desired memory capacity for this cache
+     *        in bytes.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is less than 0.
+     */
+    public void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileCache"));
+        } else if ( memoryCapacity == 0 ) {
+            flush();
+        }
+
+        this.memoryCapacity = memoryCapacity;
+
+        if ( memoryUsage.get() > memoryCapacity ) {
+            memoryControl();
+        }
+    }
+
+    /** Enable Tile Monitoring and Diagnostics */
+    public void enableDiagnostics() {
+        diagnostics = true;
+    }
+
+    /** Turn off diagnostic notification */
+    public void disableDiagnostics() {
+        diagnostics = false;
+    }
+
+    public long getCacheTileCount() {
+        return tileCount.get();
+    }
+
+    public long getCacheMemoryUsed() {
+        return memoryUsage.get();
+    }
+
+    public long getCacheHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getCacheMissCount() {
+        return missCount.sum();
+    }
+
+    /** Reset hit and miss counters. */
+    public void resetCounts() {
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /** Set the memory threshold value. */
+    public void setMemoryThreshold(float mt) {
+        if ( mt < 0.0F || mt > 1.0F ) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileCache"));
+        } else {
+            memoryThreshold = mt;
+            memoryControl();
+        }
+    }
+
+    /** Returns the current <code>memoryThreshold</code>. */
+    public float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Sets the policy choosing the tiles to remove from the cache.  The
+     * tiles currently cached are handed to the new policy in no
+     * particular order, and the hit and miss counts are reset so that
+     * the hit rate reported by <code>getCacheHitRate()</code> is that
+     * of the new policy.
+     *
+     * @param policy The new eviction policy.
+     *
+     * @throws IllegalArgumentException  If <code>policy</code> is
+     *         <code>null</code>.
+     */
+    public void setEvictionPolicy(TileEvictionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("Generic0"));
+        }
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+
+            this.policy.clear();
+            this.policy = policy;
+
+            Iterator iter = cache.values().iterator();
+            while ( iter.hasNext() ) {
+                ConcurrentCachedTile ct = (ConcurrentCachedTile)iter.next();
+                if ( ct.state == ConcurrentCachedTile.LINKED ) {
+                    policy.tileAdded(ct);
+                }
+            }
+
+            resetCounts();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /** Returns the policy choosing the tiles to remove from the cache. */
+    public TileEvictionPolicy getEvictionPolicy() {
+        evictionLock.lock();
+        try {
+            return policy;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /** Returns a string representation of the class object. */
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+               ": memoryCapacity = " + Long.toHexString(memoryCapacity) +
+               " memoryUsage = " + Long.toHexString(memoryUsage.get()) +
+               " #tilesInCache = " + Integer.toString(cache.size()) +
+               " policy = " + getEvictionPolicy().getName();
+    }
+
+    /** Returns the <code>Object</code> that represents the actual cache. */
+    public Object getCachedObject() {
+        return cache;
+    }
+
+    /**
+     * Removes tiles from the cache, in the order imposed by the tile
+     * comparator if one is set and otherwise in the order chosen by the
+     * eviction policy, until the memory usage is memoryThreshold % of
+     * that of the memory capacity.
+     */
+    public void memoryControl() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     *  The <code>Comparator</code> is used to produce an
+     *  ordered list of tiles based on a user defined
+     *  compute cost or priority metric.  This determines
+     *  which tiles are subject to "ordered" removal
+     *  during a memory control operation.
+     */
+    public void setTileComparator(Comparator c) {
+        comparator = c;
+    }
+
+    /** Return the current comparator */
+    public Comparator getTileComparator() {
+        return comparator;
+    }
+
+    /**
+     * Records a hit on a tile to be applied to the eviction policy the
+     * next time the eviction lock is held.  If the buffer of the calling
+     * thread's stripe is full, this thread tries to drain the buffers
+     * itself without waiting for the lock.
+     */
+    private void recordAccess(ConcurrentCachedTile ct) {
+        int h = (int)Thread.currentThread().getId() * 0x9E3779B9;
+        ReadBuffer buffer = readBuffers[(h >>> 16) & (readBuffers.length - 1)];
+
+        if ( !buffer.offer(ct) && evictionLock.tryLock() ) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /** Applies buffered hits to the eviction policy.  Requires evictionLock. */
+    private void drainReadBuffers() {
+        for ( int i = 0; i < readBuffers.length; i++ ) {
+            ReadBuffer buffer = readBuffers[i];
+            ConcurrentCachedTile ct;
+
+            while ( (ct = buffer.poll()) != null ) {
+                if ( ct.state == ConcurrentCachedTile.LINKED ) {
+                    ct.timeStamp = timeStamp++;
+                    policy.tileAccessed(ct);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a tile, already removed from the map, from the eviction
+     * policy.  Requires evictionLock.
+     */
+    private void retire(ConcurrentCachedTile ct) {
+        if ( ct.state == ConcurrentCachedTile.LINKED ) {
+            policy.tileRemoved(ct);
+        }
+        ct.state = ConcurrentCachedTile.DEAD;
+    }
+
+    /** Evicts tiles down to the memory threshold.  Requires evictionLock. */
+    private void evict() {
+        long limit = (long)(memoryCapacity * memoryThreshold);
+
+        if ( memoryUsage.get() <= limit ) {
+            return;
+        }
+
+        Comparator c = comparator;
+        if ( c != null ) {
+            ArrayList linked = new ArrayList((int)tileCount.get());
+            Iterator iter = cache.values().iterator();
+            while ( iter.hasNext() ) {
+                ConcurrentCachedTile ct = (ConcurrentCachedTile)iter.next();
+                if ( ct.state == ConcurrentCachedTile.LINKED ) {
+                    linked.add(ct);
+                }
+            }
+
+            Object[] ordered = linked.toArray();
+            Arrays.sort(ordered, c);
+
+            for ( int i = 0;
+                  i < ordered.length && memoryUsage.get() > limit; i++ ) {
+                ConcurrentCachedTile ct = (ConcurrentCachedTile)ordered[i];
+                if ( ct.state == ConcurrentCachedTile.LINKED ) {
+                    evict(ct);
+                }
+            }
+        }
+
+        // If the custom memory control didn't release sufficient
+        // number of tiles to satisfy the memory limit, fallback
+        // to the eviction policy.
+        while ( memoryUsage.get() > limit ) {
+            ConcurrentCachedTile victim =
+                (ConcurrentCachedTile)policy.nextVictim(memoryCapacity);
+            if ( victim == null ) {
+                break;
+            }
+            evict(victim);
+        }
+    }
+
+    /** Evicts a single linked tile.  Requires evictionLock. */
+    private void evict(ConcurrentCachedTile ct) {
+        retire(ct);
+
+        // A concurrent remove() may have taken the tile out of the map
+        // already, in which case it also accounted for the memory.
+        if ( cache.remove(ct.key, ct) ) {
+            memoryUsage.addAndGet(-ct.memorySize);
+            tileCount.decrementAndGet();
+
+            SunTileCache.reclaim(ct);
+
+            if ( diagnostics ) {
+                fireAction(ct, REMOVE_FROM_MEMCON);
+            }
+        }
+    }
+
+    private void fireAction(ConcurrentCachedTile ct, int action) {
+        ct.action = action;
+        setChanged();
+        notifyObservers(ct);
+    }
+
+    /**
+     * A bounded, lossy, multiple-producer single-consumer buffer of
+     * tile hits.  Producers never block: an offer to a full buffer
+     * fails and the hit is simply not recorded.  The consumer is the
+     * thread holding the eviction lock.
+     */
+    private static final class ReadBuffer {
+
+        private static final int MASK = READ_BUFFER_SIZE - 1;
+
+        private final AtomicReferenceArray buffer =
+            new AtomicReferenceArray(READ_BUFFER_SIZE);
+
+        /** The next slot to write; advanced by producers. */
+        private final AtomicLong writeCounter = new AtomicLong();
+
+        /** The next slot to read; only advanced by the consumer. */
+        private volatile long readCounter = 0;
+
+        /** Returns <code>false</code> if the buffer is full. */
+        boolean offer(Object e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+
+            if ( tail - head >= READ_BUFFER_SIZE ) {
+                return false;
+            }
+
+            // Losing the race to another producer drops the hit.
+            if ( writeCounter.compareAndSet(tail, tail + 1) ) {
+                buffer.lazySet((int)(tail & MASK), e);
+            }
+            return true;
+        }
+
+        /** Returns the next element or <code>null</code>. */
+        ConcurrentCachedTile poll() {
+            long head = readCounter;
+
+            if ( head == writeCounter.get() ) {
+                return null;
+            }
+
+            int index = (int)(head & MASK);
+            Object e = buffer.get(index);
+
+            if ( e == null ) {
+                // The slot is claimed but not yet published.
+                return null;
+            }
+
+            buffer.lazySet(index, null);
+            readCounter = head + 1;
+            return (ConcurrentCachedTile)e;
+        }
+
+        void clear() {
+            while ( poll() != null );
+        }
+    }
+}
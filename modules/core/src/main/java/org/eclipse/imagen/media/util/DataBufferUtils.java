@@ -18,6 +18,12 @@
 package org.eclipse.imagen.media.util;
 
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 
@@ -324,4 +330,35 @@ public final class DataBufferUtils {
                                                 new Class[] {int.class},
                                                 new Object[] {new Integer(bank)});
     }
+
+    /**
+     * Returns the data array of a bank of a <code>DataBuffer</code> of
+     * any of the standard data types, that is a <code>byte[]</code>,
+     * <code>short[]</code>, <code>int[]</code>, <code>float[]</code> or
+     * <code>double[]</code>.  The offset of the bank is not applied.
+     *
+     * @throws IllegalArgumentException if the data type is not supported.
+     * @throws ClassCastException if the <code>DataBuffer</code> is not
+     *         the <code>java.awt.image</code> class of its data type,
+     *         whose samples may not be held in an array.
+     */
+    public static final Object getData(DataBuffer dataBuffer, int bank) {
+        switch (dataBuffer.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            return ((DataBufferByte)dataBuffer).getData(bank);
+        case DataBuffer.TYPE_USHORT:
+            return ((DataBufferUShort)dataBuffer).getData(bank);
+        case DataBuffer.TYPE_SHORT:
+            return ((DataBufferShort)dataBuffer).getData(bank);
+        case DataBuffer.TYPE_INT:
+            return ((DataBufferInt)dataBuffer).getData(bank);
+        case DataBuffer.TYPE_FLOAT:
+            return ((DataBufferFloat)dataBuffer).getData(bank);
+        case DataBuffer.TYPE_DOUBLE:
+            return ((DataBufferDouble)dataBuffer).getData(bank);
+        default:
+            throw new IllegalArgumentException(
+                JaiI18N.getString("DataBufferUtils3"));
+        }
+    }
 }
@@ -0,0 +1,898 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.util;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.imagen.OpImage;
+import org.eclipse.imagen.PlanarImage;
+import org.eclipse.imagen.RenderedOp;
+import org.eclipse.imagen.TileCache;
+import org.eclipse.imagen.TileComputationListener;
+import org.eclipse.imagen.TileRequest;
+import org.eclipse.imagen.TileScheduler;
+import org.eclipse.imagen.util.ImagingException;
+import org.eclipse.imagen.util.ImagingListener;
+
+/**
+ * A <code>TileScheduler</code> which computes tiles on a work-stealing
+ * <code>ForkJoinPool</code>.  It may be installed in place of
+ * <code>SunTileScheduler</code> using <code>JAI.setTileScheduler()</code>
+ * or supplied to individual operations through the
+ * <code>JAI.KEY_TILE_SCHEDULER</code> rendering hint.  As an
+ * <code>OpImage</code> obtains its scheduler when it is created, the
+ * scheduler should be installed before the operation chain is built:
+ *
+ * <pre>
+ * JAI.getDefaultInstance().setTileScheduler(new ForkJoinTileScheduler());
+ * </pre>
+ *
+ * <p> <code>SunTileScheduler</code> hands each request to a fixed set
+ * of worker threads sharing a single job queue, and a worker computing
+ * a tile of a deep operation chain computes every source tile it needs
+ * itself, one after the other.  This scheduler instead treats the
+ * computation of a tile as a fork/join task.  Before the tile is
+ * computed, the source tiles reported by
+ * <code>OpImage.getTileDependencies()</code> which are not yet cached
+ * are forked as subtasks.  Each subtask requests its tile through the
+ * source's <code>getTile()</code> method and so forks the dependencies
+ * of that source in turn.  Idle workers steal these subtasks from the
+ * deque of the busy worker, so that the work of a single large tile
+ * request is spread over all workers.  Dependencies are only forked for
+ * sources which have a <code>TileCache</code>, as the computed tiles
+ * are handed to the dependent tile through that cache.
+ *
+ * <p> A tile which is requested again while it is being computed is
+ * not computed twice: the second request joins the task of the first
+ * one.  A worker which joins a task helps computing other tasks in the
+ * meantime rather than blocking.
+ *
+ * <p> The parallelism is the number of workers of the pool and defaults
+ * to the number of available processors.  As with
+ * <code>SunTileScheduler</code>, a parallelism of zero causes all tiles
+ * to be computed by the calling thread and no dependencies are forked.
+ * Prefetching uses a separate pool with its own parallelism and
+ * priority.  Cancellation follows <code>SunTileScheduler</code>: tiles
+ * of a <code>TileRequest</code> which have not yet been started are not
+ * computed, tiles being computed are allowed to complete.  The deadline
+ * of a request is observed by its tiles and the source tiles forked for
+ * them through <code>TileCancellation</code>; its priority is ignored.
+ *
+ * @see SunTileScheduler
+ * @see org.eclipse.imagen.TileScheduler
+ */
+public final class ForkJoinTileScheduler implements TileScheduler {
+
+    /** The default number of prefetch worker threads. */
+    private static final int NUM_PREFETCH_THREADS_DEFAULT = 1;
+
+    /** The instance counter.  It is used to compose the thread names. */
+    private static final AtomicInteger numInstances = new AtomicInteger();
+
+    /** The tile scheduler name.  It is used to compose the thread names. */
+    private static String name =
+        JaiI18N.getString("ForkJoinTileSchedulerName");
+
+    /** The worker parallelism. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** The prefetch worker parallelism. */
+    private int prefetchParallelism = NUM_PREFETCH_THREADS_DEFAULT;
+
+    /** The worker thread priority. */
+    private int priority = Thread.NORM_PRIORITY;
+
+    /** The prefetch thread priority. */
+    private int prefetchPriority = Thread.MIN_PRIORITY;
+
+    /**
+     * The pool computing the tiles; created on demand and discarded
+     * whenever its parallelism or priority is changed.
+     */
+    private ForkJoinPool pool;
+
+    /** The pool computing prefetched tiles. */
+    private ForkJoinPool prefetchPool;
+
+    /**
+     * <code>Map</code> of the tiles currently being computed.  The key
+     * is created from the image and tile indices by
+     * <code>SunTileScheduler.tileKey()</code>, and each key is mapped to
+     * the <code>TileTask</code> computing the tile.
+     */
+    private final ConcurrentHashMap tilesInProgress = new ConcurrentHashMap();
+
+    /** The name of this instance. */
+    private final String nameOfThisInstance;
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism  The number of worker threads to do tile computation.
+     *        If this number is less than 1, no multi-threading is used.
+     * @param priority  The priority of worker threads.
+     * @param prefetchParallelism  The number of threads to do prefetching.
+     *        If this number is less than 1, no multi-threading is used.
+     * @param prefetchPriority  The priority of prefetch threads.
+     *
+     * @throws IllegalArgumentException if <code>parallelism</code> or
+     *         <code>prefetchParallelism</code> is negative.
+     */
+    public ForkJoinTileScheduler(int parallelism, int priority,
+                                 int prefetchParallelism,
+                                 int prefetchPriority) {
+        this();
+
+        setParallelism(parallelism);
+        setPriority(priority);
+        setPrefetchParallelism(prefetchParallelism);
+        setPrefetchPriority(prefetchPriority);
+    }
+
+    /**
+     * Constructor.  The parallelism is set to the number of available
+     * processors and all other values are set to the defaults of
+     * <code>SunTileScheduler</code>.  The pools are created when the
+     * first tile is scheduled.
+     */
+    public ForkJoinTileScheduler() {
+        nameOfThisInstance = name + numInstances.getAndIncrement();
+    }
+
+    /**
+     * Schedules a single tile for computation.  If the calling thread is
+     * a worker of this scheduler the tile is computed by that thread,
+     * otherwise it is computed by the pool while the calling thread
+     * waits.
+     *
+     * @param owner  The image the tiles belong to.
+     * @param tileX  The tile's X index.
+     * @param tileY  The tile's Y index.
+     *
+     * @exception IllegalArgumentException if <code>owner</code> is
+     * <code>null</code>.
+     *
+     * @return  The computed tile
+     */
+    public Raster scheduleTile(OpImage owner,
+                               int tileX,
+                               int tileY) {
+        if (owner == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler1"));
+        }
+
+        Object tileID = SunTileScheduler.tileKey(owner, tileX, tileY);
+        TileTask task = new TileTask(this, owner, tileX, tileY, tileID);
+
+        TileTask running = (TileTask)tilesInProgress.putIfAbsent(tileID, task);
+        if (running != null) {
+            // Another thread is computing the tile: help or wait for it.
+            Raster tile;
+            try {
+                tile = (Raster)running.join();
+            } catch (CancellationException e) {
+                // The other thread abandoned the tile for its request.
+                TileCancellation.checkCancelled();
+                return scheduleTile(owner, tileX, tileY);
+            }
+            if (tile == null) {
+                throw new RuntimeException(JaiI18N.getString("SunTileScheduler5"));
+            }
+            return tile;
+        }
+
+        ForkJoinPool p;
+        if (isWorker() || (p = getPool(false)) == null) {
+            return (Raster)task.invoke();
+        }
+
+        try {
+            return (Raster)p.invoke(task);
+        } catch (RejectedExecutionException e) {
+            // The pool was replaced after it was obtained.
+            return (Raster)task.invoke();
+        }
+    }
+
+    /**
+     * Schedules multiple tiles of an image for computation.  Each tile
+     * is computed by a separate task.
+     *
+     * @param owner  The image the tiles belong to.
+     * @param tileIndices  An array of tile X and Y indices.
+     *
+     * @return  An array of computed tiles.
+     */
+    public Raster[] scheduleTiles(OpImage owner,
+                                  Point tileIndices[]) {
+        if (owner == null || tileIndices == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler0"));
+        }
+
+        int numTiles = tileIndices.length;
+        Raster[] tiles = new Raster[numTiles];
+
+        RequestTask[] tasks = new RequestTask[numTiles];
+        for (int i = 0; i < numTiles; i++) {
+            Point p = tileIndices[i];
+            tasks[i] = new RequestTask(this, owner, p.x, p.y,
+                                       tiles, i, null);
+        }
+
+        // Wait until all tiles have been computed.
+        submit(tasks, false);
+
+        Throwable exception = null;
+        for (int i = 0; i < numTiles; i++) {
+            tasks[i].quietlyJoin();
+            if (exception == null) {
+                exception = tasks[i].getException();
+            }
+        }
+
+        if (exception instanceof Error) {
+            throw (Error)exception;
+        } else if (exception != null) {
+            String message = JaiI18N.getString("SunTileScheduler7");
+            sendExceptionToListener(message,
+                                    new ImagingException(message, exception));
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Schedule a list of tiles for computation.  The supplied listeners
+     * will be notified after each tile has been computed by the worker
+     * which computed it.  This method does not block unless the
+     * parallelism is zero.
+     */
+    public TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
+                                     TileComputationListener[] tileListeners) {
+        return scheduleTiles(target, tileIndices, tileListeners, 0, 0L);
+    }
+
+    /**
+     * Schedule a list of tiles for computation with the given priority
+     * and deadline.  The supplied listeners will be notified after each
+     * tile has been computed or cancelled.
+     *
+     * <p> The pool has no notion of priority, so the priority is
+     * ignored.  The tiles which have not been started when the deadline
+     * passes are cancelled, and a tile being computed, including the
+     * source tiles forked for it, is abandoned as soon as its
+     * computation observes the deadline through
+     * <code>TileCancellation</code>.
+     */
+    public TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
+                                     TileComputationListener[] tileListeners,
+                                     int priority, long deadline) {
+        if (target == null || tileIndices == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler4"));
+        }
+
+        Request request = new Request(this, target, tileIndices,
+                                      tileListeners, priority, deadline);
+
+        int numTiles = tileIndices.length;
+        Raster[] tiles = new Raster[numTiles];
+
+        RequestTask[] tasks = new RequestTask[numTiles];
+        for (int i = 0; i < numTiles; i++) {
+            Point p = tileIndices[i];
+            tasks[i] = new RequestTask(this, target, p.x, p.y,
+                                       tiles, i, request);
+        }
+        submit(tasks, false);
+
+        return request;
+    }
+
+    /**
+     * Issues an advisory cancellation request to the
+     * <code>TileScheduler</code> stating that the indicated tiles of the
+     * specified image should not be processed.  Tiles which have not been
+     * started yet are marked as cancelled and will not be computed;
+     * computation already in progress is not terminated.
+     */
+    public void cancelTiles(TileRequest request, Point[] tileIndices) {
+        if (request == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler3"));
+        }
+
+        Request req = (Request)request;
+
+        // Initialize the set of tile indices to cancel.
+        Point[] indices;
+        if (tileIndices != null && tileIndices.length > 0) {
+            // Retain only indices which were actually in the request.
+            List tileIndexList = new ArrayList(Arrays.asList(tileIndices));
+            tileIndexList.retainAll(req.indices);
+
+            indices = (Point[])tileIndexList.toArray(new Point[0]);
+        } else {
+            indices = (Point[])req.indices.toArray(new Point[0]);
+        }
+
+        Integer tileStatus = new Integer(TileRequest.TILE_STATUS_CANCELLED);
+        TileRequest[] reqArray = new TileRequest[] {req};
+
+        for (int i = 0; i < indices.length; i++) {
+            Point p = indices[i];
+
+            // Only tiles which are still pending may be cancelled.
+            synchronized (req.tileStatus) {
+                if (req.tileStatus.containsKey(p)) {
+                    continue;
+                }
+                req.tileStatus.put(p, tileStatus);
+            }
+
+            // Notify any listeners.
+            if (req.listeners != null) {
+                Iterator iter = req.listeners.iterator();
+                while (iter.hasNext()) {
+                    TileComputationListener listener =
+                        (TileComputationListener)iter.next();
+                    listener.tileCancelled(this, reqArray,
+                                           req.image, p.x, p.y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prefetchs a list of tiles of an image.
+     *
+     * @param owner  The image the tiles belong to.
+     * @param tileIndices  An array of tile X and Y indices.
+     */
+    public void prefetchTiles(PlanarImage owner,
+                              Point[] tileIndices) {
+        if (owner == null || tileIndices == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler0"));
+        }
+
+        int numTiles = tileIndices.length;
+        RequestTask[] tasks = new RequestTask[numTiles];
+        for (int i = 0; i < numTiles; i++) {
+            Point p = tileIndices[i];
+            tasks[i] = new RequestTask(this, owner, p.x, p.y,
+                                       null, i, null);
+        }
+        submit(tasks, true);
+    }
+
+    /**
+     * Suggests to the scheduler the degree of parallelism to use in
+     * processing invocations of <code>scheduleTiles()</code>.
+     *
+     * <p> This method sets the number of workers of the pool.  Its initial
+     * value is the number of processors available to the virtual
+     * machine.  A parallelism value of zero indicates that all tile
+     * computation will be effected in the calling thread.
+     *
+     * @param parallelism The suggested degree of parallelism.
+     * @throws IllegalArgumentException if <code>parallelism</code>
+     *         is negative.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler2"));
+        }
+        synchronized (this) {
+            if (this.parallelism != parallelism) {
+                this.parallelism = parallelism;
+                pool = shutdown(pool);
+            }
+        }
+    }
+
+    /**
+     * Returns the degree of parallelism of the scheduler.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Identical to <code>setParallelism()</code> but applies only to
+     * <code>prefetchTiles()</code>.
+     */
+    public void setPrefetchParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler2"));
+        }
+        synchronized (this) {
+            if (prefetchParallelism != parallelism) {
+                prefetchParallelism = parallelism;
+                prefetchPool = shutdown(prefetchPool);
+            }
+        }
+    }
+
+    /**
+     * Identical to <code>getParallelism()</code> but applies only to
+     * <code>prefetchTiles()</code>.
+     */
+    public int getPrefetchParallelism() {
+        return prefetchParallelism;
+    }
+
+    /**
+     * Suggests to the scheduler the priority to assign to processing
+     * effected by <code>scheduleTiles()</code>.  Values outside of the
+     * accepted priority range will be clamped to the nearest extremum.
+     *
+     * <p> This method sets the priority of the worker threads of the
+     * pool.  Its initial value is <code>Thread.NORM_PRIORITY</code>.
+     *
+     * @param priority The suggested priority.
+     */
+    public void setPriority(int priority) {
+        priority = Math.max(Math.min(priority, Thread.MAX_PRIORITY),
+                            Thread.MIN_PRIORITY);
+        synchronized (this) {
+            if (this.priority != priority) {
+                this.priority = priority;
+                pool = shutdown(pool);
+            }
+        }
+    }
+
+    /**
+     * Returns the priority of <code>scheduleTiles()</code> processing.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Identical to <code>setPriority()</code> but applies only to
+     * <code>prefetchTiles()</code>.  Its initial value is
+     * <code>Thread.MIN_PRIORITY</code>.
+     */
+    public void setPrefetchPriority(int priority) {
+        priority = Math.max(Math.min(priority, Thread.MAX_PRIORITY),
+                            Thread.MIN_PRIORITY);
+        synchronized (this) {
+            if (prefetchPriority != priority) {
+                prefetchPriority = priority;
+                prefetchPool = shutdown(prefetchPool);
+            }
+        }
+    }
+
+    /**
+     * Identical to <code>getPriority()</code> but applies only to
+     * <code>prefetchTiles()</code>.
+     */
+    public int getPrefetchPriority() {
+        return prefetchPriority;
+    }
+
+    /**
+     * Returns the appropriate pool, creating it if necessary, or
+     * <code>null</code> if its parallelism is zero.
+     */
+    private synchronized ForkJoinPool getPool(boolean isPrefetch) {
+        if (isPrefetch) {
+            if (prefetchPool == null && prefetchParallelism > 0) {
+                prefetchPool = createPool(prefetchParallelism,
+                                          prefetchPriority,
+                                          nameOfThisInstance + "Prefetch");
+            }
+            return prefetchPool;
+        } else {
+            if (pool == null && parallelism > 0) {
+                pool = createPool(parallelism, priority,
+                                  nameOfThisInstance + "Standard");
+            }
+            return pool;
+        }
+    }
+
+    /** Creates a pool of <code>Worker</code>s. */
+    private ForkJoinPool createPool(int parallelism, final int priority,
+                                    final String poolName) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory =
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private final AtomicInteger numThreads = new AtomicInteger();
+
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    Worker t = new Worker(pool, ForkJoinTileScheduler.this);
+                    t.setName(poolName + "-" + numThreads.getAndIncrement());
+                    t.setPriority(priority);
+                    return t;
+                }
+            };
+
+        // Tile computations are joined, so LIFO processing is used.
+        return new ForkJoinPool(parallelism, factory, null, false);
+    }
+
+    /**
+     * Shuts down the supplied pool, if any.  Tasks already submitted
+     * are allowed to complete.  Always returns <code>null</code>.
+     */
+    private static ForkJoinPool shutdown(ForkJoinPool pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        return null;
+    }
+
+    /**
+     * Starts the supplied tasks.  A worker of this scheduler forks them,
+     * any other thread submits them to the appropriate pool.  If that
+     * pool has no workers the tasks are computed by the calling thread.
+     * Exceptions are recorded in the tasks rather than thrown.
+     */
+    private void submit(ForkJoinTask[] tasks, boolean isPrefetch) {
+        if (isWorker() && !isPrefetch) {
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i].fork();
+            }
+            return;
+        }
+
+        ForkJoinPool p = getPool(isPrefetch);
+        for (int i = 0; i < tasks.length; i++) {
+            if (p != null) {
+                try {
+                    p.execute(tasks[i]);
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // The pool was replaced: compute the remaining tiles.
+                    p = null;
+                }
+            }
+            tasks[i].quietlyInvoke();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the calling thread is a worker of
+     * this scheduler.
+     */
+    boolean isWorker() {
+        Thread t = Thread.currentThread();
+        return t instanceof Worker && ((Worker)t).scheduler == this;
+    }
+
+    /** Shuts down all pools. */
+    protected void finalize() throws Throwable {
+        shutdown(pool);
+        shutdown(prefetchPool);
+        super.finalize();
+    }
+
+    void sendExceptionToListener(String message, Throwable e) {
+        ImagingListener listener =
+            ImageUtil.getImagingListener((RenderingHints)null);
+        listener.errorOccurred(message, e, this, false);
+    }
+
+    /** A worker thread recording the scheduler owning its pool. */
+    static final class Worker extends ForkJoinWorkerThread {
+
+        final ForkJoinTileScheduler scheduler;
+
+        Worker(ForkJoinPool pool, ForkJoinTileScheduler scheduler) {
+            super(pool);
+            this.scheduler = scheduler;
+        }
+    }
+
+    /**
+     * The computation of a single tile of an <code>OpImage</code>.  The
+     * uncached source tiles the tile depends on are forked and joined
+     * before <code>OpImage.computeTile()</code> is invoked.
+     */
+    static final class TileTask extends RecursiveTask {
+
+        final ForkJoinTileScheduler scheduler;
+        final OpImage owner;
+        final int tileX;
+        final int tileY;
+        final Object tileID;
+
+        TileTask(ForkJoinTileScheduler scheduler, OpImage owner,
+                 int tileX, int tileY, Object tileID) {
+            this.scheduler = scheduler;
+            this.owner = owner;
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.tileID = tileID;
+        }
+
+        /** Computes the tile, returning <code>null</code> on failure. */
+        protected Object compute() {
+            Raster tile = null;
+            try {
+                if (scheduler.isWorker()) {
+                    computeDependencies();
+                }
+
+                try {
+                    tile = owner.computeTile(tileX, tileY);
+                } catch (OutOfMemoryError e) {
+                    // Empty the cache and call System.gc()
+                    TileCache tileCache = owner.getTileCache();
+                    if (tileCache != null) {
+                        tileCache.flush();
+                        System.gc(); //slow
+                    }
+
+                    // Re-attempt to compute the tile.
+                    tile = owner.computeTile(tileX, tileY);
+                }
+            } catch (Throwable e) {
+                if (e instanceof Error) {
+                    throw (Error)e;
+                } else if (e instanceof CancellationException) {
+                    throw (CancellationException)e;
+                } else if (e instanceof RuntimeException) {
+                    scheduler.sendExceptionToListener(
+                        JaiI18N.getString("SunTileScheduler6"), e);
+                } else {
+                    String message = JaiI18N.getString("SunTileScheduler6");
+                    scheduler.sendExceptionToListener(
+                        message, new ImagingException(message, e));
+                }
+            } finally {
+                scheduler.tilesInProgress.remove(tileID, this);
+            }
+
+            return tile;
+        }
+
+        /**
+         * Forks a subtask for each source tile this tile depends on which
+         * is not in the cache of its image, and joins them.  Nothing is
+         * forked for a single dependency as it would be computed by this
+         * worker anyway.  The cache is probed with
+         * <code>containsTile()</code> so that the probe neither counts as
+         * an access nor brings back a tile from a secondary store.  The
+         * subtasks are computed under the cancellation state of this
+         * task, so that they observe the cancellation and the deadline of
+         * the request for this tile whichever worker steals them.
+         */
+        private void computeDependencies() {
+            List tasks = null;
+            TileCancellation cancellation = TileCancellation.current();
+
+            int numSources = owner.getNumSources();
+            for (int i = 0; i < numSources; i++) {
+                PlanarImage src = owner.getSourceImage(i);
+                if (src instanceof RenderedOp) {
+                    src = ((RenderedOp)src).getRendering();
+                }
+                if (!(src instanceof OpImage)) {
+                    continue;
+                }
+
+                TileCache cache = ((OpImage)src).getTileCache();
+                if (cache == null) {
+                    continue;
+                }
+
+                Point[] dependencies;
+                try {
+                    dependencies = owner.getTileDependencies(tileX, tileY, i);
+                } catch (RuntimeException e) {
+                    // The dependencies are only a hint.
+                    continue;
+                }
+                if (dependencies == null) {
+                    continue;
+                }
+
+                for (int j = 0; j < dependencies.length; j++) {
+                    Point p = dependencies[j];
+                    if (!cache.containsTile(src, p.x, p.y)) {
+                        if (tasks == null) {
+                            tasks = new ArrayList();
+                        }
+                        tasks.add(new SourceTileTask(src, p.x, p.y,
+                                                     cancellation));
+                    }
+                }
+            }
+
+            if (tasks == null || tasks.size() < 2) {
+                return;
+            }
+
+            int numTasks = tasks.size();
+            for (int i = 0; i < numTasks; i++) {
+                ((ForkJoinTask)tasks.get(i)).fork();
+            }
+
+            // Join in reverse order so that unstolen tasks are popped.
+            for (int i = numTasks - 1; i >= 0; i--) {
+                ((ForkJoinTask)tasks.get(i)).quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * Requests a source tile so that it is computed and cached before
+     * the dependent tile is computed.  The request is made under the
+     * cancellation state of the dependent tile, if any, and is skipped if
+     * that computation has been cancelled or its deadline has passed.
+     */
+    static final class SourceTileTask extends RecursiveAction {
+
+        final PlanarImage source;
+        final int tileX;
+        final int tileY;
+        final TileCancellation cancellation;   // may be null
+
+        SourceTileTask(PlanarImage source, int tileX, int tileY,
+                       TileCancellation cancellation) {
+            this.source = source;
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.cancellation = cancellation;
+        }
+
+        protected void compute() {
+            if (cancellation == null) {
+                request();
+                return;
+            }
+            if (cancellation.isSet()) {
+                return;
+            }
+
+            TileCancellation previous = cancellation.enter();
+            try {
+                request();
+            } finally {
+                TileCancellation.exit(previous);
+            }
+        }
+
+        private void request() {
+            try {
+                source.getTile(tileX, tileY);
+            } catch (RuntimeException e) {
+                // Reported when the dependent tile requests it again,
+                // unless it has been cancelled.
+            }
+        }
+    }
+
+    /**
+     * A request for a tile through <code>getTile()</code>, used for
+     * blocking, non-blocking and prefetch requests.  If a
+     * <code>Request</code> is supplied its status is maintained and its
+     * listeners are notified.
+     */
+    static final class RequestTask extends RecursiveAction {
+
+        final ForkJoinTileScheduler scheduler;
+        final PlanarImage owner;
+        final int tileX;
+        final int tileY;
+        final Raster[] tiles;        // the computed tiles; may be null
+        final int offset;            // offset into tiles
+        final Request request;       // may be null
+
+        RequestTask(ForkJoinTileScheduler scheduler,
+                    PlanarImage owner, int tileX, int tileY,
+                    Raster[] tiles, int offset, Request request) {
+            this.scheduler = scheduler;
+            this.owner = owner;
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.tiles = tiles;
+            this.offset = offset;
+            this.request = request;
+        }
+
+        protected void compute() {
+            if (request == null) {
+                Raster tile = owner.getTile(tileX, tileY);
+                if (tiles != null) {
+                    tiles[offset] = tile;
+                }
+                return;
+            }
+
+            // Update tile status to "processing" unless cancelled or
+            // expired.
+            Point p = new Point(tileX, tileY);
+            boolean cancelled = false;
+            synchronized (request.tileStatus) {
+                if (request.tileStatus.containsKey(p)) {
+                    return;
+                }
+                cancelled = request.isExpired(System.currentTimeMillis());
+                request.tileStatus.put(p, new Integer(cancelled ?
+                    TileRequest.TILE_STATUS_CANCELLED :
+                    TileRequest.TILE_STATUS_PROCESSING));
+            }
+
+            Exception exception = null;
+            if (!cancelled) {
+                // Compute the tile, and the source tiles forked for it,
+                // under the deadline of the request.
+                TileCancellation cancellation = request.deadline > 0 ?
+                    new TileCancellation(request.deadline) : null;
+                TileCancellation previous =
+                    cancellation != null ? cancellation.enter() : null;
+                try {
+                    tiles[offset] = owner.getTile(tileX, tileY);
+                } catch (CancellationException e) {
+                    cancelled = true;
+                } catch (Exception e) {
+                    exception = e;
+                } finally {
+                    if (cancellation != null) {
+                        TileCancellation.exit(previous);
+                    }
+                }
+
+                request.tileStatus.put(p, new Integer(cancelled ?
+                                       TileRequest.TILE_STATUS_CANCELLED :
+                                       exception == null ?
+                                       TileRequest.TILE_STATUS_COMPUTED :
+                                       TileRequest.TILE_STATUS_FAILED));
+            }
+
+            if (request.listeners == null) {
+                return;
+            }
+
+            TileRequest[] requests = new TileRequest[] {request};
+            Iterator iter = request.listeners.iterator();
+            while (iter.hasNext()) {
+                TileComputationListener listener =
+                    (TileComputationListener)iter.next();
+                if (cancelled) {
+                    listener.tileCancelled(scheduler, requests,
+                                           owner, tileX, tileY);
+                } else if (exception == null) {
+                    listener.tileComputed(scheduler, requests,
+                                          owner, tileX, tileY,
+                                          tiles[offset]);
+                } else {
+                    listener.tileComputationFailure(scheduler, requests,
+                                                    owner, tileX, tileY,
+                                                    exception);
+                }
+            }
+        }
+    }
+}
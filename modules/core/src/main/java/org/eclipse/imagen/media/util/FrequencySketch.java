@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.util;
+import java.util.Arrays;
+
+/**
+ * A probabilistic estimate of how often items have been seen, used by
+ * <code>TinyLFUTileEvictionPolicy</code> to decide admission.
+ *
+ * <p> This is a count-min sketch with four 4-bit counters per item,
+ * packed sixteen to a <code>long</code>.  When the number of counted
+ * items reaches ten times the expected number of distinct items all
+ * counters are halved, so that the estimate follows changes in the
+ * popularity of the items.  This class is not thread safe.
+ *
+ * @see TinyLFUTileEvictionPolicy
+ *
+ */
+final class FrequencySketch {
+
+    /** Clears the high bit of every counter after a shift. */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** Selects the low bit of every counter. */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /** The seeds of the four hash functions. */
+    private static final long[] SEED = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /** The maximum value of a counter. */
+    private static final int MAX_COUNT = 15;
+
+    private long[] table;
+    private int tableMask;
+
+    /** The number of increments after which the counters are halved. */
+    private int sampleSize;
+
+    /** The number of increments since the counters were last halved. */
+    private int size;
+
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /**
+     * Sizes the sketch for the given number of distinct items.  The
+     * sketch is only ever grown; growing it discards all counts.
+     */
+    void ensureCapacity(long maximumSize) {
+        int maximum = (int)Math.min(Math.max(maximumSize, 16),
+                                    Integer.MAX_VALUE >>> 4);
+
+        if ( table != null && table.length >= maximum ) {
+            return;
+        }
+
+        int length = Integer.highestOneBit(maximum - 1) << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * maximum;
+        size = 0;
+    }
+
+    /** Returns the estimated number of occurrences of an item, up to 15. */
+    int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+
+        for ( int i = 0; i < 4; i++ ) {
+            int shift = (start + i) << 2;
+            int count = (int)((table[indexOf(hash, i)] >>> shift) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /** Counts an occurrence of an item. */
+    void increment(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+
+        for ( int i = 0; i < 4; i++ ) {
+            int index = indexOf(hash, i);
+            int shift = (start + i) << 2;
+            long mask = 0xfL << shift;
+
+            if ( (table[index] & mask) != mask ) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if ( added && ++size >= sampleSize ) {
+            reset();
+        }
+    }
+
+    /** Forgets all counts. */
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+
+    /** Halves all counters. */
+    private void reset() {
+        int odd = 0;
+        for ( int i = 0; i < table.length; i++ ) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    /** Returns the table index of the i-th counter of an item. */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return (int)h & tableMask;
+    }
+
+    /** Mixes the bits of a poor quality hash code. */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.util;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.imagen.CachedTile;
+
+/**
+ * A <u>l</u>east <u>r</u>ecently <u>u</u>sed eviction policy.  This is
+ * the order used by <code>SunTileCache</code> and the default policy of
+ * <code>ConcurrentTileCache</code>.
+ *
+ * @see ConcurrentTileCache
+ *
+ */
+public final class LRUTileEvictionPolicy implements TileEvictionPolicy {
+
+    /** The tiles, least recently used first. */
+    private final LinkedHashMap tiles = new LinkedHashMap(16, 0.75F, true);
+
+    /** Returns "LRU". */
+    public String getName() {
+        return "LRU";
+    }
+
+    public void tileAdded(CachedTile tile) {
+        tiles.put(tile, Boolean.FALSE);
+    }
+
+    public void tileAccessed(CachedTile tile) {
+        if ( tiles.containsKey(tile) ) {
+            tiles.put(tile, Boolean.TRUE);
+        }
+    }
+
+    public void tileRemoved(CachedTile tile) {
+        tiles.remove(tile);
+    }
+
+    public CachedTile nextVictim(long memoryCapacity) {
+        Iterator iter = tiles.keySet().iterator();
+        return iter.hasNext() ? (CachedTile)iter.next() : null;
+    }
+
+    /** Returns 0: the LRU policy admits every tile. */
+    public long getRejectCount() {
+        return 0;
+    }
+
+    public void clear() {
+        tiles.clear();
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.util;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A store for tile data outside of the Java heap, used as the second
+ * tier of <code>SunTileCache</code>.  Tiles removed from the heap tier
+ * by memory control are copied here, and a request which misses the
+ * heap tier rebuilds the <code>Raster</code> from this copy instead of
+ * recomputing the tile.  Only the primitive sample arrays leave the
+ * heap; the <code>SampleModel</code> and the raster geometry are kept
+ * as metadata.
+ *
+ * <p> The storage is either direct <code>ByteBuffer</code>s or a
+ * memory-mapped scratch file.  It is divided into fixed size blocks so
+ * that the space released by one tile can be reused by any other.  When
+ * the store is full, the least recently stored tiles are discarded.
+ *
+ * <p> A store must be used by a single tile cache; it is installed with
+ * <code>SunTileCache.setOffHeapTileStore()</code>.
+ *
+ * @see SunTileCache
+ *
+ */
+public final class OffHeapTileStore {
+
+    /** The size of a storage block in bytes; a multiple of 8. */
+    private static final int BLOCK_SIZE = 8 * 1024;
+
+    /** The number of blocks in a buffer segment (1 GB). */
+    private static final int SEGMENT_BLOCKS = (1 << 30) / BLOCK_SIZE;
+
+    /** The storage, in segments of at most SEGMENT_BLOCKS blocks. */
+    private final ByteBuffer[] segments;
+
+    /** The indices of the unused blocks. */
+    private final int[] freeBlocks;
+
+    /** The number of valid entries of freeBlocks. */
+    private int freeCount;
+
+    /** The stored tiles, oldest first. */
+    private final LinkedHashMap entries = new LinkedHashMap();
+
+    /** The memory capacity of the store in bytes. */
+    private final long memoryCapacity;
+
+    /** The scratch file or <code>null</code> for direct buffers. */
+    private File file;
+
+    /** The channel of the scratch file. */
+    private FileChannel channel;
+
+    /** The amount of tile data currently stored. */
+    private long memoryUsage = 0;
+
+    /**
+     * Constructs a store backed by direct <code>ByteBuffer</code>s.
+     *
+     * @param memoryCapacity  The maximum size of the stored data in bytes.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is not positive.
+     */
+    public OffHeapTileStore(long memoryCapacity) {
+        int numBlocks = numBlocks(memoryCapacity);
+
+        this.memoryCapacity = (long)numBlocks * BLOCK_SIZE;
+        segments = new ByteBuffer[(numBlocks + SEGMENT_BLOCKS - 1) /
+                                  SEGMENT_BLOCKS];
+
+        for ( int i = 0; i < segments.length; i++ ) {
+            segments[i] =
+                ByteBuffer.allocateDirect(segmentSize(numBlocks, i));
+        }
+
+        freeBlocks = initFreeBlocks(numBlocks);
+        freeCount = numBlocks;
+    }
+
+    /**
+     * Constructs a store backed by a memory-mapped scratch file created
+     * in the given directory.  The file is deleted by
+     * <code>dispose()</code> or when the virtual machine exits.
+     *
+     * @param memoryCapacity  The maximum size of the stored data in bytes.
+     * @param directory  The directory of the scratch file, or
+     *        <code>null</code> for the default temporary directory.
+     *
+     * @throws IllegalArgumentException  If <code>memoryCapacity</code>
+     *         is not positive.
+     * @throws IOException  If the scratch file cannot be created.
+     */
+    public OffHeapTileStore(long memoryCapacity, File directory)
+        throws IOException {
+        int numBlocks = numBlocks(memoryCapacity);
+
+        this.memoryCapacity = (long)numBlocks * BLOCK_SIZE;
+        segments = new ByteBuffer[(numBlocks + SEGMENT_BLOCKS - 1) /
+                                  SEGMENT_BLOCKS];
+
+        file = File.createTempFile("imagen", ".tiles", directory);
+        file.deleteOnExit();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(this.memoryCapacity);
+            channel = raf.getChannel();
+
+            long position = 0;
+            for ( int i = 0; i < segments.length; i++ ) {
+                int size = segmentSize(numBlocks, i);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                          position, size);
+                position += size;
+            }
+        } catch (IOException e) {
+            raf.close();
+            file.delete();
+            throw e;
+        }
+
+        freeBlocks = initFreeBlocks(numBlocks);
+        freeCount = numBlocks;
+    }
+
+    private static int numBlocks(long memoryCapacity) {
+        if ( memoryCapacity <= 0 ) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("OffHeapTileStore0"));
+        }
+        return (int)Math.min((memoryCapacity + BLOCK_SIZE - 1) / BLOCK_SIZE,
+                             Integer.MAX_VALUE);
+    }
+
+    private static int segmentSize(int numBlocks, int segment) {
+        return Math.min(numBlocks - segment * SEGMENT_BLOCKS,
+                        SEGMENT_BLOCKS) * BLOCK_SIZE;
+    }
+
+    private static int[] initFreeBlocks(int numBlocks) {
+        int[] blocks = new int[numBlocks];
+        for ( int i = 0; i < numBlocks; i++ ) {
+            blocks[i] = numBlocks - 1 - i;
+        }
+        return blocks;
+    }
+
+    /** Returns the memory capacity of the store in bytes. */
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /** Returns the amount of tile data currently stored in bytes. */
+    public synchronized long getMemoryUsed() {
+        return memoryUsage;
+    }
+
+    /** Returns the number of tiles currently stored. */
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    /** Discards all stored tiles. */
+    public synchronized void flush() {
+        Iterator iter = entries.values().iterator();
+        while ( iter.hasNext() ) {
+            release((Entry)iter.next());
+        }
+        entries.clear();
+    }
+
+    /**
+     * Discards all stored tiles and releases the scratch file, if any.
+     * The store must not be used afterwards.
+     */
+    public synchronized void dispose() {
+        flush();
+
+        if ( channel != null ) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do; the file is deleted on exit
+            }
+            file.delete();
+            channel = null;
+        }
+    }
+
+    /**
+     * Copies a tile into the store, replacing any tile stored under the
+     * same key.  Returns <code>false</code> if the tile data is larger
+     * than the store or of an unsupported type.
+     */
+    synchronized boolean put(Object key, Raster tile, Object tileCacheMetric) {
+        remove(key);
+
+        DataBuffer db = tile.getDataBuffer();
+        int dataType = db.getDataType();
+
+        if ( dataType < DataBuffer.TYPE_BYTE ||
+             dataType > DataBuffer.TYPE_DOUBLE ) {
+            return false;
+        }
+
+        int elementSize = DataBuffer.getDataTypeSize(dataType) / 8;
+
+        int numBanks = db.getNumBanks();
+        int size = db.getSize();
+        long memorySize = (long)elementSize * size * numBanks;
+        int numBlocks = (int)((memorySize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+
+        if ( memorySize > memoryCapacity ) {
+            return false;
+        }
+
+        // Make room by discarding the oldest tiles.
+        Iterator iter = entries.values().iterator();
+        while ( freeCount < numBlocks ) {
+            Entry eldest = (Entry)iter.next();
+            iter.remove();
+            release(eldest);
+        }
+
+        Entry e = new Entry(key, tile, tileCacheMetric, numBlocks);
+        for ( int i = 0; i < numBlocks; i++ ) {
+            e.blocks[i] = freeBlocks[--freeCount];
+        }
+
+        int[] offsets = db.getOffsets();
+        for ( int b = 0; b < numBanks; b++ ) {
+            transfer(e.blocks, (long)b * size * elementSize,
+                     getBank(db, b), offsets[b], size, dataType, true);
+        }
+
+        e.memorySize = memorySize;
+        memoryUsage += memorySize;
+        entries.put(key, e);
+
+        return true;
+    }
+
+    /**
+     * Removes a tile from the store and rebuilds its
+     * <code>Raster</code>.  Returns <code>null</code> if no tile is
+     * stored under the key.
+     */
+    synchronized Entry take(Object key) {
+        Entry e = (Entry)entries.remove(key);
+
+        if ( e == null ) {
+            return null;
+        }
+
+        int dataType = e.sampleModel.getDataType();
+        int elementSize = DataBuffer.getDataTypeSize(dataType) / 8;
+        Object[] banks = new Object[e.numBanks];
+
+        for ( int b = 0; b < e.numBanks; b++ ) {
+            banks[b] = createBank(dataType, e.size);
+            transfer(e.blocks, (long)b * e.size * elementSize,
+                     banks[b], 0, e.size, dataType, false);
+        }
+
+        release(e);
+
+        WritableRaster wr =
+            Raster.createWritableRaster(e.sampleModel,
+                                        createDataBuffer(dataType, banks,
+                                                         e.size),
+                                        e.sampleModelTranslate);
+
+        if ( !wr.getBounds().equals(e.bounds) ) {
+            wr = wr.createWritableChild(e.bounds.x, e.bounds.y,
+                                        e.bounds.width, e.bounds.height,
+                                        e.bounds.x, e.bounds.y, null);
+        }
+
+        e.tile = wr;
+        return e;
+    }
+
+    /** Returns whether a tile is stored under a key. */
+    synchronized boolean contains(Object key) {
+        return entries.containsKey(key);
+    }
+
+    /** Discards the tile stored under a key, if any. */
+    synchronized void remove(Object key) {
+        Entry e = (Entry)entries.remove(key);
+
+        if ( e != null ) {
+            release(e);
+        }
+    }
+
+    /** Returns the blocks of an entry to the free list. */
+    private void release(Entry e) {
+        for ( int i = e.blocks.length - 1; i >= 0; i-- ) {
+            freeBlocks[freeCount++] = e.blocks[i];
+        }
+        memoryUsage -= e.memorySize;
+    }
+
+    /**
+     * Copies <code>length</code> elements between a bank array and the
+     * blocks of an entry, starting at byte <code>position</code> of the
+     * entry.  Since the block size is a multiple of the element size no
+     * element straddles two blocks.
+     */
+    private void transfer(int[] blocks, long position,
+                          Object array, int offset, int length,
+                          int dataType, boolean store) {
+        int elementSize = DataBuffer.getDataTypeSize(dataType) / 8;
+
+        while ( length > 0 ) {
+            int block = blocks[(int)(position / BLOCK_SIZE)];
+            int start = (int)(position % BLOCK_SIZE);
+            int n = Math.min(length, (BLOCK_SIZE - start) / elementSize);
+
+            ByteBuffer buf = segments[block / SEGMENT_BLOCKS].duplicate();
+            int base = (block % SEGMENT_BLOCKS) * BLOCK_SIZE + start;
+            buf.limit(base + n * elementSize);
+            buf.position(base);
+            buf = buf.slice().order(ByteOrder.nativeOrder());
+
+            switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                if ( store ) {
+                    buf.put((byte[])array, offset, n);
+                } else {
+                    buf.get((byte[])array, offset, n);
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                if ( store ) {
+                    buf.asShortBuffer().put((short[])array, offset, n);
+                } else {
+                    buf.asShortBuffer().get((short[])array, offset, n);
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                if ( store ) {
+                    buf.asIntBuffer().put((int[])array, offset, n);
+                } else {
+                    buf.asIntBuffer().get((int[])array, offset, n);
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                if ( store ) {
+                    buf.asFloatBuffer().put((float[])array, offset, n);
+                } else {
+                    buf.asFloatBuffer().get((float[])array, offset, n);
+                }
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                if ( store ) {
+                    buf.asDoubleBuffer().put((double[])array, offset, n);
+                } else {
+                    buf.asDoubleBuffer().get((double[])array, offset, n);
+                }
+                break;
+            }
+
+            offset += n;
+            length -= n;
+            position += (long)n * elementSize;
+        }
+    }
+
+    private static Object getBank(DataBuffer db, int bank) {
+        switch (db.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            return ((DataBufferByte)db).getData(bank);
+        case DataBuffer.TYPE_USHORT:
+            return ((DataBufferUShort)db).getData(bank);
+        case DataBuffer.TYPE_SHORT:
+            return ((DataBufferShort)db).getData(bank);
+        case DataBuffer.TYPE_INT:
+            return ((DataBufferInt)db).getData(bank);
+        case DataBuffer.TYPE_FLOAT:
+            return DataBufferUtils.getDataFloat(db, bank);
+        default:
+            return DataBufferUtils.getDataDouble(db, bank);
+        }
+    }
+
+    private static Object createBank(int dataType, int size) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return new byte[size];
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            return new short[size];
+        case DataBuffer.TYPE_INT:
+            return new int[size];
+        case DataBuffer.TYPE_FLOAT:
+            return new float[size];
+        default:
+            return new double[size];
+        }
+    }
+
+    private static DataBuffer createDataBuffer(int dataType, Object[] banks,
+                                               int size) {
+        int numBanks = banks.length;
+
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            byte[][] bytes = new byte[numBanks][];
+            System.arraycopy(banks, 0, bytes, 0, numBanks);
+            return new DataBufferByte(bytes, size);
+        case DataBuffer.TYPE_USHORT:
+            short[][] ushorts = new short[numBanks][];
+            System.arraycopy(banks, 0, ushorts, 0, numBanks);
+            return new DataBufferUShort(ushorts, size);
+        case DataBuffer.TYPE_SHORT:
+            short[][] shorts = new short[numBanks][];
+            System.arraycopy(banks, 0, shorts, 0, numBanks);
+            return new DataBufferShort(shorts, size);
+        case DataBuffer.TYPE_INT:
+            int[][] ints = new int[numBanks][];
+            System.arraycopy(banks, 0, ints, 0, numBanks);
+            return new DataBufferInt(ints, size);
+        case DataBuffer.TYPE_FLOAT:
+            float[][] floats = new float[numBanks][];
+            System.arraycopy(banks, 0, floats, 0, numBanks);
+            return DataBufferUtils.createDataBufferFloat(floats, size);
+        default:
+            double[][] doubles = new double[numBanks][];
+            System.arraycopy(banks, 0, doubles, 0, numBanks);
+            return DataBufferUtils.createDataBufferDouble(doubles, size);
+        }
+    }
+
+    /** The metadata of a stored tile. */
+    static final class Entry {
+        final Object key;
+        final Object tileCacheMetric;
+        final SampleModel sampleModel;
+        final Point sampleModelTranslate;
+        final Rectangle bounds;
+        final int numBanks;
+        final int size;
+        final int[] blocks;
+        long memorySize;
+
+        /** The rebuilt tile, set by <code>take()</code>. */
+        Raster tile;
+
+        Entry(Object key, Raster tile, Object tileCacheMetric, int numBlocks) {
+            this.key = key;
+            this.tileCacheMetric = tileCacheMetric;
+            this.sampleModel = tile.getSampleModel();
+            this.sampleModelTranslate =
+                new Point(tile.getSampleModelTranslateX(),
+                          tile.getSampleModelTranslateY());
+            this.bounds = tile.getBounds();
+            this.numBanks = tile.getDataBuffer().getNumBanks();
+            this.size = tile.getDataBuffer().getSize();
+            this.blocks = new int[numBlocks];
+        }
+    }
+}
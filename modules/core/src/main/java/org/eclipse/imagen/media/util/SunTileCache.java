@@ -31,7 +31,10 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.Vector;
 
+import org.eclipse.imagen.CachedTile;
 import org.eclipse.imagen.EnumeratedParameter;
+import org.eclipse.imagen.OpImage;
+import org.eclipse.imagen.RecyclingTileFactory;
 import org.eclipse.imagen.TileCache;
 import org.eclipse.imagen.util.ImagingListener;
 
@@ -50,6 +53,15 @@ import org.eclipse.imagen.util.ImagingListener;
  * greatly depends on the type of images involved.  In fact, the tile
  * capacity is rather meaningless.
  *
+ * <p> An <code>OffHeapTileStore</code> may be installed as a second tier
+ * using <code>setOffHeapTileStore()</code>.  Tiles removed by memory
+ * control are then copied into the store, outside of the Java heap, and
+ * a later request for such a tile rebuilds it from the store and moves
+ * it back into this cache instead of returning <code>null</code>.
+ * Tiles removed with <code>remove()</code>, <code>removeTiles()</code>
+ * or <code>flush()</code> are discarded from the store as well.
+ *
+ * @see OffHeapTileStore
  * @see org.eclipse.imagen.TileCache
  *
  */
@@ -121,6 +133,9 @@ public final class SunTileCache extends Observable
     /** Diagnostics enable/disable */
     private boolean diagnostics = false;
 
+    /** The second tier for tiles removed by memory control, or null. */
+    private OffHeapTileStore offHeapStore = null;
+
     // diagnostic actions
     // !!! If actions are changed in any way (removal, modification, addition)
     // then the getCachedTileActions() method below should be changed to match.
@@ -316,11 +331,18 @@ public final class SunTileCache extends Observable
                                     int tileX,
                                     int tileY) {
 
+        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
+
+        // The store may hold the tile whatever the capacity of the
+        // heap tier.
+        if ( offHeapStore != null ) {
+            offHeapStore.remove(key);
+        }
+
         if ( memoryCapacity == 0 ) {
             return;
         }
 
-        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
         SunCachedTile ct = (SunCachedTile) cache.get(key);
 
         if ( ct != null ) {
@@ -411,7 +433,10 @@ public final class SunTileCache extends Observable
         SunCachedTile ct = (SunCachedTile)cache.get(key);
 
         if ( ct == null ) {
-            missCount++;
+            tile = rehydrate(owner, tileX, tileY, key);
+            if ( tile == null ) {
+                missCount++;
+            }
         } else {    // found tile in cache
             tile = (Raster) ct.getTile();
 
@@ -447,6 +472,27 @@ public final class SunTileCache extends Observable
         return tile;
     }
 
+    /**
+     * Returns whether the cache holds a tile, in memory or in the
+     * off-heap store, without retrieving it.  Neither the statistics
+     * nor the last-access time are updated.
+     *
+     * @param owner  The image the tile blongs to.
+     * @param tileX  The tile's X index within the image.
+     * @param tileY  The tile's Y index within the image.
+     */
+    public synchronized boolean containsTile(RenderedImage owner,
+                                             int tileX,
+                                             int tileY) {
+        if ( memoryCapacity == 0 ) {
+            return false;
+        }
+
+        Object key = SunCachedTile.hashKey(owner, tileX, tileY);
+        return cache.containsKey(key) ||
+            ( offHeapStore != null && offHeapStore.contains(key) );
+    }
+
     /**
      * Retrieves a contiguous array of all tiles in the cache which are
      * owned by the specified image.  May be <code>null</code> if there
@@ -485,8 +531,10 @@ public final class SunTileCache extends Observable
                     SunCachedTile ct = (SunCachedTile)cache.get(key);
 
                     if ( ct == null ) {
-                        raster = null;
-                        missCount++;
+                        raster = rehydrate(owner, x, y, key);
+                        if ( raster == null ) {
+                            missCount++;
+                        }
                     } else {    // found tile in cache
                         raster = (Raster) ct.getTile();
 
@@ -687,8 +735,10 @@ public final class SunTileCache extends Observable
             SunCachedTile ct = (SunCachedTile)cache.get(key);
 
             if ( ct == null ) {
-                tiles[i] = null;
-                missCount++;
+                tiles[i] = rehydrate(owner, tileX, tileY, key);
+                if ( tiles[i] == null ) {
+                    missCount++;
+                }
             } else {    // found tile in cache
                 tiles[i] = (Raster) ct.getTile();
 
@@ -789,6 +839,10 @@ public final class SunTileCache extends Observable
             cacheSortedSet = Collections.synchronizedSortedSet( new TreeSet(comparator) );
         }
 
+        if ( offHeapStore != null ) {
+            offHeapStore.flush();
+        }
+
         // force reset after diagnostics
         tileCount   = 0;
         timeStamp   = 0;
@@ -948,6 +1002,9 @@ public final class SunTileCache extends Observable
                 memoryUsage -= last.memorySize;
                 tileCount--;
 
+                spill(ct);
+                reclaim(ct);
+
                 last = last.previous;
 
                 if (last != null) {
@@ -1034,6 +1091,9 @@ public final class SunTileCache extends Observable
             // remove reference in the hashtable
             cache.remove(ct.key);
 
+            spill(ct);
+            reclaim(ct);
+
             // diagnostics
             if ( diagnostics ) {
                 ct.action = REMOVE_FROM_MEMCON;
@@ -1050,6 +1110,82 @@ public final class SunTileCache extends Observable
         }
     }
 
+    /**
+     * Copies a tile removed by memory control into the off-heap store,
+     * unless its owner has already been garbage collected.
+     */
+    private final void spill(SunCachedTile ct) {
+        if ( offHeapStore != null && ct.getOwner() != null ) {
+            offHeapStore.put(ct.key, ct.tile, ct.tileCacheMetric);
+        }
+    }
+
+    /**
+     * Hands a tile removed by memory control to the
+     * <code>RecyclingTileFactory</code> of its owner so that its arrays
+     * are reused once the tile is no longer referenced, provided that
+     * the owner has enabled cached tile recycling.  As an array obtained
+     * from the <code>DataBuffer</code> of the tile may outlive the tile,
+     * this is not done by default.
+     */
+    static void reclaim(CachedTile ct) {
+        RenderedImage owner = ct.getOwner();
+        if ( owner instanceof OpImage &&
+             ((OpImage)owner).isCachedTileRecyclingEnabled() ) {
+            Object recycler = ((OpImage)owner).getTileRecycler();
+            if ( recycler instanceof RecyclingTileFactory ) {
+                ((RecyclingTileFactory)recycler).reclaimTile(ct.getTile());
+            }
+        }
+    }
+
+    /**
+     * Moves a tile from the off-heap store back into this cache.
+     * Returns <code>null</code> if the store does not hold the tile.
+     */
+    private final Raster rehydrate(RenderedImage owner,
+                                   int tileX,
+                                   int tileY,
+                                   Object key) {
+        if ( offHeapStore == null ) {
+            return null;
+        }
+
+        OffHeapTileStore.Entry e = offHeapStore.take(key);
+        if ( e == null ) {
+            return null;
+        }
+
+        hitCount++;
+        add(owner, tileX, tileY, e.tile, e.tileCacheMetric);
+
+        return e.tile;
+    }
+
+    /**
+     * Sets the second tier of this cache.  Tiles removed by memory
+     * control are subsequently copied into <code>store</code>, from
+     * which they are restored when requested again.  The tiles held by a
+     * previously installed store are discarded.
+     *
+     * @param store The off-heap tile store or <code>null</code> to
+     *        disable the second tier.
+     */
+    public synchronized void setOffHeapTileStore(OffHeapTileStore store) {
+        if ( offHeapStore != null && offHeapStore != store ) {
+            offHeapStore.flush();
+        }
+        offHeapStore = store;
+    }
+
+    /**
+     * Returns the second tier of this cache or <code>null</code> if
+     * none is installed.
+     */
+    public synchronized OffHeapTileStore getOffHeapTileStore() {
+        return offHeapStore;
+    }
+
     /**
      *  The <code>Comparator</code> is used to produce an
      *  ordered list of tiles based on a user defined
@@ -30,9 +30,11 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.imagen.OpImage;
 import org.eclipse.imagen.PlanarImage;
@@ -60,8 +62,20 @@ class Request implements TileRequest {
 
     final Hashtable tileStatus;
 
+    final int priority;
+    final long deadline;
+
     /**
-     * Constructs a <code>Request</code>.
+     * <code>Map</code> of the indices of the tiles of this request which
+     * are being computed to the <code>RequestJob</code> computing them.
+     * Only accessed while holding the lock on the
+     * <code>tileRequests</code> of the scheduler.
+     */
+    final Hashtable runningJobs;
+
+    /**
+     * Constructs a <code>Request</code> with a priority of zero and
+     * no deadline.
      *
      * @param scheduler The scheduler processing this request.
      * @param image The image for which tiles are being computed.
@@ -78,6 +92,32 @@ class Request implements TileRequest {
             PlanarImage image,
             Point[] tileIndices,
             TileComputationListener[] tileListeners) {
+        this(scheduler, image, tileIndices, tileListeners, 0, 0L);
+    }
+
+    /**
+     * Constructs a <code>Request</code>.
+     *
+     * @param scheduler The scheduler processing this request.
+     * @param image The image for which tiles are being computed.
+     * @param tileIndices The indices of the tiles to be computed.
+     * @param tileListeners The listeners to be notified of tile
+     *        computation, cancellation, or failure.
+     * @param priority The priority of the request.
+     * @param deadline The time after which the tiles are no longer
+     *        needed, or zero if there is no deadline.
+     *
+     * @exception IllegalArgumentException if <code>scheduler</code>,
+     *            <code>image</code>, or <code>tileIndices</code> is
+     *            <code>null</code> or if <code>tileIndices</code> is
+     *            zero-length.
+     */
+    Request(TileScheduler scheduler,
+            PlanarImage image,
+            Point[] tileIndices,
+            TileComputationListener[] tileListeners,
+            int priority,
+            long deadline) {
 
         // Save a reference to the scheduler.
         if(scheduler == null) {
@@ -117,6 +157,15 @@ class Request implements TileRequest {
 
         // Initialize status table.
         tileStatus = new Hashtable(tileIndices.length);
+
+        this.priority = priority;
+        this.deadline = deadline;
+        runningJobs = new Hashtable();
+    }
+
+    /** Whether the deadline of this request has passed. */
+    boolean isExpired(long now) {
+        return deadline > 0 && now > deadline;
     }
 
     // --- TileRequest implementation ---
@@ -151,6 +200,28 @@ class Request implements TileRequest {
         return status;
     }
 
+    public int getTileCount(int status) {
+        if(status < TileRequest.TILE_STATUS_PENDING ||
+           status > TileRequest.TILE_STATUS_FAILED) {
+            throw new IllegalArgumentException(); // Internal error - no message.
+        }
+
+        synchronized(tileStatus) {
+            if(status == TileRequest.TILE_STATUS_PENDING) {
+                return indices.size() - tileStatus.size();
+            }
+
+            int count = 0;
+            Iterator iter = tileStatus.values().iterator();
+            while(iter.hasNext()) {
+                if(((Integer)iter.next()).intValue() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
     public void cancelTiles(Point[] tileIndices) {
         // Forward the call to the scheduler.
         scheduler.cancelTiles(this, tileIndices);
@@ -198,6 +269,11 @@ final class RequestJob implements Job {
     final Raster[] tiles;        // the computed tiles
     final int offset;            // offset into arrays
 
+    int priority;                // highest priority of the requests
+
+    List reqList = null;         // the requests while computing
+    TileCancellation cancellation = null; // cancellation while computing
+
     boolean done = false;        // flag indicating completion status
     Exception exception = null;	 // Any exception that might have occured
 				 // during computeTile
@@ -205,21 +281,25 @@ final class RequestJob implements Job {
     /** Constructor. */
     RequestJob(SunTileScheduler scheduler,
                PlanarImage owner, int tileX, int tileY,
-               Raster[] tiles, int offset) {
+               Raster[] tiles, int offset, int priority) {
         this.scheduler = scheduler;
         this.owner = owner;
         this.tileX = tileX;
         this.tileY = tileY;
         this.tiles = tiles;
         this.offset = offset;
+        this.priority = priority;
     }
 
     /**
      * Tile computation. Does the actual call to getTile().
      */
     public void compute() {
+        Point p = new Point(tileX, tileY);
+
         // Get the Request List.
         List reqList;
+        List expired = null;
         synchronized(scheduler.tileRequests) {
             // Initialize the tile ID.
             Object tileID = SunTileScheduler.tileKey(owner, tileX, tileY);
@@ -229,65 +309,113 @@ final class RequestJob implements Job {
 
             // Remove the tile Job from the job Map.
             scheduler.tileJobs.remove(tileID);
+
+            if(reqList != null) {
+                // Drop the requests whose deadline has passed while queued.
+                long now = System.currentTimeMillis();
+                Iterator reqIter = reqList.iterator();
+                while(reqIter.hasNext()) {
+                    Request r = (Request)reqIter.next();
+                    if(r.isExpired(now)) {
+                        reqIter.remove();
+                        if(expired == null) {
+                            expired = new ArrayList();
+                        }
+                        expired.add(r);
+                    }
+                }
+
+                // Register the job so that cancelTiles() can flag it.
+                if(!reqList.isEmpty()) {
+                    this.reqList = reqList;
+                    cancellation = new TileCancellation(
+                        SunTileScheduler.getDeadline(reqList));
+
+                    // Update tile status to "processing".
+                    Integer tileStatus =
+                        new Integer(TileRequest.TILE_STATUS_PROCESSING);
+                    reqIter = reqList.iterator();
+                    while(reqIter.hasNext()) {
+                        Request r = (Request)reqIter.next();
+                        r.tileStatus.put(p, tileStatus);
+                        r.runningJobs.put(p, this);
+                    }
+                }
+            }
+        }
+
+        if(expired != null) {
+            scheduler.notifyCancelled(expired, owner, tileX, tileY);
         }
 
         // Check whether reqList is valid in case job was cancelled while
         // blocking on the tileRequests Map above.
-        // XXX Do not need empty check in next line?
-        if(reqList != null && !reqList.isEmpty()) {
-            // Update tile status to "processing".
-            Point p = new Point(tileX, tileY);
-            Integer tileStatus = new Integer(TileRequest.TILE_STATUS_PROCESSING);
-            Iterator reqIter = reqList.iterator();
-            while(reqIter.hasNext()) {
-                Request r = (Request)reqIter.next();
-                r.tileStatus.put(p, tileStatus);
-            }
-
+        if(this.reqList != null) {
+            boolean cancelled = false;
+            TileCancellation previous = cancellation.enter();
             try {
                 tiles[offset] = owner.getTile(tileX, tileY);
+            } catch (CancellationException e) {
+                cancelled = true;
             } catch (Exception e) {
                 exception = e;
             } finally {
-                // Extract the Set of all TileComputationListeners.
-                int numReq = reqList.size();
-                Set listeners = SunTileScheduler.getListeners(reqList);
-
-                // XXX Do not need empty check in next line.
-                if(listeners != null && !listeners.isEmpty()) {
-                    // Get TileRequests as an array for later use.
-                    TileRequest[] requests =
-                        (TileRequest[])reqList.toArray(new TileRequest[0]);
+                TileCancellation.exit(previous);
 
-                    // Update tile status as needed.
-                    tileStatus = new Integer(exception == null ?
-                                             TileRequest.TILE_STATUS_COMPUTED :
-                                             TileRequest.TILE_STATUS_FAILED);
+                // Get the requests which have not been cancelled meanwhile.
+                TileRequest[] requests;
+                synchronized(scheduler.tileRequests) {
+                    requests =
+                        (TileRequest[])reqList.toArray(new TileRequest[0]);
+                    for(int i = 0; i < requests.length; i++) {
+                        ((Request)requests[i]).runningJobs.remove(p);
+                    }
+                }
+                int numReq = requests.length;
+
+                if(cancelled) {
+                    scheduler.notifyCancelled(Arrays.asList(requests),
+                                              owner, tileX, tileY);
+                } else if(numReq > 0) {
+                    // Update tile status.
+                    Integer tileStatus =
+                        new Integer(exception == null ?
+                                    TileRequest.TILE_STATUS_COMPUTED :
+                                    TileRequest.TILE_STATUS_FAILED);
                     for(int i = 0; i < numReq; i++) {
                         ((Request)requests[i]).tileStatus.put(p, tileStatus);
                     }
 
-                    // Create an Iterator over the listeners.
-                    Iterator iter = listeners.iterator();
+                    // Extract the Set of all TileComputationListeners.
+                    Set listeners =
+                        SunTileScheduler.getListeners(Arrays.asList(requests));
 
-                    // Notify listeners.
-                    if(exception == null) {
-                        // Tile computation successful.
-                        while(iter.hasNext()) {
-                            TileComputationListener listener =
-                                (TileComputationListener)iter.next();
-                            listener.tileComputed(scheduler, requests,
-                                                  owner, tileX, tileY,
-                                                  tiles[offset]);
-                        }
-                    } else {
-                        // Tile computation unsuccessful.
-                        while(iter.hasNext()) {
-                            TileComputationListener listener =
-                                (TileComputationListener)iter.next();
-                            listener.tileComputationFailure(scheduler, requests,
-                                                            owner, tileX, tileY,
-                                                            exception);
+                    // XXX Do not need empty check in next line.
+                    if(listeners != null && !listeners.isEmpty()) {
+                        // Create an Iterator over the listeners.
+                        Iterator iter = listeners.iterator();
+
+                        // Notify listeners.
+                        if(exception == null) {
+                            // Tile computation successful.
+                            while(iter.hasNext()) {
+                                TileComputationListener listener =
+                                    (TileComputationListener)iter.next();
+                                listener.tileComputed(scheduler, requests,
+                                                      owner, tileX, tileY,
+                                                      tiles[offset]);
+                            }
+                        } else {
+                            // Tile computation unsuccessful.
+                            while(iter.hasNext()) {
+                                TileComputationListener listener =
+                                    (TileComputationListener)iter.next();
+                                listener.tileComputationFailure(scheduler,
+                                                                requests,
+                                                                owner,
+                                                                tileX, tileY,
+                                                                exception);
+                            }
                         }
                     }
                 }
@@ -485,6 +613,14 @@ class WorkerThread extends Thread {
  * a mechanism for scheduling tile calculation.  Multi-threading is
  * used whenever possible.
  *
+ * <p> Tiles requested by blocking calls are computed first.  The tiles
+ * of non-blocking requests are then computed in order of decreasing
+ * request priority, and in the order they were requested for equal
+ * priorities.  The tiles of a request whose deadline has passed are
+ * cancelled when they are dequeued, and cancellation of a request also
+ * reaches tiles whose computation has already started; see
+ * <code>TileCancellation</code>.
+ *
  * @see org.eclipse.imagen.TileScheduler
  */
 public final class SunTileScheduler implements TileScheduler {
@@ -599,6 +735,12 @@ public final class SunTileScheduler implements TileScheduler {
     /** The name of this instance. */
     private String nameOfThisInstance;
 
+    /**
+     * The value passed to threads waiting for a tile in
+     * <code>scheduleTile()</code> when its computation was cancelled.
+     */
+    private static final Object CANCELLED = new Object();
+
     /**
      * Returns the hash table "key" as a <code>Object</code> for this
      * tile.  For <code>PlanarImage</code> and
@@ -643,6 +785,54 @@ public final class SunTileScheduler implements TileScheduler {
         return listeners;
     }
 
+    /**
+     * Returns the latest deadline of the supplied <code>List</code> of
+     * <code>Request</code>s, or zero if one of them has no deadline.
+     */
+    static long getDeadline(List reqList) {
+        long deadline = 0L;
+        int numReq = reqList.size();
+        for(int j = 0; j < numReq; j++) {
+            Request req = (Request)reqList.get(j);
+            if(req.deadline <= 0) {
+                return 0L;
+            }
+            deadline = Math.max(deadline, req.deadline);
+        }
+
+        return deadline;
+    }
+
+    /**
+     * Sets the status of a tile of the supplied <code>Request</code>s to
+     * "cancelled" and notifies their listeners.
+     */
+    void notifyCancelled(List reqList, PlanarImage owner,
+                         int tileX, int tileY) {
+        int numReq = reqList.size();
+        if(numReq == 0) {
+            return;
+        }
+
+        Point p = new Point(tileX, tileY);
+        Integer tileStatus = new Integer(TileRequest.TILE_STATUS_CANCELLED);
+        TileRequest[] requests =
+            (TileRequest[])reqList.toArray(new TileRequest[numReq]);
+        for(int i = 0; i < numReq; i++) {
+            ((Request)requests[i]).tileStatus.put(p, tileStatus);
+        }
+
+        Set listeners = getListeners(reqList);
+        if(listeners != null) {
+            Iterator iter = listeners.iterator();
+            while(iter.hasNext()) {
+                TileComputationListener listener =
+                    (TileComputationListener)iter.next();
+                listener.tileCancelled(this, requests, owner, tileX, tileY);
+            }
+        }
+    }
+
     /**
      * Converts the supplied <code>Exception</code>'s stack trace
      * to a <code>String</code>.
@@ -708,12 +898,20 @@ public final class SunTileScheduler implements TileScheduler {
                       Raster[] tiles, int offset, int numTiles,
                       Request request) {
         Exception exception = null;
+        boolean expired = false;
 
         int j = offset;
         if(request == null || request.listeners == null) {
             for(int i = 0; i < numTiles; i++, j++) {
                 Point p = tileIndices[j];
 
+                // Skip the remaining tiles once the deadline has passed.
+                if(request != null &&
+                   request.isExpired(System.currentTimeMillis())) {
+                    expired = true;
+                    break;
+                }
+
                 try {
                     tiles[j] = owner.getTile(p.x, p.y);
                 } catch (Exception e) {
@@ -728,6 +926,12 @@ public final class SunTileScheduler implements TileScheduler {
             for(int i = 0; i < numTiles; i++, j++) {
                 Point p = tileIndices[j];
 
+                // Skip the remaining tiles once the deadline has passed.
+                if(request.isExpired(System.currentTimeMillis())) {
+                    expired = true;
+                    break;
+                }
+
                 // Update tile status to "processing".
                 Integer tileStatus =
                     new Integer(TileRequest.TILE_STATUS_PROCESSING);
@@ -792,6 +996,15 @@ public final class SunTileScheduler implements TileScheduler {
             }
         }
 
+        // Cancel the remaining tiles of an expired request.
+        if(expired) {
+            List reqList = Arrays.asList(new Request[] {request});
+            for(int k = j; k < offset + numTiles; k++) {
+                Point p = tileIndices[k];
+                notifyCancelled(reqList, owner, p.x, p.y);
+            }
+        }
+
         // If an exception occured, notify listeners that all remaining
         // tiles in the job have failed.
         if(exception != null && request != null && request.listeners != null) {
@@ -899,6 +1112,7 @@ public final class SunTileScheduler implements TileScheduler {
         }
 
         if(computeTile) {
+            boolean cancelled = false;
             try {
                 try {
                     // Attempt to compute the tile.
@@ -918,6 +1132,10 @@ public final class SunTileScheduler implements TileScheduler {
                 // Re-throw the Error or Exception.
                 if(e instanceof Error) {
                     throw (Error)e;
+                } else if(e instanceof CancellationException) {
+                    // The request has been cancelled: not an error.
+                    cancelled = true;
+                    throw (CancellationException)e;
                 } else if(e instanceof RuntimeException) {
                     sendExceptionToListener(JaiI18N.getString("SunTileScheduler6"), e);
 //                    throw (RuntimeException)e;
@@ -933,7 +1151,8 @@ public final class SunTileScheduler implements TileScheduler {
             } finally {
                 synchronized(cache) {
                     // Always set the cached tile to a non-null value.
-                    cache[0] = tile != null ? tile : new Object();
+                    cache[0] = tile != null ? tile :
+                        (cancelled ? CANCELLED : new Object());
 
                     // Notify the thread(s).
                     cache.notifyAll();
@@ -960,10 +1179,16 @@ public final class SunTileScheduler implements TileScheduler {
                 // Set the result only if cache contains a Raster.
                 if(cache[0] instanceof Raster) {
                     tile = (Raster)cache[0];
-                } else {
+                } else if(cache[0] != CANCELLED) {
                     throw new RuntimeException(JaiI18N.getString("SunTileScheduler5"));
                 }
             }
+
+            // The computing thread abandoned the tile for a cancelled
+            // request which is not necessarily the one of this thread.
+            if(tile == null) {
+                return scheduleTile(owner, tileX, tileY);
+            }
         }
 
         return tile;
@@ -979,6 +1204,8 @@ public final class SunTileScheduler implements TileScheduler {
      * @param isPrefetch Whether the operation is a prefetch.
      * @param listener A <code>TileComputationListener</code> of the
      *        processing.  May be <code>null</code>.
+     * @param priority The priority of a non-blocking, non-prefetch job.
+     * @param deadline The deadline of a non-blocking, non-prefetch job.
      *
      * @return The computed tiles.  This value is meaningless if
      *         <code>listener</code> is non-<code>null</code>.
@@ -995,7 +1222,9 @@ public final class SunTileScheduler implements TileScheduler {
                                Point[] tileIndices,
                                boolean isBlocking,
                                boolean isPrefetch,
-                               TileComputationListener[] listeners) {
+                               TileComputationListener[] listeners,
+                               int priority,
+                               long deadline) {
         if(owner == null || tileIndices == null) {
             // null parameters
             throw new IllegalArgumentException(); // coding error - no message
@@ -1025,14 +1254,15 @@ public final class SunTileScheduler implements TileScheduler {
 
                     if(!isBlocking && !isPrefetch) {
                         Request request =
-                            new Request(this, owner, tileIndices, listeners);
+                            new Request(this, owner, tileIndices, listeners,
+                                        priority, deadline);
 
                         // Override return value.
                         returnValue = request;
 
                         // Queue all tiles as single-tile jobs.
-                        while(numJobs < numTiles) {
-                            Point p = tileIndices[numJobs];
+                        for(int i = 0; i < numTiles; i++) {
+                            Point p = tileIndices[i];
 
                             Object tileID = tileKey(owner, p.x, p.y);
 
@@ -1043,7 +1273,14 @@ public final class SunTileScheduler implements TileScheduler {
                                     // non-blocking, non-prefetch job.
                                     reqList = (List)tileRequests.get(tileID);
                                     reqList.add(request);
-                                    numTiles--;
+
+                                    // Move the job ahead if this request
+                                    // has a higher priority.
+                                    RequestJob job =
+                                        (RequestJob)tileJobs.get(tileID);
+                                    if(job != null && job.priority < priority) {
+                                        raisePriority(job, priority);
+                                    }
                                 } else {
                                     // This tile has not yet been queued.
                                     reqList = new ArrayList();
@@ -1053,7 +1290,7 @@ public final class SunTileScheduler implements TileScheduler {
                                     jobs[numJobs] =
                                         new RequestJob(this,
                                                        owner, p.x, p.y,
-                                                       tiles, numJobs);
+                                                       tiles, i, priority);
 
                                     tileJobs.put(tileID, jobs[numJobs]);
 
@@ -1188,7 +1425,8 @@ public final class SunTileScheduler implements TileScheduler {
         } else { // numThreads == 0
             Request request = null;
             if(!isBlocking && !isPrefetch) {
-                request = new Request(this, owner, tileIndices, listeners);
+                request = new Request(this, owner, tileIndices, listeners,
+                                      priority, deadline);
                 returnValue = request;
             }
 
@@ -1225,7 +1463,8 @@ public final class SunTileScheduler implements TileScheduler {
         if (owner == null || tileIndices == null) {
             throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler0"));
         }
-        return (Raster[])scheduleJob(owner, tileIndices, true, false, null);
+        return (Raster[])scheduleJob(owner, tileIndices, true, false, null,
+                                     0, 0L);
     }
 
     /**
@@ -1242,7 +1481,31 @@ public final class SunTileScheduler implements TileScheduler {
             throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler4"));
         }
         return (TileRequest)scheduleJob(target, tileIndices, false, false,
-                                        tileListeners);
+                                        tileListeners, 0, 0L);
+    }
+
+    /**
+     * Schedule a list of tiles for computation with the given priority
+     * and deadline.  The supplied listeners will be notified after each
+     * tile has been computed or cancelled.
+     *
+     * <p> The tiles are queued ahead of the queued tiles of all requests
+     * with a lower priority, and behind those of requests with the same
+     * or a higher priority.  If a tile is already queued for another
+     * request with a lower priority it is moved ahead accordingly.  The
+     * tiles which have not been started when the deadline passes are
+     * cancelled.  Tiles being computed at that time are flagged as
+     * cancelled if the deadlines of all requests for them have passed;
+     * see <code>TileCancellation</code>.
+     */
+    public TileRequest scheduleTiles(PlanarImage target, Point[] tileIndices,
+                                     TileComputationListener[] tileListeners,
+                                     int priority, long deadline) {
+        if (target == null || tileIndices == null) {
+            throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler4"));
+        }
+        return (TileRequest)scheduleJob(target, tileIndices, false, false,
+                                        tileListeners, priority, deadline);
     }
 
     /**
@@ -1253,16 +1516,17 @@ public final class SunTileScheduler implements TileScheduler {
      * in progress and remove tiles from its internal queue, remove tiles from
      * the queue but not terminate current processing, or simply do nothing.
      *
-     * <p> In the Sun Microsystems reference implementation of
-     * <code>TileScheduler</code> the second tile cancellation option is
-     * implemented, i.e., tiles are removed from the internal queue but
-     * computation already in progress is not terminated.  If there is at
-     * least one worker thread this method should be non-blocking.  Any tiles
-     * allowed to complete computation subsequent to this call are complete
-     * and will be treated as if they had not been cancelled, e.g., with
-     * respect to caching, notification of registered listeners, etc.
-     * Furthermore, cancelling a tile request in no way invalidates the tile
-     * as a candidate for future recomputation.
+     * <p> In this implementation tiles are removed from the internal queue.
+     * The computation of a tile already in progress is flagged as
+     * cancelled once no other request needs the tile, and is abandoned
+     * as soon as it observes the flag through <code>TileCancellation</code>.
+     * A tile abandoned in this way is not cached.  If there is at least one
+     * worker thread this method should be non-blocking.  Any tiles allowed
+     * to complete computation subsequent to this call are complete and will
+     * be treated as if they had not been cancelled with respect to caching,
+     * but the listeners of the cancelled request are not notified of their
+     * computation.  Furthermore, cancelling a tile request in no way
+     * invalidates the tile as a candidate for future recomputation.
      */
     public void cancelTiles(TileRequest request, Point[] tileIndices) {
         if(request == null) {
@@ -1277,8 +1541,8 @@ public final class SunTileScheduler implements TileScheduler {
             // Initialize the set of tile indices to cancel.
             Point[] indices;
             if(tileIndices != null && tileIndices.length > 0) {
-                // Create a Set from the supplied indices.
-                List tileIndexList = Arrays.asList(tileIndices);
+                // Create a modifiable List from the supplied indices.
+                List tileIndexList = new ArrayList(Arrays.asList(tileIndices));
 
                 // Retain only indices which were actually in the request.
                 tileIndexList.retainAll(reqIndexList);
@@ -1301,27 +1565,42 @@ public final class SunTileScheduler implements TileScheduler {
                 // Get the tile's ID.
                 Object tileID = tileKey(req.image, p.x, p.y);
 
-                // Get the list of requests for this tile.
+                // Get the list of requests for this tile and the job
+                // computing the tile for this request, if any.
                 List reqList = (List)tileRequests.get(tileID);
+                RequestJob job = (RequestJob)req.runningJobs.remove(p);
 
                 // If there are none, proceed to next index.
-                if(reqList == null) {
+                if(reqList == null && job == null) {
                     continue;
                 }
 
-                // Remove this Request from the Request List for this tile.
-                reqList.remove(req);
-
-                // If the request list is now empty, dequeue the job and
-                // remove the tile from the hashes.
-                if(reqList.isEmpty()) {
-                    synchronized(queue) {
-                        Object job = tileJobs.remove(tileID);
-                        if(job != null) {
-                            queue.remove(job);
+                if(reqList != null) {
+                    // Remove this Request from the Request List for this tile.
+                    reqList.remove(req);
+
+                    // If the request list is now empty, dequeue the job and
+                    // remove the tile from the hashes.
+                    if(reqList.isEmpty()) {
+                        synchronized(queue) {
+                            Object queuedJob = tileJobs.remove(tileID);
+                            if(queuedJob != null) {
+                                queue.remove(queuedJob);
+                            }
                         }
+                        tileRequests.remove(tileID);
+                    }
+                }
+
+                if(job != null) {
+                    // Flag the computation as cancelled unless another
+                    // request still needs the tile.
+                    job.reqList.remove(req);
+                    if(job.reqList.isEmpty()) {
+                        job.cancellation.cancel();
+                    } else {
+                        job.cancellation.setDeadline(getDeadline(job.reqList));
                     }
-                    tileRequests.remove(tileID);
                 }
 
                 // Update tile status to "cancelled".
@@ -1353,7 +1632,7 @@ public final class SunTileScheduler implements TileScheduler {
         if (owner == null || tileIndices == null) {
             throw new IllegalArgumentException(JaiI18N.getString("SunTileScheduler0"));
         }
-        scheduleJob(owner, tileIndices, false, true, null);
+        scheduleJob(owner, tileIndices, false, true, null, 0, 0L);
     }
 
     /**
@@ -1595,10 +1874,23 @@ public final class SunTileScheduler implements TileScheduler {
         LinkedList jobQueue;
         synchronized(jobQueue = getQueue(isPrefetch)) {
             if(isPrefetch ||
-               jobQueue.isEmpty() ||
-               job instanceof RequestJob) {
+               jobQueue.isEmpty()) {
                 // Append job to queue.
                 jobQueue.addLast(job);
+            } else if(job instanceof RequestJob) {
+                // Insert the job after the last job which is not a
+                // RequestJob of a lower priority.
+                int priority = ((RequestJob)job).priority;
+                ListIterator iter = jobQueue.listIterator(jobQueue.size());
+                while(iter.hasPrevious()) {
+                    Object queued = iter.previous();
+                    if(!(queued instanceof RequestJob) ||
+                       ((RequestJob)queued).priority >= priority) {
+                        iter.next();
+                        break;
+                    }
+                }
+                iter.add(job);
             } else {
                 // If the queue is non-empty or the job is a TileJob
                 // insert the job after the last TileJob in the queue.
@@ -1618,6 +1910,20 @@ public final class SunTileScheduler implements TileScheduler {
         }
     }
 
+    /**
+     * Raises the priority of a queued <code>RequestJob</code> and moves
+     * it ahead in the queue accordingly.
+     */
+    private void raisePriority(RequestJob job, int priority) {
+        synchronized(queue) {
+            // Nothing to do if a worker has dequeued the job meanwhile.
+            if(queue.remove(job)) {
+                job.priority = priority;
+                addJob(job, false);
+            }
+        }
+    }
+
     /** Queue WorkerThread.TERMINATEs to all workers. */
     protected void finalize() throws Throwable {
         terminateAll(false);
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.media.util;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The cancellation state of the tile computation performed by the
+ * current thread on behalf of a <code>TileRequest</code>.
+ *
+ * <p> When all requests for a tile have been cancelled, or when the
+ * deadlines of all of them have passed, <code>SunTileScheduler</code>
+ * flags the computation of that tile as cancelled even if a worker has
+ * already started it.  Long running <code>computeRect()</code> loops
+ * may observe this flag and abandon the tile:
+ *
+ * <pre>
+ * for (int y = 0; y &lt; dheight; y++) {
+ *     TileCancellation.checkCancelled();
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p> <code>OpImage.getTile()</code> checks the flag before it schedules
+ * the computation of a tile which is not cached, so that the remaining
+ * tiles of an operation chain are not computed once the request has
+ * been cancelled.  The <code>computeTile()</code> implementations of
+ * the <code>OpImage</code> subclasses of <code>org.eclipse.imagen</code>
+ * also check it between strips of rows of a cancellable tile, so that
+ * operations which do not check it themselves abandon a tile within
+ * about 64K pixels of work.  A <code>CancellationException</code> thrown by
+ * <code>checkCancelled()</code> propagates out of <code>getTile()</code>
+ * so that no partially computed tile is cached.  Outside of a request
+ * computed by a worker thread the computation is never cancelled.
+ *
+ * @see SunTileScheduler
+ */
+public final class TileCancellation {
+
+    /** The cancellation state of the current thread, if any. */
+    private static final ThreadLocal current = new ThreadLocal();
+
+    /** Whether the computation has been cancelled. */
+    private volatile boolean cancelled = false;
+
+    /**
+     * The time in milliseconds after which the computation is
+     * cancelled, or zero if there is no deadline.
+     */
+    private volatile long deadline;
+
+    /**
+     * Constructs the cancellation state of a tile computation.
+     *
+     * @param deadline The deadline as returned by
+     *        <code>System.currentTimeMillis()</code>, or zero if none.
+     */
+    TileCancellation(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /** Flags the computation as cancelled. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Changes the deadline of the computation. */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /** Returns whether the computation has been cancelled. */
+    boolean isSet() {
+        if (cancelled) {
+            return true;
+        }
+        long d = deadline;
+        return d > 0 && System.currentTimeMillis() > d;
+    }
+
+    /**
+     * Makes this the cancellation state of the current thread and
+     * returns the previous one, to be restored by <code>exit()</code>.
+     */
+    TileCancellation enter() {
+        TileCancellation previous = (TileCancellation)current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Returns the cancellation state of the current thread, or
+     * <code>null</code>, so that work done on its behalf by another
+     * thread may <code>enter()</code> it.
+     */
+    static TileCancellation current() {
+        return (TileCancellation)current.get();
+    }
+
+    /** Restores the cancellation state returned by <code>enter()</code>. */
+    static void exit(TileCancellation previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the tile computation performed by the
+     * current thread has been cancelled or its deadline has passed.
+     */
+    public static boolean isCancelled() {
+        TileCancellation c = (TileCancellation)current.get();
+        return c != null && c.isSet();
+    }
+
+    /**
+     * Returns <code>true</code> if the tile computation performed by the
+     * current thread is done on behalf of a request which may be
+     * cancelled, whether or not it has been.
+     */
+    public static boolean isCancellable() {
+        return current.get() != null;
+    }
+
+    /**
+     * Throws a <code>CancellationException</code> if the tile computation
+     * performed by the current thread has been cancelled or its deadline
+     * has passed.
+     *
+     * @throws CancellationException if the computation has been cancelled.
+     */
+    public static void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException(JaiI18N.getString("TileCancellation0"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.util;
+import org.eclipse.imagen.CachedTile;
+
+/**
+ * An admission and eviction policy for <code>ConcurrentTileCache</code>.
+ * The policy is told about every tile added to, accessed in and removed
+ * from the cache, and chooses which tile should be removed next when
+ * the cache exceeds its memory threshold.
+ *
+ * <p> All methods are invoked by the cache while holding its eviction
+ * lock, so implementations need not be thread safe, but an instance
+ * must not be shared by several caches.  Tiles are told apart by
+ * identity; <code>hashCode()</code> is derived from the tile owner and
+ * index so that a policy may keep history about a tile across its
+ * removal and re-insertion.
+ *
+ * @see ConcurrentTileCache#setEvictionPolicy(TileEvictionPolicy)
+ *
+ */
+public interface TileEvictionPolicy {
+
+    /** Returns a short name of the policy, used for diagnostics. */
+    String getName();
+
+    /** Notifies the policy that a tile has been added to the cache. */
+    void tileAdded(CachedTile tile);
+
+    /** Notifies the policy that a cached tile has been requested. */
+    void tileAccessed(CachedTile tile);
+
+    /**
+     * Notifies the policy that a tile has been removed from the cache,
+     * either explicitly or because it was returned by
+     * <code>nextVictim()</code>.
+     */
+    void tileRemoved(CachedTile tile);
+
+    /**
+     * Returns the tile that should be removed next or <code>null</code>
+     * if the policy does not know about any tile.  The returned tile is
+     * subsequently passed to <code>tileRemoved()</code>.
+     *
+     * @param memoryCapacity The memory capacity of the cache in bytes.
+     */
+    CachedTile nextVictim(long memoryCapacity);
+
+    /**
+     * Returns the number of newly added tiles which this policy chose
+     * to remove rather than a tile already established in the cache.
+     */
+    long getRejectCount();
+
+    /** Forgets all tiles. */
+    void clear();
+}
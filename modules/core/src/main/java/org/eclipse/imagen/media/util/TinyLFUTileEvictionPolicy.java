@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.util;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.imagen.CachedTile;
+
+/**
+ * A W-TinyLFU admission and eviction policy.  Newly added tiles enter a
+ * small LRU window.  A tile leaving the window is admitted to the main
+ * segmented LRU area only if it has been requested more often than the
+ * tile it would displace there, as estimated by a frequency sketch that
+ * also remembers tiles which are no longer cached.  The main area is
+ * split into a probation segment and a protected segment holding the
+ * tiles that were requested again while on probation.
+ *
+ * <p> A single pass over a large image thus cycles through the window
+ * while the frequently requested tiles stay in the main area.
+ *
+ * @see ConcurrentTileCache
+ *
+ */
+public final class TinyLFUTileEvictionPolicy implements TileEvictionPolicy {
+
+    /** The default fraction of the memory capacity used by the window. */
+    public static final float DEFAULT_WINDOW_FRACTION = 0.01F;
+
+    /** The fraction of the main area used by the protected segment. */
+    private static final float PROTECTED_FRACTION = 0.8F;
+
+    /** The fraction of the memory capacity used by the window. */
+    private final float windowFraction;
+
+    /** The request frequencies of recently seen tiles. */
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    /** The newly added tiles, least recently used first. */
+    private final LinkedHashMap window = new LinkedHashMap(16, 0.75F, true);
+
+    /** The admitted tiles, least recently used first. */
+    private final LinkedHashMap probation = new LinkedHashMap(16, 0.75F, true);
+
+    /** The tiles requested while on probation, least recently used first. */
+    private final LinkedHashMap protectedTiles =
+        new LinkedHashMap(16, 0.75F, true);
+
+    /** The memory used by the tiles in the window. */
+    private long windowSize = 0;
+
+    /** The memory used by the tiles in the probation segment. */
+    private long probationSize = 0;
+
+    /** The memory used by the tiles in the protected segment. */
+    private long protectedSize = 0;
+
+    /** The number of tiles refused admission. */
+    private long rejectCount = 0;
+
+    /** Constructs a policy with the default window fraction. */
+    public TinyLFUTileEvictionPolicy() {
+        this(DEFAULT_WINDOW_FRACTION);
+    }
+
+    /**
+     * Constructs a policy with the given window fraction.
+     *
+     * @param windowFraction The fraction of the memory capacity used by
+     *        the LRU window for new tiles.
+     *
+     * @throws IllegalArgumentException if <code>windowFraction</code> is
+     *         not in the range (0.0, 1.0).
+     */
+    public TinyLFUTileEvictionPolicy(float windowFraction) {
+        if ( !(windowFraction > 0.0F && windowFraction < 1.0F) ) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("TileEvictionPolicy0"));
+        }
+        this.windowFraction = windowFraction;
+    }
+
+    /** Returns "TinyLFU". */
+    public String getName() {
+        return "TinyLFU";
+    }
+
+    public void tileAdded(CachedTile tile) {
+        sketch.ensureCapacity(window.size() + probation.size() +
+                              protectedTiles.size() + 1);
+        sketch.increment(tile.hashCode());
+
+        window.put(tile, tile);
+        windowSize += tile.getTileSize();
+    }
+
+    public void tileAccessed(CachedTile tile) {
+        sketch.increment(tile.hashCode());
+
+        if ( window.get(tile) != null || protectedTiles.get(tile) != null ) {
+            return;
+        }
+
+        if ( probation.remove(tile) != null ) {
+            probationSize -= tile.getTileSize();
+            protectedTiles.put(tile, tile);
+            protectedSize += tile.getTileSize();
+        }
+    }
+
+    public void tileRemoved(CachedTile tile) {
+        if ( window.remove(tile) != null ) {
+            windowSize -= tile.getTileSize();
+        } else if ( protectedTiles.remove(tile) != null ) {
+            protectedSize -= tile.getTileSize();
+        } else if ( probation.remove(tile) != null ) {
+            probationSize -= tile.getTileSize();
+        }
+    }
+
+    public CachedTile nextVictim(long memoryCapacity) {
+        long windowCapacity = (long)(memoryCapacity * windowFraction);
+        long mainCapacity = memoryCapacity - windowCapacity;
+        long protectedCapacity = (long)(mainCapacity * PROTECTED_FRACTION);
+
+        // Demote the least recently used protected tiles to probation.
+        while ( protectedSize > protectedCapacity ) {
+            CachedTile tile = eldest(protectedTiles);
+            protectedTiles.remove(tile);
+            protectedSize -= tile.getTileSize();
+            toProbation(tile);
+        }
+
+        // Move the window overflow to the main area while it has room.
+        while ( windowSize > windowCapacity ) {
+            CachedTile tile = eldest(window);
+            if ( probationSize + protectedSize + tile.getTileSize() >
+                 mainCapacity ) {
+                break;
+            }
+            window.remove(tile);
+            windowSize -= tile.getTileSize();
+            toProbation(tile);
+        }
+
+        CachedTile victim = eldest(probation);
+        if ( victim == null ) {
+            victim = eldest(protectedTiles);
+        }
+
+        if ( window.isEmpty() ||
+             (windowSize <= windowCapacity && victim != null) ) {
+            return victim;
+        }
+
+        // The window is over its share: its eldest tile must either be
+        // admitted in place of the main area victim or be discarded.
+        CachedTile candidate = eldest(window);
+
+        if ( victim != null &&
+             sketch.frequency(candidate.hashCode()) >
+             sketch.frequency(victim.hashCode()) ) {
+            window.remove(candidate);
+            windowSize -= candidate.getTileSize();
+            toProbation(candidate);
+            return victim;
+        }
+
+        if ( victim != null ) {
+            rejectCount++;
+        }
+        return candidate;
+    }
+
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedTiles.clear();
+        windowSize = 0;
+        probationSize = 0;
+        protectedSize = 0;
+        sketch.clear();
+    }
+
+    private void toProbation(CachedTile tile) {
+        probation.put(tile, tile);
+        probationSize += tile.getTileSize();
+    }
+
+    private static CachedTile eldest(LinkedHashMap map) {
+        Iterator iter = map.keySet().iterator();
+        return iter.hasNext() ? (CachedTile)iter.next() : null;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.eclipse.imagen.media.util;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.imagen.CachedTile;
+
+/**
+ * A scan resistant variant of the LRU eviction policy.  Newly added
+ * tiles enter a FIFO window which holds a fraction of the memory
+ * capacity.  A tile is promoted to the main LRU list only when it is
+ * requested again while in the window; tiles which are used only once,
+ * such as those of a single pass over a large image, leave the cache
+ * through the window without displacing the tiles in the main list.
+ *
+ * @see ConcurrentTileCache
+ *
+ */
+public final class WindowedLRUTileEvictionPolicy implements TileEvictionPolicy {
+
+    /** The default fraction of the memory capacity used by the window. */
+    public static final float DEFAULT_WINDOW_FRACTION = 0.25F;
+
+    /** The fraction of the memory capacity used by the window. */
+    private final float windowFraction;
+
+    /** The tiles requested only once, oldest first. */
+    private final LinkedHashMap window = new LinkedHashMap();
+
+    /** The promoted tiles, least recently used first. */
+    private final LinkedHashMap main = new LinkedHashMap(16, 0.75F, true);
+
+    /** The memory used by the tiles in the window. */
+    private long windowSize = 0;
+
+    /** The number of tiles removed from the window. */
+    private long rejectCount = 0;
+
+    /** Constructs a policy with the default window fraction. */
+    public WindowedLRUTileEvictionPolicy() {
+        this(DEFAULT_WINDOW_FRACTION);
+    }
+
+    /**
+     * Constructs a policy with the given window fraction.
+     *
+     * @param windowFraction The fraction of the memory capacity in which
+     *        new tiles wait to be requested a second time.
+     *
+     * @throws IllegalArgumentException if <code>windowFraction</code> is
+     *         not in the range (0.0, 1.0).
+     */
+    public WindowedLRUTileEvictionPolicy(float windowFraction) {
+        if ( !(windowFraction > 0.0F && windowFraction < 1.0F) ) {
+            throw new IllegalArgumentException(
+                JaiI18N.getString("TileEvictionPolicy0"));
+        }
+        this.windowFraction = windowFraction;
+    }
+
+    /** Returns "WindowedLRU". */
+    public String getName() {
+        return "WindowedLRU";
+    }
+
+    public void tileAdded(CachedTile tile) {
+        window.put(tile, tile);
+        windowSize += tile.getTileSize();
+    }
+
+    public void tileAccessed(CachedTile tile) {
+        if ( window.remove(tile) != null ) {
+            windowSize -= tile.getTileSize();
+            main.put(tile, tile);
+        } else {
+            main.get(tile);
+        }
+    }
+
+    public void tileRemoved(CachedTile tile) {
+        if ( window.remove(tile) != null ) {
+            windowSize -= tile.getTileSize();
+        } else {
+            main.remove(tile);
+        }
+    }
+
+    public CachedTile nextVictim(long memoryCapacity) {
+        long windowCapacity = (long)(memoryCapacity * windowFraction);
+
+        if ( !window.isEmpty() &&
+             (windowSize > windowCapacity || main.isEmpty()) ) {
+            rejectCount++;
+            return (CachedTile)window.keySet().iterator().next();
+        }
+
+        Iterator iter = main.keySet().iterator();
+        return iter.hasNext() ? (CachedTile)iter.next() : null;
+    }
+
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    public void clear() {
+        window.clear();
+        main.clear();
+        windowSize = 0;
+    }
+}
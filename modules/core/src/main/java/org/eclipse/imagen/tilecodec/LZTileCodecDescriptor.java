@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.eclipse.imagen.tilecodec ;
+
+import java.awt.image.SampleModel ;
+
+import org.eclipse.imagen.ParameterListDescriptor;
+import org.eclipse.imagen.ParameterListDescriptorImpl;
+import org.eclipse.imagen.util.Range ;
+
+/**
+ * This class is the descriptor for the "LZ" tile codec. "lz" is a fast
+ * lossless tile codec, which compresses the tile data with a byte oriented
+ * compressor of the Lempel-Ziv family after an optional predictive filter.
+ * It spends much less processing time per tile than the "gzip" codec, at
+ * the expense of a lower compression ratio. The format name for the lz
+ * tile codec is "lz". The encoded stream contains the
+ * <code>SampleModel</code> and the tile's upper left corner position,
+ * thus the <code>includesSampleModelInfo()</code> and
+ * <code>includesLocationInfo()</code> methods in this descriptor return
+ * true.
+ *
+ * <p> While both the "tileDecoder" and "tileEncoder" registry modes for
+ * the "lz" tile codec scheme have the same set of parameters, the 
+ * parameters for the "tileDecoder" mode are ignored, since the encoded
+ * stream records how it was encoded.
+ *
+ * <p><table border=1>
+ * <caption>Resource List</caption>
+ * <tr><th>Name</th>        <th>Value</th></tr>
+ * <tr><td>Vendor</td>      <td>org.eclipse.imagen.media</td></tr>
+ * <tr><td>Description</td> <td>A descriptor to describe the lossless "lz"
+ *                          codec scheme. </td></tr>
+ * <tr><td>DocURL</td>      <td>Not defined</td></tr>
+ * <tr><td>Version</td>     <td>1.0</td></tr>
+ * <tr><td>predictor</td>   <td>Whether each sample is replaced by its
+ *                          difference with the same band of the previous
+ *                          pixel before compression. This improves the
+ *                          compression of continuous tone images.</td></tr>
+ * <tr><td>searchDepth</td> <td>The number of earlier positions compared
+ *                          when looking for a repeated byte sequence, from
+ *                          1 to 64. Greater values give a better 
+ *                          compression ratio at the expense of speed.
+ *                          The default is 1, the fastest setting.</td></tr>
+ * </table></p>
+ *
+ * <p><table border=1>
+ * <caption>Parameter List</caption>
+ * <tr><th>Name</th>          <th>Class Type</th>
+ *                            <th>Default Value</th></tr>
+ * <tr><td>predictor</td>     <td>java.lang.Boolean</td>
+ *                            <td>true</td>
+ * <tr><td>searchDepth</td>   <td>java.lang.Integer</td>
+ *                            <td>1</td>
+ * </table></p>
+ *
+ * @see GZIPTileCodecDescriptor
+ */
+public class LZTileCodecDescriptor extends TileCodecDescriptorImpl {
+
+    // Parameter names
+    private static final String[] paramNames = {
+	"predictor",
+	"searchDepth"} ;
+
+    // Parameter class names
+    private static final Class[] paramClasses = {
+	java.lang.Boolean.class,
+	java.lang.Integer.class} ;
+
+    // Parameter default values.
+    private static final Object[] paramDefaults = {
+	new Boolean(true),
+	new Integer(1)
+    };
+
+    // Parameters' valid value ranges
+    private static final Object[] validParamValues = {
+	null,
+	new Range(java.lang.Integer.class, new Integer(1), new Integer(64))
+    };
+
+    private static ParameterListDescriptor paramListDescriptor = 
+        new ParameterListDescriptorImpl(null,
+					paramNames,
+					paramClasses,
+					paramDefaults,
+					validParamValues);
+
+    /**
+     * Creates a <code>LZTileCodecDescriptor</code> 
+     */
+    public LZTileCodecDescriptor() {
+	super("lz", true, true) ;
+    }
+
+    /**
+     * Returns a <code>TileCodecParameterList</code> valid for the 
+     * specified modeName and compatible with the supplied
+     * <code>TileCodecParameterList</code>. For example, given a
+     * <code>TileCodecParameterList</code> used to encode a tile with
+     * the modeName being specified as "tileDecoder", this method will return
+     * a <code>TileCodecParameterList</code> sufficient to decode that
+     * same tile. 
+     *
+     * <p> If the supplied modeName is one of the valid mode names as
+     * ascertained from the <code>getSupportedNames()</code> method, 
+     * this method returns a <code>TileCodecParameterList</code> that 
+     * contains values that are compatible for the supplied mode name.
+     *
+     * @param modeName       The registry mode to return a valid parameter 
+     *                       list for.
+     * @param otherParamList The parameter list for which a compatible 
+     *                       parameter list for the complementary modeName is
+     *                       to be found.
+     *
+     * @throws IllegalArgumentException if <code>modeName</code> is null.
+     * @throws IllegalArgumentException if <code>modeName</code> is not
+     * one of the modes valid for this descriptor, i.e those returned
+     * from the getSupportedNames() method.
+     * @throws IllegalArgumentException if <code>otherParamList</code> is null.
+     */
+    public TileCodecParameterList getCompatibleParameters(
+				       String modeName,
+				       TileCodecParameterList otherParamList) {
+	if (modeName == null) {
+	    throw new IllegalArgumentException(
+				JaiI18N.getString("TileCodecDescriptorImpl1"));
+	}
+
+	if (otherParamList == null) {
+	    throw new IllegalArgumentException(
+			        JaiI18N.getString("TileCodecDescriptorImpl3"));
+	}
+	
+	String name = getName();
+	if (!otherParamList.getFormatName().equals(name)) {
+	    throw new IllegalArgumentException(
+					     JaiI18N.getString("TileCodec2"));
+	}
+
+	if (otherParamList.isValidForMode(modeName))
+	    return otherParamList;
+
+	if (modeName.equalsIgnoreCase("tileDecoder")) {
+	    return new TileCodecParameterList(
+			          name,
+				  new String[]{"tileDecoder"},
+				  otherParamList.getParameterListDescriptor());
+	} else if (modeName.equalsIgnoreCase("tileEncoder")) {	    
+	    return new TileCodecParameterList(
+				  name,
+				  new String[]{"tileEncoder"},
+				  otherParamList.getParameterListDescriptor());
+	} else {
+	   throw new IllegalArgumentException(JaiI18N.getString("TileCodec1"));
+	}
+    }
+
+    /**
+     * Returns the default parameters for the specified modeName as an
+     * instance of the <code>TileCodecParameterList</code>. If the supplied
+     * modeName is one of the valid mode names as ascertained from the 
+     * <code>getSupportedNames()</code> method, this method returns the
+     * default parameters for that mode.
+     *
+     * @param modeName  The mode to return the default parameters for.
+     *
+     * @throws IllegalArgumentException if <code>modeName</code> is null.
+     * @throws IllegalArgumentException if <code>modeName</code> is not
+     * one of the modes valid for this descriptor, i.e those returned
+     * from the getSupportedNames() method.
+     */
+    public TileCodecParameterList getDefaultParameters(String modeName){
+        if (modeName == null)
+	    throw new IllegalArgumentException(
+	        JaiI18N.getString("TileCodecDescriptorImpl1")) ;
+
+	String validNames[] = getSupportedModes();
+	boolean valid = false;
+
+	for (int i=0; i<validNames.length; i++) {
+	    if (modeName.equalsIgnoreCase(validNames[i])) {
+		valid = true;
+		break;
+	    }
+	}
+
+	if (valid == false) {
+	    throw new IllegalArgumentException(
+					    JaiI18N.getString("TileCodec1"));
+	}
+
+	return new TileCodecParameterList("lz",
+					  new String[] {"tileDecoder",
+							"tileEncoder"},
+					  paramListDescriptor);
+    }
+
+    /**
+     * Returns the default parameters for the specified modeName as an
+     * instance of the <code>TileCodecParameterList</code>, adding a 
+     * "sampleModel" parameter with the specified value to the parameter
+     * list. If the supplied modeName is one of the valid mode names as
+     * ascertained from the <code>getSupportedNames()</code> method, this
+     * method returns the default parameters for that mode.
+     *
+     * <p> This method should be used when includesSampleModelInfo()
+     * returns false. If includesSampleModelInfo() returns true, the
+     * supplied <code>SampleModel</code> is ignored. 
+     *
+     * <p>For the lz codec, includesSampleModelInfo() returns true, so 
+     * the supplied <code> SampleModel</code> is ignored.
+     *
+     * @param modeName  The mode to return the default parameters for.
+     * @param sm    The <code>SampleModel</code> used to create the 
+     *              default decoding parameter list.
+     *
+     * @throws IllegalArgumentException if <code>modeName</code> is null.
+     * @throws IllegalArgumentException if <code>modeName</code> is not
+     * one of the modes valid for this descriptor, i.e those returned
+     * from the getSupportedNames() method.
+     */
+    public TileCodecParameterList getDefaultParameters(String modeName, 
+						       SampleModel sm){
+	return getDefaultParameters(modeName);
+    }
+
+    /**
+     * Returns the <code>ParameterListDescriptor</code> that describes
+     * the associated parameters (NOT sources). If the supplied modeName
+     * is one of the valid mode names as ascertained from the 
+     * <code>getSupportedNames()</code> method, this method returns a
+     * non-null <code>ParameterListDescriptor</code> with the appropriate
+     * parameters. 
+     *
+     * @param modeName  The mode to return the ParameterListDescriptor for.
+     *
+     * @throws IllegalArgumentException if <code>modeName</code> is null.
+     * @throws IllegalArgumentException if <code>modeName</code> is not
+     * one of the modes valid for this descriptor, i.e those returned
+     * from the getSupportedNames() method.
+     */
+    public ParameterListDescriptor getParameterListDescriptor(String modeName){
+	if(modeName == null)
+	    throw new IllegalArgumentException( 
+		JaiI18N.getString("TileCodecDescriptorImpl1")) ;
+
+	String validNames[] = getSupportedModes();
+	boolean valid = false;
+
+	for (int i=0; i<validNames.length; i++) {
+	    if (modeName.equalsIgnoreCase(validNames[i])) {
+		valid = true;
+		break;
+	    }
+	}
+
+	if (valid == false) {
+	    throw new IllegalArgumentException(
+					    JaiI18N.getString("TileCodec1"));
+	}
+
+	return paramListDescriptor;
+    }
+}
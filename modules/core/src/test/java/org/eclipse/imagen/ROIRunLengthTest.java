@@ -0,0 +1,192 @@
+package org.eclipse.imagen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Path2D;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+
+import org.junit.jupiter.api.Test;
+
+public class ROIRunLengthTest {
+
+  /** The pixels examined, enclosing every region of the tests. */
+  private static final Rectangle AREA = new Rectangle(-10, -10, 140, 120);
+
+  private interface Pixels {
+    boolean contains(int x, int y);
+  }
+
+  /** The pixels whose center lies inside a shape. */
+  private static Pixels centersOf(final Shape shape) {
+    return (x, y) -> shape.contains(x + 0.5, y + 0.5);
+  }
+
+  private static Pixels pixelsOf(final ROI roi) {
+    return (x, y) -> roi.contains(x, y);
+  }
+
+  private static void assertSamePixels(Pixels expected, ROIRunLength actual) {
+    Rectangle bounds = null;
+    for (int y = AREA.y; y < AREA.y + AREA.height; y++) {
+      for (int x = AREA.x; x < AREA.x + AREA.width; x++) {
+        boolean inside = expected.contains(x, y);
+        assertEquals(inside, actual.contains(x, y), "pixel (" + x + ", " + y + ")");
+        if (inside) {
+          Rectangle pixel = new Rectangle(x, y, 1, 1);
+          bounds = bounds == null ? pixel : bounds.union(pixel);
+        }
+      }
+    }
+    assertEquals(bounds == null ? new Rectangle() : bounds, actual.getBounds());
+
+    int[][] mask = actual.getAsBitmask(AREA.x, AREA.y, AREA.width, AREA.height, null);
+    for (int y = 0; y < AREA.height; y++) {
+      for (int x = 0; x < AREA.width; x++) {
+        boolean bit = mask != null && (mask[y][x >>> 5] & (0x80000000 >>> (x & 31))) != 0;
+        assertEquals(expected.contains(AREA.x + x, AREA.y + y), bit,
+            "bit (" + (AREA.x + x) + ", " + (AREA.y + y) + ")");
+      }
+    }
+
+    // Tiles of a grid which does not line up with the region.
+    for (int y = AREA.y; y < AREA.y + AREA.height; y += 7) {
+      for (int x = AREA.x; x < AREA.x + AREA.width; x += 9) {
+        Rectangle tile = new Rectangle(x, y, 9, 7);
+        int count = 0;
+        for (int j = y; j < y + tile.height; j++) {
+          for (int i = x; i < x + tile.width; i++) {
+            if (expected.contains(i, j)) {
+              count++;
+            }
+          }
+        }
+        int coverage = count == 0 ? ROIRunLength.OUTSIDE
+            : count == tile.width * tile.height ? ROIRunLength.INSIDE : ROIRunLength.PARTIAL;
+        assertEquals(coverage, actual.getCoverage(tile), "tile " + tile);
+        assertEquals(count > 0, actual.intersects(tile), "tile " + tile);
+        assertEquals(coverage == ROIRunLength.INSIDE, actual.contains(tile), "tile " + tile);
+      }
+    }
+  }
+
+  @Test
+  public void testRectangles() {
+    Rectangle[] rects = {
+      new Rectangle(0, 0, 1, 1),
+      new Rectangle(3, 4, 50, 20),
+      new Rectangle(-5, -7, 120, 100),
+      new Rectangle(10, 10, 0, 5)
+    };
+    for (int i = 0; i < rects.length; i++) {
+      assertSamePixels(pixelsOf(new ROIShape(rects[i])), new ROIRunLength(rects[i]));
+      assertSamePixels(
+          pixelsOf(new ROIShape(rects[i])), new ROIRunLength(new ROIShape(rects[i])));
+    }
+  }
+
+  @Test
+  public void testPolygons() {
+    Polygon triangle = new Polygon(new int[] {5, 100, 40}, new int[] {2, 30, 90}, 3);
+    Polygon concave =
+        new Polygon(new int[] {0, 60, 60, 30, 0}, new int[] {0, 0, 60, 20, 60}, 5);
+    Path2D.Double fractional = new Path2D.Double();
+    fractional.moveTo(10.3, 5.7);
+    fractional.lineTo(90.1, 12.4);
+    fractional.lineTo(70.6, 80.2);
+    fractional.lineTo(20.9, 60.3);
+    fractional.closePath();
+
+    Shape[] shapes = {triangle, concave, fractional};
+    for (int i = 0; i < shapes.length; i++) {
+      assertSamePixels(centersOf(shapes[i]), new ROIRunLength(shapes[i]));
+    }
+  }
+
+  private static GeneralPath createStar(int windingRule) {
+    // A pentagram, whose center is enclosed twice.
+    GeneralPath star = new GeneralPath(windingRule);
+    for (int i = 0; i < 5; i++) {
+      double angle = Math.PI / 2 + i * 4 * Math.PI / 5;
+      double x = 60.3 + 50 * Math.cos(angle);
+      double y = 50.3 - 50 * Math.sin(angle);
+      if (i == 0) {
+        star.moveTo(x, y);
+      } else {
+        star.lineTo(x, y);
+      }
+    }
+    star.closePath();
+    return star;
+  }
+
+  @Test
+  public void testWindingRules() {
+    GeneralPath evenOdd = createStar(Path2D.WIND_EVEN_ODD);
+    GeneralPath nonZero = createStar(Path2D.WIND_NON_ZERO);
+
+    ROIRunLength evenOddRuns = new ROIRunLength(evenOdd);
+    ROIRunLength nonZeroRuns = new ROIRunLength(nonZero);
+    assertSamePixels(centersOf(evenOdd), evenOddRuns);
+    assertSamePixels(centersOf(nonZero), nonZeroRuns);
+
+    assertFalse(evenOddRuns.contains(60, 50));
+    assertTrue(nonZeroRuns.contains(60, 50));
+  }
+
+  @Test
+  public void testEmptyRows() {
+    // Two bands separated by empty rows, and with empty rows above and
+    // below in the image.
+    SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_BYTE, 50, 40, 1);
+    TiledImage image = new TiledImage(0, 0, 50, 40, 0, 0, sm, null);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 50; x++) {
+        boolean inside = (y >= 5 && y < 12 && x >= 3 && x < 20) || (y >= 25 && y < 30 && x >= 10);
+        image.setSample(x, y, 0, inside ? 1 : 0);
+      }
+    }
+    ROI roi = new ROI(image, 1);
+    ROIRunLength runs = new ROIRunLength(roi);
+    assertSamePixels(pixelsOf(roi), runs);
+    assertSamePixels(pixelsOf(roi), new ROIRunLength(image, 1));
+    assertEquals(new Rectangle(3, 5, 47, 25), runs.getBounds());
+    assertFalse(runs.intersects(new Rectangle(0, 12, 50, 13)));
+
+    ROI union = new ROIRunLength(new Rectangle(0, 0, 10, 3)).add(new ROIShape(
+        new Rectangle(5, 20, 10, 3)));
+    assertTrue(union instanceof ROIRunLength);
+    assertSamePixels(
+        pixelsOf(new ROIShape(new Rectangle(0, 0, 10, 3)).add(
+            new ROIShape(new Rectangle(5, 20, 10, 3)))),
+        (ROIRunLength) union);
+
+    ROIRunLength empty = new ROIRunLength(new Rectangle(4, 4, 0, 0));
+    assertSamePixels((x, y) -> false, empty);
+    assertSamePixels((x, y) -> false,
+        (ROIRunLength) new ROIRunLength(new Rectangle(0, 0, 10, 10))
+            .intersect(new ROIRunLength(new Rectangle(0, 20, 10, 10))));
+  }
+
+  @Test
+  public void testSetOperations() {
+    Rectangle a = new Rectangle(0, 0, 60, 40);
+    Rectangle b = new Rectangle(30, 20, 60, 40);
+    ROIRunLength runs = new ROIRunLength(a);
+
+    assertSamePixels(pixelsOf(new ROIShape(a).add(new ROIShape(b))),
+        (ROIRunLength) runs.add(new ROIShape(b)));
+    assertSamePixels(pixelsOf(new ROIShape(a).subtract(new ROIShape(b))),
+        (ROIRunLength) runs.subtract(new ROIShape(b)));
+    assertSamePixels(pixelsOf(new ROIShape(a).intersect(new ROIShape(b))),
+        (ROIRunLength) runs.intersect(new ROIShape(b)));
+    assertSamePixels(pixelsOf(new ROIShape(a).exclusiveOr(new ROIShape(b))),
+        (ROIRunLength) runs.exclusiveOr(new ROIShape(b)));
+  }
+}
@@ -0,0 +1,71 @@
+package org.eclipse.imagen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+import org.junit.jupiter.api.Test;
+
+public class RecyclingTileFactoryTest {
+
+  private static final int TILE_SIZE = 64 * 64;
+
+  private final SampleModel sampleModel =
+      new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 64, 64, 1, 64, new int[] {0});
+
+  private static byte[] getData(WritableRaster tile) {
+    return ((DataBufferByte) tile.getDataBuffer()).getData();
+  }
+
+  @Test
+  public void testRecycleReusesArray() {
+    RecyclingTileFactory factory = new RecyclingTileFactory(10L * TILE_SIZE);
+    WritableRaster tile = factory.createTile(sampleModel, null);
+    byte[] data = getData(tile);
+
+    factory.recycleTile(tile);
+    assertEquals(TILE_SIZE, factory.getMemoryUsed());
+    assertSame(data, getData(factory.createTile(sampleModel, null)));
+    assertEquals(0, factory.getMemoryUsed());
+  }
+
+  @Test
+  public void testReclaimThenRecycleDoesNotShareArray() {
+    RecyclingTileFactory factory = new RecyclingTileFactory(10L * TILE_SIZE);
+    WritableRaster tile = factory.createTile(sampleModel, null);
+    byte[] data = getData(tile);
+
+    // The tile is still reachable, so its array must not be handed out
+    // again although it was both reclaimed and recycled.
+    factory.reclaimTile(tile);
+    factory.recycleTile(tile);
+    factory.reclaimTile(tile);
+    assertEquals(TILE_SIZE, factory.getMemoryUsed());
+
+    WritableRaster other = factory.createTile(sampleModel, null);
+    assertNotSame(data, getData(other));
+    assertNotSame(getData(other), getData(factory.createTile(sampleModel, null)));
+    assertSame(data, getData(tile));
+  }
+
+  @Test
+  public void testReclaimIsBoundedByCapacity() {
+    RecyclingTileFactory factory = new RecyclingTileFactory(2L * TILE_SIZE);
+    WritableRaster[] tiles = new WritableRaster[4];
+    for (int i = 0; i < tiles.length; i++) {
+      tiles[i] = factory.createTile(sampleModel, null);
+      factory.reclaimTile(tiles[i]);
+    }
+    assertTrue(factory.getMemoryUsed() <= factory.getMemoryCapacity());
+
+    factory.setMemoryCapacity(0L);
+    assertEquals(0, factory.getMemoryUsed());
+  }
+}
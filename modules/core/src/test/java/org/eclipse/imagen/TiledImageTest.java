@@ -0,0 +1,254 @@
+package org.eclipse.imagen;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.TileObserver;
+import java.awt.image.WritableRaster;
+import java.awt.image.WritableRenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.imagen.iterator.WritableRandomIter;
+import org.junit.jupiter.api.Test;
+
+public class TiledImageTest {
+
+  private static final int[] DATA_TYPES = {
+    DataBuffer.TYPE_BYTE,
+    DataBuffer.TYPE_USHORT,
+    DataBuffer.TYPE_SHORT,
+    DataBuffer.TYPE_INT,
+    DataBuffer.TYPE_FLOAT,
+    DataBuffer.TYPE_DOUBLE
+  };
+
+  private static final int MIN_X = 5;
+  private static final int MIN_Y = -3;
+  private static final int WIDTH = 50;
+  private static final int HEIGHT = 40;
+
+  /** Records the tile notifications of an image. */
+  private static final class Events implements TileObserver {
+    private final List events = new ArrayList();
+
+    public synchronized void tileUpdate(
+        WritableRenderedImage source, int tileX, int tileY, boolean willBeWritable) {
+      events.add(tileX + "," + tileY + "," + willBeWritable);
+    }
+
+    /** Asserts one event of each kind for each tile of a rectangle, and clears them. */
+    synchronized void assertOncePerTile(PlanarImage image, Rectangle rect) {
+      List expected = new ArrayList();
+      for (int ty = image.YToTileY(rect.y); ty <= image.YToTileY(rect.y + rect.height - 1); ty++) {
+        for (int tx = image.XToTileX(rect.x); tx <= image.XToTileX(rect.x + rect.width - 1); tx++) {
+          expected.add(tx + "," + ty + ",true");
+          expected.add(tx + "," + ty + ",false");
+        }
+      }
+      Collections.sort(expected);
+      Collections.sort(events);
+      assertEquals(expected, events);
+      events.clear();
+    }
+  }
+
+  private static TiledImage createImage(int dataType) {
+    SampleModel sampleModel =
+        RasterFactory.createPixelInterleavedSampleModel(dataType, 16, 16, 3);
+    // A tile grid offset so that the tiles are not aligned with the image.
+    return new TiledImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 1, 2, sampleModel, null);
+  }
+
+  private static WritableRaster createReference(TiledImage image) {
+    return RasterFactory.createWritableRaster(
+        image.getSampleModel().createCompatibleSampleModel(WIDTH, HEIGHT),
+        new Point(MIN_X, MIN_Y));
+  }
+
+  private static void assertSameData(Raster expected, TiledImage image, String message) {
+    Raster actual = image.getData();
+    for (int b = 0; b < expected.getNumBands(); b++) {
+      assertArrayEquals(
+          expected.getSamples(MIN_X, MIN_Y, WIDTH, HEIGHT, b, (double[]) null),
+          actual.getSamples(MIN_X, MIN_Y, WIDTH, HEIGHT, b, (double[]) null),
+          message + " band " + b);
+    }
+  }
+
+  /** Values beyond the range of the smaller types, to check the conversions. */
+  private static double[] randomValues(Random random, int length) {
+    double[] values = new double[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = random.nextInt(140000) - 70000 + random.nextInt(4) / 4.0;
+    }
+    return values;
+  }
+
+  private static int[] toInts(double[] values) {
+    int[] ints = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      ints[i] = (int) values[i];
+    }
+    return ints;
+  }
+
+  private static float[] toFloats(double[] values) {
+    float[] floats = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      floats[i] = (float) values[i];
+    }
+    return floats;
+  }
+
+  @Test
+  public void testBulkWritesMatchWritableRaster() {
+    Rectangle[] rects = {
+      new Rectangle(MIN_X, MIN_Y, WIDTH, HEIGHT),
+      new Rectangle(12, 4, 30, 21),
+      new Rectangle(20, 10, 1, 1),
+      new Rectangle(MIN_X + 3, MIN_Y + 14, 17, 3)
+    };
+    for (int t = 0; t < DATA_TYPES.length; t++) {
+      TiledImage image = createImage(DATA_TYPES[t]);
+      Events events = new Events();
+      image.addTileObserver(events);
+      WritableRaster reference = createReference(image);
+      Random random = new Random(t);
+
+      for (int r = 0; r < rects.length; r++) {
+        Rectangle rect = rects[r];
+        String message = "type " + DATA_TYPES[t] + " rect " + r;
+        int numPixels = rect.width * rect.height;
+
+        int[] pixels = toInts(randomValues(random, 3 * numPixels));
+        image.setPixels(rect.x, rect.y, rect.width, rect.height, pixels);
+        reference.setPixels(rect.x, rect.y, rect.width, rect.height, pixels);
+        events.assertOncePerTile(image, rect);
+        assertSameData(reference, image, message + " int pixels");
+
+        float[] floatPixels = toFloats(randomValues(random, 3 * numPixels));
+        image.setPixels(rect.x, rect.y, rect.width, rect.height, floatPixels);
+        reference.setPixels(rect.x, rect.y, rect.width, rect.height, floatPixels);
+        events.assertOncePerTile(image, rect);
+        assertSameData(reference, image, message + " float pixels");
+
+        double[] doublePixels = randomValues(random, 3 * numPixels);
+        image.setPixels(rect.x, rect.y, rect.width, rect.height, doublePixels);
+        reference.setPixels(rect.x, rect.y, rect.width, rect.height, doublePixels);
+        events.assertOncePerTile(image, rect);
+        assertSameData(reference, image, message + " double pixels");
+
+        for (int b = 0; b < 3; b++) {
+          double[] samples = randomValues(random, numPixels);
+          switch (b) {
+            case 0:
+              image.setSamples(rect.x, rect.y, rect.width, rect.height, b, toInts(samples));
+              reference.setSamples(rect.x, rect.y, rect.width, rect.height, b, toInts(samples));
+              break;
+            case 1:
+              image.setSamples(rect.x, rect.y, rect.width, rect.height, b, toFloats(samples));
+              reference.setSamples(rect.x, rect.y, rect.width, rect.height, b, toFloats(samples));
+              break;
+            default:
+              image.setSamples(rect.x, rect.y, rect.width, rect.height, b, samples);
+              reference.setSamples(rect.x, rect.y, rect.width, rect.height, b, samples);
+              break;
+          }
+          events.assertOncePerTile(image, rect);
+          assertSameData(reference, image, message + " samples of band " + b);
+        }
+      }
+      assertFalse(image.hasTileWriters());
+    }
+  }
+
+  @Test
+  public void testWritableIteratorMatchesWritableRaster() {
+    Rectangle rect = new Rectangle(9, 1, 37, 29);
+    for (int t = 0; t < DATA_TYPES.length; t++) {
+      TiledImage image = createImage(DATA_TYPES[t]);
+      Events events = new Events();
+      image.addTileObserver(events);
+      WritableRaster reference = createReference(image);
+      Random random = new Random(10 + t);
+
+      WritableRandomIter iter = image.createWritableIterator(rect);
+      for (int y = rect.y; y < rect.y + rect.height; y++) {
+        for (int x = rect.x; x < rect.x + rect.width; x++) {
+          double[] values = randomValues(random, 3);
+          iter.setSample(x, y, 0, (int) values[0]);
+          reference.setSample(x, y, 0, (int) values[0]);
+          iter.setSample(x, y, 1, (float) values[1]);
+          reference.setSample(x, y, 1, (float) values[1]);
+          iter.setSample(x, y, 2, values[2]);
+          reference.setSample(x, y, 2, values[2]);
+        }
+      }
+      iter.done();
+
+      events.assertOncePerTile(image, rect);
+      assertFalse(image.hasTileWriters());
+      assertSameData(reference, image, "type " + DATA_TYPES[t]);
+    }
+  }
+
+  /** A DataBuffer whose data arrays are not accessible. */
+  private static final class OpaqueDataBuffer extends DataBuffer {
+    private final int[] data;
+
+    OpaqueDataBuffer(int size) {
+      super(DataBuffer.TYPE_INT, size);
+      data = new int[size];
+    }
+
+    public int getElem(int bank, int i) {
+      return data[i + offsets[bank]];
+    }
+
+    public void setElem(int bank, int i, int val) {
+      data[i + offsets[bank]] = val;
+    }
+  }
+
+  @Test
+  public void testDataBufferSubclass() {
+    SampleModel sampleModel =
+        RasterFactory.createPixelInterleavedSampleModel(DataBuffer.TYPE_INT, WIDTH, HEIGHT, 1);
+    WritableRaster raster = Raster.createWritableRaster(
+        sampleModel, new OpaqueDataBuffer(WIDTH * HEIGHT), null);
+    ComponentColorModel colorModel = new ComponentColorModel(
+        ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[] {32},
+        false, false, Transparency.OPAQUE, DataBuffer.TYPE_INT);
+    TiledImage image =
+        new TiledImage(new BufferedImage(colorModel, raster, false, null), true);
+    WritableRaster reference =
+        RasterFactory.createWritableRaster(sampleModel, new Point(0, 0));
+
+    int[] pixels = toInts(randomValues(new Random(20), 10 * 8));
+    image.setPixels(3, 4, 10, 8, pixels);
+    reference.setPixels(3, 4, 10, 8, pixels);
+
+    WritableRandomIter iter = image.createWritableIterator(null);
+    iter.setSample(1, 2, 0, 12345);
+    reference.setSample(1, 2, 0, 12345);
+    assertEquals(12345, iter.getSample(1, 2, 0));
+    iter.done();
+
+    assertArrayEquals(
+        reference.getSamples(0, 0, WIDTH, HEIGHT, 0, (int[]) null),
+        image.getData().getSamples(0, 0, WIDTH, HEIGHT, 0, (int[]) null));
+  }
+}
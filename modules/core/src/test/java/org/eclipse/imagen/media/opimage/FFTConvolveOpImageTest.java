@@ -0,0 +1,124 @@
+package org.eclipse.imagen.media.opimage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.Random;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.KernelJAI;
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class FFTConvolveOpImageTest {
+
+  private static final int WIDTH = 100;
+  private static final int HEIGHT = 90;
+  private static final int KERNEL_SIZE = 11;
+
+  private static final int[] INTEGRAL_TYPES = {
+    DataBuffer.TYPE_BYTE, DataBuffer.TYPE_USHORT, DataBuffer.TYPE_SHORT, DataBuffer.TYPE_INT
+  };
+
+  private static TiledImage createSource(int dataType, long seed) {
+    // Tiles smaller than the image so that the kernel crosses tile edges.
+    SampleModel sampleModel = RasterFactory.createPixelInterleavedSampleModel(dataType, 64, 64, 3);
+    TiledImage image = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0, sampleModel, null);
+
+    int min, max;
+    switch (dataType) {
+      case DataBuffer.TYPE_BYTE:
+        min = 0;
+        max = 255;
+        break;
+      case DataBuffer.TYPE_USHORT:
+        min = 0;
+        max = 0xffff;
+        break;
+      default:
+        min = Short.MIN_VALUE;
+        max = Short.MAX_VALUE;
+        break;
+    }
+
+    Random random = new Random(seed);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        for (int b = 0; b < 3; b++) {
+          double value = min + random.nextInt(max - min + 1);
+          if (dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE) {
+            value += random.nextInt(4) / 4.0;
+          }
+          image.setSample(x, y, b, value);
+        }
+      }
+    }
+    return image;
+  }
+
+  /** A kernel which is not separable and whose weights are exact in float. */
+  private static KernelJAI createKernel(float[] weights, long seed) {
+    Random random = new Random(seed);
+    float[] data = new float[KERNEL_SIZE * KERNEL_SIZE];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = weights[random.nextInt(weights.length)];
+    }
+    return new KernelJAI(KERNEL_SIZE, KERNEL_SIZE, data);
+  }
+
+  private static void assertSameResult(int dataType, KernelJAI kernel, long seed) {
+    RenderedImage source = createSource(dataType, seed);
+    BorderExtender extender = BorderExtender.createInstance(BorderExtender.BORDER_COPY);
+    KernelJAI rotated = kernel.getRotatedKernel();
+
+    Raster expected = new ConvolveOpImage(source, extender, null, null, rotated).getData();
+    Raster actual = new FFTConvolveOpImage(source, extender, null, null, rotated).getData();
+
+    assertArrayEquals(
+        expected.getPixels(0, 0, WIDTH, HEIGHT, (double[]) null),
+        actual.getPixels(0, 0, WIDTH, HEIGHT, (double[]) null),
+        "data type " + dataType);
+  }
+
+  @Test
+  public void testMatchesConvolveOpImage() {
+    KernelJAI kernel = createKernel(new float[] {-0.25F, 0.0F, 0.125F, 1.0F / 64.0F}, 1L);
+    for (int i = 0; i < INTEGRAL_TYPES.length; i++) {
+      assertSameResult(INTEGRAL_TYPES[i], kernel, 10L + i);
+    }
+  }
+
+  @Test
+  public void testRoundsHalvesAsConvolveOpImage() {
+    // Sums of integers weighted by halves are often exactly halfway
+    // between two integers, which both images must round up.
+    KernelJAI kernel = createKernel(new float[] {-0.5F, 0.0F, 0.5F, 1.0F}, 2L);
+    for (int i = 0; i < INTEGRAL_TYPES.length; i++) {
+      assertSameResult(INTEGRAL_TYPES[i], kernel, 20L + i);
+    }
+  }
+
+  @Test
+  public void testFloatingPointIsConvolvedDirectly() {
+    KernelJAI kernel = createKernel(new float[] {-0.5F, 0.0F, 0.5F, 1.0F}, 3L);
+    int[] types = {DataBuffer.TYPE_FLOAT, DataBuffer.TYPE_DOUBLE};
+    for (int i = 0; i < types.length; i++) {
+      ParameterBlock pb = new ParameterBlock();
+      pb.addSource(createSource(types[i], 30L + i));
+      pb.add(kernel);
+      assertTrue(new ConvolveRIF().create(pb, null) instanceof ConvolveOpImage);
+    }
+    for (int i = 0; i < INTEGRAL_TYPES.length; i++) {
+      ParameterBlock pb = new ParameterBlock();
+      pb.addSource(createSource(INTEGRAL_TYPES[i], 40L + i));
+      pb.add(kernel);
+      assertTrue(new ConvolveRIF().create(pb, null) instanceof FFTConvolveOpImage);
+    }
+  }
+}
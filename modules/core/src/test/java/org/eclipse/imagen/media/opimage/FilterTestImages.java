@@ -0,0 +1,95 @@
+package org.eclipse.imagen.media.opimage;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.PlanarImage;
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+
+/** Source images and brute-force references for the filter tests. */
+final class FilterTestImages {
+
+  static final int WIDTH = 37;
+  static final int HEIGHT = 29;
+  static final int NUM_BANDS = 2;
+
+  static final int[] EXTENDERS = {
+    BorderExtender.BORDER_ZERO,
+    BorderExtender.BORDER_COPY,
+    BorderExtender.BORDER_REFLECT,
+    BorderExtender.BORDER_WRAP
+  };
+
+  private FilterTestImages() {}
+
+  /**
+   * Creates an image of random samples whose tiles are smaller than the
+   * image and do not divide it, so that masks cross tile edges.
+   */
+  static TiledImage createSource(int dataType, long seed) {
+    SampleModel sampleModel =
+        RasterFactory.createPixelInterleavedSampleModel(dataType, 16, 16, NUM_BANDS);
+    TiledImage image = new TiledImage(0, 0, WIDTH, HEIGHT, 0, 0, sampleModel, null);
+    Random random = new Random(seed);
+    for (int b = 0; b < NUM_BANDS; b++) {
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < WIDTH; x++) {
+          switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+              image.setSample(x, y, b, random.nextInt(256));
+              break;
+            case DataBuffer.TYPE_USHORT:
+              // Few distinct values in the first band so that the
+              // median is often one of several equal samples.
+              image.setSample(x, y, b, b == 0 ? random.nextInt(8) * 9000 : random.nextInt(65536));
+              break;
+            case DataBuffer.TYPE_SHORT:
+              image.setSample(x, y, b, random.nextInt(65536) + Short.MIN_VALUE);
+              break;
+            case DataBuffer.TYPE_INT:
+              image.setSample(x, y, b, random.nextInt());
+              break;
+            default:
+              image.setSample(x, y, b, random.nextGaussian() * 1000.0);
+              break;
+          }
+        }
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Returns the samples of an image extended by a border extender by
+   * <code>padding</code> pixels on each side.
+   */
+  static Raster extend(PlanarImage image, int extenderType, int padding) {
+    Rectangle bounds = image.getBounds();
+    bounds.grow(padding, padding);
+    WritableRaster raster =
+        RasterFactory.createWritableRaster(
+            image.getSampleModel().createCompatibleSampleModel(bounds.width, bounds.height),
+            bounds.getLocation());
+    raster.setRect(image.getData());
+    BorderExtender.createInstance(extenderType).extend(raster, image);
+    return raster;
+  }
+
+  /** Returns the samples of a window of a band. */
+  static double[] getWindow(Raster extended, int x, int y, int b, int size) {
+    int half = size / 2;
+    return extended.getSamples(x - half, y - half, size, size, b, (double[]) null);
+  }
+
+  /** Returns the samples of a band of an image, by rows. */
+  static double[] getSamples(RenderedImage image, int b) {
+    return image.getData().getSamples(0, 0, WIDTH, HEIGHT, b, (double[]) null);
+  }
+}
@@ -0,0 +1,50 @@
+package org.eclipse.imagen.media.opimage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class MedianFilterSquareOpImageTest {
+
+  private static void assertMatchesReference(int dataType) {
+    TiledImage source = FilterTestImages.createSource(dataType, dataType);
+    for (int size = 3; size <= 7; size += 2) {
+      for (int e = 0; e < FilterTestImages.EXTENDERS.length; e++) {
+        int extenderType = FilterTestImages.EXTENDERS[e];
+        MedianFilterSquareOpImage median =
+            new MedianFilterSquareOpImage(
+                source, BorderExtender.createInstance(extenderType), null, null, size);
+        Raster extended = FilterTestImages.extend(source, extenderType, size / 2);
+
+        for (int b = 0; b < FilterTestImages.NUM_BANDS; b++) {
+          double[] expected = new double[FilterTestImages.WIDTH * FilterTestImages.HEIGHT];
+          for (int y = 0, n = 0; y < FilterTestImages.HEIGHT; y++) {
+            for (int x = 0; x < FilterTestImages.WIDTH; x++) {
+              double[] window = FilterTestImages.getWindow(extended, x, y, b, size);
+              Arrays.sort(window);
+              expected[n++] = window[window.length / 2];
+            }
+          }
+          assertArrayEquals(expected, FilterTestImages.getSamples(median, b),
+              "type " + dataType + " size " + size + " extender " + extenderType + " band " + b);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testByte() {
+    assertMatchesReference(DataBuffer.TYPE_BYTE);
+  }
+
+  @Test
+  public void testUShort() {
+    assertMatchesReference(DataBuffer.TYPE_USHORT);
+  }
+}
@@ -0,0 +1,116 @@
+package org.eclipse.imagen.media.opimage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class RunningExtremaFilterOpImageTest {
+
+  private static final int[] DATA_TYPES = {
+    DataBuffer.TYPE_BYTE,
+    DataBuffer.TYPE_USHORT,
+    DataBuffer.TYPE_SHORT,
+    DataBuffer.TYPE_INT,
+    DataBuffer.TYPE_FLOAT,
+    DataBuffer.TYPE_DOUBLE
+  };
+
+  /**
+   * Returns the extremum of a window as <code>MinFilterSquareOpImage</code>
+   * and <code>MaxFilterSquareOpImage</code> compute it, starting from the
+   * largest finite value of the data type and skipping NaN samples.
+   */
+  private static double extremum(double[] window, boolean isMax, int dataType) {
+    double bound;
+    switch (dataType) {
+      case DataBuffer.TYPE_FLOAT:
+        bound = Float.MAX_VALUE;
+        break;
+      case DataBuffer.TYPE_DOUBLE:
+        bound = Double.MAX_VALUE;
+        break;
+      default:
+        bound = Double.POSITIVE_INFINITY;
+        break;
+    }
+    double result = isMax ? -bound : bound;
+    for (int i = 0; i < window.length; i++) {
+      if (isMax ? window[i] > result : window[i] < result) {
+        result = window[i];
+      }
+    }
+    return result;
+  }
+
+  private static void assertMatchesReference(TiledImage source, int dataType) {
+    for (int size = 3; size <= 7; size += 2) {
+      for (int e = 0; e < FilterTestImages.EXTENDERS.length; e++) {
+        int extenderType = FilterTestImages.EXTENDERS[e];
+        Raster extended = FilterTestImages.extend(source, extenderType, size / 2);
+        for (int m = 0; m < 2; m++) {
+          boolean isMax = m == 1;
+          RunningExtremaFilterOpImage filter =
+              new RunningExtremaFilterOpImage(
+                  source, BorderExtender.createInstance(extenderType), null, null, size, isMax);
+
+          for (int b = 0; b < FilterTestImages.NUM_BANDS; b++) {
+            double[] expected = new double[FilterTestImages.WIDTH * FilterTestImages.HEIGHT];
+            for (int y = 0, n = 0; y < FilterTestImages.HEIGHT; y++) {
+              for (int x = 0; x < FilterTestImages.WIDTH; x++) {
+                expected[n++] =
+                    extremum(FilterTestImages.getWindow(extended, x, y, b, size), isMax, dataType);
+              }
+            }
+            assertArrayEquals(expected, FilterTestImages.getSamples(filter, b),
+                "type " + dataType + " size " + size + " extender " + extenderType
+                    + " max " + isMax + " band " + b);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesReference() {
+    for (int i = 0; i < DATA_TYPES.length; i++) {
+      assertMatchesReference(
+          FilterTestImages.createSource(DATA_TYPES[i], i), DATA_TYPES[i]);
+    }
+  }
+
+  @Test
+  public void testNonFiniteSamples() {
+    int[] types = {DataBuffer.TYPE_FLOAT, DataBuffer.TYPE_DOUBLE};
+    for (int i = 0; i < types.length; i++) {
+      TiledImage source = FilterTestImages.createSource(types[i], 10 + i);
+      // A block of NaN larger than the masks, scattered NaN and
+      // infinite samples.
+      for (int y = 8; y < 18; y++) {
+        for (int x = 12; x < 22; x++) {
+          source.setSample(x, y, 0, Double.NaN);
+        }
+      }
+      source.setSample(3, 3, 0, Double.NaN);
+      source.setSample(30, 5, 0, Double.POSITIVE_INFINITY);
+      source.setSample(5, 25, 1, Double.NEGATIVE_INFINITY);
+      source.setSample(16, 14, 1, Double.POSITIVE_INFINITY);
+      assertMatchesReference(source, types[i]);
+
+      // The center of the block of NaN.
+      double bound = types[i] == DataBuffer.TYPE_FLOAT ? Float.MAX_VALUE : Double.MAX_VALUE;
+      BorderExtender copy = BorderExtender.createInstance(BorderExtender.BORDER_COPY);
+      assertEquals(bound,
+          new RunningExtremaFilterOpImage(source, copy, null, null, 7, false)
+              .getData().getSampleDouble(16, 12, 0));
+      assertEquals(-bound,
+          new RunningExtremaFilterOpImage(source, copy, null, null, 7, true)
+              .getData().getSampleDouble(16, 12, 0));
+    }
+  }
+}
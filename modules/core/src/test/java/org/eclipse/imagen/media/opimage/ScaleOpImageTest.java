@@ -0,0 +1,167 @@
+package org.eclipse.imagen.media.opimage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.renderable.ParameterBlock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.ImageLayout;
+import org.eclipse.imagen.Interpolation;
+import org.eclipse.imagen.JAI;
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class ScaleOpImageTest {
+
+  private static final int[] DATA_TYPES = {
+    DataBuffer.TYPE_BYTE,
+    DataBuffer.TYPE_USHORT,
+    DataBuffer.TYPE_SHORT,
+    DataBuffer.TYPE_INT,
+    DataBuffer.TYPE_FLOAT,
+    DataBuffer.TYPE_DOUBLE
+  };
+
+  private static final int[] INTERPOLATIONS = {
+    Interpolation.INTERP_BILINEAR, Interpolation.INTERP_BICUBIC, Interpolation.INTERP_BICUBIC_2
+  };
+
+  /** The X and Y scale factors, upscaling then downscaling. */
+  private static final float[][] SCALES = {
+    {2.5F, 1.75F},
+    {1.3F, 3.0F},
+    {0.5F, 0.5F},
+    {0.7F, 0.45F}
+  };
+
+  /**
+   * The SHA-256 digests of the results of each interpolation, in rows,
+   * for each data type, in columns, over all the scale factors, as
+   * computed by the per-pixel bilinear and bicubic loops before they
+   * were made separable.
+   */
+  private static final String[][] DIGESTS = {
+    {
+      "117beb69caa5b2c34b68b4b3ea5a1e310db57001aaa66c4680b5f85b78216f72",
+      "6baa6bce2512e3b9fc7c0015d0c291ad0a9331a6964bd45aaf0e854118e68d10",
+      "a8b735616555b9204a96e84cbbdbaa1eb2d030e4ec66e63197b0b625551de864",
+      "acbd66b6d8d6ef27d98e1da05ed7b43d96182b9a538c8f325988532636f8187b",
+      "7b83df7140a3a366cefa25fc8e52070b882eaa5afc9c32e36c2b43521856d176",
+      "a2ac76745120d40b00a58f258426cb455752ff78af8b7ae2a89d40ab33b69218"
+    },
+    {
+      "5556de17e02ce2f48af32eea59c78c9b41ddc98c4892d0ee25f29bbfd10c8c65",
+      "2b68e85a3cedd48ff52c4ec4470b16d291c46fb3b19d2de10d38a4d64b8e04b9",
+      "e18073fb641095a7099a667631808aecc2ca34d1b381723c97d6ee8753c840eb",
+      "01c8cff0cdf7a670acb513f897503538e5b877b5d4175c3bfd038548e57e9d16",
+      "ed3c309166b3d65b45cbe2884a73ab1182216cbc54572360d40bd7563888f0a8",
+      "dea76fb663da956ffc86271291aa6663d009a1635120db31f0ed49a293e5ff75"
+    },
+    {
+      "740cf436aa23e1fcf48f96f42bf9d248c3ecbcf3cd7eb463f5556fd92bba08d8",
+      "f71c19f07b270da95050049c282d2c3536f844c047edc6fffa39029c9478cb08",
+      "afa869f0e4917a9611e127803d753436da313749cc1e862c4309e2ea641e186a",
+      "ccf1f61b33caa592c72bafb717d7c6b5d31538326aa38dd0ae47db0b0c0b36b4",
+      "776e72218685683cb85e514d30b8b43aabdd023f3a63b6d592bcbb8b01f60773",
+      "183d5e5194ce235efac14efdae6a3fde86ada3e160904ea2b068904d61551cb0"
+    }
+  };
+
+  private static TiledImage createSource(int dataType, long seed) {
+    SampleModel sampleModel =
+        RasterFactory.createPixelInterleavedSampleModel(dataType, 16, 16, 3);
+    TiledImage image = new TiledImage(0, 0, 61, 47, 0, 0, sampleModel, null);
+    Random random = new Random(seed);
+    for (int b = 0; b < image.getNumBands(); b++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+              image.setSample(x, y, b, random.nextInt(256));
+              break;
+            case DataBuffer.TYPE_USHORT:
+              image.setSample(x, y, b, random.nextInt(65536));
+              break;
+            case DataBuffer.TYPE_SHORT:
+              image.setSample(x, y, b, random.nextInt(65536) + Short.MIN_VALUE);
+              break;
+            case DataBuffer.TYPE_INT:
+              image.setSample(x, y, b, random.nextInt());
+              break;
+            default:
+              image.setSample(x, y, b, random.nextGaussian() * 1000.0);
+              break;
+          }
+        }
+      }
+    }
+    return image;
+  }
+
+  private static RenderedImage scale(RenderedImage source, float[] scale, int interpolation) {
+    ImageLayout layout = new ImageLayout();
+    layout.setTileWidth(32);
+    layout.setTileHeight(32);
+    RenderingHints hints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout);
+    hints.put(
+        JAI.KEY_BORDER_EXTENDER, BorderExtender.createInstance(BorderExtender.BORDER_COPY));
+
+    ParameterBlock pb = new ParameterBlock();
+    pb.addSource(source);
+    pb.add(scale[0]);
+    pb.add(scale[1]);
+    pb.add(0.3F);
+    pb.add(-1.7F);
+    pb.add(Interpolation.getInstance(interpolation));
+    return new ScaleCRIF().create(pb, hints);
+  }
+
+  /**
+   * Returns the digest of the samples of a source of the given type
+   * scaled by all the scale factors with the given interpolation.
+   */
+  private static String digest(int interpolation, int dataType) throws NoSuchAlgorithmException {
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    RenderedImage source = createSource(dataType, 31L * dataType + interpolation);
+    for (int i = 0; i < SCALES.length; i++) {
+      Raster dest = scale(source, SCALES[i], interpolation).getData();
+      double[] samples =
+          dest.getPixels(
+              dest.getMinX(), dest.getMinY(), dest.getWidth(), dest.getHeight(), (double[]) null);
+      for (int j = 0; j < samples.length; j++) {
+        long bits = Double.doubleToLongBits(samples[j]);
+        for (int k = 56; k >= 0; k -= 8) {
+          md.update((byte) (bits >>> k));
+        }
+      }
+    }
+
+    StringBuffer hex = new StringBuffer();
+    byte[] hash = md.digest();
+    for (int i = 0; i < hash.length; i++) {
+      hex.append(Integer.toHexString((hash[i] & 0xff) | 0x100).substring(1));
+    }
+    return hex.toString();
+  }
+
+  @Test
+  public void testSameResultsAsPerPixelLoops() throws NoSuchAlgorithmException {
+    for (int i = 0; i < INTERPOLATIONS.length; i++) {
+      for (int j = 0; j < DATA_TYPES.length; j++) {
+        assertEquals(
+            DIGESTS[i][j],
+            digest(INTERPOLATIONS[i], DATA_TYPES[j]),
+            "interpolation " + INTERPOLATIONS[i] + ", data type " + DATA_TYPES[j]);
+      }
+    }
+  }
+}
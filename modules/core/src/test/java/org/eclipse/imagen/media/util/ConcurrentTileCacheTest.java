@@ -0,0 +1,96 @@
+package org.eclipse.imagen.media.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentTileCacheTest {
+
+  private static final int TILE_SIZE = 64 * 64;
+
+  private final TiledImage image = new TiledImage(
+      new BufferedImage(64 * 100, 64 * 100, BufferedImage.TYPE_BYTE_GRAY), 64, 64);
+
+  private final Raster tile = image.getTile(0, 0);
+
+  @Test
+  public void testMemoryThreshold() {
+    ConcurrentTileCache cache = new ConcurrentTileCache(10L * TILE_SIZE);
+    for (int x = 0; x < 11; x++) {
+      cache.add(image, x, 0, tile);
+    }
+    // Exceeding the capacity reduces usage to 75% of it, oldest first.
+    assertEquals(7, cache.getCacheTileCount());
+    assertEquals(7L * TILE_SIZE, cache.getCacheMemoryUsed());
+    assertNotNull(cache.getTile(image, 10, 0));
+    assertEquals(null, cache.getTile(image, 0, 0));
+
+    cache.flush();
+    assertEquals(0, cache.getCacheTileCount());
+    assertEquals(0, cache.getCacheMemoryUsed());
+  }
+
+  @Test
+  public void testContainsTileHasNoSideEffects() {
+    ConcurrentTileCache cache = new ConcurrentTileCache(10L * TILE_SIZE);
+    for (int x = 0; x < 10; x++) {
+      cache.add(image, x, 0, tile);
+    }
+    assertTrue(cache.containsTile(image, 0, 0));
+    assertFalse(cache.containsTile(image, 10, 0));
+    assertEquals(0, cache.getCacheHitCount());
+    assertEquals(0, cache.getCacheMissCount());
+
+    // The probe did not make tile 0 the most recently used.
+    cache.add(image, 10, 0, tile);
+    assertFalse(cache.containsTile(image, 0, 0));
+
+    SunTileCache sunCache = new SunTileCache(10L * TILE_SIZE);
+    for (int x = 0; x < 10; x++) {
+      sunCache.add(image, x, 0, tile);
+    }
+    assertTrue(sunCache.containsTile(image, 0, 0));
+    sunCache.add(image, 10, 0, tile);
+    assertFalse(sunCache.containsTile(image, 0, 0));
+    assertEquals(0, sunCache.getCacheHitCount());
+    assertEquals(0, sunCache.getCacheMissCount());
+  }
+
+  @Test
+  public void testScanResistance() {
+    double lru = hitRate(new LRUTileEvictionPolicy());
+    double windowed = hitRate(new WindowedLRUTileEvictionPolicy());
+    double tinyLFU = hitRate(new TinyLFUTileEvictionPolicy());
+
+    assertTrue(windowed > lru, windowed + " <= " + lru);
+    assertTrue(tinyLFU > lru, tinyLFU + " <= " + lru);
+  }
+
+  /** Interleaves requests for 150 hot tiles with a scan of the image. */
+  private double hitRate(TileEvictionPolicy policy) {
+    ConcurrentTileCache cache = new ConcurrentTileCache(200L * TILE_SIZE, policy);
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      int x, y;
+      if (i % 2 == 0) {
+        x = random.nextInt(10);
+        y = random.nextInt(15);
+      } else {
+        x = (i / 2) % 100;
+        y = (i / 200) % 100;
+      }
+      if (cache.getTile(image, x, y) == null) {
+        cache.add(image, x, y, tile);
+      }
+    }
+    return cache.getCacheHitRate();
+  }
+}
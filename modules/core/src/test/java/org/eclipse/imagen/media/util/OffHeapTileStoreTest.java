@@ -0,0 +1,166 @@
+package org.eclipse.imagen.media.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Point;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapTileStoreTest {
+
+  private static final int[] DATA_TYPES = {
+    DataBuffer.TYPE_BYTE,
+    DataBuffer.TYPE_USHORT,
+    DataBuffer.TYPE_SHORT,
+    DataBuffer.TYPE_INT,
+    DataBuffer.TYPE_FLOAT,
+    DataBuffer.TYPE_DOUBLE
+  };
+
+  private static WritableRaster createRaster(SampleModel sampleModel, Point origin, long seed) {
+    WritableRaster raster = RasterFactory.createWritableRaster(sampleModel, origin);
+    Random random = new Random(seed);
+    for (int b = 0; b < raster.getNumBands(); b++) {
+      for (int y = raster.getMinY(); y < raster.getMinY() + raster.getHeight(); y++) {
+        for (int x = raster.getMinX(); x < raster.getMinX() + raster.getWidth(); x++) {
+          raster.setSample(x, y, b, random.nextInt(30000) + random.nextInt(4) / 4.0);
+        }
+      }
+    }
+    return raster;
+  }
+
+  private static void assertSameTile(Raster expected, Raster actual) {
+    assertEquals(expected.getBounds(), actual.getBounds());
+    assertEquals(expected.getTransferType(), actual.getTransferType());
+    assertEquals(expected.getSampleModel().getClass(), actual.getSampleModel().getClass());
+    for (int b = 0; b < expected.getNumBands(); b++) {
+      assertArrayEquals(
+          expected.getSamples(expected.getMinX(), expected.getMinY(),
+              expected.getWidth(), expected.getHeight(), b, (double[]) null),
+          actual.getSamples(actual.getMinX(), actual.getMinY(),
+              actual.getWidth(), actual.getHeight(), b, (double[]) null),
+          "band " + b);
+    }
+  }
+
+  private static void assertRoundTrip(OffHeapTileStore store, Raster tile) {
+    Object metric = new Object();
+    assertTrue(store.put("tile", tile, metric));
+    assertTrue(store.contains("tile"));
+    assertTrue(store.getMemoryUsed() > 0);
+
+    OffHeapTileStore.Entry e = store.take("tile");
+    assertNotNull(e);
+    assertEquals(metric, e.tileCacheMetric);
+    assertSameTile(tile, e.tile);
+
+    // The tile left the store.
+    assertFalse(store.contains("tile"));
+    assertEquals(null, store.take("tile"));
+    assertEquals(0, store.getMemoryUsed());
+  }
+
+  @Test
+  public void testRoundTripOfEachDataType() throws Exception {
+    OffHeapTileStore direct = new OffHeapTileStore(1L << 20);
+    OffHeapTileStore mapped = new OffHeapTileStore(1L << 20, null);
+    try {
+      for (int i = 0; i < DATA_TYPES.length; i++) {
+        SampleModel sampleModel =
+            new PixelInterleavedSampleModel(DATA_TYPES[i], 37, 23, 3, 3 * 37, new int[] {2, 0, 1});
+        Raster tile = createRaster(sampleModel, new Point(-74, 46), i);
+        assertRoundTrip(direct, tile);
+        assertRoundTrip(mapped, tile);
+      }
+    } finally {
+      direct.dispose();
+      mapped.dispose();
+    }
+  }
+
+  @Test
+  public void testBankedAndChildRasters() {
+    OffHeapTileStore store = new OffHeapTileStore(1L << 20);
+    for (int i = 0; i < DATA_TYPES.length; i++) {
+      SampleModel banked =
+          new BandedSampleModel(DATA_TYPES[i], 40, 30, 40, new int[] {2, 0, 1}, new int[] {0, 0, 0});
+      WritableRaster parent = createRaster(banked, new Point(0, 0), 10 + i);
+      assertRoundTrip(store, parent);
+
+      // A child sharing the data of its parent, at other coordinates.
+      assertRoundTrip(store, parent.createWritableChild(5, 7, 16, 11, 100, 200, null));
+      assertRoundTrip(store, parent.createChild(5, 7, 16, 11, 5, 7, new int[] {2, 0}));
+    }
+    store.dispose();
+  }
+
+  @Test
+  public void testEvictsOldestWhenFull() {
+    // Two blocks of 8K, each holding one tile.
+    OffHeapTileStore store = new OffHeapTileStore(16 * 1024);
+    SampleModel sampleModel =
+        new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 64, 128, 1, 64, new int[] {0});
+    Raster[] tiles = new Raster[3];
+    for (int i = 0; i < tiles.length; i++) {
+      tiles[i] = createRaster(sampleModel, new Point(0, 0), 20 + i);
+      assertTrue(store.put(Integer.valueOf(i), tiles[i], null));
+    }
+    assertEquals(2, store.getTileCount());
+    assertFalse(store.contains(Integer.valueOf(0)));
+    assertSameTile(tiles[1], store.take(Integer.valueOf(1)).tile);
+    assertSameTile(tiles[2], store.take(Integer.valueOf(2)).tile);
+
+    // A tile larger than the store is not kept.
+    SampleModel large =
+        new PixelInterleavedSampleModel(DataBuffer.TYPE_INT, 64, 128, 1, 64, new int[] {0});
+    assertFalse(store.put("large", createRaster(large, new Point(0, 0), 30), null));
+    assertFalse(store.contains("large"));
+    store.dispose();
+  }
+
+  @Test
+  public void testCacheRehydratesSpilledTiles() {
+    TiledImage image = new TiledImage(0, 0, 64 * 6, 64, 0, 0,
+        new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, 64, 64, 1, 64, new int[] {0}), null);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setSample(x, y, 0, (x * 7 + y) & 0xff);
+      }
+    }
+
+    SunTileCache cache = new SunTileCache(4L * 64 * 64);
+    OffHeapTileStore store = new OffHeapTileStore(1L << 20);
+    cache.setOffHeapTileStore(store);
+    for (int x = 0; x < 6; x++) {
+      cache.add(image, x, 0, image.getTile(x, 0));
+    }
+    assertTrue(store.getTileCount() > 0);
+    for (int x = 0; x < 6; x++) {
+      Raster tile = cache.getTile(image, x, 0);
+      assertNotNull(tile, "tile " + x);
+      assertSameTile(image.getTile(x, 0), tile);
+    }
+
+    // Removal reaches the store even when the heap tier holds nothing.
+    Object key = SunCachedTile.hashKey(image, 0, 0);
+    cache.setMemoryCapacity(0);
+    store.put(key, image.getTile(0, 0), null);
+    cache.remove(image, 0, 0);
+    assertFalse(store.contains(key));
+    store.dispose();
+  }
+}
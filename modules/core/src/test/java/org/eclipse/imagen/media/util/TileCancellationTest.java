@@ -0,0 +1,175 @@
+package org.eclipse.imagen.media.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import org.eclipse.imagen.BorderExtender;
+import org.eclipse.imagen.ImageLayout;
+import org.eclipse.imagen.Interpolation;
+import org.eclipse.imagen.JAI;
+import org.eclipse.imagen.KernelJAI;
+import org.eclipse.imagen.OpImage;
+import org.eclipse.imagen.PointOpImage;
+import org.eclipse.imagen.RasterFactory;
+import org.eclipse.imagen.TiledImage;
+import org.eclipse.imagen.media.opimage.AddCRIF;
+import org.eclipse.imagen.media.opimage.ConvolveRIF;
+import org.eclipse.imagen.media.opimage.ScaleCRIF;
+import org.junit.jupiter.api.Test;
+
+public class TileCancellationTest {
+
+  private static final int TILE_SIZE = 512;
+
+  /** Records the rectangles it is asked to compute. */
+  private static final class RecordingOpImage extends PointOpImage {
+
+    final List rects = new ArrayList();
+
+    RecordingOpImage(RenderedImage source) {
+      super(source, createLayout(), null, true);
+    }
+
+    protected void computeRect(Raster[] sources, WritableRaster dest, Rectangle destRect) {
+      rects.add(new Rectangle(destRect));
+    }
+  }
+
+  private static ImageLayout createLayout() {
+    ImageLayout layout = new ImageLayout();
+    layout.setTileWidth(TILE_SIZE);
+    layout.setTileHeight(TILE_SIZE);
+    return layout;
+  }
+
+  private static TiledImage createSource(long seed) {
+    SampleModel sampleModel =
+        RasterFactory.createPixelInterleavedSampleModel(
+            DataBuffer.TYPE_BYTE, TILE_SIZE, TILE_SIZE, 1);
+    TiledImage image = new TiledImage(0, 0, 700, 600, 0, 0, sampleModel, null);
+    Random random = new Random(seed);
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        image.setSample(x, y, 0, random.nextInt(256));
+      }
+    }
+    return image;
+  }
+
+  private static int[] computeTile(OpImage image, TileCancellation cancellation) {
+    TileCancellation previous = cancellation != null ? cancellation.enter() : null;
+    try {
+      Raster tile = image.computeTile(0, 0);
+      Rectangle bounds = tile.getBounds().intersection(image.getBounds());
+      return tile.getPixels(bounds.x, bounds.y, bounds.width, bounds.height, (int[]) null);
+    } finally {
+      if (cancellation != null) {
+        TileCancellation.exit(previous);
+      }
+    }
+  }
+
+  @Test
+  public void testOutsideOfRequestNotCancellable() {
+    assertFalse(TileCancellation.isCancellable());
+    assertFalse(TileCancellation.isCancelled());
+
+    TileCancellation cancellation = new TileCancellation(0L);
+    TileCancellation previous = cancellation.enter();
+    try {
+      assertTrue(TileCancellation.isCancellable());
+      assertFalse(TileCancellation.isCancelled());
+    } finally {
+      TileCancellation.exit(previous);
+    }
+    assertFalse(TileCancellation.isCancellable());
+  }
+
+  @Test
+  public void testTileComputedInStripsWhenCancellable() {
+    RecordingOpImage image = new RecordingOpImage(createSource(1L));
+    computeTile(image, null);
+    assertEquals(1, image.rects.size());
+    assertEquals(new Rectangle(0, 0, TILE_SIZE, TILE_SIZE), image.rects.get(0));
+
+    image.rects.clear();
+    computeTile(image, new TileCancellation(0L));
+    assertTrue(image.rects.size() > 1);
+    int y = 0;
+    for (int i = 0; i < image.rects.size(); i++) {
+      Rectangle rect = (Rectangle) image.rects.get(i);
+      assertEquals(0, rect.x);
+      assertEquals(TILE_SIZE, rect.width);
+      assertEquals(y, rect.y);
+      y += rect.height;
+    }
+    assertEquals(TILE_SIZE, y);
+  }
+
+  @Test
+  public void testCancelledTileAbandonedAfterFirstStrip() {
+    RecordingOpImage image = new RecordingOpImage(createSource(2L));
+    TileCancellation cancellation = new TileCancellation(0L);
+    cancellation.cancel();
+    assertThrows(CancellationException.class, () -> computeTile(image, cancellation));
+    assertEquals(1, image.rects.size());
+
+    image.rects.clear();
+    TileCancellation expired = new TileCancellation(System.currentTimeMillis() - 1000L);
+    assertThrows(CancellationException.class, () -> computeTile(image, expired));
+    assertEquals(1, image.rects.size());
+  }
+
+  @Test
+  public void testStripsDoNotChangeResults() {
+    TiledImage source0 = createSource(3L);
+    TiledImage source1 = createSource(4L);
+    RenderingHints hints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, createLayout());
+    hints.put(
+        JAI.KEY_BORDER_EXTENDER, BorderExtender.createInstance(BorderExtender.BORDER_COPY));
+
+    ParameterBlock add = new ParameterBlock();
+    add.addSource(source0);
+    add.addSource(source1);
+
+    ParameterBlock convolve = new ParameterBlock();
+    convolve.addSource(source0);
+    convolve.add(new KernelJAI(3, 3, new float[] {0, 1, 2, 1, 3, 1, 2, 1, 0}));
+
+    ParameterBlock scale = new ParameterBlock();
+    scale.addSource(source0);
+    scale.add(1.5F);
+    scale.add(1.25F);
+    scale.add(0.0F);
+    scale.add(0.0F);
+    scale.add(Interpolation.getInstance(Interpolation.INTERP_BILINEAR));
+
+    OpImage[] images = {
+      (OpImage) new AddCRIF().create(add, hints),
+      (OpImage) new ConvolveRIF().create(convolve, hints),
+      (OpImage) new ScaleCRIF().create(scale, hints)
+    };
+    for (int i = 0; i < images.length; i++) {
+      assertArrayEquals(
+          computeTile(images[i], null),
+          computeTile(images[i], new TileCancellation(0L)),
+          images[i].getClass().getName());
+    }
+  }
+}